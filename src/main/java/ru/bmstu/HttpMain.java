@@ -0,0 +1,20 @@
+package ru.bmstu;
+
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import ru.bmstu.config.AppConfig;
+import ru.bmstu.web.StudentHttpServer;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+
+// Запуск HTTP API вместо консольного меню
+public class HttpMain {
+    public static void main(String[] args) throws IOException, InterruptedException {
+        // запросы обслуживаются параллельно, поэтому нужно потокобезопасное хранилище студентов
+        System.setProperty("students.concurrent.enabled", "true");
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(AppConfig.class);
+        context.registerShutdownHook();
+        context.getBean(StudentHttpServer.class).start();
+        new CountDownLatch(1).await();
+    }
+}
@@ -13,6 +13,8 @@ public class Main {
     public static void main(String[] args) {
         Scanner scanner = new Scanner(System.in);
         AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(AppConfig.class);
+        // при любом завершении JVM контекст закроется и асинхронный журнал допишет очередь
+        context.registerShutdownHook();
         StudentService studentService = context.getBean(StudentService.class);
 
         System.out.println("Welcome to Student Management System");
@@ -75,7 +77,7 @@ public class Main {
 
     private static void viewAllStudents(StudentService studentService) {
         System.out.println("\nCurrent students:");
-        studentService.getAllStudents().forEach(student ->
+        studentService.streamStudents().forEach(student ->
                 System.out.printf("%s %s: %d tokens%n",
                         student.getFirstName(),
                         student.getLastName(),
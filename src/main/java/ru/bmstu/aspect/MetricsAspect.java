@@ -0,0 +1,50 @@
+package ru.bmstu.aspect;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import ru.bmstu.metrics.MetricsRegistry;
+import ru.bmstu.metrics.OperationMetrics;
+import ru.bmstu.service.StudentService;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Время, число вызовов и ошибок каждого метода StudentService и LogService.
+// Снаружи проверки ролей, поэтому отказы в доступе тоже считаются ошибками.
+@Aspect
+@Component
+@Order(0)
+public class MetricsAspect {
+    private final MetricsRegistry metricsRegistry;
+    // Метрики по методу ищутся без выделения памяти
+    private final Map<Method, OperationMetrics> byMethod = new ConcurrentHashMap<>();
+
+    public MetricsAspect(MetricsRegistry metricsRegistry) {
+        this.metricsRegistry = metricsRegistry;
+    }
+
+    @Around("execution(* ru.bmstu.service.StudentService.*(..)) || execution(* ru.bmstu.service.LogService.*(..))")
+    public Object recordServiceCall(ProceedingJoinPoint joinPoint) throws Throwable {
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        OperationMetrics metrics = byMethod.get(method);
+        if (metrics == null) {
+            String group = StudentService.class.isAssignableFrom(method.getDeclaringClass())
+                ? "StudentService" : "LogService";
+            metrics = byMethod.computeIfAbsent(method, m -> metricsRegistry.get(group, m.getName()));
+        }
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            Object result = joinPoint.proceed();
+            failed = false;
+            return result;
+        } finally {
+            metrics.record(System.nanoTime() - start, failed);
+        }
+    }
+}
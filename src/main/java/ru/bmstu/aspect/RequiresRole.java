@@ -0,0 +1,23 @@
+package ru.bmstu.aspect;
+
+import ru.bmstu.model.User.UserRole;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Метод доступен только пользователю с указанной ролью. Роль берётся из аргумента типа User;
+ * проверку выполняет RoleVerificationAspect. action — окончание сообщения об отказе:
+ * "Only teachers can " + action.
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface RequiresRole {
+    UserRole value();
+
+    String action();
+}
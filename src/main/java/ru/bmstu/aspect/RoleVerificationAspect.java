@@ -1,35 +1,62 @@
 package ru.bmstu.aspect;
 
+import org.aspectj.lang.JoinPoint;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.annotation.Before;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.core.annotation.AnnotatedElementUtils;
 import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
 import ru.bmstu.model.User;
 import ru.bmstu.model.User.UserRole;
 
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 @Aspect
 @Component
 @Order(1)
 public class RoleVerificationAspect {
-    // Pointcut выражение
-    @Before("execution(* ru.bmstu.service.StudentService.addStudent(..)) && args(user, ..)")
-    public void verifyTeacherRoleForAddStudent(User user) {
-        if (user.getRole() != UserRole.TEACHER) {
-            throw new SecurityException("Only teachers can add students");
-        }
+    // Требование метода: роль, номер аргумента User и сообщение об отказе
+    private record Requirement(UserRole role, int userArgIndex, String message) {
     }
 
-    @Before("execution(* ru.bmstu.service.StudentService.removeStudent(..)) && args(.., user)")
-    public void verifyTeacherRoleForRemoveStudent(User user) {
-        if (user.getRole() != UserRole.TEACHER) {
-            throw new SecurityException("Only teachers can remove students");
+    private static final Requirement NONE = new Requirement(null, -1, null);
+
+    // Разбор аннотации и поиск аргумента User выполняются один раз на метод
+    private final Map<Method, Requirement> requirements = new ConcurrentHashMap<>();
+
+    // Одна advice на все методы StudentService и AsyncStudentService: без привязки args(..) на каждый вызов
+    @Before("execution(* ru.bmstu.service.StudentService.*(..)) || execution(* ru.bmstu.service.AsyncStudentService.*(..))")
+    public void verifyRole(JoinPoint joinPoint) {
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        Requirement requirement = requirements.get(method);
+        if (requirement == null) {
+            requirement = requirements.computeIfAbsent(method, RoleVerificationAspect::resolve);
+        }
+        if (requirement == NONE) {
+            return;
+        }
+        User user = (User) joinPoint.getArgs()[requirement.userArgIndex()];
+        if (user.getRole() != requirement.role()) {
+            throw new SecurityException(requirement.message());
         }
     }
 
-    @Before("execution(* ru.bmstu.service.StudentService.updateTokens(..)) && args(.., user)")
-    public void verifyTeacherRoleForUpdateTokens(User user) {
-        if (user.getRole() != UserRole.TEACHER) {
-            throw new SecurityException("Only teachers can update tokens");
+    // Аннотация ищется и на методе класса, и на методе интерфейса
+    private static Requirement resolve(Method method) {
+        RequiresRole annotation = AnnotatedElementUtils.findMergedAnnotation(method, RequiresRole.class);
+        if (annotation == null) {
+            return NONE;
+        }
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        for (int i = 0; i < parameterTypes.length; i++) {
+            if (parameterTypes[i] == User.class) {
+                String roleName = annotation.value().name().toLowerCase() + "s";
+                return new Requirement(annotation.value(), i, "Only " + roleName + " can " + annotation.action());
+            }
         }
+        throw new IllegalStateException("@RequiresRole method has no User argument: " + method);
     }
-}
\ No newline at end of file
+}
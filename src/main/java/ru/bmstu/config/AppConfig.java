@@ -1,15 +1,45 @@
 package ru.bmstu.config;
 
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.EnableAspectJAutoProxy;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.context.annotation.PropertySource;
+import ru.bmstu.metrics.MetricsRegistry;
+import ru.bmstu.model.LogEntry;
 import ru.bmstu.service.LogService;
+import ru.bmstu.service.StudentRepository;
 import ru.bmstu.service.StudentService;
+import ru.bmstu.service.impl.AsyncLogServiceImpl;
+import ru.bmstu.service.impl.BackpressurePolicy;
+import ru.bmstu.service.impl.CompactStudentServiceImpl;
+import ru.bmstu.service.impl.Durability;
+import ru.bmstu.service.impl.EventLoopStudentService;
 import ru.bmstu.service.impl.LogServiceImpl;
+import ru.bmstu.service.impl.LogRotationPolicy;
+import ru.bmstu.service.impl.MutationMode;
+import ru.bmstu.service.impl.PersistenceMode;
+import ru.bmstu.service.impl.ReplicaStudentService;
+import ru.bmstu.service.impl.ReplicationLog;
+import ru.bmstu.service.impl.ReplicationRole;
+import ru.bmstu.service.impl.ReplicationServer;
+import ru.bmstu.service.impl.StorageFormat;
+import ru.bmstu.service.impl.StoreLayout;
+import ru.bmstu.service.impl.StudentJournal;
 import ru.bmstu.service.impl.StudentServiceImpl;
+import ru.bmstu.service.impl.TokenLedgerImpl;
+import ru.bmstu.web.StudentHttpServer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
 
 @Configuration //java-конфигурация(регистрируют классы как Spring-бины)
 @ComponentScan("ru.bmstu")
@@ -23,14 +53,242 @@ public class AppConfig {
     @Value("${log.file.path}")
     private String logFilePath;
 
+    @Value("${log.segment.period:DAYS}")
+    private ChronoUnit logSegmentPeriod;
+
+    @Value("${log.segment.max-bytes:0}")
+    private long logSegmentMaxBytes;
+
+    @Value("${log.segment.compress:false}")
+    private boolean logSegmentCompress;
+
+    @Value("${log.retention.max-segments:0}")
+    private int logRetentionMaxSegments;
+
+    @Value("${log.retention.max-age-days:0}")
+    private int logRetentionMaxAgeDays;
+
+    @Value("${log.memory.tail-size:10000}")
+    private int logTailSize;
+
+    @Value("${log.async.enabled:false}")
+    private boolean asyncLogEnabled;
+
+    @Value("${log.async.queue-capacity:8192}")
+    private int asyncLogQueueCapacity;
+
+    @Value("${log.async.batch-size:512}")
+    private int asyncLogBatchSize;
+
+    @Value("${log.async.backpressure:BLOCK}")
+    private BackpressurePolicy asyncLogBackpressure;
+
+    @Value("${students.storage.format:CSV}")
+    private StorageFormat storageFormat;
+
+    @Value("${students.binary.path:}")
+    private String binaryFilePath;
+
+    @Value("${students.store.layout:OBJECTS}")
+    private StoreLayout storeLayout;
+
+    @Value("${students.mutation.mode:LOCKING}")
+    private MutationMode mutationMode;
+
+    @Value("${students.mutation.queue-capacity:8192}")
+    private int mutationQueueCapacity;
+
+    @Value("${students.mutation.batch-size:512}")
+    private int mutationBatchSize;
+
+    @Value("${students.concurrent.enabled:false}")
+    private boolean concurrentStudents;
+
+    @Value("${students.shards:1}")
+    private int studentShards;
+
+    @Value("${students.persistence.mode:SNAPSHOT}")
+    private PersistenceMode persistenceMode;
+
+    @Value("${students.journal.path:}")
+    private String journalFilePath;
+
+    @Value("${students.journal.compaction-threshold-bytes:1048576}")
+    private long journalCompactionThresholdBytes;
+
+    @Value("${students.ledger.enabled:false}")
+    private boolean tokenLedgerEnabled;
+
+    @Value("${students.ledger.path:}")
+    private String tokenLedgerPath;
+
+    @Value("${durability.level:BATCH}")
+    private Durability durability;
+
+    @Value("${durability.batch-interval-ms:100}")
+    private long durabilityBatchIntervalMillis;
+
+    @Value("${metrics.jmx.enabled:true}")
+    private boolean metricsJmxEnabled;
+
+    @Value("${metrics.dump.interval-seconds:0}")
+    private long metricsDumpIntervalSeconds;
+
+    @Value("${replication.role:NONE}")
+    private ReplicationRole replicationRole;
+
+    @Value("${replication.host:localhost}")
+    private String replicationHost;
+
+    @Value("${replication.port:7070}")
+    private int replicationPort;
+
+    @Value("${replication.backlog-size:100000}")
+    private int replicationBacklogSize;
+
+    @Value("${http.host:localhost}")
+    private String httpHost;
+
+    @Value("${http.port:8080}")
+    private int httpPort;
+
+    @Bean
+    public MetricsRegistry metricsRegistry() {
+        MetricsRegistry registry = new MetricsRegistry("ru.bmstu", metricsJmxEnabled);
+        registry.startDump(metricsDumpIntervalSeconds);
+        return registry;
+    }
+
     //значит, что такие методы будут возвращать бины (объекты), которые он уже поместит себе в контекст.
     @Bean
-    public LogService logService() {
-        return new LogServiceImpl(logFilePath);
+    public LogService logService(MetricsRegistry metricsRegistry) {
+        LogServiceImpl logService = new LogServiceImpl(logFilePath, logSegmentPeriod, logTailSize,
+            durability, durabilityBatchIntervalMillis, new LogRotationPolicy(logSegmentMaxBytes,
+                logSegmentCompress, logRetentionMaxSegments, logRetentionMaxAgeDays));
+        logService.setFlushMetrics(metricsRegistry.get("Persistence", "logFlush"));
+        if (asyncLogEnabled) {
+            return new AsyncLogServiceImpl(logService, asyncLogQueueCapacity, asyncLogBatchSize, asyncLogBackpressure);
+        }
+        return logService;
     }
     
     @Bean
-    public StudentService studentService(LogService logService) {
-        return new StudentServiceImpl(csvFilePath, logService);
+    public StudentRepository studentRepository() {
+        return storageFormat.repository(studentsFilePath(), durability);
+    }
+
+    private String studentsFilePath() {
+        if (storageFormat == StorageFormat.BINARY) {
+            return binaryFilePath.isBlank() ? csvFilePath + ".bin" : binaryFilePath;
+        }
+        return csvFilePath;
+    }
+
+    // Создаётся только при students.ledger.enabled=true: иначе существующий файл журнала жетонов не читается
+    @Bean
+    @Lazy
+    public TokenLedgerImpl tokenLedger() {
+        String path = tokenLedgerPath.isBlank() ? csvFilePath + ".ledger" : tokenLedgerPath;
+        return new TokenLedgerImpl(path, durability, durabilityBatchIntervalMillis);
+    }
+
+    @Bean
+    public ReplicationLog replicationLog() {
+        return new ReplicationLog(replicationBacklogSize);
+    }
+
+    @Bean
+    public StudentService studentService(LogService logService, StudentRepository studentRepository,
+                                         MetricsRegistry metricsRegistry, ReplicationLog replicationLog,
+                                         ObjectProvider<TokenLedgerImpl> tokenLedgers) {
+        if (replicationRole == ReplicationRole.REPLICA) {
+            ReplicaStudentService replica = new ReplicaStudentService(replicationHost, replicationPort);
+            replica.setLagMetrics(metricsRegistry.get("Replication", "applyLag"));
+            replica.start();
+            return replica;
+        }
+        if (studentShards < 1) {
+            throw new IllegalArgumentException("students.shards must be positive");
+        }
+        if (storeLayout == StoreLayout.COMPACT) {
+            if (mutationMode != MutationMode.LOCKING) {
+                throw new IllegalStateException("students.store.layout=COMPACT supports only students.mutation.mode=LOCKING");
+            }
+            return compactStudentService(logService, studentRepository, metricsRegistry, tokenLedgers);
+        }
+        // Часть студентов с номером за пределами настроенного числа частей была бы молча потеряна
+        String orphan = StudentServiceImpl.shardPath(studentsFilePath(), studentShards);
+        if (Files.exists(Paths.get(orphan))) {
+            throw new IllegalStateException("Found shard file " + orphan + " beyond students.shards="
+                + studentShards + "; restore the previous shard count or merge the file first");
+        }
+        String journalPath = journalFilePath.isBlank() ? csvFilePath + ".journal" : journalFilePath;
+        List<StudentRepository> repositories = new ArrayList<>(studentShards);
+        List<StudentJournal> journals = new ArrayList<>(studentShards);
+        for (int i = 0; i < studentShards; i++) {
+            repositories.add(i == 0 ? studentRepository
+                : storageFormat.repository(StudentServiceImpl.shardPath(studentsFilePath(), i), durability));
+            journals.add(persistenceMode == PersistenceMode.JOURNAL
+                ? new StudentJournal(StudentServiceImpl.shardPath(journalPath, i), journalCompactionThresholdBytes,
+                    durability, durabilityBatchIntervalMillis)
+                : null);
+        }
+        StudentServiceImpl studentService = new StudentServiceImpl(repositories, journals, logService, concurrentStudents);
+        studentService.setPersistMetrics(metricsRegistry.get("Persistence", "studentsSave"));
+        if (tokenLedgerEnabled) {
+            TokenLedgerImpl tokenLedger = tokenLedgers.getObject();
+            // при первом включении история жетонов восстанавливается из журнала действий
+            if (tokenLedger.isEmpty()) {
+                try (Stream<LogEntry> logs = logService.streamLogs(null, null)) {
+                    tokenLedger.importHistory(logs);
+                }
+            }
+            studentService.setTokenLedger(tokenLedger);
+        }
+        if (replicationRole == ReplicationRole.PRIMARY) {
+            studentService.setReplicationLog(replicationLog);
+        }
+        if (mutationMode == MutationMode.EVENT_LOOP) {
+            return new EventLoopStudentService(studentService, mutationQueueCapacity, mutationBatchSize);
+        }
+        return studentService;
+    }
+
+    private StudentService compactStudentService(LogService logService, StudentRepository studentRepository,
+                                                 MetricsRegistry metricsRegistry,
+                                                 ObjectProvider<TokenLedgerImpl> tokenLedgers) {
+        if (studentShards != 1 || persistenceMode != PersistenceMode.SNAPSHOT
+                || replicationRole != ReplicationRole.NONE) {
+            throw new IllegalStateException("students.store.layout=COMPACT supports only students.shards=1, "
+                + "students.persistence.mode=SNAPSHOT and replication.role=NONE");
+        }
+        CompactStudentServiceImpl studentService = new CompactStudentServiceImpl(studentRepository, logService);
+        studentService.setPersistMetrics(metricsRegistry.get("Persistence", "studentsSave"));
+        if (tokenLedgerEnabled) {
+            TokenLedgerImpl tokenLedger = tokenLedgers.getObject();
+            if (tokenLedger.isEmpty()) {
+                try (Stream<LogEntry> logs = logService.streamLogs(null, null)) {
+                    tokenLedger.importHistory(logs);
+                }
+            }
+            studentService.setTokenLedger(tokenLedger);
+        }
+        return studentService;
+    }
+
+    // Слушает порт только на основном экземпляре
+    @Bean
+    public ReplicationServer replicationServer(ReplicationLog replicationLog) throws IOException {
+        ReplicationServer server = new ReplicationServer(replicationLog, replicationHost, replicationPort);
+        if (replicationRole == ReplicationRole.PRIMARY) {
+            server.start();
+        }
+        return server;
+    }
+
+    // Сервер создаётся, но слушает порт только после start() (см. HttpMain)
+    @Bean
+    public StudentHttpServer studentHttpServer(StudentService studentService, LogService logService) {
+        return new StudentHttpServer(studentService, logService, httpHost, httpPort);
     }
-}
\ No newline at end of file
+}
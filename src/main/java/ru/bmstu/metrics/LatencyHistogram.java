@@ -0,0 +1,46 @@
+package ru.bmstu.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Гистограмма задержек с корзинами по степеням двойки наносекунд: корзина i хранит значения
+ * в [2^(i-1), 2^i). Запись — один атомарный инкремент без блокировок и без выделения памяти;
+ * процентили оцениваются верхней границей корзины (точность в пределах двух раз).
+ */
+public final class LatencyHistogram {
+    private static final int BUCKETS = 64;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    public void record(long nanos) {
+        int bucket = nanos <= 0 ? 0 : BUCKETS - Long.numberOfLeadingZeros(nanos);
+        counts.incrementAndGet(Math.min(bucket, BUCKETS - 1));
+    }
+
+    // Оценка процентиля (0..1) в наносекундах; 0, если записей нет
+    public long percentile(double quantile) {
+        long total = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return i == 0 ? 0 : (i >= 63 ? Long.MAX_VALUE : (1L << i) - 1);
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+    }
+}
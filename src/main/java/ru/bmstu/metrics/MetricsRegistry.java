@@ -0,0 +1,113 @@
+package ru.bmstu.metrics;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Реестр метрик операций. Каждая операция регистрируется как MBean
+ * {@code <domain>:type=<группа>,name=<операция>} при первом обращении;
+ * по желанию сводка периодически печатается в System.out.
+ */
+public class MetricsRegistry implements Closeable {
+    private final String jmxDomain;
+    private final boolean jmxEnabled;
+    private final Map<String, OperationMetrics> metrics = new ConcurrentHashMap<>();
+    private final List<ObjectName> registered = new ArrayList<>();
+    private ScheduledExecutorService dumper;
+
+    public MetricsRegistry(String jmxDomain, boolean jmxEnabled) {
+        this.jmxDomain = jmxDomain;
+        this.jmxEnabled = jmxEnabled;
+    }
+
+    public OperationMetrics get(String group, String name) {
+        return metrics.computeIfAbsent(group + "." + name, key -> {
+            OperationMetrics created = new OperationMetrics(group, name);
+            register(created);
+            return created;
+        });
+    }
+
+    private void register(OperationMetrics operation) {
+        if (!jmxEnabled) {
+            return;
+        }
+        try {
+            ObjectName objectName = new ObjectName(jmxDomain + ":type=" + ObjectName.quote(operation.getGroup())
+                + ",name=" + ObjectName.quote(operation.getName()));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (!server.isRegistered(objectName)) {
+                server.registerMBean(operation, objectName);
+                synchronized (registered) {
+                    registered.add(objectName);
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("Error registering metrics MBean: " + e.getMessage());
+        }
+    }
+
+    public List<OperationMetrics> getAll() {
+        List<OperationMetrics> all = new ArrayList<>(metrics.values());
+        all.sort(Comparator.comparing(OperationMetrics::getGroup).thenComparing(OperationMetrics::getName));
+        return all;
+    }
+
+    // Текстовая сводка: одна строка на операцию
+    public String dump() {
+        StringBuilder out = new StringBuilder(String.format("%-40s %10s %8s %10s %10s %10s %10s%n",
+            "operation", "count", "errors", "mean(us)", "p50(us)", "p99(us)", "max(us)"));
+        for (OperationMetrics operation : getAll()) {
+            out.append(String.format("%-40s %10d %8d %10.1f %10.1f %10.1f %10.1f%n",
+                operation.getGroup() + "." + operation.getName(),
+                operation.getCount(),
+                operation.getErrorCount(),
+                operation.getMeanMicros(),
+                operation.getP50Micros(),
+                operation.getP99Micros(),
+                operation.getMaxMicros()));
+        }
+        return out.toString();
+    }
+
+    public synchronized void startDump(long intervalSeconds) {
+        if (intervalSeconds <= 0 || dumper != null) {
+            return;
+        }
+        dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dumper.scheduleAtFixedRate(() -> System.out.print(dump()), intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (dumper != null) {
+            dumper.shutdownNow();
+            dumper = null;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        synchronized (registered) {
+            for (ObjectName objectName : registered) {
+                try {
+                    server.unregisterMBean(objectName);
+                } catch (Exception e) {
+                    System.err.println("Error unregistering metrics MBean: " + e.getMessage());
+                }
+            }
+            registered.clear();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package ru.bmstu.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Число вызовов, ошибок и распределение задержек одной операции.
+ * Запись идёт через LongAdder и атомарные счётчики, без блокировок.
+ */
+public final class OperationMetrics implements OperationMetricsMBean {
+    private final String group;
+    private final String name;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+    OperationMetrics(String group, String name) {
+        this.group = group;
+        this.name = name;
+    }
+
+    public String getGroup() {
+        return group;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void record(long nanos, boolean failed) {
+        count.increment();
+        if (failed) {
+            errors.increment();
+        }
+        totalNanos.add(nanos);
+        histogram.record(nanos);
+        long max = maxNanos.get();
+        while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+            max = maxNanos.get();
+        }
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public long getErrorCount() {
+        return errors.sum();
+    }
+
+    @Override
+    public double getMeanMicros() {
+        long calls = count.sum();
+        return calls == 0 ? 0 : totalNanos.sum() / 1000.0 / calls;
+    }
+
+    @Override
+    public double getMaxMicros() {
+        return maxNanos.get() / 1000.0;
+    }
+
+    @Override
+    public double getP50Micros() {
+        return percentileMicros(0.5);
+    }
+
+    @Override
+    public double getP99Micros() {
+        return percentileMicros(0.99);
+    }
+
+    @Override
+    public double getP999Micros() {
+        return percentileMicros(0.999);
+    }
+
+    // Верхняя граница корзины не может быть больше наблюдавшегося максимума
+    private double percentileMicros(double quantile) {
+        return Math.min(histogram.percentile(quantile), maxNanos.get()) / 1000.0;
+    }
+
+    @Override
+    public void reset() {
+        count.reset();
+        errors.reset();
+        totalNanos.reset();
+        maxNanos.set(0);
+        histogram.reset();
+    }
+}
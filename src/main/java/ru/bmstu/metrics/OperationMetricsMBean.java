@@ -0,0 +1,13 @@
+package ru.bmstu.metrics;
+
+// Счётчики одной операции, видимые через JMX (время в микросекундах)
+public interface OperationMetricsMBean {
+    long getCount();
+    long getErrorCount();
+    double getMeanMicros();
+    double getMaxMicros();
+    double getP50Micros();
+    double getP99Micros();
+    double getP999Micros();
+    void reset();
+}
@@ -0,0 +1,17 @@
+package ru.bmstu.model;
+
+import lombok.Data;
+import lombok.AllArgsConstructor;
+import lombok.NoArgsConstructor;
+import java.util.List;
+
+// Страница выборки: nextCursor — курсор последнего элемента (или исходный, если страница пуста),
+// передаётся как after в следующий запрос; hasMore — есть ли элементы после неё
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class Page<T, C> {
+    private List<T> items;
+    private C nextCursor;
+    private boolean hasMore;
+}
@@ -0,0 +1,9 @@
+package ru.bmstu.model;
+
+// Составной первичный ключ студента (имя + фамилия)
+public record StudentKey(String firstName, String lastName) {
+
+    public static StudentKey of(Student student) {
+        return new StudentKey(student.getFirstName(), student.getLastName());
+    }
+}
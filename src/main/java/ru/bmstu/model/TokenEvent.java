@@ -0,0 +1,28 @@
+package ru.bmstu.model;
+
+import lombok.Data;
+import lombok.AllArgsConstructor;
+import lombok.NoArgsConstructor;
+import java.time.LocalDateTime;
+
+// Событие журнала жетонов: изменение delta и остаток balance после него
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class TokenEvent {
+    public enum Type {
+        // студент добавлен, delta — начальные жетоны
+        ADDED,
+        // начисление или списание
+        UPDATED,
+        // студент удалён, delta списывает весь остаток
+        REMOVED
+    }
+
+    private LocalDateTime timestamp;
+    private Type type;
+    private String firstName;
+    private String lastName;
+    private int delta;
+    private int balance;
+}
@@ -0,0 +1,20 @@
+package ru.bmstu.model;
+
+import lombok.Data;
+import lombok.AllArgsConstructor;
+import lombok.NoArgsConstructor;
+import java.util.SortedMap;
+
+// Сводка по жетонам; histogram: нижняя граница корзины шириной bucketWidth -> число студентов
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class TokenStatistics {
+    private long count;
+    private long sum;
+    private int min;
+    private int max;
+    private double average;
+    private int bucketWidth;
+    private SortedMap<Integer, Long> histogram;
+}
@@ -0,0 +1,32 @@
+package ru.bmstu.service;
+
+import ru.bmstu.aspect.RequiresRole;
+import ru.bmstu.model.Student;
+import ru.bmstu.model.StudentKey;
+import ru.bmstu.model.User;
+import ru.bmstu.model.User.UserRole;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+// Изменения без ожидания: результат завершается, когда изменение сохранено и записано в журнал действий;
+// ошибка проверки (нет студента, дубликат) завершает его исключением, как у синхронного метода.
+// ChangeNotPersistedException — изменение применено, но ещё не записано в файлы; повторять его нельзя
+public interface AsyncStudentService extends StudentService {
+    @RequiresRole(value = UserRole.TEACHER, action = "add students")
+    CompletableFuture<Void> addStudentAsync(User user, Student student);
+    @RequiresRole(value = UserRole.TEACHER, action = "remove students")
+    CompletableFuture<Void> removeStudentAsync(String firstName, String lastName, User user);
+    CompletableFuture<Void> expelStudentAsync(User user, String firstName, String lastName);
+    // Студент после изменения
+    @RequiresRole(value = UserRole.TEACHER, action = "update tokens")
+    CompletableFuture<Student> updateTokensAsync(String firstName, String lastName, int amount, User user);
+
+    @RequiresRole(value = UserRole.TEACHER, action = "add students")
+    CompletableFuture<Void> addStudentsAsync(User user, List<Student> students);
+    @RequiresRole(value = UserRole.TEACHER, action = "remove students")
+    CompletableFuture<Void> removeStudentsAsync(List<StudentKey> keys, User user);
+    @RequiresRole(value = UserRole.TEACHER, action = "update tokens")
+    CompletableFuture<Void> updateTokensBatchAsync(Map<StudentKey, Integer> amounts, User user);
+}
@@ -0,0 +1,12 @@
+package ru.bmstu.service;
+
+/**
+ * Изменение применено и уже видно при чтении, но записать его в файлы не удалось.
+ * Повторять изменение нельзя: оно применилось бы дважды. Запись будет повторена вместе
+ * со следующими изменениями или при простое писателя.
+ */
+public class ChangeNotPersistedException extends RuntimeException {
+    public ChangeNotPersistedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -1,10 +1,27 @@
 package ru.bmstu.service;
 
 import ru.bmstu.model.LogEntry;
+import ru.bmstu.model.Page;
 import ru.bmstu.model.User;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface LogService {
     void logAction(String action, User user, String details);
+    // Пакет однотипных действий записывается одной дозаписью
+    void logActions(String action, User user, List<String> details);
     List<LogEntry> getAllLogs();
+    // Записи с меткой времени в [from, to], null — без границы; читаются только нужные сегменты, поток нужно закрыть
+    Stream<LogEntry> streamLogs(LocalDateTime from, LocalDateTime to);
+    // Не более limit записей после записи с номером after (null — с начала); номер — сквозной порядковый номер записи
+    Page<LogEntry, Long> getLogsPage(Long after, int limit);
+    // Поиск по индексам действия, пользователя, роли и времени; null — любое значение
+    List<LogEntry> findLogs(String action, String userFirstName, String userLastName, User.UserRole role,
+                            LocalDateTime from, LocalDateTime to);
+    List<LogEntry> findLogsByAction(String action);
+    List<LogEntry> findLogsByUser(String userFirstName, String userLastName);
+    List<LogEntry> findLogsByRole(User.UserRole role);
+    // Дожидается записи на диск всех принятых записей
+    void flush();
 } 
\ No newline at end of file
@@ -0,0 +1,15 @@
+package ru.bmstu.service;
+
+import ru.bmstu.model.Student;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+
+// Хранилище списка студентов: загрузка при старте и полная запись снимка
+public interface StudentRepository {
+    List<Student> loadAll() throws IOException;
+    // Записывает всех студентов целиком; файл заменяется атомарно
+    void saveAll(Collection<Student> students) throws IOException;
+    String getLocation();
+}
@@ -1,14 +1,45 @@
 package ru.bmstu.service;
 
+import ru.bmstu.aspect.RequiresRole;
+import ru.bmstu.model.Page;
 import ru.bmstu.model.Student;
+import ru.bmstu.model.StudentKey;
+import ru.bmstu.model.TokenStatistics;
 import ru.bmstu.model.User;
+import ru.bmstu.model.User.UserRole;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
 public interface StudentService {
     List<Student> getAllStudents();
+    @RequiresRole(value = UserRole.TEACHER, action = "add students")
     void addStudent(User user, Student student);
+    @RequiresRole(value = UserRole.TEACHER, action = "remove students")
     void removeStudent(String firstName, String lastName, User user);
     void expelStudent(User user, String firstName, String lastName);
-    void updateTokens(String firstName, String lastName, int amount, User user);
+    // Возвращает копию студента сразу после этого изменения, а не результат повторного чтения
+    @RequiresRole(value = UserRole.TEACHER, action = "update tokens")
+    Student updateTokens(String firstName, String lastName, int amount, User user);
     Student findStudent(String firstName, String lastName);
+
+    // Чтение по согласованному снимку без копирования списка: по фамилии, затем по имени.
+    // Снимок не меняется во время обхода и не содержит половины пакетного изменения
+    Stream<Student> streamStudents();
+    // Не более limit студентов с ключом после after (null — с начала)
+    Page<Student, StudentKey> getStudentsPage(StudentKey after, int limit);
+
+    // Рейтинг по жетонам: место — 1 + число студентов, у которых жетонов больше
+    List<Student> getTopStudents(int n);
+    int getRank(String firstName, String lastName);
+    List<Student> findStudentsByTokens(int minTokens, int maxTokens);
+    TokenStatistics getTokenStatistics();
+
+    // Пакетные операции: одна проверка роли, всё или ничего, одно сохранение
+    @RequiresRole(value = UserRole.TEACHER, action = "add students")
+    void addStudents(User user, List<Student> students);
+    @RequiresRole(value = UserRole.TEACHER, action = "remove students")
+    void removeStudents(List<StudentKey> keys, User user);
+    @RequiresRole(value = UserRole.TEACHER, action = "update tokens")
+    void updateTokensBatch(Map<StudentKey, Integer> amounts, User user);
 } 
\ No newline at end of file
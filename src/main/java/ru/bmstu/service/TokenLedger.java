@@ -0,0 +1,18 @@
+package ru.bmstu.service;
+
+import ru.bmstu.model.TokenEvent;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+// Журнал изменений жетонов по студентам: текущий остаток, остаток на момент времени и изменения за период
+public interface TokenLedger {
+    // Текущий остаток за O(1); null, если студента нет
+    Integer getBalance(String firstName, String lastName);
+    // Остаток после всех событий с меткой времени не позже at; null, если студента тогда не было
+    Integer getBalanceAt(String firstName, String lastName, LocalDateTime at);
+    // События студента с меткой времени в [from, to), null — без границы
+    List<TokenEvent> getEvents(String firstName, String lastName, LocalDateTime from, LocalDateTime to);
+    // Сумма изменений за [from, to)
+    int getNetChange(String firstName, String lastName, LocalDateTime from, LocalDateTime to);
+}
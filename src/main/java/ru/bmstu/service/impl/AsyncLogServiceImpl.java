@@ -0,0 +1,292 @@
+package ru.bmstu.service.impl;
+
+import ru.bmstu.model.LogEntry;
+import ru.bmstu.model.Page;
+import ru.bmstu.model.User;
+import ru.bmstu.service.LogService;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * Асинхронный журнал действий: logAction только кладёт запись в ограниченную очередь,
+ * отдельный поток забирает записи пачками и пишет каждую пачку с одним flush.
+ * flush() бросает исключение, если с прошлого flush() часть записей записать не удалось.
+ */
+public class AsyncLogServiceImpl implements LogService, Closeable {
+    private final LogServiceImpl delegate;
+    private final BlockingQueue<LogEntry> queue;
+    private final BackpressurePolicy backpressurePolicy;
+    private final int batchSize;
+    private final Thread writerThread;
+    private final AtomicLong dropped = new AtomicLong();
+    // Сколько записей принято в очередь, сколько из них обработано писателем и сколько не удалось записать
+    private final AtomicLong enqueued = new AtomicLong();
+    private long processed;
+    private long failed;
+    private long failedReported;
+    private final Object writtenLock = new Object();
+    // Забрать записи из очереди и записать их можно только под этой блокировкой:
+    // так синхронная запись при полной очереди не обгоняет пачку, уже взятую писателем
+    private final ReentrantLock writeOrderLock = new ReentrantLock();
+    // Постановка в очередь идёт под блокировкой чтения, закрытие — под блокировкой записи:
+    // после close() в очередь уже ничего не попадёт
+    private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+    private volatile boolean closed;
+
+    public AsyncLogServiceImpl(LogServiceImpl delegate, int queueCapacity, int batchSize,
+                               BackpressurePolicy backpressurePolicy) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Delegate LogService cannot be null");
+        }
+        if (queueCapacity <= 0 || batchSize <= 0) {
+            throw new IllegalArgumentException("Queue capacity and batch size must be positive");
+        }
+        this.delegate = delegate;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.backpressurePolicy = backpressurePolicy != null ? backpressurePolicy : BackpressurePolicy.BLOCK;
+        this.writerThread = new Thread(this::drainLoop, "audit-log-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    @Override
+    public void logAction(String action, User user, String details) {
+        closeLock.readLock().lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Log service is closed");
+            }
+            enqueue(LogServiceImpl.createEntry(action, user, details));
+        } finally {
+            closeLock.readLock().unlock();
+        }
+    }
+
+    private void enqueue(LogEntry entry) {
+        // счётчик увеличиваем до вставки, чтобы flush() не пропустил уже взятую писателем запись
+        enqueued.incrementAndGet();
+        switch (backpressurePolicy) {
+            case BLOCK -> {
+                try {
+                    queue.put(entry);
+                } catch (InterruptedException e) {
+                    enqueued.decrementAndGet();
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for log queue", e);
+                }
+            }
+            case DROP -> {
+                if (!queue.offer(entry)) {
+                    enqueued.decrementAndGet();
+                    if (dropped.incrementAndGet() == 1) {
+                        System.err.println("Audit log queue is full, dropping entries");
+                    }
+                }
+            }
+            case SYNC -> {
+                if (!queue.offer(entry)) {
+                    writeSync(entry);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void logActions(String action, User user, List<String> details) {
+        for (String detail : details) {
+            logAction(action, user, detail);
+        }
+    }
+
+    // Очередь полна: записываем всё, что в ней накопилось, и затем эту запись одной пачкой
+    // в потоке вызывающего. Ошибку записи получает вызывающий, записи очереди учитываются как потерянные
+    private void writeSync(LogEntry entry) {
+        writeOrderLock.lock();
+        try {
+            List<LogEntry> batch = new ArrayList<>();
+            queue.drainTo(batch);
+            batch.add(entry);
+            boolean ok = false;
+            try {
+                delegate.appendEntries(batch);
+                ok = true;
+            } finally {
+                markProcessed(batch.size(), ok);
+            }
+        } finally {
+            writeOrderLock.unlock();
+        }
+    }
+
+    private void drainLoop() {
+        List<LogEntry> batch = new ArrayList<>(batchSize);
+        while (!closed || !queue.isEmpty()) {
+            // ждём под блокировкой только на пустой очереди, а синхронной записи она нужна на полной
+            writeOrderLock.lock();
+            try {
+                LogEntry first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                writeBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } finally {
+                writeOrderLock.unlock();
+                batch.clear();
+            }
+        }
+    }
+
+    // Записи, которые писатель уже не заберёт, пишутся в потоке вызывающего
+    private void writeRemaining() {
+        writeOrderLock.lock();
+        try {
+            List<LogEntry> rest = new ArrayList<>();
+            queue.drainTo(rest);
+            if (!rest.isEmpty()) {
+                writeBatch(rest);
+            }
+        } finally {
+            writeOrderLock.unlock();
+        }
+    }
+
+    // Пачка считается записанной только после успешной записи
+    private void writeBatch(List<LogEntry> batch) {
+        boolean ok = false;
+        try {
+            delegate.appendEntries(batch);
+            ok = true;
+        } catch (RuntimeException e) {
+            System.err.println("Error writing audit log batch: " + e.getMessage());
+        } finally {
+            markProcessed(batch.size(), ok);
+        }
+    }
+
+    private void markProcessed(int count, boolean ok) {
+        synchronized (writtenLock) {
+            processed += count;
+            if (!ok) {
+                failed += count;
+            }
+            writtenLock.notifyAll();
+        }
+    }
+
+    @Override
+    public void flush() {
+        long target = enqueued.get();
+        synchronized (writtenLock) {
+            while (processed < target && writerThread.isAlive()) {
+                try {
+                    writtenLock.wait(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+        if (!writerThread.isAlive()) {
+            writeRemaining();
+        }
+        synchronized (writtenLock) {
+            if (processed < target) {
+                throw new IllegalStateException("Audit log writer stopped, "
+                        + (target - processed) + " entries not written");
+            }
+            if (failed > failedReported) {
+                long lost = failed - failedReported;
+                failedReported = failed;
+                throw new IllegalStateException("Failed to write " + lost + " audit log entries");
+            }
+        }
+        delegate.flush();
+    }
+
+    @Override
+    public List<LogEntry> getAllLogs() {
+        flush();
+        return delegate.getAllLogs();
+    }
+
+    @Override
+    public Stream<LogEntry> streamLogs(LocalDateTime from, LocalDateTime to) {
+        flush();
+        return delegate.streamLogs(from, to);
+    }
+
+    @Override
+    public Page<LogEntry, Long> getLogsPage(Long after, int limit) {
+        flush();
+        return delegate.getLogsPage(after, limit);
+    }
+
+    @Override
+    public List<LogEntry> findLogs(String action, String userFirstName, String userLastName, User.UserRole role,
+                                   LocalDateTime from, LocalDateTime to) {
+        flush();
+        return delegate.findLogs(action, userFirstName, userLastName, role, from, to);
+    }
+
+    @Override
+    public List<LogEntry> findLogsByAction(String action) {
+        return findLogs(action, null, null, null, null, null);
+    }
+
+    @Override
+    public List<LogEntry> findLogsByUser(String userFirstName, String userLastName) {
+        return findLogs(null, userFirstName, userLastName, null, null, null);
+    }
+
+    @Override
+    public List<LogEntry> findLogsByRole(User.UserRole role) {
+        return findLogs(null, null, null, role, null, null);
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeLock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        } finally {
+            closeLock.writeLock().unlock();
+        }
+        // не прерываем писателя: прерывание закрыло бы файловый канал посреди записи
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // записи, оставшиеся в очереди, если писатель остановился раньше
+        writeRemaining();
+        if (dropped.get() > 0) {
+            System.err.println("Audit log entries dropped due to backpressure: " + dropped.get());
+        }
+        delegate.close();
+    }
+}
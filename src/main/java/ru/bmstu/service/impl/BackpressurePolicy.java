@@ -0,0 +1,11 @@
+package ru.bmstu.service.impl;
+
+// Поведение асинхронного логгера при заполненной очереди
+public enum BackpressurePolicy {
+    // Ждать освобождения места в очереди
+    BLOCK,
+    // Отбросить запись и увеличить счётчик потерянных
+    DROP,
+    // Записать синхронно в потоке вызывающего
+    SYNC
+}
@@ -0,0 +1,157 @@
+package ru.bmstu.service.impl;
+
+import ru.bmstu.model.Student;
+import ru.bmstu.service.StudentRepository;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Студенты в компактном двоичном файле:
+ * <pre>
+ * int magic, int version, int studentCount
+ * studentCount × (unsigned short длина, UTF-8 имени, unsigned short длина, UTF-8 фамилии, int tokens)
+ * int CRC32C всего предшествующего содержимого
+ * </pre>
+ * Файл читается и пишется одним вызовом, сумма считается одним проходом,
+ * а разбор не ищет разделители и не разбирает числа из текста.
+ */
+public class BinaryStudentRepository implements StudentRepository {
+    private static final int MAGIC = 0x53545544; // "STUD"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 12;
+    private static final int CHECKSUM_BYTES = 4;
+    private static final int MAX_NAME_BYTES = 0xFFFF;
+
+    private final String filePath;
+    private final Durability durability;
+
+    public BinaryStudentRepository(String filePath) {
+        this(filePath, Durability.NONE);
+    }
+
+    public BinaryStudentRepository(String filePath, Durability durability) {
+        if (filePath == null || filePath.trim().isEmpty()) {
+            throw new IllegalArgumentException("Binary file path cannot be null or empty");
+        }
+        this.filePath = filePath;
+        this.durability = durability;
+    }
+
+    private Path getFilePath() {
+        return Paths.get(filePath).toAbsolutePath();
+    }
+
+    @Override
+    public List<Student> loadAll() throws IOException {
+        Path path = getFilePath();
+        System.out.println("Loading students from file: " + path);
+        if (!Files.exists(path)) {
+            saveAll(List.of());
+            return new ArrayList<>();
+        }
+        byte[] bytes = Files.readAllBytes(path);
+        if (bytes.length < HEADER_BYTES + CHECKSUM_BYTES) {
+            throw new IOException("Student file is truncated: " + path);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        CRC32C crc = new CRC32C();
+        crc.update(bytes, 0, bytes.length - CHECKSUM_BYTES);
+        if ((int) crc.getValue() != buffer.getInt(bytes.length - CHECKSUM_BYTES)) {
+            throw new IOException("Student file checksum mismatch: " + path);
+        }
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException("Not a binary student file: " + path);
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported binary student file version " + version + ": " + path);
+        }
+        int studentCount = buffer.getInt();
+
+        buffer.limit(bytes.length - CHECKSUM_BYTES);
+        List<Student> students = new ArrayList<>(studentCount);
+        try {
+            for (int i = 0; i < studentCount; i++) {
+                String firstName = readName(buffer, bytes);
+                String lastName = readName(buffer, bytes);
+                students.add(new Student(firstName, lastName, buffer.getInt()));
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("Student file is malformed: " + path, e);
+        }
+        if (buffer.hasRemaining()) {
+            throw new IOException("Student file has unexpected length: " + path);
+        }
+        return students;
+    }
+
+    private static String readName(ByteBuffer buffer, byte[] bytes) {
+        int length = Short.toUnsignedInt(buffer.getShort());
+        if (length > buffer.remaining()) {
+            throw new IndexOutOfBoundsException("Name length " + length + " exceeds file");
+        }
+        String name = new String(bytes, buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return name;
+    }
+
+    @Override
+    public void saveAll(Collection<Student> students) throws IOException {
+        Path path = getFilePath();
+        Path tempPath = Paths.get(filePath + ".tmp").toAbsolutePath();
+        System.out.println("Saving students to file: " + path);
+
+        // коллекция может меняться другими потоками: счётчик, имена и жетоны берутся из одной копии
+        List<Student> rows = new ArrayList<>(students);
+        byte[][] names = new byte[rows.size() * 2][];
+        long size = HEADER_BYTES + CHECKSUM_BYTES;
+        for (int i = 0; i < rows.size(); i++) {
+            Student student = rows.get(i);
+            names[2 * i] = encodeName(student.getFirstName());
+            names[2 * i + 1] = encodeName(student.getLastName());
+            size += 2 + names[2 * i].length + 2 + names[2 * i + 1].length + 4;
+        }
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IOException("Too many students for binary storage: " + rows.size());
+        }
+
+        // файл собирается целиком в памяти и пишется одним вызовом
+        byte[] bytes = new byte[(int) size];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            buffer.putShort((short) names[2 * i].length).put(names[2 * i]);
+            buffer.putShort((short) names[2 * i + 1].length).put(names[2 * i + 1]);
+            buffer.putInt(rows.get(i).getTokens());
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(bytes, 0, bytes.length - CHECKSUM_BYTES);
+        buffer.putInt((int) crc.getValue());
+
+        Files.createDirectories(path.getParent());
+        Files.write(tempPath, bytes);
+        GroupCommit.replace(tempPath, path, durability);
+    }
+
+    private static byte[] encodeName(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_NAME_BYTES) {
+            throw new IllegalArgumentException("Name is too long for binary storage: " + name.length() + " chars");
+        }
+        return bytes;
+    }
+
+    @Override
+    public String getLocation() {
+        return filePath;
+    }
+}
@@ -0,0 +1,167 @@
+package ru.bmstu.service.impl;
+
+import ru.bmstu.model.LogEntry;
+import ru.bmstu.model.User;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Хвост журнала действий без объекта LogEntry на запись: кольцевой буфер из массивов
+ * (секунды эпохи, код действия, код пользователя с ролью, положение подробностей) и общий массив байтов
+ * с подробностями в UTF-8. Действия и пользователи кодируются словарями: их немного, а в журнале
+ * они повторяются на каждой строке. Время хранится с точностью до секунды, как в файле журнала.
+ * LogEntry собирается только при чтении.
+ * Класс не потокобезопасен: синхронизацию обеспечивает LogServiceImpl.
+ */
+final class CompactLogTail {
+
+    private record UserName(String firstName, String lastName, User.UserRole role) {
+    }
+
+    private final int capacity;
+    // Словари только растут: различных действий и пользователей единицы и десятки
+    private final Map<String, Integer> actionIds = new HashMap<>();
+    private final List<String> actionNames = new ArrayList<>();
+    private final Map<UserName, Integer> userIds = new HashMap<>();
+    private final List<UserName> userNames = new ArrayList<>();
+
+    // Кольцо: самая старая запись в head, массивы растут до capacity, пока кольцо не заполнено
+    private long[] epochs = new long[0];
+    private int[] actions = new int[0];
+    private int[] users = new int[0];
+    private long[] detailStarts = new long[0];
+    private int[] detailLengths = new int[0];
+    private int head;
+    private int size;
+
+    // Подробности живых записей лежат подряд в [detailStarts[head], arenaEnd); позиции сквозные,
+    // arenaBase — позиция первого байта массива, поэтому сдвиг массива не трогает позиции записей
+    private byte[] arena = new byte[0];
+    private long arenaBase;
+    private long arenaEnd;
+
+    CompactLogTail(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Log tail size cannot be negative");
+        }
+        this.capacity = capacity;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    // Добавляет запись, вытесняя самую старую при заполненном кольце
+    void add(LogEntry entry) {
+        if (capacity == 0) {
+            return;
+        }
+        if (size == capacity) {
+            head = (head + 1) % capacity;
+            size--;
+        } else if (size == epochs.length) {
+            grow();
+        }
+        byte[] details = entry.getDetails() != null
+            ? entry.getDetails().getBytes(StandardCharsets.UTF_8) : new byte[0];
+        int slot = (head + size) % capacity;
+        epochs[slot] = LogSegments.epoch(entry.getTimestamp());
+        actions[slot] = actionIds.computeIfAbsent(entry.getAction(), action -> {
+            actionNames.add(action);
+            return actionNames.size() - 1;
+        });
+        users[slot] = userIds.computeIfAbsent(
+            new UserName(entry.getUserFirstName(), entry.getUserLastName(), entry.getUserRole()), user -> {
+                userNames.add(user);
+                return userNames.size() - 1;
+            });
+        reserve(details.length);
+        System.arraycopy(details, 0, arena, (int) (arenaEnd - arenaBase), details.length);
+        detailStarts[slot] = arenaEnd;
+        detailLengths[slot] = details.length;
+        arenaEnd += details.length;
+        size++;
+    }
+
+    // i-я запись от самой старой
+    LogEntry get(int i) {
+        int slot = (head + i) % capacity;
+        UserName user = userNames.get(users[slot]);
+        return new LogEntry(
+            LocalDateTime.ofEpochSecond(epochs[slot], 0, ZoneOffset.UTC),
+            actionNames.get(actions[slot]),
+            user.firstName(),
+            user.lastName(),
+            user.role(),
+            new String(arena, (int) (detailStarts[slot] - arenaBase), detailLengths[slot], StandardCharsets.UTF_8));
+    }
+
+    // Не более limit записей начиная с from-й
+    List<LogEntry> range(int from, int limit) {
+        int to = (int) Math.min(size, (long) from + limit);
+        List<LogEntry> result = new ArrayList<>(Math.max(0, to - from));
+        for (int i = from; i < to; i++) {
+            result.add(get(i));
+        }
+        return result;
+    }
+
+    List<LogEntry> toList() {
+        return range(0, size);
+    }
+
+    // Записи со временем в [from, to]; null — без ограничения. Сравнение по секундам, без сборки LogEntry
+    List<LogEntry> between(LocalDateTime from, LocalDateTime to) {
+        // время записей целое в секундах: запись не раньше from, если её секунда не меньше округлённого вверх from
+        long fromEpoch = from == null ? Long.MIN_VALUE : LogSegments.epoch(from) + (from.getNano() > 0 ? 1 : 0);
+        long toEpoch = to == null ? Long.MAX_VALUE : LogSegments.epoch(to);
+        List<LogEntry> result = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            long epoch = epochs[(head + i) % capacity];
+            if (epoch >= fromEpoch && epoch <= toEpoch) {
+                result.add(get(i));
+            }
+        }
+        return result;
+    }
+
+    private void grow() {
+        int grown = (int) Math.min(capacity, Math.max(16L, epochs.length * 2L));
+        epochs = Arrays.copyOf(epochs, grown);
+        actions = Arrays.copyOf(actions, grown);
+        users = Arrays.copyOf(users, grown);
+        detailStarts = Arrays.copyOf(detailStarts, grown);
+        detailLengths = Arrays.copyOf(detailLengths, grown);
+    }
+
+    // Место под length байтов в конце массива: живые байты сдвигаются в начало или массив растёт
+    private void reserve(int length) {
+        if (arenaEnd - arenaBase + length <= arena.length) {
+            return;
+        }
+        long liveStart = size > 0 ? detailStarts[head] : arenaEnd;
+        int live = (int) (arenaEnd - liveStart);
+        byte[] target = arena;
+        if ((long) live + length > arena.length / 2) {
+            long grown = Math.max(arena.length * 2L, Math.max(1024L, (long) live + length));
+            if (grown > Integer.MAX_VALUE - 8) {
+                throw new IllegalStateException("Log tail details exceed the maximum array size");
+            }
+            target = new byte[(int) grown];
+        }
+        System.arraycopy(arena, (int) (liveStart - arenaBase), target, 0, live);
+        arena = target;
+        arenaBase = liveStart;
+    }
+}
@@ -0,0 +1,521 @@
+package ru.bmstu.service.impl;
+
+import ru.bmstu.metrics.OperationMetrics;
+import ru.bmstu.model.Page;
+import ru.bmstu.model.Student;
+import ru.bmstu.model.StudentKey;
+import ru.bmstu.model.TokenStatistics;
+import ru.bmstu.model.User;
+import ru.bmstu.service.LogService;
+import ru.bmstu.service.StudentRepository;
+import ru.bmstu.service.StudentService;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * StudentService для очень больших списков поверх {@link CompactStudentStore}: вместо объекта Student,
+ * двух строк и записи хеш-таблицы на студента — три int в массивах и общий словарь имён.
+ * Объекты Student создаются только на выдаче и при записи в файл.
+ * Порядки по фамилии и имени (потоковое и постраничное чтение) и по жетонам (рейтинг) — деревья
+ * {@link SlotTreap} по номерам ячеек, ещё 32 байта на студента; сумма и гистограмма жетонов обновляются
+ * на каждом изменении, как в TokenLeaderboard. Изменение студента — O(log n), чтения упорядоченных
+ * представлений и статистики ничего не перестраивают.
+ * Хранилище — одна общая структура (индекс, словарь, деревья), поэтому изменения идут под одной блокировкой
+ * записи, а не по полосам; каждое изменение и каждая пачка перезаписывают файл целиком, как в режиме SNAPSHOT.
+ * Разбиение на части, журнал изменений и репликация здесь не поддерживаются.
+ */
+public class CompactStudentServiceImpl implements StudentService {
+    private final StudentRepository repository;
+    private final LogService logService;
+    private final CompactStudentStore store = new CompactStudentStore();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Порядки ячеек и статистика жетонов, меняются под блокировкой записи вместе с хранилищем
+    private final SlotTreap byName = new SlotTreap(this::compareByName);
+    private final SlotTreap byTokens = new SlotTreap(this::compareByTokens);
+    private long sum;
+    private final Map<Integer, Long> histogram = new HashMap<>();
+    // Журнал изменений жетонов; null — не ведётся
+    private volatile TokenLedgerImpl tokenLedger;
+    // Время записи в файл; null — не измеряется
+    private volatile OperationMetrics persistMetrics;
+
+    public CompactStudentServiceImpl(String csvFilePath, LogService logService) {
+        this(new CsvStudentRepository(csvFilePath), logService);
+    }
+
+    public CompactStudentServiceImpl(StudentRepository repository, LogService logService) {
+        if (repository == null) {
+            throw new IllegalArgumentException("StudentRepository cannot be null");
+        }
+        if (logService == null) {
+            throw new IllegalArgumentException("LogService cannot be null");
+        }
+        this.repository = repository;
+        this.logService = logService;
+        System.out.println("Initializing CompactStudentServiceImpl with storage: " + repository.getLocation());
+        try {
+            // номер в списке совпадает с ячейкой: при загрузке ячейки только добавляются
+            List<Student> bySlot = new ArrayList<>();
+            for (Student student : repository.loadAll()) {
+                if (store.find(student.getFirstName(), student.getLastName()) < 0) {
+                    store.add(student.getFirstName(), student.getLastName(), student.getTokens());
+                    countTokens(student.getTokens(), 1);
+                    bySlot.add(student);
+                }
+            }
+            // деревья строятся по отсортированным ячейкам за O(n), имена сравниваются без декодирования
+            Comparator<Student> nameOrder = Comparator.comparing(Student::getLastName)
+                .thenComparing(Student::getFirstName);
+            byName.build(sortedSlots(bySlot, nameOrder));
+            byTokens.build(sortedSlots(bySlot, Comparator.comparingInt(Student::getTokens).reversed()
+                .thenComparing(nameOrder)));
+        } catch (Exception e) {
+            System.err.println("Error initializing CompactStudentServiceImpl: " + e.getMessage());
+            e.printStackTrace();
+            throw new RuntimeException("Failed to initialize CompactStudentServiceImpl", e);
+        }
+    }
+
+    private static int[] sortedSlots(List<Student> bySlot, Comparator<Student> order) {
+        return IntStream.range(0, bySlot.size()).boxed()
+            .sorted(Comparator.comparing(bySlot::get, order))
+            .mapToInt(Integer::intValue)
+            .toArray();
+    }
+
+    public void setPersistMetrics(OperationMetrics persistMetrics) {
+        this.persistMetrics = persistMetrics;
+    }
+
+    // Подключает журнал жетонов, предварительно сверив его с текущими студентами
+    public void setTokenLedger(TokenLedgerImpl tokenLedger) {
+        lock.writeLock().lock();
+        try {
+            tokenLedger.reconcile(getAllStudents());
+            this.tokenLedger = tokenLedger;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Память массивов хранилища и деревьев порядков
+    public long getFootprintBytes() {
+        lock.readLock().lock();
+        try {
+            return store.footprintBytes() + byName.footprintBytes() + byTokens.footprintBytes();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void recordTokens(Consumer<TokenLedgerImpl> record) {
+        TokenLedgerImpl ledger = tokenLedger;
+        if (ledger != null) {
+            record.accept(ledger);
+            ledger.commit();
+        }
+    }
+
+    // Перезапись файла; список создаёт объекты Student по одному при обходе
+    private void persist() {
+        OperationMetrics metrics = persistMetrics;
+        long start = metrics != null ? System.nanoTime() : 0;
+        boolean failed = true;
+        try {
+            repository.saveAll(new AbstractList<>() {
+                @Override
+                public Student get(int slot) {
+                    return store.toStudent(slot);
+                }
+
+                @Override
+                public int size() {
+                    return store.size();
+                }
+            });
+            failed = false;
+        } catch (IOException e) {
+            System.err.println("Error saving students file: " + e.getMessage());
+            e.printStackTrace();
+            throw new RuntimeException("Failed to save students", e);
+        } finally {
+            if (metrics != null) {
+                metrics.record(System.nanoTime() - start, failed);
+            }
+        }
+    }
+
+    private int existingSlot(String firstName, String lastName) {
+        int slot = store.find(firstName, lastName);
+        if (slot < 0) {
+            throw new IllegalArgumentException("Student not found: " + firstName + " " + lastName);
+        }
+        return slot;
+    }
+
+    private void ensureStudentNotExists(String firstName, String lastName) {
+        if (store.find(firstName, lastName) >= 0) {
+            throw new IllegalArgumentException("Student already exists: " + firstName + " " + lastName);
+        }
+    }
+
+    // Порядок рейтинга как у TokenLeaderboard: больше жетонов — выше, при равенстве по фамилии, затем по имени
+    private int compareByTokens(int a, int b) {
+        int cmp = Integer.compare(store.tokens(b), store.tokens(a));
+        return cmp != 0 ? cmp : compareByName(a, b);
+    }
+
+    private int compareByName(int a, int b) {
+        if (a == b) {
+            return 0;
+        }
+        int cmp = compareNames(store.lastNameId(a), store.lastNameId(b));
+        return cmp != 0 ? cmp : compareNames(store.firstNameId(a), store.firstNameId(b));
+    }
+
+    // Одинаковые имена — один номер в словаре; разные декодируются только для сравнения
+    private int compareNames(int a, int b) {
+        return a == b ? 0 : store.names().get(a).compareTo(store.names().get(b));
+    }
+
+    private int compareToKey(int slot, StudentKey key) {
+        int cmp = store.lastName(slot).compareTo(key.lastName());
+        return cmp != 0 ? cmp : store.firstName(slot).compareTo(key.firstName());
+    }
+
+    private void countTokens(int tokens, int delta) {
+        sum += (long) tokens * delta;
+        histogram.merge(TokenLeaderboard.bucketOf(tokens), (long) delta, (a, b) -> a + b == 0 ? null : a + b);
+    }
+
+    private void addSlot(Student student) {
+        int slot = store.add(student.getFirstName(), student.getLastName(), student.getTokens());
+        countTokens(student.getTokens(), 1);
+        byName.insert(slot);
+        byTokens.insert(slot);
+    }
+
+    // Хранилище переносит последнюю ячейку на место удалённой: деревья переносят её узел туда же
+    private void removeSlot(int slot) {
+        countTokens(store.tokens(slot), -1);
+        byName.remove(slot);
+        byTokens.remove(slot);
+        int lastSlot = store.size() - 1;
+        if (slot != lastSlot) {
+            byName.move(lastSlot, slot);
+            byTokens.move(lastSlot, slot);
+        }
+        store.remove(slot);
+    }
+
+    private void addTokens(int slot, int amount) {
+        int oldTokens = store.tokens(slot);
+        byTokens.remove(slot);
+        countTokens(oldTokens, -1);
+        store.setTokens(slot, oldTokens + amount);
+        countTokens(oldTokens + amount, 1);
+        byTokens.insert(slot);
+    }
+
+    @Override
+    public void addStudent(User user, Student student) {
+        lock.writeLock().lock();
+        try {
+            ensureStudentNotExists(student.getFirstName(), student.getLastName());
+            addSlot(student);
+            recordTokens(l -> l.recordAdded(student));
+            persist();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        logService.logAction("ADD_STUDENT", user,
+            "Added student: " + student.getFirstName() + " " + student.getLastName()
+                + " with " + student.getTokens() + " tokens");
+    }
+
+    private void deleteStudent(String firstName, String lastName) {
+        lock.writeLock().lock();
+        try {
+            removeSlot(existingSlot(firstName, lastName));
+            recordTokens(l -> l.recordRemoved(new StudentKey(firstName, lastName)));
+            persist();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void expelStudent(User user, String firstName, String lastName) {
+        deleteStudent(firstName, lastName);
+        logService.logAction("EXPEL_STUDENT", user, "Expelled student: " + firstName + " " + lastName);
+    }
+
+    @Override
+    public void removeStudent(String firstName, String lastName, User user) {
+        deleteStudent(firstName, lastName);
+        logService.logAction("REMOVE_STUDENT", user, "Removed student: " + firstName + " " + lastName);
+    }
+
+    @Override
+    public Student updateTokens(String firstName, String lastName, int amount, User user) {
+        int oldTokens;
+        Student updated;
+        lock.writeLock().lock();
+        try {
+            int slot = existingSlot(firstName, lastName);
+            oldTokens = store.tokens(slot);
+            addTokens(slot, amount);
+            updated = store.toStudent(slot);
+            recordTokens(l -> l.recordTokens(new StudentKey(firstName, lastName), amount));
+            persist();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        logService.logAction("UPDATE_TOKENS", user,
+            "Updated tokens for " + firstName + " " + lastName + ": " + oldTokens + " -> " + updated.getTokens());
+        return updated;
+    }
+
+    @Override
+    public List<Student> getAllStudents() {
+        lock.readLock().lock();
+        try {
+            List<Student> all = new ArrayList<>(store.size());
+            for (int slot = 0; slot < store.size(); slot++) {
+                all.add(store.toStudent(slot));
+            }
+            return all;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Student findStudent(String firstName, String lastName) {
+        lock.readLock().lock();
+        try {
+            int slot = store.find(firstName, lastName);
+            return slot < 0 ? null : store.toStudent(slot);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Согласованный снимок копируется в массивы номеров имён и жетонов (12 байт на студента),
+     * объекты Student создаются по мере обхода потока. Словарь имён только дописывается,
+     * поэтому снимок читает его без блокировки.
+     */
+    @Override
+    public Stream<Student> streamStudents() {
+        int[] firstIds;
+        int[] lastIds;
+        int[] tokens;
+        CompactStudentStore.View names;
+        lock.readLock().lock();
+        try {
+            int size = store.size();
+            firstIds = new int[size];
+            lastIds = new int[size];
+            tokens = new int[size];
+            int[] position = {0};
+            byName.forEach(0, size, slot -> {
+                firstIds[position[0]] = store.firstNameId(slot);
+                lastIds[position[0]] = store.lastNameId(slot);
+                tokens[position[0]++] = store.tokens(slot);
+            });
+            names = store.names().view();
+        } finally {
+            lock.readLock().unlock();
+        }
+        return IntStream.range(0, tokens.length)
+            .mapToObj(i -> new Student(names.get(firstIds[i]), names.get(lastIds[i]), tokens[i]));
+    }
+
+    @Override
+    public Page<Student, StudentKey> getStudentsPage(StudentKey after, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Page limit must be positive");
+        }
+        lock.readLock().lock();
+        try {
+            // первая позиция с ключом строго после after; имена декодируются только на пути спуска
+            int position = after == null ? 0 : byName.countWhile(slot -> compareToKey(slot, after) <= 0);
+            List<Student> items = new ArrayList<>(Math.min(limit, store.size() - position));
+            byName.forEach(position, (int) Math.min((long) position + limit, Integer.MAX_VALUE), slot -> items.add(store.toStudent(slot)));
+            StudentKey cursor = items.isEmpty() ? after : StudentKey.of(items.get(items.size() - 1));
+            return new Page<>(items, cursor, position + items.size() < store.size());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Student> getTopStudents(int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("Number of students cannot be negative");
+        }
+        lock.readLock().lock();
+        try {
+            return byTokens(0, n);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int getRank(String firstName, String lastName) {
+        lock.readLock().lock();
+        try {
+            int tokens = store.tokens(existingSlot(firstName, lastName));
+            return byTokens.countWhile(slot -> store.tokens(slot) > tokens) + 1;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Student> findStudentsByTokens(int minTokens, int maxTokens) {
+        if (minTokens > maxTokens) {
+            throw new IllegalArgumentException("Min tokens cannot be greater than max tokens");
+        }
+        lock.readLock().lock();
+        try {
+            return byTokens(byTokens.countWhile(slot -> store.tokens(slot) > maxTokens),
+                byTokens.countWhile(slot -> store.tokens(slot) >= minTokens));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private List<Student> byTokens(int from, int to) {
+        List<Student> result = new ArrayList<>(Math.max(0, Math.min(to, store.size()) - from));
+        byTokens.forEach(from, to, slot -> result.add(store.toStudent(slot)));
+        return result;
+    }
+
+    // Минимум и максимум — края рейтинга, сумма и гистограмма ведутся на изменениях
+    @Override
+    public TokenStatistics getTokenStatistics() {
+        lock.readLock().lock();
+        try {
+            int count = store.size();
+            if (count == 0) {
+                return new TokenStatistics(0, 0, 0, 0, 0, TokenLeaderboard.HISTOGRAM_BUCKET_WIDTH, new TreeMap<>());
+            }
+            return new TokenStatistics(count, sum, store.tokens(byTokens.last()), store.tokens(byTokens.first()),
+                (double) sum / count, TokenLeaderboard.HISTOGRAM_BUCKET_WIDTH, new TreeMap<>(histogram));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Пакетные операции: сначала проверяется вся пачка, затем изменения применяются целиком
+    // и сохраняются одной перезаписью файла
+
+    @Override
+    public void addStudents(User user, List<Student> newStudents) {
+        if (newStudents.isEmpty()) {
+            return;
+        }
+        List<String> details = new ArrayList<>(newStudents.size());
+        lock.writeLock().lock();
+        try {
+            Set<StudentKey> batchKeys = new HashSet<>();
+            for (Student student : newStudents) {
+                ensureStudentNotExists(student.getFirstName(), student.getLastName());
+                if (!batchKeys.add(StudentKey.of(student))) {
+                    throw new IllegalArgumentException("Duplicate student in batch: "
+                        + student.getFirstName() + " " + student.getLastName());
+                }
+            }
+            for (Student student : newStudents) {
+                addSlot(student);
+                details.add("Added student: " + student.getFirstName() + " " + student.getLastName()
+                    + " with " + student.getTokens() + " tokens");
+            }
+            recordTokens(l -> newStudents.forEach(l::recordAdded));
+            persist();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        logService.logActions("ADD_STUDENT", user, details);
+    }
+
+    @Override
+    public void removeStudents(List<StudentKey> keys, User user) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        List<String> details = new ArrayList<>(keys.size());
+        lock.writeLock().lock();
+        try {
+            Set<StudentKey> batchKeys = new HashSet<>();
+            for (StudentKey key : keys) {
+                existingSlot(key.firstName(), key.lastName());
+                if (!batchKeys.add(key)) {
+                    throw new IllegalArgumentException("Duplicate student in batch: "
+                        + key.firstName() + " " + key.lastName());
+                }
+            }
+            for (StudentKey key : keys) {
+                removeSlot(store.find(key.firstName(), key.lastName()));
+                details.add("Removed student: " + key.firstName() + " " + key.lastName());
+            }
+            recordTokens(l -> keys.forEach(l::recordRemoved));
+            persist();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        logService.logActions("REMOVE_STUDENT", user, details);
+    }
+
+    @Override
+    public void updateTokensBatch(Map<StudentKey, Integer> amounts, User user) {
+        if (amounts.isEmpty()) {
+            return;
+        }
+        List<String> details = new ArrayList<>(amounts.size());
+        lock.writeLock().lock();
+        try {
+            // вся пачка проверяется до первого изменения: ни хранилище, ни сумма не меняются при ошибке
+            List<StudentKey> keys = new ArrayList<>(amounts.size());
+            int[] slots = new int[amounts.size()];
+            int[] deltas = new int[amounts.size()];
+            for (Map.Entry<StudentKey, Integer> entry : amounts.entrySet()) {
+                StudentKey key = entry.getKey();
+                if (entry.getValue() == null) {
+                    throw new IllegalArgumentException("Token amount is missing for " + key.firstName() + " "
+                        + key.lastName());
+                }
+                slots[keys.size()] = existingSlot(key.firstName(), key.lastName());
+                deltas[keys.size()] = entry.getValue();
+                keys.add(key);
+            }
+            for (int i = 0; i < slots.length; i++) {
+                int oldTokens = store.tokens(slots[i]);
+                addTokens(slots[i], deltas[i]);
+                details.add("Updated tokens for " + keys.get(i).firstName() + " " + keys.get(i).lastName()
+                    + ": " + oldTokens + " -> " + store.tokens(slots[i]));
+            }
+            recordTokens(l -> amounts.forEach(l::recordTokens));
+            persist();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        logService.logActions("UPDATE_TOKENS", user, details);
+    }
+}
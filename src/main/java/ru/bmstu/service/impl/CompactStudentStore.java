@@ -0,0 +1,294 @@
+package ru.bmstu.service.impl;
+
+import ru.bmstu.model.Student;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Студенты без объекта на каждого: три массива int (номер имени, номер фамилии, жетоны) по номеру ячейки
+ * и индекс с открытой адресацией по паре номеров имён. Различные имена и фамилии хранятся один раз
+ * в UTF-8 в общем массиве байтов. При удалении на место удалённого переносится последняя ячейка,
+ * так что массивы остаются плотными. Имена из словаря не удаляются.
+ * Класс не потокобезопасен: синхронизацию обеспечивает владелец.
+ */
+final class CompactStudentStore {
+    // Наибольшая доля заполнения таблиц с открытой адресацией
+    private static final int LOAD_FACTOR_PERCENT = 50;
+
+    /**
+     * Словарь имён: номер имени — смещение в массиве байтов, поиск по хешу байтов.
+     * Массивы только растут копированием, поэтому ссылки на прежние массивы остаются верными
+     * для уже выданных номеров (см. {@link View}).
+     */
+    static final class Names {
+        private byte[] arena = new byte[1 << 12];
+        private int arenaSize;
+        // starts[id] — начало имени, starts[id + 1] — конец
+        private int[] starts = new int[257];
+        private int[] hashes = new int[256];
+        private int count;
+        // номер имени + 1, 0 — пусто
+        private int[] table = new int[512];
+
+        int count() {
+            return count;
+        }
+
+        // Номер имени или -1
+        int find(byte[] name) {
+            int hash = hash(name);
+            int mask = table.length - 1;
+            for (int i = hash & mask; table[i] != 0; i = (i + 1) & mask) {
+                int id = table[i] - 1;
+                if (hashes[id] == hash && equals(id, name)) {
+                    return id;
+                }
+            }
+            return -1;
+        }
+
+        int intern(byte[] name) {
+            int id = find(name);
+            if (id >= 0) {
+                return id;
+            }
+            if ((count + 1) * 100L > (long) table.length * LOAD_FACTOR_PERCENT) {
+                rehash(table.length * 2);
+            }
+            if (arenaSize + name.length > arena.length) {
+                long grown = Math.max((long) arena.length * 2, (long) arenaSize + name.length);
+                if (grown > Integer.MAX_VALUE - 8) {
+                    throw new IllegalStateException("Student name arena is full");
+                }
+                arena = Arrays.copyOf(arena, (int) grown);
+            }
+            if (count == hashes.length) {
+                hashes = Arrays.copyOf(hashes, hashes.length * 2);
+                starts = Arrays.copyOf(starts, hashes.length + 1);
+            }
+            id = count++;
+            System.arraycopy(name, 0, arena, arenaSize, name.length);
+            starts[id] = arenaSize;
+            arenaSize += name.length;
+            starts[id + 1] = arenaSize;
+            hashes[id] = hash(name);
+            insert(id);
+            return id;
+        }
+
+        String get(int id) {
+            return new String(arena, starts[id], starts[id + 1] - starts[id], StandardCharsets.UTF_8);
+        }
+
+        View view() {
+            return new View(arena, starts);
+        }
+
+        long footprintBytes() {
+            return arena.length + 4L * (starts.length + hashes.length + table.length);
+        }
+
+        private boolean equals(int id, byte[] name) {
+            int start = starts[id];
+            return starts[id + 1] - start == name.length
+                && Arrays.equals(arena, start, start + name.length, name, 0, name.length);
+        }
+
+        private void rehash(int capacity) {
+            table = new int[capacity];
+            for (int id = 0; id < count; id++) {
+                insert(id);
+            }
+        }
+
+        private void insert(int id) {
+            int mask = table.length - 1;
+            int i = hashes[id] & mask;
+            while (table[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            table[i] = id + 1;
+        }
+
+        private static int hash(byte[] name) {
+            return mix(Arrays.hashCode(name));
+        }
+    }
+
+    // Неизменяемый взгляд на уже выданные номера имён для чтения без блокировки
+    record View(byte[] arena, int[] starts) {
+        String get(int id) {
+            return new String(arena, starts[id], starts[id + 1] - starts[id], StandardCharsets.UTF_8);
+        }
+    }
+
+    private final Names names = new Names();
+    private int[] firstNames = new int[16];
+    private int[] lastNames = new int[16];
+    private int[] tokens = new int[16];
+    private int size;
+    // номер ячейки + 1, 0 — пусто
+    private int[] index = new int[32];
+
+    int size() {
+        return size;
+    }
+
+    Names names() {
+        return names;
+    }
+
+    static byte[] encode(String name) {
+        return name.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Ячейка студента или -1
+    int find(String firstName, String lastName) {
+        int first = names.find(encode(firstName));
+        if (first < 0) {
+            return -1;
+        }
+        int last = names.find(encode(lastName));
+        return last < 0 ? -1 : find(first, last);
+    }
+
+    int find(int firstId, int lastId) {
+        int mask = index.length - 1;
+        for (int i = home(firstId, lastId, mask); index[i] != 0; i = (i + 1) & mask) {
+            int slot = index[i] - 1;
+            if (firstNames[slot] == firstId && lastNames[slot] == lastId) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    // Добавляет студента, которого ещё нет; возвращает его ячейку
+    int add(String firstName, String lastName, int studentTokens) {
+        int first = names.intern(encode(firstName));
+        int last = names.intern(encode(lastName));
+        if (size == firstNames.length) {
+            int capacity = firstNames.length * 2;
+            firstNames = Arrays.copyOf(firstNames, capacity);
+            lastNames = Arrays.copyOf(lastNames, capacity);
+            tokens = Arrays.copyOf(tokens, capacity);
+        }
+        if ((size + 1) * 100L > (long) index.length * LOAD_FACTOR_PERCENT) {
+            rehash(index.length * 2);
+        }
+        int slot = size++;
+        firstNames[slot] = first;
+        lastNames[slot] = last;
+        tokens[slot] = studentTokens;
+        insert(slot);
+        return slot;
+    }
+
+    // Удаляет ячейку, перенося на её место последнюю
+    void remove(int slot) {
+        deleteFromIndex(slot);
+        int lastSlot = --size;
+        if (slot != lastSlot) {
+            int position = indexPosition(lastSlot);
+            firstNames[slot] = firstNames[lastSlot];
+            lastNames[slot] = lastNames[lastSlot];
+            tokens[slot] = tokens[lastSlot];
+            index[position] = slot + 1;
+        }
+    }
+
+    int tokens(int slot) {
+        return tokens[slot];
+    }
+
+    void setTokens(int slot, int value) {
+        tokens[slot] = value;
+    }
+
+    int firstNameId(int slot) {
+        return firstNames[slot];
+    }
+
+    int lastNameId(int slot) {
+        return lastNames[slot];
+    }
+
+    String firstName(int slot) {
+        return names.get(firstNames[slot]);
+    }
+
+    String lastName(int slot) {
+        return names.get(lastNames[slot]);
+    }
+
+    // Объект Student создаётся только при выдаче наружу
+    Student toStudent(int slot) {
+        return new Student(firstName(slot), lastName(slot), tokens[slot]);
+    }
+
+    // Память массивов хранилища без учёта заголовков объектов
+    long footprintBytes() {
+        return names.footprintBytes() + 4L * (3L * firstNames.length + index.length);
+    }
+
+    private void rehash(int capacity) {
+        index = new int[capacity];
+        for (int slot = 0; slot < size; slot++) {
+            insert(slot);
+        }
+    }
+
+    private void insert(int slot) {
+        int mask = index.length - 1;
+        int i = home(firstNames[slot], lastNames[slot], mask);
+        while (index[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        index[i] = slot + 1;
+    }
+
+    private int indexPosition(int slot) {
+        int mask = index.length - 1;
+        int i = home(firstNames[slot], lastNames[slot], mask);
+        while (index[i] != slot + 1) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    // Удаление из линейного пробирования со сдвигом следующих записей назад, без пометок «удалено»
+    private void deleteFromIndex(int slot) {
+        int mask = index.length - 1;
+        int hole = indexPosition(slot);
+        int i = hole;
+        while (true) {
+            i = (i + 1) & mask;
+            if (index[i] == 0) {
+                break;
+            }
+            int moved = index[i] - 1;
+            int desired = home(firstNames[moved], lastNames[moved], mask);
+            // запись можно перенести в дыру, если её исходная позиция не лежит между дырой и ею
+            if (((i - desired) & mask) >= ((i - hole) & mask)) {
+                index[hole] = index[i];
+                hole = i;
+            }
+        }
+        index[hole] = 0;
+    }
+
+    private static int home(int firstId, int lastId, int mask) {
+        return mix(firstId * 0x9E3779B9 + lastId) & mask;
+    }
+
+    // Финализатор murmur3: перемешивает младшие биты
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
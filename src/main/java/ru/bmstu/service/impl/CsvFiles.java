@@ -0,0 +1,90 @@
+package ru.bmstu.service.impl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+// Общие операции над файлами, в которые данные дописываются построчно
+final class CsvFiles {
+
+    private CsvFiles() {
+    }
+
+    /**
+     * Последняя строка без перевода строки — результат прерванной записи, её отбрасываем,
+     * иначе следующая дозапись склеится с обрывком.
+     * @return true, если файл был обрезан
+     */
+    static boolean truncateTornTail(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            if (size == 0) {
+                return false;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(1);
+            long position = size;
+            while (position > 0) {
+                buffer.clear();
+                channel.read(buffer, position - 1);
+                if (buffer.get(0) == '\n') {
+                    break;
+                }
+                position--;
+            }
+            if (position == size) {
+                return false;
+            }
+            channel.truncate(position);
+            return true;
+        }
+    }
+
+    /**
+     * Разбор строки, записанной {@link CsvRowEncoder}: поле в кавычках может содержать запятые,
+     * удвоенная кавычка означает одну. В кавычках считается только поле, которое с неё начинается,
+     * поэтому в строках прежнего формата кавычка внутри поля остаётся как есть.
+     * При limit > 0 полей не больше limit, последнее забирает остаток строки, как у String.split.
+     */
+    static String[] splitQuoted(String line, int limit) {
+        List<String> fields = new ArrayList<>();
+        int i = 0;
+        int length = line.length();
+        while (true) {
+            boolean last = limit > 0 && fields.size() == limit - 1;
+            if (i < length && line.charAt(i) == '"') {
+                StringBuilder value = new StringBuilder();
+                i++;
+                while (i < length) {
+                    char c = line.charAt(i++);
+                    if (c != '"') {
+                        value.append(c);
+                    } else if (i < length && line.charAt(i) == '"') {
+                        value.append('"');
+                        i++;
+                    } else {
+                        break;
+                    }
+                }
+                fields.add(value.toString());
+                int comma = line.indexOf(',', i);
+                if (last || comma < 0) {
+                    break;
+                }
+                i = comma + 1;
+            } else {
+                int comma = last ? -1 : line.indexOf(',', i);
+                if (comma < 0) {
+                    fields.add(line.substring(i));
+                    break;
+                }
+                fields.add(line.substring(i, comma));
+                i = comma + 1;
+            }
+        }
+        return fields.toArray(new String[0]);
+    }
+}
@@ -0,0 +1,183 @@
+package ru.bmstu.service.impl;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Сборка строки CSV в переиспользуемом буфере символов, без String.format и промежуточных строк.
+ * Поля с запятой или кавычкой берутся в кавычки, кавычки внутри удваиваются (RFC 4180);
+ * обратно их разбирает {@link CsvFiles#splitQuoted}. Файлы читаются построчно, поэтому перевод строки
+ * внутри поля заменяется пробелом.
+ * Дата-время пишется как yyyy-MM-dd HH:mm:ss, текст последней секунды кешируется: записи одной секунды
+ * копируют готовые символы.
+ * Экземпляр не потокобезопасен: у каждого писателя свой, и пишется он под блокировкой писателя.
+ */
+public final class CsvRowEncoder {
+    private static final int TIMESTAMP_LENGTH = 19;
+
+    private char[] chars = new char[256];
+    private int length;
+    private boolean firstField = true;
+    private final char[] timestamp = new char[TIMESTAMP_LENGTH];
+    private long timestampSecond = Long.MIN_VALUE;
+
+    // Начинает новую строку в том же буфере
+    public CsvRowEncoder reset() {
+        length = 0;
+        firstField = true;
+        return this;
+    }
+
+    // null записывается как "null", как раньше в String.format
+    public CsvRowEncoder field(String value) {
+        separator();
+        if (value == null) {
+            appendRaw("null");
+        } else if (needsEscaping(value)) {
+            ensureCapacity(value.length() * 2 + 2);
+            chars[length++] = '"';
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"') {
+                    chars[length++] = '"';
+                } else if (c == '\n' || c == '\r') {
+                    c = ' ';
+                }
+                chars[length++] = c;
+            }
+            chars[length++] = '"';
+        } else {
+            appendRaw(value);
+        }
+        return this;
+    }
+
+    public CsvRowEncoder field(Enum<?> value) {
+        return field(value != null ? value.name() : null);
+    }
+
+    public CsvRowEncoder field(long value) {
+        separator();
+        ensureCapacity(20);
+        if (value == Long.MIN_VALUE) {
+            appendRaw(Long.toString(value));
+            return this;
+        }
+        if (value < 0) {
+            chars[length++] = '-';
+            value = -value;
+        }
+        int start = length;
+        do {
+            chars[length++] = (char) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        for (int i = start, j = length - 1; i < j; i++, j--) {
+            char c = chars[i];
+            chars[i] = chars[j];
+            chars[j] = c;
+        }
+        return this;
+    }
+
+    public CsvRowEncoder field(LocalDateTime value) {
+        if (value == null || value.getYear() < 1 || value.getYear() > 9999) {
+            // за пределами четырёхзначных лет — общий форматтер, без кеша
+            return field(value != null ? value.format(LogServiceImpl.DATE_FORMATTER) : null);
+        }
+        long second = value.toEpochSecond(ZoneOffset.UTC);
+        if (second != timestampSecond) {
+            digits(timestamp, 0, value.getYear(), 4);
+            timestamp[4] = '-';
+            digits(timestamp, 5, value.getMonthValue(), 2);
+            timestamp[7] = '-';
+            digits(timestamp, 8, value.getDayOfMonth(), 2);
+            timestamp[10] = ' ';
+            digits(timestamp, 11, value.getHour(), 2);
+            timestamp[13] = ':';
+            digits(timestamp, 14, value.getMinute(), 2);
+            timestamp[16] = ':';
+            digits(timestamp, 17, value.getSecond(), 2);
+            timestampSecond = second;
+        }
+        separator();
+        ensureCapacity(TIMESTAMP_LENGTH);
+        System.arraycopy(timestamp, 0, chars, length, TIMESTAMP_LENGTH);
+        length += TIMESTAMP_LENGTH;
+        return this;
+    }
+
+    public void writeTo(Writer out) throws IOException {
+        out.write(chars, 0, length);
+    }
+
+    public int length() {
+        return length;
+    }
+
+    // Длина строки в UTF-8 без кодирования
+    public int utf8Length() {
+        int bytes = 0;
+        for (int i = 0; i < length; i++) {
+            char c = chars[i];
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(chars[i + 1])) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        return new String(chars, 0, length);
+    }
+
+    private static boolean needsEscaping(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void separator() {
+        if (firstField) {
+            firstField = false;
+        } else {
+            ensureCapacity(1);
+            chars[length++] = ',';
+        }
+    }
+
+    private void appendRaw(String value) {
+        ensureCapacity(value.length());
+        value.getChars(0, value.length(), chars, length);
+        length += value.length();
+    }
+
+    private void ensureCapacity(int extra) {
+        if (length + extra > chars.length) {
+            char[] grown = new char[Math.max(chars.length * 2, length + extra)];
+            System.arraycopy(chars, 0, grown, 0, length);
+            chars = grown;
+        }
+    }
+
+    private static void digits(char[] target, int offset, int value, int width) {
+        for (int i = offset + width - 1; i >= offset; i--) {
+            target[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package ru.bmstu.service.impl;
+
+import ru.bmstu.model.Student;
+import ru.bmstu.service.StudentRepository;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.List;
+
+// Студенты в CSV-файле с заголовком firstName,lastName,tokens
+public class CsvStudentRepository implements StudentRepository {
+    private static final String HEADER = "firstName,lastName,tokens";
+    private final String csvFilePath;
+    private final Durability durability;
+
+    public CsvStudentRepository(String csvFilePath) {
+        this(csvFilePath, Durability.NONE);
+    }
+
+    public CsvStudentRepository(String csvFilePath, Durability durability) {
+        if (csvFilePath == null || csvFilePath.trim().isEmpty()) {
+            throw new IllegalArgumentException("CSV file path cannot be null or empty");
+        }
+        this.csvFilePath = csvFilePath;
+        this.durability = durability;
+    }
+
+    private Path getCsvFilePath() {
+        return Paths.get(csvFilePath).toAbsolutePath();
+    }
+
+    private void ensureFileExists(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            Files.createDirectories(path.getParent());
+            try (BufferedWriter writer = Files.newBufferedWriter(path)) {
+                writer.write(HEADER);
+                writer.newLine();
+            }
+        }
+    }
+
+    private BufferedWriter openWriter(Path path) throws IOException {
+        Files.createDirectories(path.getParent());
+        return Files.newBufferedWriter(path);
+    }
+
+    @Override
+    public List<Student> loadAll() throws IOException {
+        Path path = getCsvFilePath();
+        System.out.println("Loading students from file: " + path);
+        ensureFileExists(path);
+        return MappedCsvLoader.readStudents(path);
+    }
+
+    @Override
+    public void saveAll(Collection<Student> students) throws IOException {
+        Path path = getCsvFilePath();
+        Path tempPath = Paths.get(csvFilePath + ".tmp").toAbsolutePath();
+        System.out.println("Saving students to file: " + path);
+        try (BufferedWriter writer = openWriter(tempPath)) {
+            writer.write(HEADER);
+            writer.newLine();
+            CsvRowEncoder row = new CsvRowEncoder();
+            for (Student student : students) {
+                row.reset().field(student.getFirstName()).field(student.getLastName()).field(student.getTokens())
+                    .writeTo(writer);
+                writer.newLine();
+            }
+        }
+        GroupCommit.replace(tempPath, path, durability);
+    }
+
+    @Override
+    public String getLocation() {
+        return csvFilePath;
+    }
+}
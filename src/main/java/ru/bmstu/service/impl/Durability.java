@@ -0,0 +1,12 @@
+package ru.bmstu.service.impl;
+
+// Когда записанные в файлы данные сбрасываются на диск (fsync)
+public enum Durability {
+    // Только кэш ОС: изменения переживают падение процесса, но не отключение питания
+    NONE,
+    // Дозаписи сбрасываются фоновым потоком раз в интервал группового коммита,
+    // при отключении питания теряется не больше одного интервала
+    BATCH,
+    // Каждая операция возвращается только после сброса на диск
+    SYNC
+}
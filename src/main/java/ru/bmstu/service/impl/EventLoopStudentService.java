@@ -0,0 +1,330 @@
+package ru.bmstu.service.impl;
+
+import ru.bmstu.model.Page;
+import ru.bmstu.model.Student;
+import ru.bmstu.model.StudentKey;
+import ru.bmstu.model.TokenStatistics;
+import ru.bmstu.model.User;
+import ru.bmstu.service.AsyncStudentService;
+import ru.bmstu.service.ChangeNotPersistedException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Однопоточный писатель поверх StudentServiceImpl: изменения не берут блокировки в потоке вызывающего,
+ * а кладутся командами в ограниченную очередь. Поток-писатель забирает все накопившиеся команды (не больше
+ * batchSize), применяет их по порядку, затем за весь цикл один раз пишет журнал жетонов и каждую
+ * затронутую часть хранилища и журналирует действия пачками, после чего завершает CompletableFuture
+ * каждой команды. Команда, не прошедшая проверку, завершается своим исключением и не мешает остальным.
+ * Если записать изменения не удалось, они уже видны при чтении и отменены не будут: результаты команд
+ * завершаются {@link ChangeNotPersistedException}, а изменения цикла остаются в очереди на запись и
+ * сохраняются первыми в следующем цикле (или при простое писателя). Ошибка журнала действий после
+ * успешной записи только выводится в лог: изменение уже сохранено.
+ * Чтение идёт из опубликованного неизменяемого снимка и рейтинга, без очереди.
+ * Обработчики результата без Async выполняются в потоке писателя и не должны его задерживать.
+ */
+public class EventLoopStudentService implements AsyncStudentService, Closeable {
+    private final StudentServiceImpl delegate;
+    private final BlockingQueue<Command> queue;
+    private final int batchSize;
+    private final Thread writerThread;
+    // Постановка в очередь идёт под блокировкой чтения, закрытие — под блокировкой записи:
+    // после close() в очередь уже ничего не попадёт
+    private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+    private volatile boolean closed;
+    // Применённые, но не записанные изменения прошлых циклов; только в потоке писателя (и в close после него)
+    private final List<StudentServiceImpl.Applied> unsaved = new ArrayList<>();
+
+    // Изменение, применяемое писателем, и результат для вызывающего
+    private record Command(Function<StudentServiceImpl, List<StudentServiceImpl.Applied>> change,
+                           CompletableFuture<List<StudentServiceImpl.Applied>> result) {
+    }
+
+    public EventLoopStudentService(StudentServiceImpl delegate, int queueCapacity, int batchSize) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Delegate StudentService cannot be null");
+        }
+        if (queueCapacity <= 0 || batchSize <= 0) {
+            throw new IllegalArgumentException("Queue capacity and batch size must be positive");
+        }
+        this.delegate = delegate;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.writerThread = new Thread(this::drainLoop, "student-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    // При заполненной очереди вызывающий ждёт места; писатель в это время продолжает разбирать очередь
+    private CompletableFuture<List<StudentServiceImpl.Applied>> submit(
+            Function<StudentServiceImpl, List<StudentServiceImpl.Applied>> change) {
+        closeLock.readLock().lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Student service is closed");
+            }
+            Command command = new Command(change, new CompletableFuture<>());
+            queue.put(command);
+            return command.result();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for student command queue", e);
+        } finally {
+            closeLock.readLock().unlock();
+        }
+    }
+
+    private void drainLoop() {
+        List<Command> batch = new ArrayList<>(batchSize);
+        while (!closed || !queue.isEmpty()) {
+            try {
+                Command first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    if (!unsaved.isEmpty()) {
+                        runCycle(batch);
+                    }
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                runCycle(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    // Один цикл писателя: применение по порядку, одна запись на цикл, затем завершение результатов
+    private void runCycle(List<Command> commands) {
+        List<StudentServiceImpl.Applied> applied = new ArrayList<>();
+        List<Command> accepted = new ArrayList<>(commands.size());
+        List<List<StudentServiceImpl.Applied>> results = new ArrayList<>(commands.size());
+        for (Command command : commands) {
+            try {
+                List<StudentServiceImpl.Applied> result = command.change().apply(delegate);
+                applied.addAll(result);
+                accepted.add(command);
+                results.add(result);
+            } catch (RuntimeException e) {
+                command.result().completeExceptionally(e);
+            }
+        }
+        unsaved.addAll(applied);
+        if (unsaved.isEmpty()) {
+            return;
+        }
+        try {
+            delegate.saveApplied(unsaved);
+        } catch (RuntimeException e) {
+            System.err.println("Error persisting student changes, " + unsaved.size()
+                + " changes will be saved with the next cycle: " + e.getMessage());
+            ChangeNotPersistedException failure = new ChangeNotPersistedException(
+                "Change applied but not saved yet; it will be saved with the next write, do not retry it", e);
+            accepted.forEach(command -> command.result().completeExceptionally(failure));
+            return;
+        }
+        List<StudentServiceImpl.Applied> saved = new ArrayList<>(unsaved);
+        unsaved.clear();
+        try {
+            delegate.logApplied(saved);
+        } catch (RuntimeException e) {
+            System.err.println("Error logging saved student changes: " + e.getMessage());
+        }
+        for (int i = 0; i < accepted.size(); i++) {
+            accepted.get(i).result().complete(results.get(i));
+        }
+    }
+
+    // Синхронные методы ждут результата и бросают исключение команды как есть
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> addStudentAsync(User user, Student student) {
+        return submit(service -> List.of(service.addStudentDeferred(user, student))).thenApply(applied -> null);
+    }
+
+    @Override
+    public CompletableFuture<Void> removeStudentAsync(String firstName, String lastName, User user) {
+        StudentKey key = new StudentKey(firstName, lastName);
+        return submit(service -> List.of(service.removeStudentDeferred(user, key, false))).thenApply(applied -> null);
+    }
+
+    @Override
+    public CompletableFuture<Void> expelStudentAsync(User user, String firstName, String lastName) {
+        StudentKey key = new StudentKey(firstName, lastName);
+        return submit(service -> List.of(service.removeStudentDeferred(user, key, true))).thenApply(applied -> null);
+    }
+
+    @Override
+    public CompletableFuture<Student> updateTokensAsync(String firstName, String lastName, int amount, User user) {
+        StudentKey key = new StudentKey(firstName, lastName);
+        return submit(service -> List.of(service.updateTokensDeferred(user, key, amount)))
+            .thenApply(applied -> StudentServiceImpl.copyOf(applied.get(0).student()));
+    }
+
+    // Пачки копируются при постановке в очередь: вызывающий может менять свою коллекцию дальше
+
+    @Override
+    public CompletableFuture<Void> addStudentsAsync(User user, List<Student> students) {
+        if (students.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        List<Student> batch = new ArrayList<>(students);
+        return submit(service -> service.addStudentsDeferred(user, batch)).thenApply(applied -> null);
+    }
+
+    @Override
+    public CompletableFuture<Void> removeStudentsAsync(List<StudentKey> keys, User user) {
+        if (keys.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        List<StudentKey> batch = new ArrayList<>(keys);
+        return submit(service -> service.removeStudentsDeferred(user, batch)).thenApply(applied -> null);
+    }
+
+    @Override
+    public CompletableFuture<Void> updateTokensBatchAsync(Map<StudentKey, Integer> amounts, User user) {
+        if (amounts.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        Map<StudentKey, Integer> batch = new LinkedHashMap<>(amounts);
+        return submit(service -> service.updateTokensBatchDeferred(user, batch)).thenApply(applied -> null);
+    }
+
+    @Override
+    public void addStudent(User user, Student student) {
+        await(addStudentAsync(user, student));
+    }
+
+    @Override
+    public void removeStudent(String firstName, String lastName, User user) {
+        await(removeStudentAsync(firstName, lastName, user));
+    }
+
+    @Override
+    public void expelStudent(User user, String firstName, String lastName) {
+        await(expelStudentAsync(user, firstName, lastName));
+    }
+
+    @Override
+    public Student updateTokens(String firstName, String lastName, int amount, User user) {
+        return await(updateTokensAsync(firstName, lastName, amount, user));
+    }
+
+    @Override
+    public void addStudents(User user, List<Student> students) {
+        await(addStudentsAsync(user, students));
+    }
+
+    @Override
+    public void removeStudents(List<StudentKey> keys, User user) {
+        await(removeStudentsAsync(keys, user));
+    }
+
+    @Override
+    public void updateTokensBatch(Map<StudentKey, Integer> amounts, User user) {
+        await(updateTokensBatchAsync(amounts, user));
+    }
+
+    @Override
+    public List<Student> getAllStudents() {
+        return delegate.snapshot().copies();
+    }
+
+    @Override
+    public Student findStudent(String firstName, String lastName) {
+        return delegate.snapshot().find(new StudentKey(firstName, lastName));
+    }
+
+    @Override
+    public Stream<Student> streamStudents() {
+        return delegate.snapshot().stream();
+    }
+
+    @Override
+    public Page<Student, StudentKey> getStudentsPage(StudentKey after, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Page limit must be positive");
+        }
+        return delegate.snapshot().page(after, limit);
+    }
+
+    @Override
+    public List<Student> getTopStudents(int n) {
+        return delegate.getTopStudents(n);
+    }
+
+    @Override
+    public int getRank(String firstName, String lastName) {
+        Student student = findStudent(firstName, lastName);
+        if (student == null) {
+            throw new IllegalArgumentException("Student not found: " + firstName + " " + lastName);
+        }
+        return delegate.rankOf(student.getTokens());
+    }
+
+    @Override
+    public List<Student> findStudentsByTokens(int minTokens, int maxTokens) {
+        return delegate.findStudentsByTokens(minTokens, maxTokens);
+    }
+
+    @Override
+    public TokenStatistics getTokenStatistics() {
+        return delegate.getTokenStatistics();
+    }
+
+    // Дожидается команд, принятых до закрытия, и закрывает хранилище
+    @Override
+    public void close() throws IOException {
+        closeLock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        } finally {
+            closeLock.writeLock().unlock();
+        }
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // команды, оставшиеся в очереди, если писатель остановился раньше, и ещё не записанные изменения
+        List<Command> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        if (!rest.isEmpty() || !unsaved.isEmpty()) {
+            runCycle(rest);
+        }
+        if (!unsaved.isEmpty()) {
+            System.err.println("Closing with " + unsaved.size() + " student changes that could not be saved");
+        }
+        delegate.close();
+    }
+}
@@ -0,0 +1,115 @@
+package ru.bmstu.service.impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сброс на диск файла, в который дописывают, по уровню {@link Durability}.
+ * Писатель после flush вызывает {@link #committed()}: в SYNC это fsync сразу, в BATCH файл
+ * только помечается, и общий фоновый поток сбрасывает помеченные файлы раз в интервал.
+ */
+final class GroupCommit implements Closeable {
+    private static final ScheduledExecutorService FLUSHER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "durability-group-commit");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Durability durability;
+    private final ScheduledFuture<?> task;
+    private volatile FileChannel channel;
+    private volatile boolean dirty;
+
+    GroupCommit(Durability durability, long batchIntervalMillis) {
+        if (durability == Durability.BATCH && batchIntervalMillis <= 0) {
+            throw new IllegalArgumentException("Group commit interval must be positive");
+        }
+        this.durability = durability;
+        this.task = durability == Durability.BATCH
+            ? FLUSHER.scheduleWithFixedDelay(this::syncIfDirty, batchIntervalMillis, batchIntervalMillis,
+                TimeUnit.MILLISECONDS)
+            : null;
+    }
+
+    // Открывает файл для дозаписи; прежний канал перед этим нужно сбросить через sync() и закрыть
+    FileChannel open(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        return channel;
+    }
+
+    // Вызывается после flush буфера писателя
+    void committed() throws IOException {
+        if (durability == Durability.SYNC) {
+            channel.force(false);
+        } else if (durability == Durability.BATCH) {
+            dirty = true;
+        }
+    }
+
+    // Сбрасывает накопленное перед закрытием или переименованием файла
+    void sync() throws IOException {
+        FileChannel current = channel;
+        if (durability != Durability.NONE && current != null && current.isOpen()) {
+            dirty = false;
+            current.force(false);
+        }
+    }
+
+    private void syncIfDirty() {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        try {
+            channel.force(false);
+        } catch (ClosedChannelException e) {
+            // файл закрыт или переключён, его содержимое сброшено в sync()
+        } catch (IOException e) {
+            dirty = true;
+            System.err.println("Error syncing file to disk: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (task != null) {
+            task.cancel(false);
+        }
+        sync();
+    }
+
+    /**
+     * Атомарная замена файла заранее записанным временным. В BATCH и SYNC временный файл сбрасывается
+     * на диск до переименования, иначе после отключения питания под новым именем может оказаться
+     * недописанное содержимое; в SYNC сбрасывается и каталог, чтобы само переименование пережило сбой.
+     */
+    static void replace(Path temp, Path target, Durability durability) throws IOException {
+        if (durability != Durability.NONE) {
+            try (FileChannel file = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                file.force(true);
+            }
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        if (durability == Durability.SYNC) {
+            syncDirectory(target.getParent());
+        }
+    }
+
+    static void syncDirectory(Path directory) {
+        try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException e) {
+            // каталоги открываются для fsync не на всех платформах (например, Windows)
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package ru.bmstu.service.impl;
+
+import ru.bmstu.model.StudentKey;
+
+import java.util.Collection;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Набор блокировок, разделённых по хешу ключа студента: операции над разными студентами
+ * почти никогда не конкурируют, а проверка и изменение одного студента атомарны.
+ */
+final class LockStripes {
+    private final ReentrantLock[] locks;
+    private final int mask;
+
+    LockStripes(int minStripes) {
+        int count = Integer.highestOneBit(Math.max(1, minStripes - 1)) << 1;
+        this.locks = new ReentrantLock[count];
+        for (int i = 0; i < count; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        this.mask = count - 1;
+    }
+
+    private int stripeOf(StudentKey key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    void lock(StudentKey key) {
+        locks[stripeOf(key)].lock();
+    }
+
+    void unlock(StudentKey key) {
+        locks[stripeOf(key)].unlock();
+    }
+
+    // Для пакетов: полосы берутся по возрастанию номера, чтобы не было взаимных блокировок
+    int[] lockAll(Collection<StudentKey> keys) {
+        TreeSet<Integer> stripes = new TreeSet<>();
+        for (StudentKey key : keys) {
+            stripes.add(stripeOf(key));
+        }
+        int[] acquired = new int[stripes.size()];
+        int i = 0;
+        for (int stripe : stripes) {
+            locks[stripe].lock();
+            acquired[i++] = stripe;
+        }
+        return acquired;
+    }
+
+    void unlockAll(int[] stripes) {
+        for (int i = stripes.length - 1; i >= 0; i--) {
+            locks[stripes[i]].unlock();
+        }
+    }
+}
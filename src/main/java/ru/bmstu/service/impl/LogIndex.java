@@ -0,0 +1,260 @@
+package ru.bmstu.service.impl;
+
+import ru.bmstu.model.LogEntry;
+import ru.bmstu.model.User;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Вторичные индексы одного сегмента журнала: для каждой записи хранится смещение строки в файле,
+ * метка времени и коды действия, пользователя и роли, а также списки номеров записей по каждому
+ * действию, пользователю и роли. Запрос перебирает самый короткий из подходящих списков
+ * и проверяет остальные условия по массивам, не читая файл; с диска читаются только найденные строки.
+ */
+final class LogIndex {
+
+    // Условия запроса; null — любое значение
+    record Query(String action, String userFirstName, String userLastName, User.UserRole role,
+                 LocalDateTime from, LocalDateTime to) {
+        Query {
+            if ((userFirstName == null) != (userLastName == null)) {
+                throw new IllegalArgumentException("User first and last name must be given together");
+            }
+        }
+    }
+
+    // Общие для всех сегментов словари действий и пользователей
+    static final class Dictionary {
+        private final Map<String, Integer> actions = new HashMap<>();
+        private final Map<UserName, Integer> users = new HashMap<>();
+
+        private record UserName(String firstName, String lastName) {
+        }
+
+        int actionId(String action) {
+            return actions.computeIfAbsent(action, a -> actions.size());
+        }
+
+        int userId(String firstName, String lastName) {
+            return users.computeIfAbsent(new UserName(firstName, lastName), u -> users.size());
+        }
+
+        Integer findAction(String action) {
+            return actions.get(action);
+        }
+
+        Integer findUser(String firstName, String lastName) {
+            return users.get(new UserName(firstName, lastName));
+        }
+    }
+
+    // Растущий массив номеров записей по возрастанию
+    private static final class Postings {
+        private int[] ordinals = new int[8];
+        private int size;
+
+        void add(int ordinal) {
+            if (size == ordinals.length) {
+                ordinals = Arrays.copyOf(ordinals, size * 2);
+            }
+            ordinals[size++] = ordinal;
+        }
+    }
+
+    private static final int[] EMPTY = new int[0];
+
+    private final Dictionary dictionary;
+    private int size;
+    private long[] offsets = new long[64];
+    private long[] epochs = new long[64];
+    private int[] actions = new int[64];
+    private int[] users = new int[64];
+    private byte[] roles = new byte[64];
+    private final Map<Integer, Postings> byAction = new HashMap<>();
+    private final Map<Integer, Postings> byUser = new HashMap<>();
+    private final Postings[] byRole = new Postings[User.UserRole.values().length];
+    // Записи обычно идут по времени; если нет, порядок по времени строится при первом запросе
+    private boolean ordered = true;
+    private int[] byTime;
+
+    LogIndex(Dictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    int size() {
+        return size;
+    }
+
+    long offset(int ordinal) {
+        return offsets[ordinal];
+    }
+
+    void add(LogEntry entry, long offset) {
+        if (size == offsets.length) {
+            int capacity = size * 2;
+            offsets = Arrays.copyOf(offsets, capacity);
+            epochs = Arrays.copyOf(epochs, capacity);
+            actions = Arrays.copyOf(actions, capacity);
+            users = Arrays.copyOf(users, capacity);
+            roles = Arrays.copyOf(roles, capacity);
+        }
+        int ordinal = size++;
+        long epoch = LogSegments.epoch(entry.getTimestamp());
+        if (ordinal > 0 && epoch < epochs[ordinal - 1]) {
+            ordered = false;
+        }
+        byTime = null;
+        offsets[ordinal] = offset;
+        epochs[ordinal] = epoch;
+        actions[ordinal] = dictionary.actionId(entry.getAction());
+        users[ordinal] = dictionary.userId(entry.getUserFirstName(), entry.getUserLastName());
+        roles[ordinal] = (byte) entry.getUserRole().ordinal();
+
+        byAction.computeIfAbsent(actions[ordinal], id -> new Postings()).add(ordinal);
+        byUser.computeIfAbsent(users[ordinal], id -> new Postings()).add(ordinal);
+        int role = roles[ordinal];
+        if (byRole[role] == null) {
+            byRole[role] = new Postings();
+        }
+        byRole[role].add(ordinal);
+    }
+
+    // Номера подходящих записей по возрастанию (в порядке файла)
+    int[] match(Query query) {
+        int action = -1;
+        int user = -1;
+        if (query.action() != null) {
+            Integer id = dictionary.findAction(query.action());
+            if (id == null) {
+                return EMPTY;
+            }
+            action = id;
+        }
+        if (query.userFirstName() != null) {
+            Integer id = dictionary.findUser(query.userFirstName(), query.userLastName());
+            if (id == null) {
+                return EMPTY;
+            }
+            user = id;
+        }
+        int role = query.role() != null ? query.role().ordinal() : -1;
+        long from = query.from() != null ? LogSegments.epoch(query.from()) : Long.MIN_VALUE;
+        long to = query.to() != null ? LogSegments.epoch(query.to()) : Long.MAX_VALUE;
+
+        // самый короткий список кандидатов среди заданных условий
+        Postings candidates = null;
+        if (action >= 0) {
+            candidates = shorter(candidates, byAction.get(action));
+        }
+        if (user >= 0) {
+            candidates = shorter(candidates, byUser.get(user));
+        }
+        if (role >= 0) {
+            candidates = shorter(candidates, byRole[role]);
+        }
+        if ((action >= 0 || user >= 0 || role >= 0) && candidates == null) {
+            return EMPTY;
+        }
+
+        int[] source;
+        int count;
+        if (candidates != null) {
+            source = candidates.ordinals;
+            count = candidates.size;
+        } else {
+            source = timeRange(from, to);
+            count = source.length;
+        }
+        int[] result = new int[Math.min(count, 64)];
+        int found = 0;
+        for (int i = 0; i < count; i++) {
+            int ordinal = source[i];
+            if ((action < 0 || actions[ordinal] == action)
+                    && (user < 0 || users[ordinal] == user)
+                    && (role < 0 || roles[ordinal] == role)
+                    && epochs[ordinal] >= from && epochs[ordinal] <= to) {
+                if (found == result.length) {
+                    result = Arrays.copyOf(result, found * 2);
+                }
+                result[found++] = ordinal;
+            }
+        }
+        return Arrays.copyOf(result, found);
+    }
+
+    private static Postings shorter(Postings current, Postings candidate) {
+        if (candidate == null) {
+            return current;
+        }
+        return current == null || candidate.size < current.size ? candidate : current;
+    }
+
+    // Номера записей с меткой времени в [from, to] по возрастанию, двоичным поиском по упорядоченным меткам
+    private int[] timeRange(long from, long to) {
+        if (ordered) {
+            int start = lowerBound(epochs, null, from);
+            int end = upperBound(epochs, null, to);
+            int[] range = new int[Math.max(0, end - start)];
+            for (int i = 0; i < range.length; i++) {
+                range[i] = start + i;
+            }
+            return range;
+        }
+        if (byTime == null) {
+            byTime = sortedByTime();
+        }
+        int start = lowerBound(epochs, byTime, from);
+        int end = upperBound(epochs, byTime, to);
+        if (end <= start) {
+            return EMPTY;
+        }
+        int[] range = Arrays.copyOfRange(byTime, start, end);
+        Arrays.sort(range);
+        return range;
+    }
+
+    private int[] sortedByTime() {
+        Integer[] boxed = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            boxed[i] = i;
+        }
+        // сортировка устойчива: записи с одной меткой остаются в порядке файла
+        Arrays.sort(boxed, (a, b) -> Long.compare(epochs[a], epochs[b]));
+        int[] sorted = new int[size];
+        for (int i = 0; i < size; i++) {
+            sorted[i] = boxed[i];
+        }
+        return sorted;
+    }
+
+    private int lowerBound(long[] values, int[] order, long key) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[order == null ? mid : order[mid]] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int upperBound(long[] values, int[] order, long key) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[order == null ? mid : order[mid]] <= key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,18 @@
+package ru.bmstu.service.impl;
+
+/**
+ * Правила ротации журнала действий поверх деления по периодам.
+ * maxSegmentBytes — размер, после которого активный сегмент закрывается (0 — только по периоду);
+ * compress — сжимать закрытые сегменты в gzip в фоне;
+ * keepSegments и keepDays — хранить не больше N закрытых сегментов или только сегменты за последние N дней
+ * (0 — без ограничения).
+ */
+public record LogRotationPolicy(long maxSegmentBytes, boolean compress, int keepSegments, int keepDays) {
+    public static final LogRotationPolicy DEFAULT = new LogRotationPolicy(0, false, 0, 0);
+
+    public LogRotationPolicy {
+        if (maxSegmentBytes < 0 || keepSegments < 0 || keepDays < 0) {
+            throw new IllegalArgumentException("Log rotation limits cannot be negative");
+        }
+    }
+}
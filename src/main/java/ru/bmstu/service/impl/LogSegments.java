@@ -0,0 +1,976 @@
+package ru.bmstu.service.impl;
+
+import ru.bmstu.model.LogEntry;
+import ru.bmstu.model.Page;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Журнал действий, разбитый на сегменты по времени.
+ * Активный сегмент — файл log.file.path, в который идёт дозапись. Когда очередная запись попадает
+ * в следующий период (час, день, месяц), активный файл переименовывается в закрытый сегмент
+ * {@code <имя>-<время первой записи>.csv}, а его сводка дописывается в индекс {@code <log.file.path>.segments}:
+ * первая и последняя метки времени, число записей и разреженные смещения строк для перехода внутрь файла.
+ * Запрос по интервалу времени читает с диска только пересекающиеся с ним сегменты.
+ * Записи пронумерованы сквозным порядковым номером (sequence) — курсором постраничного чтения:
+ * сегмент хранит номер своей первой записи, а разреженные смещения позволяют перейти к нужной.
+ * <p>
+ * По {@link LogRotationPolicy} сегмент закрывается и по размеру, закрытые сегменты сжимаются в фоне
+ * в {@code .csv.gz} (смещения в индексе — по распакованному содержимому), а самые старые удаляются
+ * сверх лимита по числу или по возрасту. Номер первой оставшейся записи хранится в строке
+ * {@code #base} индекса, так что удаление не сдвигает номера.
+ * Методы синхронизированы: поток сжатия подменяет пути сегментов под тем же монитором.
+ */
+final class LogSegments implements Closeable {
+    static final String HEADER = "timestamp,action,userFirstName,userLastName,userRole,details";
+    // Каждая N-я запись сегмента попадает в разреженный индекс смещений
+    private static final int SPARSE_EVERY = 1024;
+    private static final DateTimeFormatter FILE_SUFFIX = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    private static final int LINE_SEPARATOR_BYTES = System.lineSeparator().length();
+    // Сколько индексов закрытых сегментов держать в памяти
+    private static final int CACHED_INDEXES = 16;
+    private static final String BASE_SEQUENCE = "#base,";
+    private static final String COMPRESSED_SUFFIX = ".gz";
+
+    // Сводка сегмента; для закрытых сегментов хранится в индексном файле
+    static final class Segment {
+        Path path;
+        LocalDateTime first;
+        LocalDateTime last;
+        long count;
+        long bytes;
+        long maxEpoch = Long.MIN_VALUE;
+        // Порядковый номер первой записи; -1 — ещё не назначен
+        long firstSequence = -1;
+        // Пары {смещение строки, максимальная метка времени (epoch seconds) всех записей до неё}
+        final List<long[]> sparse = new ArrayList<>();
+        // Вторичные индексы активного сегмента; для закрытых строятся по запросу и кешируются
+        LogIndex index;
+
+        Segment(Path path, long dataStart) {
+            this.path = path;
+            this.bytes = dataStart;
+            sparse.add(new long[]{dataStart, Long.MIN_VALUE});
+        }
+
+        void add(LogEntry entry, long offset, long lineBytes) {
+            LocalDateTime timestamp = entry.getTimestamp();
+            if (count > 0 && count % SPARSE_EVERY == 0) {
+                sparse.add(new long[]{offset, maxEpoch});
+            }
+            if (first == null || timestamp.isBefore(first)) {
+                first = timestamp;
+            }
+            if (last == null || timestamp.isAfter(last)) {
+                last = timestamp;
+            }
+            maxEpoch = Math.max(maxEpoch, epoch(timestamp));
+            count++;
+            bytes = offset + lineBytes;
+            if (index != null) {
+                index.add(entry, offset);
+            }
+        }
+
+        boolean overlaps(LocalDateTime from, LocalDateTime to) {
+            if (count == 0) {
+                return false;
+            }
+            return (from == null || !last.isBefore(from)) && (to == null || !first.isAfter(to));
+        }
+
+        // Последняя точка, до которой все записи раньше from: с неё можно начинать чтение
+        long seekOffset(LocalDateTime from) {
+            long offset = sparse.get(0)[0];
+            if (from == null) {
+                return offset;
+            }
+            long fromEpoch = epoch(from);
+            for (long[] point : sparse) {
+                if (point[1] < fromEpoch) {
+                    offset = point[0];
+                } else {
+                    break;
+                }
+            }
+            return offset;
+        }
+
+        String toIndexLine() {
+            StringBuilder line = new StringBuilder()
+                .append(path.getFileName()).append(',')
+                .append(first.format(LogServiceImpl.DATE_FORMATTER)).append(',')
+                .append(last.format(LogServiceImpl.DATE_FORMATTER)).append(',')
+                .append(count).append(',')
+                .append(bytes).append(',')
+                .append(maxEpoch).append(',');
+            for (int i = 0; i < sparse.size(); i++) {
+                if (i > 0) {
+                    line.append(';');
+                }
+                line.append(sparse.get(i)[0]).append(':').append(sparse.get(i)[1]);
+            }
+            return line.append(',').append(firstSequence).toString();
+        }
+
+        static Segment fromIndexLine(Path dir, String line) {
+            String[] values = line.split(",");
+            String[] points = values[6].split(";");
+            Segment segment = new Segment(dir.resolve(values[0]), Long.parseLong(points[0].split(":")[0]));
+            segment.first = LocalDateTime.parse(values[1], LogServiceImpl.DATE_FORMATTER);
+            segment.last = LocalDateTime.parse(values[2], LogServiceImpl.DATE_FORMATTER);
+            segment.count = Long.parseLong(values[3]);
+            segment.bytes = Long.parseLong(values[4]);
+            segment.maxEpoch = Long.parseLong(values[5]);
+            for (int i = 1; i < points.length; i++) {
+                String[] point = points[i].split(":");
+                segment.sparse.add(new long[]{Long.parseLong(point[0]), Long.parseLong(point[1])});
+            }
+            // в индексах прежнего формата номера нет, он вычисляется при открытии
+            if (values.length > 7) {
+                segment.firstSequence = Long.parseLong(values[7]);
+            }
+            return segment;
+        }
+    }
+
+    private final Path activePath;
+    private final Path indexPath;
+    private final String baseName;
+    private final ChronoUnit period;
+    private final LogRotationPolicy rotation;
+    private final Durability durability;
+    // null, если сжатие выключено
+    private final ExecutorService compressor;
+    private final List<Segment> closed = new ArrayList<>();
+    // Номер первой записи журнала после удаления старых сегментов
+    private long baseSequence;
+    private Segment active;
+    private BufferedWriter writer;
+    // Буфер строки дозаписи, используется под монитором
+    private final CsvRowEncoder row = new CsvRowEncoder();
+    private final GroupCommit groupCommit;
+    private final LogIndex.Dictionary dictionary = new LogIndex.Dictionary();
+    private final Map<Path, LogIndex> indexCache = new LinkedHashMap<>(CACHED_INDEXES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Path, LogIndex> eldest) {
+            return size() > CACHED_INDEXES;
+        }
+    };
+
+    LogSegments(Path activePath, ChronoUnit period) {
+        this(activePath, period, Durability.NONE, 0, LogRotationPolicy.DEFAULT);
+    }
+
+    LogSegments(Path activePath, ChronoUnit period, Durability durability, long batchIntervalMillis) {
+        this(activePath, period, durability, batchIntervalMillis, LogRotationPolicy.DEFAULT);
+    }
+
+    // period FOREVER — без переключения по времени, только по размеру
+    LogSegments(Path activePath, ChronoUnit period, Durability durability, long batchIntervalMillis,
+                LogRotationPolicy rotation) {
+        if (period != ChronoUnit.HOURS && period != ChronoUnit.DAYS && period != ChronoUnit.MONTHS
+                && period != ChronoUnit.FOREVER) {
+            throw new IllegalArgumentException("Log segment period must be HOURS, DAYS, MONTHS or FOREVER: " + period);
+        }
+        if (rotation == null) {
+            throw new IllegalArgumentException("Log rotation policy cannot be null");
+        }
+        this.activePath = activePath;
+        this.indexPath = activePath.resolveSibling(activePath.getFileName() + ".segments");
+        String fileName = activePath.getFileName().toString();
+        this.baseName = fileName.endsWith(".csv") ? fileName.substring(0, fileName.length() - 4) : fileName;
+        this.period = period;
+        this.rotation = rotation;
+        this.durability = durability;
+        this.groupCommit = new GroupCommit(durability, batchIntervalMillis);
+        this.compressor = rotation.compress() ? Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "log-segment-compressor");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+    }
+
+    static long epoch(LocalDateTime timestamp) {
+        return timestamp.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    private LocalDateTime periodStart(LocalDateTime timestamp) {
+        if (period == ChronoUnit.FOREVER) {
+            return LocalDateTime.MIN;
+        }
+        return period == ChronoUnit.MONTHS
+            ? timestamp.truncatedTo(ChronoUnit.DAYS).withDayOfMonth(1)
+            : timestamp.truncatedTo(period);
+    }
+
+    /**
+     * Читает индекс закрытых сегментов и активный сегмент, заново строя вторичные индексы активного
+     * сегмента. Каждая запись активного файла передаётся в consumer (для хвоста в памяти). Унаследованный активный файл, охватывающий
+     * несколько периодов, один раз разрезается на закрытые сегменты.
+     */
+    synchronized void open(Consumer<LogEntry> activeEntries) throws IOException {
+        Files.createDirectories(activePath.getParent());
+        loadIndex();
+        indexUnlistedSegments();
+
+        if (Files.exists(activePath) && CsvFiles.truncateTornTail(activePath)) {
+            System.err.println("Discarding partially written last log entry in: " + activePath);
+        }
+        // пустой файл (новый или обрезанный до нуля) получает заголовок
+        if (!Files.exists(activePath) || Files.size(activePath) == 0) {
+            writeHeader(activePath);
+        }
+        active = scan(activePath, activeEntries, true);
+        if (active.count > 0 && periodStart(active.first).isBefore(periodStart(active.last))) {
+            splitActive();
+        }
+        numberSegments();
+        writer = openWriter();
+        applyRetention();
+        resumeCompression();
+    }
+
+    private void loadIndex() throws IOException {
+        if (!Files.exists(indexPath)) {
+            return;
+        }
+        CsvFiles.truncateTornTail(indexPath);
+        Map<String, Segment> byName = new LinkedHashMap<>();
+        for (String line : Files.readAllLines(indexPath)) {
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                if (line.startsWith(BASE_SEQUENCE)) {
+                    baseSequence = Long.parseLong(line.substring(BASE_SEQUENCE.length()));
+                    continue;
+                }
+                Segment segment = Segment.fromIndexLine(activePath.getParent(), line);
+                // сжатие завершилось, а индекс ещё ссылается на несжатый файл
+                if (!Files.exists(segment.path) && Files.exists(compressedPath(segment.path))) {
+                    segment.path = compressedPath(segment.path);
+                }
+                if (Files.exists(segment.path)) {
+                    byName.put(segment.path.getFileName().toString(), segment);
+                } else {
+                    System.err.println("Log segment listed in index is missing: " + segment.path);
+                }
+            } catch (RuntimeException e) {
+                System.err.println("Error parsing log segment index entry: " + e.getMessage());
+            }
+        }
+        closed.addAll(byName.values());
+    }
+
+    // Закрытые сегменты, не попавшие в индекс (сбой между переименованием и записью индекса)
+    private void indexUnlistedSegments() throws IOException {
+        Set<String> listed = new HashSet<>();
+        for (Segment segment : closed) {
+            listed.add(segment.path.getFileName().toString());
+        }
+        List<Path> unlisted = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(activePath.getParent(), baseName + "-*.{csv,csv.gz}")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                // вторая копия сегмента, который сжимался во время сбоя
+                String counterpart = name.endsWith(COMPRESSED_SUFFIX)
+                    ? name.substring(0, name.length() - COMPRESSED_SUFFIX.length())
+                    : name + COMPRESSED_SUFFIX;
+                if (!listed.contains(name) && !listed.contains(counterpart)) {
+                    unlisted.add(file);
+                }
+            }
+        }
+        for (Path file : unlisted) {
+            Segment segment = scan(file, entry -> { }, false);
+            if (segment.count > 0) {
+                closed.add(segment);
+                appendToIndex(segment);
+            }
+        }
+        // сортировка устойчива: сегменты, закрытые по размеру в одну секунду, остаются в порядке индекса
+        closed.sort(Comparator.comparing((Segment s) -> s.first));
+    }
+
+    private Segment scan(Path path, Consumer<LogEntry> entries, boolean indexed) throws IOException {
+        try (OffsetLineReader reader = new OffsetLineReader(openInput(path), 0, Long.MAX_VALUE)) {
+            String header = reader.readLine();
+            Segment segment = new Segment(path, reader.position());
+            if (indexed) {
+                segment.index = new LogIndex(dictionary);
+            }
+            MappedCsvLoader.LineParser<LogEntry> parser = MappedCsvLoader.logLineParser();
+            LogEntry entry;
+            while ((entry = readEntry(reader, parser)) != null) {
+                segment.add(entry, reader.lineStart(), reader.position() - reader.lineStart());
+                entries.accept(entry);
+            }
+            segment.bytes = reader.position();
+            if (header == null) {
+                segment.sparse.get(0)[0] = 0;
+            }
+            return segment;
+        }
+    }
+
+    // Разрезает активный файл на непрерывные куски по периодам; последний остаётся активным
+    private void splitActive() throws IOException {
+        System.out.println("Splitting log file into time segments: " + activePath);
+        List<Path> parts = new ArrayList<>();
+        List<LocalDateTime> partStarts = new ArrayList<>();
+        BufferedWriter out = null;
+        LocalDateTime currentPeriod = null;
+        try (OffsetLineReader reader = new OffsetLineReader(Files.newInputStream(activePath), 0, Long.MAX_VALUE)) {
+            reader.readLine();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                LogEntry entry = LogServiceImpl.parseLogLine(line);
+                if (entry != null && !periodStart(entry.getTimestamp()).equals(currentPeriod)) {
+                    if (out != null) {
+                        out.close();
+                    }
+                    currentPeriod = periodStart(entry.getTimestamp());
+                    Path part = activePath.resolveSibling(activePath.getFileName() + ".part" + parts.size());
+                    parts.add(part);
+                    partStarts.add(entry.getTimestamp());
+                    out = Files.newBufferedWriter(part);
+                    out.write(HEADER);
+                    out.newLine();
+                }
+                if (out != null) {
+                    out.write(line);
+                    out.newLine();
+                }
+            }
+        } finally {
+            if (out != null) {
+                out.close();
+            }
+        }
+        for (int i = 0; i < parts.size() - 1; i++) {
+            Path target = closedPathFor(partStarts.get(i));
+            Files.move(parts.get(i), target, StandardCopyOption.REPLACE_EXISTING);
+            Segment segment = scan(target, entry -> { }, false);
+            closed.add(segment);
+            appendToIndex(segment);
+        }
+        Files.move(parts.get(parts.size() - 1), activePath,
+            StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        active = scan(activePath, entry -> { }, true);
+    }
+
+    // Номера идут подряд по сегментам; уже назначенные номера не уменьшаются
+    private void numberSegments() {
+        long next = baseSequence;
+        for (Segment segment : closed) {
+            segment.firstSequence = Math.max(segment.firstSequence, next);
+            next = segment.firstSequence + segment.count;
+        }
+        active.firstSequence = next;
+    }
+
+    // Номер, который получит следующая запись
+    synchronized long nextSequence() {
+        return active.firstSequence + active.count;
+    }
+
+    /**
+     * Наибольшая метка времени среди записей с номерами меньше sequence; null — таких записей нет.
+     * Берётся по сводкам сегментов целиком, поэтому это оценка сверху. Нужна потому, что метки времени
+     * в журнале могут идти не по порядку: более старая по номеру запись бывает новее по времени.
+     */
+    synchronized LocalDateTime latestBefore(long sequence) {
+        LocalDateTime latest = null;
+        for (Segment segment : closed) {
+            latest = later(latest, segment, sequence);
+        }
+        return later(latest, active, sequence);
+    }
+
+    private static LocalDateTime later(LocalDateTime latest, Segment segment, long sequence) {
+        if (segment.count == 0 || segment.firstSequence >= sequence) {
+            return latest;
+        }
+        return latest == null || segment.last.isAfter(latest) ? segment.last : latest;
+    }
+
+    private Path closedPathFor(LocalDateTime first) {
+        String name = baseName + "-" + first.format(FILE_SUFFIX);
+        Path path = activePath.resolveSibling(name + ".csv");
+        for (int i = 1; Files.exists(path) || Files.exists(compressedPath(path)) || isListed(path); i++) {
+            path = activePath.resolveSibling(name + "-" + i + ".csv");
+        }
+        return path;
+    }
+
+    private boolean isListed(Path path) {
+        for (Segment segment : closed) {
+            if (segment.path.equals(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private BufferedWriter openWriter() throws IOException {
+        return new BufferedWriter(Channels.newWriter(groupCommit.open(activePath), StandardCharsets.UTF_8));
+    }
+
+    private void writeHeader(Path path) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(path)) {
+            out.write(HEADER);
+            out.newLine();
+        }
+    }
+
+    private void appendToIndex(Segment segment) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(indexPath, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            out.write(segment.toIndexLine());
+            out.newLine();
+        }
+    }
+
+    // Дописывает записи в активный сегмент, переключая сегмент на границе периода или размера; один flush на пачку
+    synchronized void append(List<LogEntry> entries) throws IOException {
+        for (LogEntry entry : entries) {
+            LogServiceImpl.encodeLogLine(row.reset(), entry);
+            long lineBytes = row.utf8Length() + LINE_SEPARATOR_BYTES;
+            rollIfNeeded(entry.getTimestamp(), lineBytes);
+            row.writeTo(writer);
+            writer.newLine();
+            active.add(entry, active.bytes, lineBytes);
+        }
+        writer.flush();
+        groupCommit.committed();
+    }
+
+    private void rollIfNeeded(LocalDateTime timestamp, long lineBytes) throws IOException {
+        if (active.count == 0) {
+            return;
+        }
+        boolean periodEnded = periodStart(timestamp).isAfter(periodStart(active.first));
+        boolean full = rotation.maxSegmentBytes() > 0 && active.bytes + lineBytes > rotation.maxSegmentBytes();
+        if (!periodEnded && !full) {
+            return;
+        }
+        // закрываемый сегмент сбрасывается на диск целиком до переименования
+        writer.flush();
+        groupCommit.sync();
+        writer.close();
+        Path target = closedPathFor(active.first);
+        Files.move(activePath, target, StandardCopyOption.ATOMIC_MOVE);
+        active.path = target;
+        indexCache.put(target, active.index);
+        active.index = null;
+        closed.add(active);
+        appendToIndex(active);
+        System.out.println("Closed log segment: " + target);
+        if (compressor != null) {
+            scheduleCompression(active);
+        }
+
+        writeHeader(activePath);
+        long firstSequence = active.firstSequence + active.count;
+        active = new Segment(activePath, Files.size(activePath));
+        active.firstSequence = firstSequence;
+        active.index = new LogIndex(dictionary);
+        writer = openWriter();
+        applyRetention();
+    }
+
+    /**
+     * Удаляет самые старые закрытые сегменты сверх keepSegments и те, чья последняя запись
+     * старше keepDays. Индекс перезаписывается до удаления файлов, чтобы сбой не оставил в нём ссылок
+     * на удалённые сегменты.
+     */
+    private void applyRetention() throws IOException {
+        if (rotation.keepSegments() == 0 && rotation.keepDays() == 0) {
+            return;
+        }
+        LocalDateTime cutoff = rotation.keepDays() > 0 ? LocalDateTime.now().minusDays(rotation.keepDays()) : null;
+        List<Segment> expired = new ArrayList<>();
+        while (!closed.isEmpty()) {
+            Segment oldest = closed.get(0);
+            boolean extra = rotation.keepSegments() > 0 && closed.size() > rotation.keepSegments();
+            boolean old = cutoff != null && oldest.last.isBefore(cutoff);
+            if (!extra && !old) {
+                break;
+            }
+            expired.add(closed.remove(0));
+        }
+        if (expired.isEmpty()) {
+            return;
+        }
+        baseSequence = closed.isEmpty() ? active.firstSequence : closed.get(0).firstSequence;
+        rewriteIndex();
+        for (Segment segment : expired) {
+            indexCache.remove(segment.path);
+            Files.deleteIfExists(segment.path);
+            // сжатая копия, которую поток сжатия мог успеть записать
+            if (!isCompressed(segment.path)) {
+                Files.deleteIfExists(compressedPath(segment.path));
+            }
+            System.out.println("Deleted expired log segment: " + segment.path);
+        }
+    }
+
+    private void rewriteIndex() throws IOException {
+        Path temp = indexPath.resolveSibling(indexPath.getFileName() + ".tmp");
+        try (BufferedWriter out = Files.newBufferedWriter(temp)) {
+            out.write(BASE_SEQUENCE + baseSequence);
+            out.newLine();
+            for (Segment segment : closed) {
+                out.write(segment.toIndexLine());
+                out.newLine();
+            }
+        }
+        GroupCommit.replace(temp, indexPath, durability);
+    }
+
+    // Сегменты, сжатие которых прервал перезапуск
+    private void resumeCompression() throws IOException {
+        for (Segment segment : new ArrayList<>(closed)) {
+            if (isCompressed(segment.path)) {
+                continue;
+            }
+            Path compressed = compressedPath(segment.path);
+            if (Files.exists(compressed)) {
+                // сжатый файл уже на месте (переименование атомарно), не успели обновить индекс
+                replaceWithCompressed(segment, segment.path, compressed);
+            } else if (compressor != null) {
+                scheduleCompression(segment);
+            }
+        }
+    }
+
+    private void scheduleCompression(Segment segment) {
+        Path source = segment.path;
+        compressor.execute(() -> compress(segment, source));
+    }
+
+    // Выполняется в потоке сжатия без монитора; читатели в это время продолжают читать несжатый файл
+    private void compress(Segment segment, Path source) {
+        Path target = compressedPath(source);
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try {
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(temp), 64 * 1024)) {
+                Files.copy(source, out);
+            }
+            GroupCommit.replace(temp, target, durability);
+            if (!replaceWithCompressed(segment, source, target)) {
+                Files.deleteIfExists(target);
+            }
+        } catch (IOException e) {
+            if (isListed(segment)) {
+                System.err.println("Error compressing log segment " + source + ": " + e.getMessage());
+            }
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException ignored) {
+                // временный файл перезапишется при следующей попытке
+            }
+        }
+    }
+
+    // false — сегмент за это время удалён по сроку хранения
+    private synchronized boolean replaceWithCompressed(Segment segment, Path source, Path target) throws IOException {
+        if (!closed.contains(segment) || !segment.path.equals(source)) {
+            return false;
+        }
+        segment.path = target;
+        LogIndex index = indexCache.remove(source);
+        if (index != null) {
+            indexCache.put(target, index);
+        }
+        rewriteIndex();
+        // открытые на чтение потоки дочитывают удалённый файл, ещё не открытые переходят на .gz
+        Files.deleteIfExists(source);
+        System.out.println("Compressed log segment: " + target);
+        return true;
+    }
+
+    private synchronized boolean isListed(Segment segment) {
+        return closed.contains(segment);
+    }
+
+    static boolean isCompressed(Path path) {
+        return path.getFileName().toString().endsWith(COMPRESSED_SUFFIX);
+    }
+
+    private static Path compressedPath(Path path) {
+        return path.resolveSibling(path.getFileName() + COMPRESSED_SUFFIX);
+    }
+
+    private static InputStream openInput(Path path) throws IOException {
+        InputStream input = Files.newInputStream(path);
+        if (!isCompressed(path)) {
+            return input;
+        }
+        try {
+            return new GZIPInputStream(input, 64 * 1024);
+        } catch (IOException e) {
+            input.close();
+            throw e;
+        }
+    }
+
+    synchronized void flush() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        }
+    }
+
+    synchronized List<Segment> closedSegments() {
+        return Collections.unmodifiableList(closed);
+    }
+
+    /**
+     * Записи с меткой времени в [from, to] (null — без границы) в порядке файлов.
+     * Закрытые сегменты вне интервала не открываются; активный сегмент читается до длины на момент вызова.
+     * Поток нужно закрыть.
+     */
+    synchronized Stream<LogEntry> stream(LocalDateTime from, LocalDateTime to) throws IOException {
+        flush();
+        List<Stream<LogEntry>> parts = new ArrayList<>();
+        for (Segment segment : closed) {
+            if (segment.overlaps(from, to)) {
+                Path path = segment.path;
+                long offset = segment.seekOffset(from);
+                long limit = segment.bytes;
+                parts.add(Stream.of(path).flatMap(p -> read(p, offset, limit)));
+            }
+        }
+        Stream<LogEntry> activePart = Stream.empty();
+        if (active.overlaps(from, to)) {
+            // активный файл открываем сразу: при переключении сегмента его переименуют
+            activePart = read(Files.newInputStream(activePath), active.seekOffset(from), active.bytes);
+            parts.add(activePart);
+        }
+        return parts.stream()
+            .flatMap(part -> part)
+            .filter(entry -> (from == null || !entry.getTimestamp().isBefore(from))
+                && (to == null || !entry.getTimestamp().isAfter(to)))
+            .onClose(activePart::close);
+    }
+
+    /**
+     * Не более limit записей с номерами после after (null — с начала) в порядке журнала.
+     * Сегменты до курсора не читаются; внутри сегмента чтение начинается с ближайшей разреженной точки,
+     * так что пропускается меньше SPARSE_EVERY записей.
+     */
+    synchronized Page<LogEntry, Long> page(Long after, int limit) throws IOException {
+        flush();
+        long sequence = after == null ? 0 : after + 1;
+        List<Segment> segments = new ArrayList<>(closed);
+        segments.add(active);
+        List<LogEntry> items = new ArrayList<>(Math.min(limit, SPARSE_EVERY));
+        for (Segment segment : segments) {
+            if (items.size() == limit) {
+                break;
+            }
+            if (segment.count == 0 || segment.firstSequence + segment.count <= sequence) {
+                continue;
+            }
+            sequence = Math.max(sequence, segment.firstSequence);
+            long ordinal = sequence - segment.firstSequence;
+            int point = (int) (ordinal / SPARSE_EVERY);
+            try (Stream<LogEntry> entries = read(segment.path, segment.sparse.get(point)[0], segment.bytes)) {
+                Iterator<LogEntry> iterator = entries.skip(ordinal - (long) point * SPARSE_EVERY)
+                    .limit(limit - items.size())
+                    .iterator();
+                while (iterator.hasNext()) {
+                    items.add(iterator.next());
+                    sequence++;
+                }
+            }
+        }
+        Long cursor = items.isEmpty() ? after : Long.valueOf(sequence - 1);
+        return new Page<>(items, cursor, sequence < nextSequence());
+    }
+
+    /**
+     * Записи, подходящие под запрос, в порядке файлов. Сегменты вне интервала времени пропускаются,
+     * в остальных кандидаты отбираются по индексам, а с диска читаются только найденные строки.
+     */
+    synchronized List<LogEntry> query(LogIndex.Query query) throws IOException {
+        flush();
+        List<LogEntry> result = new ArrayList<>();
+        for (Segment segment : closed) {
+            if (segment.overlaps(query.from(), query.to())) {
+                LogIndex index = indexCache.get(segment.path);
+                try {
+                    if (index == null) {
+                        index = scan(segment.path, entry -> { }, true).index;
+                        indexCache.put(segment.path, index);
+                    }
+                    readMatches(segment.path, index, index.match(query), segment.bytes, result);
+                } catch (NoSuchFileException e) {
+                    System.err.println("Log segment is missing: " + segment.path);
+                }
+            }
+        }
+        if (active.overlaps(query.from(), query.to())) {
+            readMatches(activePath, active.index, active.index.match(query), active.bytes, result);
+        }
+        return result;
+    }
+
+    private static void readMatches(Path path, LogIndex index, int[] ordinals, long bytes,
+                                    List<LogEntry> result) throws IOException {
+        if (ordinals.length == 0) {
+            return;
+        }
+        if (isCompressed(path)) {
+            readCompressedMatches(path, index, ordinals, bytes, result);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedCsvLoader.LineParser<LogEntry> parser = MappedCsvLoader.logLineParser();
+            ByteBuffer buffer = ByteBuffer.allocate(512);
+            for (int ordinal : ordinals) {
+                long start = index.offset(ordinal);
+                long end = ordinal + 1 < index.size() ? index.offset(ordinal + 1) : bytes;
+                int length = (int) Math.min(end - start, Integer.MAX_VALUE);
+                if (buffer.capacity() < length) {
+                    buffer = ByteBuffer.allocate(length);
+                }
+                buffer.clear().limit(length);
+                while (buffer.hasRemaining() && channel.read(buffer, start + buffer.position()) > 0) {
+                }
+                // между соседними записями могут быть пропущенные некорректные строки
+                int lineEnd = 0;
+                while (lineEnd < buffer.position() && buffer.get(lineEnd) != '\n') {
+                    lineEnd++;
+                }
+                if (lineEnd > 0 && buffer.get(lineEnd - 1) == '\r') {
+                    lineEnd--;
+                }
+                LogEntry entry = parser.parse(buffer, 0, lineEnd);
+                if (entry != null) {
+                    result.add(entry);
+                }
+            }
+        }
+    }
+
+    // В gzip нет произвольного доступа: файл распаковывается один раз от первой найденной строки
+    private static void readCompressedMatches(Path path, LogIndex index, int[] ordinals, long bytes,
+                                              List<LogEntry> result) throws IOException {
+        try (OffsetLineReader reader = new OffsetLineReader(openInput(path), index.offset(ordinals[0]), bytes)) {
+            MappedCsvLoader.LineParser<LogEntry> parser = MappedCsvLoader.logLineParser();
+            int next = 0;
+            int length;
+            while (next < ordinals.length && (length = reader.readLineBytes()) >= 0) {
+                if (reader.lineStart() == index.offset(ordinals[next])) {
+                    LogEntry entry = parser.parse(reader.lineBytes(), 0, length);
+                    if (entry != null) {
+                        result.add(entry);
+                    }
+                    next++;
+                }
+            }
+        }
+    }
+
+    private static Stream<LogEntry> read(Path path, long offset, long limit) {
+        try {
+            return read(openInput(path), offset, limit);
+        } catch (NoSuchFileException e) {
+            // сегмент сжали между выбором сегментов и чтением
+            Path compressed = compressedPath(path);
+            if (!isCompressed(path) && Files.exists(compressed)) {
+                return read(compressed, offset, limit);
+            }
+            System.err.println("Log segment is missing: " + path);
+            return Stream.empty();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Stream<LogEntry> read(InputStream input, long offset, long limit) {
+        OffsetLineReader reader;
+        try {
+            reader = new OffsetLineReader(input, offset, limit);
+        } catch (IOException e) {
+            closeQuietly(input);
+            throw new UncheckedIOException(e);
+        }
+        MappedCsvLoader.LineParser<LogEntry> parser = MappedCsvLoader.logLineParser();
+        Iterator<LogEntry> entries = new Iterator<>() {
+            private LogEntry next = advance();
+
+            private LogEntry advance() {
+                try {
+                    return readEntry(reader, parser);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public LogEntry next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                LogEntry current = next;
+                next = advance();
+                return current;
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(entries, Spliterator.ORDERED), false)
+            .onClose(() -> closeQuietly(reader));
+    }
+
+    // Следующая корректная запись; некорректные строки пропускаются, null — конец данных
+    private static LogEntry readEntry(OffsetLineReader reader, MappedCsvLoader.LineParser<LogEntry> parser)
+            throws IOException {
+        int length;
+        while ((length = reader.readLineBytes()) >= 0) {
+            LogEntry entry = parser.parse(reader.lineBytes(), 0, length);
+            if (entry != null) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            System.err.println("Error closing log segment: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        // поток сжатия берёт монитор, поэтому его дожидаются до входа в синхронизированную часть
+        if (compressor != null) {
+            compressor.shutdown();
+            try {
+                if (!compressor.awaitTermination(30, TimeUnit.SECONDS)) {
+                    System.err.println("Log segment compressor did not finish in time");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            if (writer != null) {
+                writer.flush();
+                groupCommit.sync();
+                writer.close();
+                writer = null;
+            }
+        }
+        groupCommit.close();
+    }
+
+    /**
+     * Построчное чтение UTF-8 с учётом байтовых смещений строк, в пределах [offset, limit).
+     */
+    static final class OffsetLineReader implements Closeable {
+        private final InputStream input;
+        private final byte[] buffer = new byte[64 * 1024];
+        private int bufferPosition;
+        private int bufferLength;
+        private long position;
+        private long lineStart;
+        private final long limit;
+        private byte[] line = new byte[256];
+        private ByteBuffer lineView;
+
+        OffsetLineReader(InputStream input, long offset, long limit) throws IOException {
+            this.input = input;
+            this.limit = limit;
+            input.skipNBytes(offset);
+            this.position = offset;
+        }
+
+        String readLine() throws IOException {
+            int length = readLineBytes();
+            return length < 0 ? null : new String(line, 0, length, StandardCharsets.UTF_8);
+        }
+
+        // Следующая строка без перевода строки в lineBytes(); её длина или -1 в конце данных
+        int readLineBytes() throws IOException {
+            lineStart = position;
+            int length = 0;
+            while (position < limit) {
+                if (bufferPosition == bufferLength) {
+                    bufferLength = input.read(buffer, 0, buffer.length);
+                    bufferPosition = 0;
+                    if (bufferLength <= 0) {
+                        bufferLength = 0;
+                        break;
+                    }
+                }
+                byte b = buffer[bufferPosition++];
+                position++;
+                if (b == '\n') {
+                    return withoutCarriageReturn(length);
+                }
+                if (length == line.length) {
+                    line = Arrays.copyOf(line, length * 2);
+                }
+                line[length++] = b;
+            }
+            return length > 0 ? withoutCarriageReturn(length) : -1;
+        }
+
+        private int withoutCarriageReturn(int length) {
+            return length > 0 && line[length - 1] == '\r' ? length - 1 : length;
+        }
+
+        // Байты последней прочитанной строки; перезаписываются следующим чтением
+        ByteBuffer lineBytes() {
+            if (lineView == null || lineView.array() != line) {
+                lineView = ByteBuffer.wrap(line);
+            }
+            return lineView;
+        }
+
+        long lineStart() {
+            return lineStart;
+        }
+
+        long position() {
+            return position;
+        }
+
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+    }
+}
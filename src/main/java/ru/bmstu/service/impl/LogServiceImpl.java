@@ -1,34 +1,62 @@
 package ru.bmstu.service.impl;
 
 import org.springframework.beans.factory.annotation.Value;
+import ru.bmstu.metrics.OperationMetrics;
 import ru.bmstu.model.LogEntry;
+import ru.bmstu.model.Page;
 import ru.bmstu.model.User;
 import ru.bmstu.service.LogService;
 
 import java.io.*;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
-public class LogServiceImpl implements LogService {
-    private final List<LogEntry> logs;
+public class LogServiceImpl implements LogService, Closeable {
+    public static final int DEFAULT_TAIL_SIZE = 10_000;
+    // В памяти держится только хвост последних записей в сжатом виде; вся история лежит в сегментах на диске
+    private final CompactLogTail tail;
     private final String logFilePath;
-    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private final LogSegments segments;
+    // Время дозаписи пачки с flush; null — не измеряется
+    private volatile OperationMetrics flushMetrics;
 
     //trim() — удаляет все ведущие и завершающие пробелы
     public LogServiceImpl(String logFilePath) {
+        this(logFilePath, ChronoUnit.DAYS, DEFAULT_TAIL_SIZE);
+    }
+
+    public LogServiceImpl(String logFilePath, ChronoUnit segmentPeriod, int tailSize) {
+        this(logFilePath, segmentPeriod, tailSize, Durability.NONE, 0);
+    }
+
+    public LogServiceImpl(String logFilePath, ChronoUnit segmentPeriod, int tailSize,
+                          Durability durability, long batchIntervalMillis) {
+        this(logFilePath, segmentPeriod, tailSize, durability, batchIntervalMillis, LogRotationPolicy.DEFAULT);
+    }
+
+    public LogServiceImpl(String logFilePath, ChronoUnit segmentPeriod, int tailSize,
+                          Durability durability, long batchIntervalMillis, LogRotationPolicy rotation) {
         if (logFilePath == null || logFilePath.trim().isEmpty()) {
             throw new IllegalArgumentException("Log file path cannot be null or empty");
         }
+        if (tailSize < 0) {
+            throw new IllegalArgumentException("Log tail size cannot be negative");
+        }
 
         System.out.println("Initializing LogServiceImpl with log file path: " + logFilePath);
         this.logFilePath = logFilePath;
+        this.tail = new CompactLogTail(tailSize);
+        this.segments = new LogSegments(Paths.get(logFilePath).toAbsolutePath(), segmentPeriod,
+            durability, batchIntervalMillis, rotation);
         try {
-            this.logs = loadLogs();
+            loadLogs();
         } catch (Exception e) {
             System.err.println("Error initializing LogServiceImpl: " + e.getMessage());
             e.printStackTrace(); //Отображает стек вызовов
@@ -36,102 +64,83 @@ public class LogServiceImpl implements LogService {
         }
     }
 
-    private List<LogEntry> loadLogs() {
-        List<LogEntry> loadedLogs = new ArrayList<>();
-        
+    // Читает индекс сегментов и активный сегмент; в память попадает только хвост
+    private void loadLogs() {
         if (logFilePath == null) {
             throw new IllegalStateException("Log file path is null in loadLogs()");
         }
         
         System.out.println("Loading logs from file: " + logFilePath);
-        Path path = Paths.get(logFilePath).toAbsolutePath();
-        System.out.println("Absolute path: " + path);
+        System.out.println("Absolute path: " + Paths.get(logFilePath).toAbsolutePath());
         
         try {
-            if (!Files.exists(path)) {
-                System.out.println("Creating log file at: " + path);
-                Files.createDirectories(path.getParent());
-                //записывает данные напрямую в файл без использования буферов
-                try (BufferedWriter writer = Files.newBufferedWriter(path)) {
-                    writer.write("timestamp,action,userFirstName,userLastName,userRole,details");
-                    writer.newLine();
-                }
-            }
-            
-            try (BufferedReader reader = Files.newBufferedReader(path)) {
-                String header = reader.readLine();
-                if (header == null) {
-                    return loadedLogs;
-                }
-
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    String[] values = line.split(",", 6);
-                    if (values.length >= 6) {
-                        try {
-                            loadedLogs.add(new LogEntry(
-                                LocalDateTime.parse(values[0].trim(), DATE_FORMATTER),
-                                values[1].trim(),
-                                values[2].trim(),
-                                values[3].trim(),
-                                User.UserRole.valueOf(values[4].trim()),
-                                values[5].trim()
-                            ));
-                        } catch (Exception e) {
-                            System.err.println("Error parsing log entry: " + e.getMessage());
-                        }
-                    }
-                }
-            }
+            segments.open(tail::add);
         } catch (IOException e) {
             System.err.println("Error loading log file: " + e.getMessage());
             e.printStackTrace();
             throw new RuntimeException("Failed to load logs", e);
         }
-        return loadedLogs;
     }
 
-    private void saveLogs() {
-        if (logFilePath == null) {
-            throw new IllegalStateException("Log file path is null in saveLogs()");
-        }
-        
-        System.out.println("Saving logs to file: " + logFilePath);
-        Path path = Paths.get(logFilePath).toAbsolutePath();
-        System.out.println("Absolute path: " + path);
-        
+    public void setFlushMetrics(OperationMetrics flushMetrics) {
+        this.flushMetrics = flushMetrics;
+    }
+
+    private void appendLogs(List<LogEntry> entries) {
+        OperationMetrics metrics = flushMetrics;
+        long start = metrics != null ? System.nanoTime() : 0;
         try {
-            Files.createDirectories(path.getParent());// Создание директорий (если их нет)
-            
-            try (BufferedWriter writer = Files.newBufferedWriter(path)) {
-                writer.write("timestamp,action,userFirstName,userLastName,userRole,details");
-                writer.newLine();
-                
-                for (LogEntry log : logs) {
-                    writer.write(String.format("%s,%s,%s,%s,%s,%s",
-                        log.getTimestamp().format(DATE_FORMATTER),
-                        log.getAction(),
-                        log.getUserFirstName(),
-                        log.getUserLastName(),
-                        log.getUserRole(),
-                        log.getDetails()));
-                    writer.newLine();
-                }
+            segments.append(entries);
+            if (metrics != null) {
+                metrics.record(System.nanoTime() - start, false);
             }
         } catch (IOException e) {
-            System.err.println("Error saving log file: " + e.getMessage());
+            if (metrics != null) {
+                metrics.record(System.nanoTime() - start, true);
+            }
+            System.err.println("Error appending to log file: " + e.getMessage());
             e.printStackTrace();
             throw new RuntimeException("Failed to save logs", e);
         }
     }
 
-    @Override
-    public void logAction(String action, User user, String details) {
+    // Строка журнала в буфер кодировщика; поля с запятыми и кавычками берутся в кавычки
+    static CsvRowEncoder encodeLogLine(CsvRowEncoder row, LogEntry log) {
+        return row.field(log.getTimestamp())
+            .field(log.getAction())
+            .field(log.getUserFirstName())
+            .field(log.getUserLastName())
+            .field(log.getUserRole())
+            .field(log.getDetails());
+    }
+
+    // Разбор одной строки журнала; некорректные строки пропускаются (null)
+    static LogEntry parseLogLine(String line) {
+        String[] values = line.indexOf('"') < 0 ? line.split(",", 6) : CsvFiles.splitQuoted(line, 6);
+        if (values.length < 6) {
+            return null;
+        }
+        try {
+            return new LogEntry(
+                LocalDateTime.parse(values[0].trim(), DATE_FORMATTER),
+                values[1].trim(),
+                values[2].trim(),
+                values[3].trim(),
+                User.UserRole.valueOf(values[4].trim()),
+                values[5].trim()
+            );
+        } catch (Exception e) {
+            System.err.println("Error parsing log entry: " + e.getMessage());
+            return null;
+        }
+    }
+
+    static LogEntry createEntry(String action, User user, String details) {
         if (action == null || user == null) {
             throw new IllegalArgumentException("Action and user cannot be null");
         }
         
-        LogEntry logEntry = new LogEntry(
+        return new LogEntry(
             LocalDateTime.now(),
             action,
             user.getFirstName(),
@@ -139,13 +148,119 @@ public class LogServiceImpl implements LogService {
             user.getRole(),
             details != null ? details : ""
         );
-        logs.add(logEntry);
-        saveLogs();
+    }
+
+    @Override
+    public synchronized void logAction(String action, User user, String details) {
+        appendEntries(List.of(createEntry(action, user, details)));
+    }
+
+    @Override
+    public synchronized void logActions(String action, User user, List<String> details) {
+        List<LogEntry> entries = new ArrayList<>(details.size());
+        for (String detail : details) {
+            entries.add(createEntry(action, user, detail));
+        }
+        appendEntries(entries);
+    }
+
+    // Запись уже созданных записей одной пачкой; используется асинхронным логгером
+    public synchronized void appendEntries(List<LogEntry> entries) {
+        appendLogs(entries);
+        for (LogEntry entry : entries) {
+            tail.add(entry);
+        }
+    }
+
+    @Override
+    public synchronized void flush() {
+        try {
+            segments.flush();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to flush logs", e);
+        }
+    }
+
+    // Последние записи из памяти, без чтения диска
+    public synchronized List<LogEntry> getRecentLogs() {
+        return tail.toList();
+    }
+
+    @Override
+    public synchronized Stream<LogEntry> streamLogs(LocalDateTime from, LocalDateTime to) {
+        // хвост — последние по номеру записи журнала; диск не нужен, только если все записи до хвоста
+        // раньше from (метки времени могут идти не по порядку, поэтому проверяются сводки сегментов)
+        if (from != null) {
+            LocalDateTime beforeTail = segments.latestBefore(segments.nextSequence() - tail.size());
+            if (beforeTail == null || beforeTail.isBefore(from)) {
+                return tail.between(from, to).stream();
+            }
+        }
+        try {
+            return segments.stream(from, to);
+        } catch (IOException e) {
+            System.err.println("Error reading log segments: " + e.getMessage());
+            throw new RuntimeException("Failed to read logs", e);
+        }
+    }
+
+    @Override
+    public synchronized Page<LogEntry, Long> getLogsPage(Long after, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Page limit must be positive");
+        }
+        long next = segments.nextSequence();
+        long start = after == null ? 0 : after + 1;
+        // хвост — записи с номерами [next - tail.size(), next): чтение свежих записей не трогает диск
+        if (start >= next - tail.size()) {
+            List<LogEntry> items = tail.range((int) Math.min(start - (next - tail.size()), tail.size()), limit);
+            Long cursor = items.isEmpty() ? after : Long.valueOf(start + items.size() - 1);
+            return new Page<>(items, cursor, start + items.size() < next);
+        }
+        try {
+            return segments.page(after, limit);
+        } catch (IOException e) {
+            System.err.println("Error reading log segments: " + e.getMessage());
+            throw new RuntimeException("Failed to read logs", e);
+        }
+    }
+
+    @Override
+    public synchronized List<LogEntry> findLogs(String action, String userFirstName, String userLastName,
+                                                User.UserRole role, LocalDateTime from, LocalDateTime to) {
+        LogIndex.Query query = new LogIndex.Query(action, userFirstName, userLastName, role, from, to);
+        try {
+            return segments.query(query);
+        } catch (IOException e) {
+            System.err.println("Error reading log segments: " + e.getMessage());
+            throw new RuntimeException("Failed to query logs", e);
+        }
+    }
+
+    @Override
+    public List<LogEntry> findLogsByAction(String action) {
+        return findLogs(action, null, null, null, null, null);
+    }
+
+    @Override
+    public List<LogEntry> findLogsByUser(String userFirstName, String userLastName) {
+        return findLogs(null, userFirstName, userLastName, null, null, null);
+    }
+
+    @Override
+    public List<LogEntry> findLogsByRole(User.UserRole role) {
+        return findLogs(null, null, null, role, null, null);
     }
 
     @Override
     public List<LogEntry> getAllLogs() {
-        return new ArrayList<>(logs);
+        try (Stream<LogEntry> logs = streamLogs(null, null)) {
+            return logs.collect(Collectors.toList());
+        }
     }
-}
 
+    @Override
+    public synchronized void close() throws IOException {
+        segments.close();
+    }
+}
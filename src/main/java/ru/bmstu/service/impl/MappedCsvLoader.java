@@ -0,0 +1,549 @@
+package ru.bmstu.service.impl;
+
+import ru.bmstu.model.LogEntry;
+import ru.bmstu.model.Student;
+import ru.bmstu.model.User;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Supplier;
+
+/**
+ * Загрузчик CSV-файла студентов через отображение файла в память и разбор строк журнала из байтов.
+ * Поля разбираются прямо из байтов, без строки на каждую строку файла и без split:
+ * создаются только итоговые строки имён (повторяющиеся значения переиспользуются),
+ * числа и даты разбираются без промежуточных объектов.
+ * Большие файлы студентов делятся на куски по границам строк и разбираются параллельно в ForkJoinPool.
+ * Сегменты журнала читает построчно {@link LogSegments} (ему нужны смещения строк) тем же разбором
+ * из {@link #logLineParser()}.
+ * Некорректные строки обрабатываются так же, как в прежних загрузчиках на BufferedReader:
+ * строки с недостающими полями пропускаются молча, ошибки разбора печатаются в System.err.
+ */
+public final class MappedCsvLoader {
+    // Файлы больше этого размера по умолчанию разбираются параллельно
+    static final long PARALLEL_THRESHOLD_BYTES = 8L * 1024 * 1024;
+    private static final long MAX_CHUNK_BYTES = 64L * 1024 * 1024;
+    private static final long MIN_PARALLEL_CHUNK_BYTES = 1024 * 1024;
+    private static final byte[] STUDENTS_HEADER = "firstName,lastName,tokens".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] TEACHER = "TEACHER".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] STUDENT = "STUDENT".getBytes(StandardCharsets.US_ASCII);
+
+    private MappedCsvLoader() {
+    }
+
+    public static List<Student> readStudents(Path path) throws IOException {
+        return readStudents(path, shouldParallelize(path));
+    }
+
+    public static List<Student> readStudents(Path path, boolean parallel) throws IOException {
+        return read(path, parallel, StudentLineParser::new);
+    }
+
+    // Разбор строк журнала с кэшем строк и меток времени; один экземпляр — на один поток чтения
+    static LineParser<LogEntry> logLineParser() {
+        return new LogLineParser();
+    }
+
+    private static boolean shouldParallelize(Path path) throws IOException {
+        return Files.size(path) >= PARALLEL_THRESHOLD_BYTES
+            && Runtime.getRuntime().availableProcessors() > 1;
+    }
+
+    // Разбор одной строки [start, end) буфера; null — строка пропускается
+    interface LineParser<T> {
+        T parse(ByteBuffer buffer, int start, int end);
+    }
+
+    private static <T> List<T> read(Path path, boolean parallel, Supplier<LineParser<T>> parsers)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long headerEnd = nextLineStart(channel, 0, size);
+            if (size == 0) {
+                return new ArrayList<>();
+            }
+            if (!isStudentsHeader(channel, headerEnd)) {
+                return new ArrayList<>();
+            }
+            List<long[]> chunks = splitIntoChunks(channel, headerEnd, size, parallel);
+            if (parallel && chunks.size() > 1) {
+                return ForkJoinPool.commonPool().invoke(new ChunkTask<>(channel, chunks, 0, chunks.size(), parsers));
+            }
+            List<T> result = new ArrayList<>();
+            LineParser<T> parser = parsers.get();
+            for (long[] chunk : chunks) {
+                parseChunk(channel, chunk[0], chunk[1], parser, result);
+            }
+            return result;
+        }
+    }
+
+    private static boolean isStudentsHeader(FileChannel channel, long headerEnd) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate((int) Math.min(headerEnd, STUDENTS_HEADER.length + 2));
+        channel.read(header, 0);
+        int length = lineContentLength(header, header.position());
+        if (length != STUDENTS_HEADER.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (header.get(i) != STUDENTS_HEADER[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Длина строки без завершающих \r и \n
+    private static int lineContentLength(ByteBuffer buffer, int end) {
+        int length = 0;
+        while (length < end && buffer.get(length) != '\n' && buffer.get(length) != '\r') {
+            length++;
+        }
+        return length;
+    }
+
+    // Позиция начала строки, следующей за строкой, содержащей from
+    private static long nextLineStart(FileChannel channel, long from, long size) throws IOException {
+        ByteBuffer window = ByteBuffer.allocate(8192);
+        long position = from;
+        while (position < size) {
+            window.clear();
+            int read = channel.read(window, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                byte b = window.get(i);
+                if (b == '\n') {
+                    return position + i + 1;
+                }
+                if (b == '\r') {
+                    // \r\n — один перевод строки, одиночный \r тоже завершает строку
+                    if (i + 1 < read) {
+                        return position + i + (window.get(i + 1) == '\n' ? 2 : 1);
+                    }
+                    long next = position + i + 1;
+                    if (next < size) {
+                        ByteBuffer one = ByteBuffer.allocate(1);
+                        channel.read(one, next);
+                        return one.get(0) == '\n' ? next + 1 : next;
+                    }
+                    return next;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    private static List<long[]> splitIntoChunks(FileChannel channel, long from, long size, boolean parallel)
+            throws IOException {
+        long target = MAX_CHUNK_BYTES;
+        if (parallel) {
+            long perWorker = (size - from) / (ForkJoinPool.commonPool().getParallelism() * 4L);
+            target = Math.max(MIN_PARALLEL_CHUNK_BYTES, Math.min(MAX_CHUNK_BYTES, perWorker));
+        }
+        List<long[]> chunks = new ArrayList<>();
+        long start = from;
+        while (start < size) {
+            long end = start + target >= size ? size : nextLineStart(channel, start + target, size);
+            chunks.add(new long[]{start, end});
+            start = end;
+        }
+        return chunks;
+    }
+
+    // Отображение освобождается сборщиком мусора вместе с буфером: FileChannel.map с Arena снимал бы его сразу,
+    // но без флагов preview доступен только с Java 22
+    private static <T> void parseChunk(FileChannel channel, long start, long end, LineParser<T> parser,
+                                       List<T> result) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        int limit = buffer.limit();
+        int lineStart = 0;
+        int i = 0;
+        while (i < limit) {
+            byte b = buffer.get(i);
+            if (b == '\n' || b == '\r') {
+                add(result, parser.parse(buffer, lineStart, i));
+                i += (b == '\r' && i + 1 < limit && buffer.get(i + 1) == '\n') ? 2 : 1;
+                lineStart = i;
+            } else {
+                i++;
+            }
+        }
+        if (lineStart < limit) {
+            add(result, parser.parse(buffer, lineStart, limit));
+        }
+    }
+
+    private static boolean hasQuote(ByteBuffer buffer, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (buffer.get(i) == '"') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static <T> void add(List<T> result, T value) {
+        if (value != null) {
+            result.add(value);
+        }
+    }
+
+    private static final class ChunkTask<T> extends RecursiveTask<List<T>> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient FileChannel channel;
+        private final transient List<long[]> chunks;
+        private final int from;
+        private final int to;
+        private final transient Supplier<LineParser<T>> parsers;
+
+        ChunkTask(FileChannel channel, List<long[]> chunks, int from, int to, Supplier<LineParser<T>> parsers) {
+            this.channel = channel;
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+            this.parsers = parsers;
+        }
+
+        @Override
+        protected List<T> compute() {
+            if (to - from == 1) {
+                List<T> result = new ArrayList<>();
+                try {
+                    parseChunk(channel, chunks.get(from)[0], chunks.get(from)[1], parsers.get(), result);
+                } catch (IOException e) {
+                    throw new RuntimeException("Failed to read chunk", e);
+                }
+                return result;
+            }
+            int middle = (from + to) >>> 1;
+            ChunkTask<T> left = new ChunkTask<>(channel, chunks, from, middle, parsers);
+            left.fork();
+            List<T> right = new ChunkTask<>(channel, chunks, middle, to, parsers).compute();
+            List<T> result = left.join();
+            result.addAll(right);
+            return result;
+        }
+    }
+
+    // Границы полей строки: начало и конец каждого поля до maxFields, последнее поле — остаток строки
+    private static final class Fields {
+        final int[] starts;
+        final int[] ends;
+        int count;
+        // Число полей без завершающих пустых, как у String.split без лимита
+        int countWithoutTrailingEmpty;
+
+        Fields(int maxFields) {
+            starts = new int[maxFields];
+            ends = new int[maxFields];
+        }
+
+        void split(ByteBuffer buffer, int start, int end) {
+            int max = starts.length;
+            count = 0;
+            countWithoutTrailingEmpty = 0;
+            int fieldStart = start;
+            for (int i = start; i <= end; i++) {
+                boolean last = count == max - 1;
+                if (i == end || (!last && buffer.get(i) == ',')) {
+                    if (count < max) {
+                        starts[count] = fieldStart;
+                        ends[count] = last ? end : i;
+                    }
+                    count++;
+                    if (i > fieldStart) {
+                        countWithoutTrailingEmpty = count;
+                    }
+                    if (last) {
+                        break;
+                    }
+                    fieldStart = i + 1;
+                }
+            }
+        }
+
+        // Обрезка пробельных символов, как у String.trim
+        int trimmedStart(ByteBuffer buffer, int field) {
+            int s = starts[field];
+            while (s < ends[field] && (buffer.get(s) & 0xFF) <= ' ') {
+                s++;
+            }
+            return s;
+        }
+
+        int trimmedEnd(ByteBuffer buffer, int field) {
+            int s = starts[field];
+            int e = ends[field];
+            while (e > s && (buffer.get(e - 1) & 0xFF) <= ' ') {
+                e--;
+            }
+            return e;
+        }
+    }
+
+    /**
+     * Кэш строк по их байтам: одинаковые имена и действия в файле превращаются в один объект String.
+     * Прямое отображение по хешу, при коллизии запись просто заменяется.
+     */
+    private static final class StringCache {
+        private static final int SIZE = 4096;
+        private final byte[][] keys = new byte[SIZE][];
+        private final String[] values = new String[SIZE];
+        private byte[] scratch = new byte[256];
+
+        String get(ByteBuffer buffer, int start, int end) {
+            int length = end - start;
+            if (length == 0) {
+                return "";
+            }
+            if (scratch.length < length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            buffer.get(start, scratch, 0, length);
+            int hash = 1;
+            for (int i = 0; i < length; i++) {
+                hash = 31 * hash + scratch[i];
+            }
+            int slot = (hash ^ (hash >>> 16)) & (SIZE - 1);
+            byte[] key = keys[slot];
+            if (key != null && key.length == length && Arrays.equals(key, 0, length, scratch, 0, length)) {
+                return values[slot];
+            }
+            String value = new String(scratch, 0, length, StandardCharsets.UTF_8);
+            keys[slot] = Arrays.copyOf(scratch, length);
+            values[slot] = value;
+            return value;
+        }
+
+        String uncached(ByteBuffer buffer, int start, int end) {
+            byte[] bytes = new byte[end - start];
+            buffer.get(start, bytes, 0, bytes.length);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    // Строка студента: как split(",") + trim + Integer.parseInt в прежнем StudentServiceImpl
+    private static final class StudentLineParser implements LineParser<Student> {
+        private final Fields fields = new Fields(4);
+        private final StringCache strings = new StringCache();
+
+        @Override
+        public Student parse(ByteBuffer buffer, int start, int end) {
+            if (hasQuote(buffer, start, end)) {
+                return parseQuoted(strings.uncached(buffer, start, end));
+            }
+            fields.split(buffer, start, end);
+            // поле 3 забирает остаток строки, поэтому завершающие пустые поля в нём учитываем отдельно
+            int effective = Math.min(fields.countWithoutTrailingEmpty, 3);
+            if (fields.count > 3 && hasNonEmptyField(buffer, fields.starts[3], fields.ends[3])) {
+                effective = 4;
+            }
+            if (effective < 3) {
+                return null;
+            }
+            int tokensStart = fields.trimmedStart(buffer, 2);
+            int tokensEnd = fields.trimmedEnd(buffer, 2);
+            long tokens = parseInt(buffer, tokensStart, tokensEnd);
+            if (tokens == Long.MIN_VALUE) {
+                String text = strings.uncached(buffer, tokensStart, tokensEnd);
+                try {
+                    tokens = Integer.parseInt(text);
+                } catch (NumberFormatException e) {
+                    System.err.println("Error parsing student tokens: " + e.getMessage());
+                    return null;
+                }
+            }
+            return new Student(
+                strings.get(buffer, fields.trimmedStart(buffer, 0), fields.trimmedEnd(buffer, 0)),
+                strings.get(buffer, fields.trimmedStart(buffer, 1), fields.trimmedEnd(buffer, 1)),
+                (int) tokens);
+        }
+
+        // Поля в кавычках (имена с запятыми) — редкий случай, разбирается через строку
+        private static Student parseQuoted(String line) {
+            String[] values = CsvFiles.splitQuoted(line, 0);
+            if (values.length < 3) {
+                return null;
+            }
+            try {
+                return new Student(values[0].trim(), values[1].trim(), Integer.parseInt(values[2].trim()));
+            } catch (NumberFormatException e) {
+                System.err.println("Error parsing student tokens: " + e.getMessage());
+                return null;
+            }
+        }
+
+        private static boolean hasNonEmptyField(ByteBuffer buffer, int start, int end) {
+            // остаток вида ",,," даёт только пустые поля, которые split отбросил бы
+            for (int i = start; i < end; i++) {
+                if (buffer.get(i) != ',') {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    // Строка журнала: как split(",", 6) + trim + LocalDateTime.parse в прежнем LogServiceImpl
+    private static final class LogLineParser implements LineParser<LogEntry> {
+        private final Fields fields = new Fields(6);
+        private final StringCache strings = new StringCache();
+        // Подряд идущие записи обычно попадают в одну секунду: разобранное время переиспользуется
+        private final byte[] lastTimestamp = new byte[19];
+        private LocalDateTime lastParsed;
+
+        @Override
+        public LogEntry parse(ByteBuffer buffer, int start, int end) {
+            if (hasQuote(buffer, start, end)) {
+                return LogServiceImpl.parseLogLine(strings.uncached(buffer, start, end));
+            }
+            fields.split(buffer, start, end);
+            if (fields.count < 6) {
+                return null;
+            }
+            try {
+                return new LogEntry(
+                    parseTimestamp(buffer, fields.trimmedStart(buffer, 0), fields.trimmedEnd(buffer, 0)),
+                    strings.get(buffer, fields.trimmedStart(buffer, 1), fields.trimmedEnd(buffer, 1)),
+                    strings.get(buffer, fields.trimmedStart(buffer, 2), fields.trimmedEnd(buffer, 2)),
+                    strings.get(buffer, fields.trimmedStart(buffer, 3), fields.trimmedEnd(buffer, 3)),
+                    parseRole(buffer, fields.trimmedStart(buffer, 4), fields.trimmedEnd(buffer, 4)),
+                    strings.uncached(buffer, fields.trimmedStart(buffer, 5), fields.trimmedEnd(buffer, 5))
+                );
+            } catch (Exception e) {
+                System.err.println("Error parsing log entry: " + e.getMessage());
+                return null;
+            }
+        }
+
+        private LocalDateTime parseTimestamp(ByteBuffer buffer, int start, int end) {
+            int length = end - start;
+            if (length == lastTimestamp.length && lastParsed != null) {
+                boolean same = true;
+                for (int i = 0; i < length && same; i++) {
+                    same = buffer.get(start + i) == lastTimestamp[i];
+                }
+                if (same) {
+                    return lastParsed;
+                }
+            }
+            LocalDateTime parsed = parseTimestampFast(buffer, start, end);
+            if (parsed == null) {
+                // всё, что не прошло строгую проверку, разбирает прежний форматтер с его сообщениями об ошибках
+                parsed = LocalDateTime.parse(strings.uncached(buffer, start, end), LogServiceImpl.DATE_FORMATTER);
+            }
+            if (length == lastTimestamp.length) {
+                buffer.get(start, lastTimestamp, 0, length);
+                lastParsed = parsed;
+            }
+            return parsed;
+        }
+
+        // yyyy-MM-dd HH:mm:ss; null, если формат или значения не строго корректны
+        private static LocalDateTime parseTimestampFast(ByteBuffer buffer, int start, int end) {
+            if (end - start != 19
+                    || buffer.get(start + 4) != '-' || buffer.get(start + 7) != '-' || buffer.get(start + 10) != ' '
+                    || buffer.get(start + 13) != ':' || buffer.get(start + 16) != ':') {
+                return null;
+            }
+            int year = digits(buffer, start, 4);
+            int month = digits(buffer, start + 5, 2);
+            int day = digits(buffer, start + 8, 2);
+            int hour = digits(buffer, start + 11, 2);
+            int minute = digits(buffer, start + 14, 2);
+            int second = digits(buffer, start + 17, 2);
+            if (year < 1 || month < 1 || month > 12 || day < 1 || hour < 0 || hour > 23
+                    || minute < 0 || minute > 59 || second < 0 || second > 59
+                    || day > YearMonth.of(year, month).lengthOfMonth()) {
+                return null;
+            }
+            return LocalDateTime.of(year, month, day, hour, minute, second);
+        }
+
+        private static int digits(ByteBuffer buffer, int start, int count) {
+            int value = 0;
+            for (int i = 0; i < count; i++) {
+                int digit = buffer.get(start + i) - '0';
+                if (digit < 0 || digit > 9) {
+                    return -1;
+                }
+                value = value * 10 + digit;
+            }
+            return value;
+        }
+
+        private static User.UserRole parseRole(ByteBuffer buffer, int start, int end) {
+            if (matches(buffer, start, end, TEACHER)) {
+                return User.UserRole.TEACHER;
+            }
+            if (matches(buffer, start, end, STUDENT)) {
+                return User.UserRole.STUDENT;
+            }
+            byte[] bytes = new byte[end - start];
+            buffer.get(start, bytes, 0, bytes.length);
+            return User.UserRole.valueOf(new String(bytes, StandardCharsets.UTF_8));
+        }
+
+        private static boolean matches(ByteBuffer buffer, int start, int end, byte[] expected) {
+            if (end - start != expected.length) {
+                return false;
+            }
+            for (int i = 0; i < expected.length; i++) {
+                if (buffer.get(start + i) != expected[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Целое со знаком из ASCII-цифр; Long.MIN_VALUE, если нужен медленный путь через Integer.parseInt
+     * (пустая строка, посторонние символы, переполнение).
+     */
+    private static long parseInt(ByteBuffer buffer, int start, int end) {
+        if (start >= end) {
+            return Long.MIN_VALUE;
+        }
+        int i = start;
+        boolean negative = false;
+        byte first = buffer.get(i);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            i++;
+            if (i == end) {
+                return Long.MIN_VALUE;
+            }
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return Long.MIN_VALUE;
+            }
+            value = value * 10 + digit;
+            if (value > (long) Integer.MAX_VALUE + 1) {
+                return Long.MIN_VALUE;
+            }
+        }
+        value = negative ? -value : value;
+        return value < Integer.MIN_VALUE || value > Integer.MAX_VALUE ? Long.MIN_VALUE : value;
+    }
+}
@@ -0,0 +1,8 @@
+package ru.bmstu.service.impl;
+
+public enum MutationMode {
+    // Изменения выполняются в потоке вызывающего под полосами блокировок
+    LOCKING,
+    // Изменения выполняет один поток-писатель, сохранение и журнал действий — раз за цикл (EventLoopStudentService)
+    EVENT_LOOP
+}
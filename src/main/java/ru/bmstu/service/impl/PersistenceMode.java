@@ -0,0 +1,8 @@
+package ru.bmstu.service.impl;
+
+public enum PersistenceMode {
+    // Полная перезапись CSV на каждое изменение
+    SNAPSHOT,
+    // Дозапись изменений в журнал и периодическое сжатие в CSV-снимок
+    JOURNAL
+}
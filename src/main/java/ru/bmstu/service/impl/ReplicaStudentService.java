@@ -0,0 +1,343 @@
+package ru.bmstu.service.impl;
+
+import ru.bmstu.metrics.OperationMetrics;
+import ru.bmstu.model.Page;
+import ru.bmstu.model.Student;
+import ru.bmstu.model.StudentKey;
+import ru.bmstu.model.TokenStatistics;
+import ru.bmstu.model.User;
+import ru.bmstu.service.StudentService;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Реплика только для чтения: подключается к основному экземпляру, получает снимок и поток изменений
+ * и применяет их к своему снимку в памяти. Пачка изменений основного экземпляра публикуется целиком:
+ * снимок и рейтинг меняются под одним монитором applied, под которым же читается рейтинг.
+ * При обрыве соединения переподключается и продолжает с последнего применённого номера.
+ * Изменения через реплику запрещены.
+ */
+public class ReplicaStudentService implements StudentService, Closeable {
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+    // Несколько пропущенных heartbeat подряд — соединение считается потерянным
+    private static final int READ_TIMEOUT_MILLIS = 10_000;
+    private static final long RECONNECT_DELAY_MILLIS = 500;
+
+    private final InetSocketAddress primary;
+    private volatile StudentSnapshot snapshot = StudentSnapshot.EMPTY;
+    private final Object applied = new Object();
+    // Меняется и читается только под applied вместе со snapshot
+    private TokenLeaderboard leaderboard = new TokenLeaderboard();
+    private volatile long epoch;
+    private volatile long appliedSequence = -1;
+    private volatile long primarySequence = -1;
+    private volatile boolean connected;
+    private volatile boolean closed;
+    private volatile Socket socket;
+    private Thread receiver;
+    // Задержка от фиксации изменения на основном экземпляре до его применения; null — не измеряется
+    private volatile OperationMetrics lagMetrics;
+
+    public ReplicaStudentService(String primaryHost, int primaryPort) {
+        this.primary = new InetSocketAddress(primaryHost, primaryPort);
+    }
+
+    public void setLagMetrics(OperationMetrics lagMetrics) {
+        this.lagMetrics = lagMetrics;
+    }
+
+    public synchronized void start() {
+        if (receiver != null) {
+            return;
+        }
+        System.out.println("Starting replica of " + primary.getHostString() + ":" + primary.getPort());
+        receiver = new Thread(this::receiveLoop, "replica-receiver");
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    public long getAppliedSequence() {
+        return appliedSequence;
+    }
+
+    // Отставание в изменениях от последнего известного номера основного экземпляра
+    public long getSequenceLag() {
+        return Math.max(0, primarySequence - appliedSequence);
+    }
+
+    // Ждёт применения изменения с номером sequence
+    public boolean awaitSequence(long sequence, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (applied) {
+            while (appliedSequence < sequence) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(applied, remaining);
+            }
+            return true;
+        }
+    }
+
+    private void receiveLoop() {
+        while (!closed) {
+            try (Socket s = new Socket()) {
+                s.connect(primary, CONNECT_TIMEOUT_MILLIS);
+                s.setSoTimeout(READ_TIMEOUT_MILLIS);
+                s.setTcpNoDelay(true);
+                socket = s;
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+                out.writeLong(epoch);
+                out.writeLong(appliedSequence);
+                out.flush();
+                connected = true;
+                System.out.println("Connected to primary, last applied " + appliedSequence);
+                receive(new DataInputStream(new BufferedInputStream(s.getInputStream())));
+            } catch (IOException e) {
+                if (!closed) {
+                    System.err.println("Replication connection lost: " + e.getMessage());
+                }
+            } finally {
+                connected = false;
+            }
+            if (!closed) {
+                try {
+                    Thread.sleep(RECONNECT_DELAY_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void receive(DataInputStream in) throws IOException {
+        // незавершённая пачка: при обрыве отбрасывается и придёт заново
+        StudentSnapshot working = snapshot;
+        List<Student[]> leaderboardChanges = new ArrayList<>();
+        List<ReplicationLog.Mutation> batch = new ArrayList<>();
+        long expected = appliedSequence + 1;
+        while (!closed) {
+            byte frame = in.readByte();
+            switch (frame) {
+                case ReplicationFrames.SNAPSHOT -> {
+                    long snapshotEpoch = in.readLong();
+                    long sequence = in.readLong();
+                    List<Student> students = ReplicationFrames.readSnapshotStudents(in);
+                    working = StudentSnapshot.of(students);
+                    TokenLeaderboard rebuilt = new TokenLeaderboard();
+                    rebuilt.rebuild(students);
+                    leaderboardChanges.clear();
+                    batch.clear();
+                    epoch = snapshotEpoch;
+                    primarySequence = Math.max(primarySequence, sequence);
+                    synchronized (applied) {
+                        leaderboard = rebuilt;
+                        publish(working, sequence);
+                    }
+                    expected = sequence + 1;
+                    System.out.println("Loaded replication snapshot: " + students.size()
+                        + " students at sequence " + sequence);
+                }
+                case ReplicationFrames.MUTATION -> {
+                    ReplicationLog.Mutation mutation = ReplicationFrames.readMutation(in);
+                    if (mutation.sequence() != expected) {
+                        throw new IOException("Replication stream gap: expected " + expected
+                            + ", got " + mutation.sequence());
+                    }
+                    expected++;
+                    working = apply(working, mutation, leaderboardChanges);
+                    batch.add(mutation);
+                    primarySequence = Math.max(primarySequence, mutation.sequence());
+                    if (mutation.endOfBatch()) {
+                        // задержка записывается до публикации: ждущий номер уже видит её в метриках
+                        recordLag(batch);
+                        batch.clear();
+                        synchronized (applied) {
+                            for (Student[] change : leaderboardChanges) {
+                                leaderboard.replace(change[0], change[1]);
+                            }
+                            publish(working, mutation.sequence());
+                        }
+                        leaderboardChanges.clear();
+                    }
+                }
+                case ReplicationFrames.HEARTBEAT -> {
+                    primarySequence = Math.max(primarySequence, in.readLong());
+                    in.readLong();
+                }
+                default -> throw new IOException("Unknown replication frame: " + frame);
+            }
+        }
+    }
+
+    private static StudentSnapshot apply(StudentSnapshot state, ReplicationLog.Mutation mutation,
+                                         List<Student[]> leaderboardChanges) throws IOException {
+        StudentKey key = new StudentKey(mutation.firstName(), mutation.lastName());
+        Student previous = state.get(key);
+        switch (mutation.type()) {
+            case ADD -> {
+                Student added = new Student(key.firstName(), key.lastName(), mutation.value());
+                leaderboardChanges.add(new Student[]{previous, added});
+                return state.with(added);
+            }
+            case REMOVE -> {
+                if (previous == null) {
+                    throw new IOException("Replicated removal of unknown student: " + key);
+                }
+                leaderboardChanges.add(new Student[]{previous, null});
+                return state.without(key);
+            }
+            default -> {
+                if (previous == null) {
+                    throw new IOException("Replicated token update of unknown student: " + key);
+                }
+                Student updated = new Student(key.firstName(), key.lastName(), previous.getTokens() + mutation.value());
+                leaderboardChanges.add(new Student[]{previous, updated});
+                return state.with(updated);
+            }
+        }
+    }
+
+    // Вызывается под applied
+    private void publish(StudentSnapshot state, long sequence) {
+        snapshot = state;
+        appliedSequence = sequence;
+        applied.notifyAll();
+    }
+
+    private void recordLag(List<ReplicationLog.Mutation> batch) {
+        OperationMetrics metrics = lagMetrics;
+        if (metrics == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (ReplicationLog.Mutation mutation : batch) {
+            metrics.record(TimeUnit.MILLISECONDS.toNanos(Math.max(0, now - mutation.timestampMillis())), false);
+        }
+    }
+
+    private static UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("Replica is read-only; send changes to the primary");
+    }
+
+    @Override
+    public List<Student> getAllStudents() {
+        return snapshot.copies();
+    }
+
+    @Override
+    public Student findStudent(String firstName, String lastName) {
+        return snapshot.find(new StudentKey(firstName, lastName));
+    }
+
+    @Override
+    public Stream<Student> streamStudents() {
+        return snapshot.stream();
+    }
+
+    @Override
+    public Page<Student, StudentKey> getStudentsPage(StudentKey after, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Page limit must be positive");
+        }
+        return snapshot.page(after, limit);
+    }
+
+    @Override
+    public List<Student> getTopStudents(int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("Number of students cannot be negative");
+        }
+        synchronized (applied) {
+            return leaderboard.top(n);
+        }
+    }
+
+    @Override
+    public int getRank(String firstName, String lastName) {
+        synchronized (applied) {
+            Student student = findStudent(firstName, lastName);
+            if (student == null) {
+                throw new IllegalArgumentException("Student not found: " + firstName + " " + lastName);
+            }
+            return leaderboard.rank(student.getTokens());
+        }
+    }
+
+    @Override
+    public List<Student> findStudentsByTokens(int minTokens, int maxTokens) {
+        if (minTokens > maxTokens) {
+            throw new IllegalArgumentException("Min tokens cannot be greater than max tokens");
+        }
+        synchronized (applied) {
+            return leaderboard.range(minTokens, maxTokens);
+        }
+    }
+
+    @Override
+    public TokenStatistics getTokenStatistics() {
+        synchronized (applied) {
+            return leaderboard.statistics();
+        }
+    }
+
+    @Override
+    public void addStudent(User user, Student student) {
+        throw readOnly();
+    }
+
+    @Override
+    public void removeStudent(String firstName, String lastName, User user) {
+        throw readOnly();
+    }
+
+    @Override
+    public void expelStudent(User user, String firstName, String lastName) {
+        throw readOnly();
+    }
+
+    @Override
+    public Student updateTokens(String firstName, String lastName, int amount, User user) {
+        throw readOnly();
+    }
+
+    @Override
+    public void addStudents(User user, List<Student> students) {
+        throw readOnly();
+    }
+
+    @Override
+    public void removeStudents(List<StudentKey> keys, User user) {
+        throw readOnly();
+    }
+
+    @Override
+    public void updateTokensBatch(Map<StudentKey, Integer> amounts, User user) {
+        throw readOnly();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        Socket current = socket;
+        if (current != null) {
+            current.close();
+        }
+        Thread thread = receiver;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package ru.bmstu.service.impl;
+
+import ru.bmstu.model.Student;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Кадры протокола репликации. Реплика после подключения отправляет эпоху и номер последнего
+ * применённого изменения; дальше основной экземпляр шлёт кадры:
+ * SNAPSHOT (эпоха, номер, студенты), MUTATION (одно изменение) и HEARTBEAT (последний номер и время)
+ * в простое, чтобы реплика видела отставание и обрыв соединения.
+ */
+final class ReplicationFrames {
+    static final byte SNAPSHOT = 'S';
+    static final byte MUTATION = 'M';
+    static final byte HEARTBEAT = 'H';
+
+    private ReplicationFrames() {
+    }
+
+    static void writeSnapshot(DataOutputStream out, ReplicationLog.Checkpoint checkpoint) throws IOException {
+        out.writeByte(SNAPSHOT);
+        out.writeLong(checkpoint.epoch());
+        out.writeLong(checkpoint.sequence());
+        out.writeInt(checkpoint.students().size());
+        for (Student student : checkpoint.students()) {
+            out.writeUTF(student.getFirstName());
+            out.writeUTF(student.getLastName());
+            out.writeInt(student.getTokens());
+        }
+    }
+
+    static List<Student> readSnapshotStudents(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<Student> students = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            students.add(new Student(in.readUTF(), in.readUTF(), in.readInt()));
+        }
+        return students;
+    }
+
+    static void writeMutation(DataOutputStream out, ReplicationLog.Mutation mutation) throws IOException {
+        out.writeByte(MUTATION);
+        out.writeLong(mutation.sequence());
+        out.writeLong(mutation.timestampMillis());
+        out.writeByte(mutation.type().ordinal());
+        out.writeUTF(mutation.firstName());
+        out.writeUTF(mutation.lastName());
+        out.writeInt(mutation.value());
+        out.writeBoolean(mutation.endOfBatch());
+    }
+
+    static ReplicationLog.Mutation readMutation(DataInputStream in) throws IOException {
+        long sequence = in.readLong();
+        long timestamp = in.readLong();
+        int type = in.readUnsignedByte();
+        if (type >= ReplicationLog.Type.values().length) {
+            throw new IOException("Unknown mutation type: " + type);
+        }
+        return new ReplicationLog.Mutation(sequence, timestamp, ReplicationLog.Type.values()[type],
+            in.readUTF(), in.readUTF(), in.readInt(), in.readBoolean());
+    }
+
+    static void writeHeartbeat(DataOutputStream out, long lastSequence) throws IOException {
+        out.writeByte(HEARTBEAT);
+        out.writeLong(lastSequence);
+        out.writeLong(System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,138 @@
+package ru.bmstu.service.impl;
+
+import ru.bmstu.model.Student;
+import ru.bmstu.model.StudentKey;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Упорядоченный поток изменений основного экземпляра для реплик. Изменения получают сквозные номера
+ * в том же критическом участке, где публикуется новый снимок студентов, поэтому снимок и номер
+ * последнего вошедшего в него изменения всегда согласованы. Последние изменения хранятся
+ * в кольцевом буфере: отставшая реплика догоняет по нему, а выпавшая из буфера получает снимок целиком.
+ */
+public class ReplicationLog {
+
+    public enum Type {
+        ADD,
+        REMOVE,
+        // value — изменение числа жетонов
+        TOKENS
+    }
+
+    // endOfBatch отмечает последнее изменение пачки: реплика публикует пачку целиком
+    public record Mutation(long sequence, long timestampMillis, Type type, String firstName, String lastName,
+                           int value, boolean endOfBatch) {
+
+        static Mutation added(Student student) {
+            return new Mutation(0, 0, Type.ADD, student.getFirstName(), student.getLastName(), student.getTokens(), false);
+        }
+
+        static Mutation removed(StudentKey key) {
+            return new Mutation(0, 0, Type.REMOVE, key.firstName(), key.lastName(), 0, false);
+        }
+
+        static Mutation tokens(StudentKey key, int amount) {
+            return new Mutation(0, 0, Type.TOKENS, key.firstName(), key.lastName(), amount, false);
+        }
+    }
+
+    // Состояние после изменения с номером sequence
+    record Checkpoint(long epoch, long sequence, StudentSnapshot students) {
+    }
+
+    // Отличает запуски основного экземпляра: номера изменений разных запусков несравнимы
+    private final long epoch = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+    private final int capacity;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition appended = lock.newCondition();
+    private Mutation[] ring;
+    private long lastSequence;
+    private StudentSnapshot state = StudentSnapshot.EMPTY;
+
+    public ReplicationLog(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Replication backlog size must be positive");
+        }
+        this.capacity = capacity;
+    }
+
+    long epoch() {
+        return epoch;
+    }
+
+    void start(StudentSnapshot initial) {
+        lock.lock();
+        try {
+            ring = new Mutation[capacity];
+            state = initial;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Вызывается под блокировкой публикации StudentServiceImpl в порядке публикации снимков
+    void append(List<Mutation> mutations, StudentSnapshot after) {
+        long now = System.currentTimeMillis();
+        lock.lock();
+        try {
+            for (int i = 0; i < mutations.size(); i++) {
+                Mutation m = mutations.get(i);
+                long sequence = ++lastSequence;
+                ring[(int) (sequence % capacity)] = new Mutation(sequence, now, m.type(), m.firstName(),
+                    m.lastName(), m.value(), i == mutations.size() - 1);
+            }
+            state = after;
+            appended.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Не более max изменений с номерами после after; если новых нет, ждёт до timeoutMillis
+     * и возвращает пустой список. null — изменений после after в буфере уже нет, нужен снимок.
+     */
+    List<Mutation> read(long after, int max, long timeoutMillis) throws InterruptedException {
+        lock.lock();
+        try {
+            if (after == lastSequence) {
+                appended.await(timeoutMillis, TimeUnit.MILLISECONDS);
+            }
+            if (after < lastSequence - capacity || after > lastSequence) {
+                return null;
+            }
+            int count = (int) Math.min(max, lastSequence - after);
+            List<Mutation> result = new ArrayList<>(count);
+            for (long sequence = after + 1; sequence <= after + count; sequence++) {
+                result.add(ring[(int) (sequence % capacity)]);
+            }
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    Checkpoint checkpoint() {
+        lock.lock();
+        try {
+            return new Checkpoint(epoch, lastSequence, state);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getLastSequence() {
+        lock.lock();
+        try {
+            return lastSequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
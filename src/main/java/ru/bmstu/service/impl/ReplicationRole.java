@@ -0,0 +1,10 @@
+package ru.bmstu.service.impl;
+
+public enum ReplicationRole {
+    // Без репликации
+    NONE,
+    // Хранит данные и рассылает поток изменений репликам
+    PRIMARY,
+    // Только чтение: состояние строится из снимка и потока изменений основного экземпляра
+    REPLICA
+}
@@ -0,0 +1,120 @@
+package ru.bmstu.service.impl;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Рассылка потока изменений репликам по TCP. Для каждой реплики отдельный виртуальный поток:
+ * если её последнее изменение ещё в буфере ReplicationLog, досылается хвост, иначе (новая реплика,
+ * другой запуск основного экземпляра, слишком большое отставание) — снимок, затем поток с номера снимка.
+ */
+public class ReplicationServer implements Closeable {
+    private static final int BATCH_SIZE = 512;
+    private static final long HEARTBEAT_MILLIS = 1000;
+
+    private final ReplicationLog log;
+    private final InetSocketAddress address;
+    private final Set<Socket> replicas = ConcurrentHashMap.newKeySet();
+    private ServerSocket serverSocket;
+    private volatile boolean closed;
+
+    public ReplicationServer(ReplicationLog log, String host, int port) {
+        if (log == null) {
+            throw new IllegalArgumentException("ReplicationLog cannot be null");
+        }
+        this.log = log;
+        this.address = new InetSocketAddress(host, port);
+    }
+
+    public synchronized void start() throws IOException {
+        if (serverSocket != null) {
+            return;
+        }
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(address);
+        Thread acceptor = new Thread(this::acceptLoop, "replication-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        System.out.println("Replication primary listening on " + address.getHostString() + ":" + getPort());
+    }
+
+    public synchronized int getPort() {
+        return serverSocket != null ? serverSocket.getLocalPort() : address.getPort();
+    }
+
+    public int getReplicaCount() {
+        return replicas.size();
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                replicas.add(socket);
+                Thread.ofVirtual().name("replication-ship-" + socket.getPort()).start(() -> ship(socket));
+            } catch (IOException e) {
+                if (!closed) {
+                    System.err.println("Error accepting replica connection: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void ship(Socket socket) {
+        String replica = socket.getRemoteSocketAddress().toString();
+        try (socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+            long replicaEpoch = in.readLong();
+            long after = in.readLong();
+            if (replicaEpoch != log.epoch()) {
+                after = -1;
+            }
+            System.out.println("Replica connected: " + replica + ", last applied " + after);
+            while (!closed) {
+                List<ReplicationLog.Mutation> batch = after < 0 ? null : log.read(after, BATCH_SIZE, HEARTBEAT_MILLIS);
+                if (batch == null) {
+                    ReplicationLog.Checkpoint checkpoint = log.checkpoint();
+                    System.out.println("Sending snapshot to " + replica + " at sequence " + checkpoint.sequence());
+                    ReplicationFrames.writeSnapshot(out, checkpoint);
+                    after = checkpoint.sequence();
+                } else if (batch.isEmpty()) {
+                    ReplicationFrames.writeHeartbeat(out, after);
+                } else {
+                    for (ReplicationLog.Mutation mutation : batch) {
+                        ReplicationFrames.writeMutation(out, mutation);
+                    }
+                    after = batch.get(batch.size() - 1).sequence();
+                }
+                out.flush();
+            }
+        } catch (EOFException | SocketException e) {
+            System.out.println("Replica disconnected: " + replica);
+        } catch (IOException e) {
+            System.err.println("Error shipping mutations to " + replica + ": " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            replicas.remove(socket);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        if (serverSocket != null) {
+            serverSocket.close();
+        }
+        for (Socket socket : replicas) {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package ru.bmstu.service.impl;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+/**
+ * Упорядоченный индекс ячеек {@link CompactStudentStore}: декартово дерево (treap), узел которого — сама ячейка.
+ * Потомки, размер поддерева и приоритет лежат в массивах int по номеру ячейки (16 байт на ячейку),
+ * объектов-узлов и ссылок на Student нет. Вставка, удаление, поиск позиции и первые N — O(log n + N).
+ * Порядок задаёт владелец; ключ ячейки, которая в дереве, менять нельзя: сначала remove, затем insert.
+ * Класс не потокобезопасен: синхронизацию обеспечивает владелец.
+ */
+final class SlotTreap {
+    private static final int NONE = -1;
+
+    // order.applyAsInt(a, b) < 0 — ячейка a раньше b; 0 только для одной и той же ячейки
+    private final IntBinaryOperator order;
+    private final SplittableRandom random = new SplittableRandom(42);
+    private int[] left = new int[0];
+    private int[] right = new int[0];
+    private int[] sizes = new int[0];
+    private int[] priorities = new int[0];
+    private int root = NONE;
+
+    SlotTreap(IntBinaryOperator order) {
+        this.order = order;
+    }
+
+    int size() {
+        return size(root);
+    }
+
+    private int size(int node) {
+        return node == NONE ? 0 : sizes[node];
+    }
+
+    private int update(int node) {
+        sizes[node] = 1 + size(left[node]) + size(right[node]);
+        return node;
+    }
+
+    private void ensureCapacity(int slot) {
+        if (slot >= left.length) {
+            int capacity = Math.max(16, Math.max(slot + 1, left.length * 2));
+            left = Arrays.copyOf(left, capacity);
+            right = Arrays.copyOf(right, capacity);
+            sizes = Arrays.copyOf(sizes, capacity);
+            priorities = Arrays.copyOf(priorities, capacity);
+        }
+    }
+
+    private void init(int slot) {
+        ensureCapacity(slot);
+        left[slot] = NONE;
+        right[slot] = NONE;
+        sizes[slot] = 1;
+        priorities[slot] = random.nextInt();
+    }
+
+    /**
+     * Строит дерево заново по ячейкам, уже упорядоченным владельцем, за O(n): стек правого края
+     * декартова дерева вместо n вставок со сравнениями.
+     */
+    void build(int[] sorted) {
+        int[] stack = new int[sorted.length];
+        int top = 0;
+        for (int slot : sorted) {
+            init(slot);
+            int last = NONE;
+            while (top > 0 && priorities[stack[top - 1]] < priorities[slot]) {
+                last = stack[--top];
+            }
+            left[slot] = last;
+            if (top > 0) {
+                right[stack[top - 1]] = slot;
+            }
+            stack[top++] = slot;
+        }
+        root = top > 0 ? stack[0] : NONE;
+        if (root != NONE) {
+            updateSizes(root);
+        }
+    }
+
+    private int updateSizes(int node) {
+        sizes[node] = 1 + (left[node] == NONE ? 0 : updateSizes(left[node]))
+            + (right[node] == NONE ? 0 : updateSizes(right[node]));
+        return sizes[node];
+    }
+
+    void insert(int slot) {
+        init(slot);
+        root = insert(root, slot);
+    }
+
+    private int insert(int node, int slot) {
+        if (node == NONE) {
+            return slot;
+        }
+        if (order.applyAsInt(slot, node) < 0) {
+            left[node] = insert(left[node], slot);
+            if (priorities[left[node]] > priorities[node]) {
+                node = rotateRight(node);
+            }
+        } else {
+            right[node] = insert(right[node], slot);
+            if (priorities[right[node]] > priorities[node]) {
+                node = rotateLeft(node);
+            }
+        }
+        return update(node);
+    }
+
+    void remove(int slot) {
+        root = delete(root, slot);
+    }
+
+    private int delete(int node, int slot) {
+        if (node == NONE) {
+            return NONE;
+        }
+        int cmp = order.applyAsInt(slot, node);
+        if (cmp < 0) {
+            left[node] = delete(left[node], slot);
+        } else if (cmp > 0) {
+            right[node] = delete(right[node], slot);
+        } else {
+            return merge(left[node], right[node]);
+        }
+        return update(node);
+    }
+
+    private int merge(int a, int b) {
+        if (a == NONE) {
+            return b;
+        }
+        if (b == NONE) {
+            return a;
+        }
+        if (priorities[a] > priorities[b]) {
+            right[a] = merge(right[a], b);
+            return update(a);
+        }
+        left[b] = merge(a, left[b]);
+        return update(b);
+    }
+
+    private int rotateRight(int node) {
+        int pivot = left[node];
+        left[node] = right[pivot];
+        right[pivot] = update(node);
+        return update(pivot);
+    }
+
+    private int rotateLeft(int node) {
+        int pivot = right[node];
+        right[node] = left[pivot];
+        left[pivot] = update(node);
+        return update(pivot);
+    }
+
+    /**
+     * Переносит узел from в ячейку to без перестройки дерева: хранилище переносит последнюю ячейку
+     * на место удалённой. Вызывается, пока ключ from ещё читается по номеру from, а to в дереве нет.
+     */
+    void move(int from, int to) {
+        ensureCapacity(to);
+        left[to] = left[from];
+        right[to] = right[from];
+        sizes[to] = sizes[from];
+        priorities[to] = priorities[from];
+        if (root == from) {
+            root = to;
+            return;
+        }
+        int node = root;
+        while (true) {
+            if (order.applyAsInt(from, node) < 0) {
+                if (left[node] == from) {
+                    left[node] = to;
+                    return;
+                }
+                node = left[node];
+            } else {
+                if (right[node] == from) {
+                    right[node] = to;
+                    return;
+                }
+                node = right[node];
+            }
+        }
+    }
+
+    // Первая и последняя ячейки порядка; -1 для пустого дерева
+    int first() {
+        int node = root;
+        while (node != NONE && left[node] != NONE) {
+            node = left[node];
+        }
+        return node;
+    }
+
+    int last() {
+        int node = root;
+        while (node != NONE && right[node] != NONE) {
+            node = right[node];
+        }
+        return node;
+    }
+
+    // Число ячеек в начале порядка, для которых before истинно; before должно быть монотонно по порядку
+    int countWhile(IntPredicate before) {
+        int count = 0;
+        int node = root;
+        while (node != NONE) {
+            if (before.test(node)) {
+                count += size(left[node]) + 1;
+                node = right[node];
+            } else {
+                node = left[node];
+            }
+        }
+        return count;
+    }
+
+    // Ячейки с позициями [from, to) по порядку
+    void forEach(int from, int to, IntConsumer action) {
+        forEach(root, 0, Math.max(from, 0), Math.min(to, size()), action);
+    }
+
+    private void forEach(int node, int offset, int from, int to, IntConsumer action) {
+        if (node == NONE || from >= to) {
+            return;
+        }
+        int position = offset + size(left[node]);
+        if (from < position) {
+            forEach(left[node], offset, from, to, action);
+        }
+        if (from <= position && position < to) {
+            action.accept(node);
+        }
+        if (position + 1 < to) {
+            forEach(right[node], position + 1, from, to, action);
+        }
+    }
+
+    long footprintBytes() {
+        return 16L * left.length;
+    }
+}
@@ -0,0 +1,23 @@
+package ru.bmstu.service.impl;
+
+import ru.bmstu.service.StudentRepository;
+
+public enum StorageFormat {
+    // Текстовый CSV: firstName,lastName,tokens
+    CSV,
+    // Двоичный файл: имена с префиксом длины, жетоны фиксированной ширины, контрольная сумма
+    BINARY;
+
+    // Формат по расширению файла: .bin — двоичный, остальное — CSV
+    public static StorageFormat forPath(String path) {
+        return path.toLowerCase().endsWith(".bin") ? BINARY : CSV;
+    }
+
+    public StudentRepository repository(String path) {
+        return repository(path, Durability.NONE);
+    }
+
+    public StudentRepository repository(String path, Durability durability) {
+        return this == BINARY ? new BinaryStudentRepository(path, durability) : new CsvStudentRepository(path, durability);
+    }
+}
@@ -0,0 +1,8 @@
+package ru.bmstu.service.impl;
+
+public enum StoreLayout {
+    // Объект Student на каждого студента в хеш-таблице (StudentServiceImpl)
+    OBJECTS,
+    // Массивы int и общий словарь имён (CompactStudentServiceImpl)
+    COMPACT
+}
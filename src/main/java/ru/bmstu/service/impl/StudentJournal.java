@@ -0,0 +1,243 @@
+package ru.bmstu.service.impl;
+
+import ru.bmstu.model.Student;
+import ru.bmstu.model.StudentKey;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Журнал изменений студентов: каждая операция дописывается одной строкой,
+ * при старте журнал проигрывается поверх последнего CSV-снимка.
+ * Когда журнал превышает порог, он откладывается в файл .old, а фоновый поток
+ * записывает свежий снимок и удаляет отложенный журнал.
+ */
+public class StudentJournal implements Closeable {
+    private static final String ADD = "ADD";
+    private static final String REMOVE = "REMOVE";
+    private static final String TOKENS = "TOKENS";
+
+    @FunctionalInterface
+    public interface SnapshotWriter {
+        void write(List<Student> students) throws IOException;
+    }
+
+    private final Path journalPath;
+    private final Path rotatedPath;
+    private final long compactionThresholdBytes;
+    private final ExecutorService compactor;
+    private final GroupCommit groupCommit;
+    // Буфер строки записи; журнал пишется под блокировкой своей части
+    private final CsvRowEncoder row = new CsvRowEncoder();
+    private BufferedWriter writer;
+    private long journalBytes;
+    private volatile boolean compacting;
+
+    public StudentJournal(String journalFilePath, long compactionThresholdBytes) {
+        this(journalFilePath, compactionThresholdBytes, Durability.NONE, 0);
+    }
+
+    public StudentJournal(String journalFilePath, long compactionThresholdBytes,
+                          Durability durability, long batchIntervalMillis) {
+        if (journalFilePath == null || journalFilePath.trim().isEmpty()) {
+            throw new IllegalArgumentException("Journal file path cannot be null or empty");
+        }
+        if (compactionThresholdBytes <= 0) {
+            throw new IllegalArgumentException("Compaction threshold must be positive");
+        }
+        this.journalPath = Paths.get(journalFilePath).toAbsolutePath();
+        this.rotatedPath = Paths.get(journalFilePath + ".old").toAbsolutePath();
+        this.compactionThresholdBytes = compactionThresholdBytes;
+        this.groupCommit = new GroupCommit(durability, batchIntervalMillis);
+        this.compactor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "student-journal-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Проигрывает незавершённое сжатие (.old) и текущий журнал поверх загруженного снимка
+    public void replay(Map<StudentKey, Student> students) throws IOException {
+        System.out.println("Replaying student journal: " + journalPath);
+        replayFile(rotatedPath, students);
+        replayFile(journalPath, students);
+        journalBytes = Files.exists(journalPath) ? Files.size(journalPath) : 0;
+    }
+
+    private void replayFile(Path path, Map<StudentKey, Student> students) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        if (CsvFiles.truncateTornTail(path)) {
+            System.err.println("Discarding torn journal record in " + path);
+        }
+        try (BufferedReader reader = Files.newBufferedReader(path)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                applyRecord(line, students);
+            }
+        }
+    }
+
+    private void applyRecord(String line, Map<StudentKey, Student> students) {
+        String[] values = line.indexOf('"') < 0 ? line.split(",") : CsvFiles.splitQuoted(line, 0);
+        try {
+            switch (values[0]) {
+                case ADD -> {
+                    Student student = new Student(values[1], values[2], Integer.parseInt(values[3]));
+                    students.put(StudentKey.of(student), student);
+                }
+                case REMOVE -> students.remove(new StudentKey(values[1], values[2]));
+                case TOKENS -> {
+                    Student student = students.get(new StudentKey(values[1], values[2]));
+                    if (student != null) {
+                        student.setTokens(Integer.parseInt(values[3]));
+                    }
+                }
+                default -> System.err.println("Unknown journal record: " + line);
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Error parsing journal record: " + e.getMessage());
+        }
+    }
+
+    public void recordAdded(Student student) {
+        append(row.reset().field(ADD).field(student.getFirstName()).field(student.getLastName()).field(student.getTokens()));
+    }
+
+    public void recordRemoved(String firstName, String lastName) {
+        append(row.reset().field(REMOVE).field(firstName).field(lastName));
+    }
+
+    public void recordTokens(Student student) {
+        append(row.reset().field(TOKENS).field(student.getFirstName()).field(student.getLastName()).field(student.getTokens()));
+    }
+
+    private void append(CsvRowEncoder record) {
+        try {
+            if (writer == null) {
+                Files.createDirectories(journalPath.getParent());
+                writer = new BufferedWriter(Channels.newWriter(groupCommit.open(journalPath), StandardCharsets.UTF_8));
+            }
+            record.writeTo(writer);
+            writer.newLine();
+            journalBytes += record.utf8Length() + System.lineSeparator().length();
+        } catch (IOException e) {
+            System.err.println("Error writing student journal: " + e.getMessage());
+            e.printStackTrace();
+            throw new RuntimeException("Failed to write student journal", e);
+        }
+    }
+
+    // Сбрасывает дописанные записи одним flush; пакетные операции вызывают его один раз на пачку
+    public void commit() {
+        try {
+            if (writer != null) {
+                writer.flush();
+                groupCommit.committed();
+            }
+        } catch (IOException e) {
+            System.err.println("Error flushing student journal: " + e.getMessage());
+            throw new RuntimeException("Failed to write student journal", e);
+        }
+    }
+
+    public long getJournalBytes() {
+        return journalBytes;
+    }
+
+    /**
+     * Если журнал перерос порог, откладывает его и в фоне пишет снимок.
+     * Снимок берётся в потоке вызывающего, чтобы не читать коллекцию сервиса параллельно с изменениями.
+     */
+    public void compactIfNeeded(Supplier<List<Student>> snapshot, SnapshotWriter snapshotWriter) {
+        if (journalBytes < compactionThresholdBytes || compacting) {
+            return;
+        }
+        compacting = true;
+        List<Student> students = snapshot.get();
+        try {
+            rotate();
+        } catch (IOException e) {
+            compacting = false;
+            System.err.println("Error rotating student journal: " + e.getMessage());
+            return;
+        }
+        compactor.execute(() -> {
+            try {
+                snapshotWriter.write(students);
+                Files.deleteIfExists(rotatedPath);
+                System.out.println("Student journal compacted into snapshot of " + students.size() + " students");
+            } catch (IOException e) {
+                // отложенный журнал остаётся на диске и будет проигран или слит при следующем сжатии
+                System.err.println("Error compacting student journal: " + e.getMessage());
+            } finally {
+                compacting = false;
+            }
+        });
+    }
+
+    // Отбрасывает журнал целиком; вызывается после того, как его изменения записаны в снимок
+    public void reset() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+        Files.deleteIfExists(journalPath);
+        Files.deleteIfExists(rotatedPath);
+        journalBytes = 0;
+    }
+
+    private void rotate() throws IOException {
+        if (writer != null) {
+            writer.flush();
+            groupCommit.sync();
+            writer.close();
+            writer = null;
+        }
+        if (!Files.exists(journalPath)) {
+            return;
+        }
+        if (Files.exists(rotatedPath)) {
+            // предыдущее сжатие не удалось: дописываем текущий журнал к отложенному
+            try (OutputStream out = Files.newOutputStream(rotatedPath, StandardOpenOption.APPEND)) {
+                Files.copy(journalPath, out);
+            }
+            Files.delete(journalPath);
+        } else {
+            Files.move(journalPath, rotatedPath, StandardCopyOption.ATOMIC_MOVE);
+        }
+        journalBytes = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        compactor.shutdown();
+        try {
+            if (!compactor.awaitTermination(30, TimeUnit.SECONDS)) {
+                System.err.println("Student journal compactor did not finish in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writer != null) {
+            writer.flush();
+            groupCommit.sync();
+            writer.close();
+            writer = null;
+        }
+        groupCommit.close();
+    }
+}
@@ -3,38 +3,113 @@ package ru.bmstu.service.impl;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
+import ru.bmstu.metrics.OperationMetrics;
+import ru.bmstu.model.Page;
 import ru.bmstu.model.Student;
+import ru.bmstu.model.StudentKey;
+import ru.bmstu.model.TokenStatistics;
 import ru.bmstu.model.User;
 import ru.bmstu.service.LogService;
+import ru.bmstu.service.StudentRepository;
 import ru.bmstu.service.StudentService;
 
 import java.io.*;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
 
-public class StudentServiceImpl implements StudentService {
-    private final String csvFilePath;
+public class StudentServiceImpl implements StudentService, Closeable {
     private final LogService logService;
-    private List<Student> students;
+    // Студенты разложены по частям по хешу имени (см. StudentShard.indexOf); у каждой части
+    // свой индекс, файл и журнал. Без разбиения часть одна.
+    private final StudentShard[] shards;
+    // Проверка и изменение одного студента выполняются под его полосой блокировок
+    private final LockStripes lockStripes = new LockStripes(64);
+    // Рейтинг по жетонам и сводная статистика, обновляются при публикации изменений
+    private final TokenLeaderboard leaderboard = new TokenLeaderboard();
+    // Неизменяемый снимок для потокового и постраничного чтения, читатели не блокируются.
+    // Изменение индекса ставится в очередь pending под полосой студента, а снимок, рейтинг, поток реплик
+    // и журнал жетонов меняются уже после освобождения полосы: поток, захвативший publishLock,
+    // публикует пачкой всё накопившееся в очереди, в том числе изменения других потоков
+    private volatile StudentSnapshot snapshot = StudentSnapshot.EMPTY;
+    private final ConcurrentLinkedQueue<Publication> pending = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock publishLock = new ReentrantLock();
+    // Поток изменений для реплик; null — без репликации
+    private ReplicationLog replicationLog;
+    // Журнал изменений жетонов; null — не ведётся
+    private volatile TokenLedgerImpl tokenLedger;
+    // Время записи в файлы; null — не измеряется
+    private volatile OperationMetrics persistMetrics;
 
     public StudentServiceImpl(String csvFilePath, LogService logService) {
-        if (csvFilePath == null || csvFilePath.trim().isEmpty()) {
-            throw new IllegalArgumentException("CSV file path cannot be null or empty");
+        this(csvFilePath, logService, null);
+    }
+
+    public StudentServiceImpl(String csvFilePath, LogService logService, StudentJournal journal) {
+        this(csvFilePath, logService, journal, false);
+    }
+
+    public StudentServiceImpl(String csvFilePath, LogService logService, StudentJournal journal,
+                              boolean concurrent) {
+        this(new CsvStudentRepository(csvFilePath), logService, journal, concurrent);
+    }
+
+    public StudentServiceImpl(StudentRepository repository, LogService logService, StudentJournal journal,
+                              boolean concurrent) {
+        this(Collections.singletonList(repository), Collections.singletonList(journal), logService, concurrent);
+    }
+
+    /**
+     * Хранилище из нескольких частей: i-й репозиторий и i-й журнал (элементы списка журналов
+     * могут быть null в режиме SNAPSHOT) относятся к i-й части. Части загружаются параллельно;
+     * студенты, оказавшиеся не в своей части после смены числа частей, переносятся, а затронутые
+     * файлы переписываются.
+     */
+    public StudentServiceImpl(List<StudentRepository> repositories, List<StudentJournal> journals,
+                              LogService logService, boolean concurrent) {
+        if (repositories == null || repositories.isEmpty()) {
+            throw new IllegalArgumentException("At least one StudentRepository is required");
+        }
+        if (journals.size() != repositories.size()) {
+            throw new IllegalArgumentException("Expected one journal slot per shard");
         }
         if (logService == null) {
             throw new IllegalArgumentException("LogService cannot be null");
         }
         
-        System.out.println("Initializing StudentServiceImpl with CSV file path: " + csvFilePath);
-        this.csvFilePath = csvFilePath;
         this.logService = logService;
+        this.shards = new StudentShard[repositories.size()];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new StudentShard(repositories.get(i), journals.get(i), concurrent);
+        }
+        System.out.println("Initializing StudentServiceImpl with storage: " + shards[0].getLocation()
+            + (shards.length > 1 ? " (" + shards.length + " shards)" : ""));
         
         try {
-            this.students = loadStudents();
+            loadShards();
+            rehomeMisplaced();
+            List<Student> all = allStudents();
+            leaderboard.rebuild(all);
+            snapshot = StudentSnapshot.of(all);
         } catch (Exception e) {
             System.err.println("Error initializing StudentServiceImpl: " + e.getMessage());
             e.printStackTrace();
@@ -42,171 +117,588 @@ public class StudentServiceImpl implements StudentService {
         }
     }
 
-    private Path getCsvFilePath() {
-        return Paths.get(csvFilePath).toAbsolutePath();
+    /**
+     * Путь файла i-й части: нулевая часть хранится в исходном файле (так включение разбиения
+     * подхватывает существующие данные), остальные — с номером перед расширением:
+     * students.csv -> students.1.csv, students.csv.journal -> students.csv.1.journal.
+     */
+    public static String shardPath(String path, int shard) {
+        if (shard == 0) {
+            return path;
+        }
+        int nameStart = Math.max(path.lastIndexOf('/'), path.lastIndexOf('\\')) + 1;
+        int dot = path.lastIndexOf('.');
+        if (dot <= nameStart) {
+            return path + "." + shard;
+        }
+        return path.substring(0, dot) + "." + shard + path.substring(dot);
     }
 
-    private void ensureFileExists(Path path) throws IOException {
-        if (!Files.exists(path)) {
-            Files.createDirectories(path.getParent());
-            try (BufferedWriter writer = Files.newBufferedWriter(path)) {
-                writer.write("firstName,lastName,tokens");
-                writer.newLine();
+    public void setPersistMetrics(OperationMetrics persistMetrics) {
+        this.persistMetrics = persistMetrics;
+    }
+
+    private void loadShards() throws Exception {
+        if (shards.length == 1) {
+            shards[0].load();
+            return;
+        }
+        int threads = Math.min(shards.length, Runtime.getRuntime().availableProcessors());
+        try (ExecutorService loader = Executors.newFixedThreadPool(threads)) {
+            List<Future<?>> loads = new ArrayList<>(shards.length);
+            for (StudentShard shard : shards) {
+                loads.add(loader.submit(() -> {
+                    shard.load();
+                    return null;
+                }));
+            }
+            for (Future<?> load : loads) {
+                try {
+                    load.get();
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof Exception cause ? cause : e;
+                }
             }
         }
     }
 
-    private BufferedReader openReader(Path path) throws IOException {
-        return Files.newBufferedReader(path);
+    /**
+     * Переносит студентов в часть по их хешу; нужно после изменения числа частей. Сначала студенты
+     * добавляются в свои части и эти файлы переписываются, и только потом удаляются из прежних:
+     * сбой между шагами оставляет студента в двух файлах, а не теряет его. Такой дубль (с теми же
+     * жетонами) при следующем запуске просто убирается; студент с разными жетонами в двух частях —
+     * ошибка данных, и запуск прерывается.
+     */
+    private void rehomeMisplaced() throws IOException {
+        boolean[] source = new boolean[shards.length];
+        boolean[] target = new boolean[shards.length];
+        for (int i = 0; i < shards.length; i++) {
+            for (Map.Entry<StudentKey, Student> entry : shards[i].students.entrySet()) {
+                StudentKey key = entry.getKey();
+                int home = StudentShard.indexOf(key, shards.length);
+                if (home == i) {
+                    continue;
+                }
+                Student existing = shards[home].students.get(key);
+                if (existing == null) {
+                    shards[home].students.put(key, entry.getValue());
+                    target[home] = true;
+                } else if (existing.getTokens() != entry.getValue().getTokens()) {
+                    throw new IllegalStateException("Student " + key.firstName() + " " + key.lastName()
+                        + " is stored in shards " + shards[i].getLocation() + " and " + shards[home].getLocation()
+                        + " with different tokens");
+                }
+                source[i] = true;
+            }
+        }
+        for (int i = 0; i < shards.length; i++) {
+            if (target[i]) {
+                System.out.println("Rewriting student shard " + shards[i].getLocation() + " after rebalancing");
+                shards[i].rewrite();
+            }
+        }
+        for (int i = 0; i < shards.length; i++) {
+            if (source[i]) {
+                int shard = i;
+                shards[i].students.keySet().removeIf(key -> StudentShard.indexOf(key, shards.length) != shard);
+                System.out.println("Rewriting student shard " + shards[i].getLocation() + " after rebalancing");
+                shards[i].rewrite();
+            }
+        }
     }
 
-    private BufferedWriter openWriter(Path path) throws IOException {
-        Files.createDirectories(path.getParent());
-        return Files.newBufferedWriter(path);
+    private StudentShard shardOf(StudentKey key) {
+        return shards[StudentShard.indexOf(key, shards.length)];
     }
 
-    private boolean isHeaderValid(String header) {
-        return header != null && header.equals("firstName,lastName,tokens");
+    // Запись пачки: каждая затронутая часть пишется один раз и только своими изменениями
+    private <T> void persistBatch(List<T> items, Function<T, StudentKey> keyOf,
+                                  BiConsumer<StudentJournal, T> record) {
+        Map<StudentShard, List<T>> byShard = new LinkedHashMap<>();
+        for (T item : items) {
+            byShard.computeIfAbsent(shardOf(keyOf.apply(item)), shard -> new ArrayList<>()).add(item);
+        }
+        for (Map.Entry<StudentShard, List<T>> entry : byShard.entrySet()) {
+            List<T> shardItems = entry.getValue();
+            entry.getKey().persist(j -> shardItems.forEach(item -> record.accept(j, item)), persistMetrics);
+        }
     }
 
-    private Student parseStudentLine(String line) {
-        String[] values = line.split(",");
-        if (values.length >= 3) {
-            try {
-                return new Student(
-                    values[0].trim(),
-                    values[1].trim(),
-                    Integer.parseInt(values[2].trim())
-                );
-            } catch (NumberFormatException e) {
-                System.err.println("Error parsing student tokens: " + e.getMessage());
-            }
+    // Основной экземпляр репликации: изменения с этого момента получают номера и рассылаются репликам
+    public void setReplicationLog(ReplicationLog replicationLog) {
+        publishLock.lock();
+        try {
+            replicationLog.start(snapshot);
+            this.replicationLog = replicationLog;
+        } finally {
+            publishLock.unlock();
         }
-        return null;
     }
 
-    private List<Student> readStudentsFromFile(BufferedReader reader) throws IOException {
-        List<Student> loadedStudents = new ArrayList<>();
-        String header = reader.readLine();
-        if (!isHeaderValid(header)) {
-            return loadedStudents;
-        }
-        String line;
-        while ((line = reader.readLine()) != null) {
-            Student student = parseStudentLine(line);
-            if (student != null) {
-                loadedStudents.add(student);
-            }
+    // Подключает журнал жетонов, предварительно сверив его с текущими студентами
+    public void setTokenLedger(TokenLedgerImpl tokenLedger) {
+        tokenLedger.reconcile(allStudents());
+        this.tokenLedger = tokenLedger;
+    }
+
+    // События журнала жетонов пишутся при публикации, пачка (и цикл писателя) сбрасывается одним commitTokens
+    private void commitTokens() {
+        TokenLedgerImpl ledger = tokenLedger;
+        if (ledger != null) {
+            ledger.commit();
         }
-        return loadedStudents;
     }
 
-    private List<Student> loadStudents() {
-        if (csvFilePath == null) {
-            throw new IllegalStateException("CSV file path is null in loadStudents()");
+    /**
+     * Изменение, ожидающее публикации. leaderboardChanges — пары {прежнее, новое} для рейтинга,
+     * mutations — одна пачка для реплик, tokens — события журнала жетонов.
+     */
+    private record Publication(UnaryOperator<StudentSnapshot> change, List<Student[]> leaderboardChanges,
+                               List<ReplicationLog.Mutation> mutations, Consumer<TokenLedgerImpl> tokens) {
+    }
+
+    // Вызывается под полосой студента, поэтому изменения одного студента стоят в очереди в порядке применения
+    private void publish(UnaryOperator<StudentSnapshot> change, List<Student[]> leaderboardChanges,
+                         List<ReplicationLog.Mutation> mutations, Consumer<TokenLedgerImpl> tokens) {
+        pending.add(new Publication(change, leaderboardChanges, mutations, tokens));
+    }
+
+    /**
+     * Публикует очередь: рейтинг меняется за один захват, снимок — одной записью на всю пачку.
+     * Возвращается не раньше, чем опубликованы изменения, поставленные в очередь этим потоком:
+     * если очередь пуста и publishLock свободен, забравший их поток уже закончил.
+     */
+    private void publishPending() {
+        if (pending.isEmpty() && !publishLock.isLocked()) {
+            return;
         }
-        Path path = getCsvFilePath();
-        System.out.println("Loading students from file: " + path);
+        publishLock.lock();
         try {
-            ensureFileExists(path);
-            try (BufferedReader reader = openReader(path)) {
-                return readStudentsFromFile(reader);
+            List<Publication> batch = new ArrayList<>();
+            for (Publication next; (next = pending.poll()) != null; ) {
+                batch.add(next);
             }
-        } catch (IOException e) {
-            System.err.println("Error loading students file: " + e.getMessage());
-            e.printStackTrace();
-            throw new RuntimeException("Failed to load students", e);
+            if (batch.isEmpty()) {
+                return;
+            }
+            List<Student[]> leaderboardChanges = new ArrayList<>();
+            StudentSnapshot[] states = new StudentSnapshot[batch.size()];
+            StudentSnapshot state = snapshot;
+            for (int i = 0; i < states.length; i++) {
+                leaderboardChanges.addAll(batch.get(i).leaderboardChanges());
+                state = states[i] = batch.get(i).change().apply(state);
+            }
+            leaderboard.replaceAll(leaderboardChanges);
+            snapshot = state;
+            if (replicationLog != null) {
+                for (int i = 0; i < states.length; i++) {
+                    replicationLog.append(batch.get(i).mutations(), states[i]);
+                }
+            }
+            // ошибка записи журнала жетонов последней: снимок и реплики уже получили всю пачку
+            TokenLedgerImpl ledger = tokenLedger;
+            if (ledger != null) {
+                for (Publication publication : batch) {
+                    publication.tokens().accept(ledger);
+                }
+            }
+        } finally {
+            publishLock.unlock();
         }
     }
 
-    private void saveStudents() {
-        if (csvFilePath == null) {
-            throw new IllegalStateException("CSV file path is null in saveStudents()");
+    private Optional<Student> findStudentByName(String firstName, String lastName) {
+        StudentKey key = new StudentKey(firstName, lastName);
+        return Optional.ofNullable(shardOf(key).students.get(key));
+    }
+
+    private Student getExistingStudent(StudentKey key) {
+        Student student = shardOf(key).students.get(key);
+        if (student == null) {
+            throw new IllegalArgumentException("Student not found: " + key.firstName() + " " + key.lastName());
         }
-        Path path = getCsvFilePath();
-        System.out.println("Saving students to file: " + path);
-        try (BufferedWriter writer = openWriter(path)) {
-            writer.write("firstName,lastName,tokens");
-            writer.newLine();
-            for (Student student : students) {
-                writer.write(String.format("%s,%s,%d",
-                    student.getFirstName(),
-                    student.getLastName(),
-                    student.getTokens()));
-                writer.newLine();
-            }
-        } catch (IOException e) {
-            System.err.println("Error saving students file: " + e.getMessage());
-            e.printStackTrace();
-            throw new RuntimeException("Failed to save students", e);
+        return student;
+    }
+
+    private void ensureStudentNotExists(StudentKey key) {
+        if (shardOf(key).students.containsKey(key)) {
+            throw new IllegalArgumentException("Student already exists: " + key.firstName() + " " + key.lastName());
         }
     }
 
-    private Optional<Student> findStudentByName(String firstName, String lastName) {
-        return students.stream()
-            .filter(s -> s.getFirstName().equals(firstName) && s.getLastName().equals(lastName))
-            .findFirst();
+    /**
+     * Объекты Student в индексе, рейтинге и снимке общие и изменяемые (Lombok), поэтому наружу отдаются
+     * только копии: setTokens у полученного объекта иначе нарушил бы порядок дерева рейтинга.
+     */
+    static Student copyOf(Student student) {
+        return new Student(student.getFirstName(), student.getLastName(), student.getTokens());
     }
 
-    private void ensureStudentExists(String firstName, String lastName) {
-        if (findStudentByName(firstName, lastName).isEmpty()) {
-            throw new IllegalArgumentException("Student not found: " + firstName + " " + lastName);
-        }
+    /**
+     * Изменение, уже применённое в памяти (индекс, а после освобождения полосы — рейтинг, журнал жетонов
+     * и снимок), но ещё не записанное в файлы части и в журнал действий. student — состояние после
+     * изменения, null для удаления.
+     */
+    record Applied(StudentKey key, Student student, Consumer<StudentJournal> record,
+                   String action, User user, String details) {
     }
 
-    private void ensureStudentNotExists(String firstName, String lastName) {
-        if (findStudentByName(firstName, lastName).isPresent()) {
-            throw new IllegalArgumentException("Student already exists: " + firstName + " " + lastName);
+    // Изменения одного студента без сохранения; вызываются под полосой студента
+
+    private Applied applyAdd(User user, Student student) {
+        StudentKey key = StudentKey.of(student);
+        Student stored = copyOf(student);
+        ensureStudentNotExists(key);
+        shardOf(key).students.put(key, stored);
+        publish(s -> s.with(stored), Collections.singletonList(new Student[]{null, stored}),
+            List.of(ReplicationLog.Mutation.added(stored)), l -> l.recordAdded(stored));
+        return new Applied(key, stored, j -> j.recordAdded(stored), "ADD_STUDENT", user,
+            "Added student: " + student.getFirstName() + " " + student.getLastName()
+                + " with " + student.getTokens() + " tokens");
+    }
+
+    private Applied applyRemove(User user, StudentKey key, String action, String verb) {
+        Student removed = shardOf(key).students.remove(key);
+        if (removed == null) {
+            throw new IllegalArgumentException("Student not found: " + key.firstName() + " " + key.lastName());
         }
+        publish(s -> s.without(key), Collections.singletonList(new Student[]{removed, null}),
+            List.of(ReplicationLog.Mutation.removed(key)), l -> l.recordRemoved(key));
+        return new Applied(key, null, j -> j.recordRemoved(key.firstName(), key.lastName()), action, user,
+            verb + " student: " + key.firstName() + " " + key.lastName());
+    }
+
+    private Applied applyTokens(User user, StudentKey key, int amount) {
+        Student current = getExistingStudent(key);
+        int oldTokens = current.getTokens();
+        Student updated = new Student(key.firstName(), key.lastName(), oldTokens + amount);
+        shardOf(key).students.put(key, updated);
+        publish(s -> s.with(updated), Collections.singletonList(new Student[]{current, updated}),
+            List.of(ReplicationLog.Mutation.tokens(key, amount)), l -> l.recordTokens(key, amount));
+        return new Applied(key, updated, j -> j.recordTokens(updated), "UPDATE_TOKENS", user,
+            "Updated tokens for " + key.firstName() + " " + key.lastName() + ": " + oldTokens
+                + " -> " + updated.getTokens());
+    }
+
+    // Синхронное изменение: применение и запись в файлы под полосой студента, затем публикация,
+    // журнал жетонов и журнал действий
+    private Applied applyAndPersist(StudentKey key, Supplier<Applied> change) {
+        Applied applied = underStripe(key, () -> {
+            Applied done = change.get();
+            shardOf(key).persist(done.record(), persistMetrics);
+            return done;
+        });
+        commitTokens();
+        logService.logAction(applied.action(), applied.user(), applied.details());
+        return applied;
     }
 
     @Override
     public void addStudent(User user, Student student) {
-        ensureStudentNotExists(student.getFirstName(), student.getLastName());
-        students.add(student);
-        saveStudents();
-        logService.logAction("ADD_STUDENT", user, 
-            String.format("Added student: %s %s with %d tokens", 
-                student.getFirstName(), student.getLastName(), student.getTokens()));
+        applyAndPersist(StudentKey.of(student), () -> applyAdd(user, student));
     }
 
     @Override
     public void expelStudent(User user, String firstName, String lastName) {
-        ensureStudentExists(firstName, lastName);
-        students.removeIf(s -> s.getFirstName().equals(firstName) && s.getLastName().equals(lastName));
-        saveStudents();
-        logService.logAction("EXPEL_STUDENT", user, 
-            String.format("Expelled student: %s %s", firstName, lastName));
+        StudentKey key = new StudentKey(firstName, lastName);
+        applyAndPersist(key, () -> applyRemove(user, key, "EXPEL_STUDENT", "Expelled"));
     }
 
     @Override
-    public void updateTokens(String firstName, String lastName, int amount, User user) {
-        ensureStudentExists(firstName, lastName);
-        Student student = findStudentByName(firstName, lastName).get();
-        int oldTokens = student.getTokens();
-        student.setTokens(oldTokens + amount);
-        saveStudents();
-        logService.logAction("UPDATE_TOKENS", user, 
-            String.format("Updated tokens for %s %s: %d -> %d", 
-                firstName, lastName, oldTokens, student.getTokens()));
+    public Student updateTokens(String firstName, String lastName, int amount, User user) {
+        StudentKey key = new StudentKey(firstName, lastName);
+        return copyOf(applyAndPersist(key, () -> applyTokens(user, key, amount)).student());
     }
 
     @Override
     public List<Student> getAllStudents() {
-        return new ArrayList<>(students);
+        List<Student> all = allStudents();
+        all.replaceAll(StudentServiceImpl::copyOf);
+        return all;
+    }
+
+    // Хранимые объекты всех частей, без копирования; только для внутреннего использования
+    private List<Student> allStudents() {
+        if (shards.length == 1) {
+            return new ArrayList<>(shards[0].students.values());
+        }
+        List<Student> all = new ArrayList<>();
+        for (StudentShard shard : shards) {
+            all.addAll(shard.students.values());
+        }
+        return all;
+    }
+
+    @Override
+    public Stream<Student> streamStudents() {
+        return snapshot.stream();
+    }
+
+    @Override
+    public Page<Student, StudentKey> getStudentsPage(StudentKey after, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Page limit must be positive");
+        }
+        return snapshot.page(after, limit);
     }
 
     @Override
     public void removeStudent(String firstName, String lastName, User user) {
-        ensureStudentExists(firstName, lastName);
-        students.removeIf(s -> s.getFirstName().equals(firstName) && s.getLastName().equals(lastName));
-        saveStudents();
-        logService.logAction("REMOVE_STUDENT", user, 
-            String.format("Removed student: %s %s", firstName, lastName));
+        StudentKey key = new StudentKey(firstName, lastName);
+        applyAndPersist(key, () -> applyRemove(user, key, "REMOVE_STUDENT", "Removed"));
     }
 
     @Override
     public Student findStudent(String firstName, String lastName) {
-        return findStudentByName(firstName, lastName).orElse(null);
+        return findStudentByName(firstName, lastName).map(StudentServiceImpl::copyOf).orElse(null);
+    }
+
+    @Override
+    public List<Student> getTopStudents(int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("Number of students cannot be negative");
+        }
+        return leaderboard.top(n);
+    }
+
+    @Override
+    public int getRank(String firstName, String lastName) {
+        Student student = getExistingStudent(new StudentKey(firstName, lastName));
+        return leaderboard.rank(student.getTokens());
+    }
+
+    @Override
+    public List<Student> findStudentsByTokens(int minTokens, int maxTokens) {
+        if (minTokens > maxTokens) {
+            throw new IllegalArgumentException("Min tokens cannot be greater than max tokens");
+        }
+        return leaderboard.range(minTokens, maxTokens);
+    }
+
+    @Override
+    public TokenStatistics getTokenStatistics() {
+        return leaderboard.statistics();
+    }
+
+    // Пакетные операции: под полосами всех затронутых студентов сначала проверяется вся пачка,
+    // затем изменения применяются целиком, сохраняются одной записью и журналируются одной пачкой
+
+    @Override
+    public void addStudents(User user, List<Student> newStudents) {
+        if (newStudents.isEmpty()) {
+            return;
+        }
+        applyAndPersistAll(newStudents.stream().map(StudentKey::of).toList(), () -> applyAddAll(user, newStudents));
+    }
+
+    @Override
+    public void removeStudents(List<StudentKey> keys, User user) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        applyAndPersistAll(keys, () -> applyRemoveAll(user, keys));
+    }
+
+    @Override
+    public void updateTokensBatch(Map<StudentKey, Integer> amounts, User user) {
+        if (amounts.isEmpty()) {
+            return;
+        }
+        applyAndPersistAll(amounts.keySet(), () -> applyTokensAll(user, amounts));
+    }
+
+    private void applyAndPersistAll(Collection<StudentKey> keys, Supplier<List<Applied>> change) {
+        List<Applied> applied = underStripes(keys, () -> {
+            List<Applied> done = change.get();
+            persistApplied(done);
+            return done;
+        });
+        commitTokens();
+        logApplied(applied);
+    }
+
+    private List<Applied> applyAddAll(User user, List<Student> newStudents) {
+        List<Student> stored = new ArrayList<>(newStudents.size());
+        Set<StudentKey> batchKeys = new HashSet<>();
+        for (Student student : newStudents) {
+            StudentKey key = StudentKey.of(student);
+            ensureStudentNotExists(key);
+            if (!batchKeys.add(key)) {
+                throw new IllegalArgumentException("Duplicate student in batch: "
+                    + key.firstName() + " " + key.lastName());
+            }
+            stored.add(copyOf(student));
+        }
+        List<Applied> applied = new ArrayList<>(stored.size());
+        List<Student[]> leaderboardChanges = new ArrayList<>(stored.size());
+        for (Student student : stored) {
+            StudentKey key = StudentKey.of(student);
+            shardOf(key).students.put(key, student);
+            leaderboardChanges.add(new Student[]{null, student});
+            applied.add(new Applied(key, student, j -> j.recordAdded(student), "ADD_STUDENT", user,
+                "Added student: " + student.getFirstName() + " " + student.getLastName()
+                    + " with " + student.getTokens() + " tokens"));
+        }
+        publish(s -> {
+            for (Student student : stored) {
+                s = s.with(student);
+            }
+            return s;
+        }, leaderboardChanges, stored.stream().map(ReplicationLog.Mutation::added).toList(),
+            l -> stored.forEach(l::recordAdded));
+        return applied;
+    }
+
+    private List<Applied> applyRemoveAll(User user, List<StudentKey> keys) {
+        Set<StudentKey> batchKeys = new HashSet<>();
+        for (StudentKey key : keys) {
+            getExistingStudent(key);
+            if (!batchKeys.add(key)) {
+                throw new IllegalArgumentException("Duplicate student in batch: "
+                    + key.firstName() + " " + key.lastName());
+            }
+        }
+        List<Applied> applied = new ArrayList<>(keys.size());
+        List<Student[]> leaderboardChanges = new ArrayList<>(keys.size());
+        for (StudentKey key : keys) {
+            leaderboardChanges.add(new Student[]{shardOf(key).students.remove(key), null});
+            applied.add(new Applied(key, null, j -> j.recordRemoved(key.firstName(), key.lastName()),
+                "REMOVE_STUDENT", user, "Removed student: " + key.firstName() + " " + key.lastName()));
+        }
+        publish(s -> {
+            for (StudentKey key : keys) {
+                s = s.without(key);
+            }
+            return s;
+        }, leaderboardChanges, keys.stream().map(ReplicationLog.Mutation::removed).toList(),
+            l -> keys.forEach(l::recordRemoved));
+        return applied;
+    }
+
+    private List<Applied> applyTokensAll(User user, Map<StudentKey, Integer> amounts) {
+        List<Student> updated = new ArrayList<>(amounts.size());
+        for (Map.Entry<StudentKey, Integer> entry : amounts.entrySet()) {
+            Student current = getExistingStudent(entry.getKey());
+            updated.add(new Student(current.getFirstName(), current.getLastName(),
+                current.getTokens() + entry.getValue()));
+        }
+        List<Applied> applied = new ArrayList<>(updated.size());
+        List<Student[]> leaderboardChanges = new ArrayList<>(updated.size());
+        for (Student student : updated) {
+            StudentKey key = StudentKey.of(student);
+            Student previous = shardOf(key).students.put(key, student);
+            leaderboardChanges.add(new Student[]{previous, student});
+            applied.add(new Applied(key, student, j -> j.recordTokens(student), "UPDATE_TOKENS", user,
+                "Updated tokens for " + student.getFirstName() + " " + student.getLastName()
+                    + ": " + previous.getTokens() + " -> " + student.getTokens()));
+        }
+        publish(s -> {
+            for (Student student : updated) {
+                s = s.with(student);
+            }
+            return s;
+        }, leaderboardChanges, amounts.entrySet().stream()
+            .map(entry -> ReplicationLog.Mutation.tokens(entry.getKey(), entry.getValue()))
+            .toList(), l -> amounts.forEach(l::recordTokens));
+        return applied;
+    }
+
+    // Каждая затронутая часть пишется один раз своими изменениями в порядке применения
+    private void persistApplied(List<Applied> applied) {
+        persistBatch(applied, Applied::key, (journal, change) -> change.record().accept(journal));
+    }
+
+    // Журнал действий: подряд идущие записи с одним действием и пользователем — одним logActions
+    void logApplied(List<Applied> applied) {
+        int start = 0;
+        while (start < applied.size()) {
+            Applied first = applied.get(start);
+            List<String> details = new ArrayList<>();
+            int end = start;
+            while (end < applied.size() && applied.get(end).action().equals(first.action())
+                    && Objects.equals(applied.get(end).user(), first.user())) {
+                details.add(applied.get(end++).details());
+            }
+            logService.logActions(first.action(), first.user(), details);
+            start = end;
+        }
+    }
+
+    /*
+     * Отложенное сохранение для однопоточного писателя (EventLoopStudentService): изменения
+     * применяются в памяти и сразу видны в снимке, а файлы частей, журнал жетонов и журнал действий
+     * пишутся на весь цикл писателя одним saveApplied и одним logApplied. Пока писатель работает,
+     * изменять сервис в обход него нельзя: порядок записей в журналах частей задаёт только он.
+     */
+
+    Applied addStudentDeferred(User user, Student student) {
+        return underStripe(StudentKey.of(student), () -> applyAdd(user, student));
+    }
+
+    Applied removeStudentDeferred(User user, StudentKey key, boolean expel) {
+        return underStripe(key, () -> expel
+            ? applyRemove(user, key, "EXPEL_STUDENT", "Expelled")
+            : applyRemove(user, key, "REMOVE_STUDENT", "Removed"));
+    }
+
+    Applied updateTokensDeferred(User user, StudentKey key, int amount) {
+        return underStripe(key, () -> applyTokens(user, key, amount));
+    }
+
+    List<Applied> addStudentsDeferred(User user, List<Student> newStudents) {
+        return underStripes(newStudents.stream().map(StudentKey::of).toList(), () -> applyAddAll(user, newStudents));
+    }
+
+    List<Applied> removeStudentsDeferred(User user, List<StudentKey> keys) {
+        return underStripes(keys, () -> applyRemoveAll(user, keys));
+    }
+
+    List<Applied> updateTokensBatchDeferred(User user, Map<StudentKey, Integer> amounts) {
+        return underStripes(amounts.keySet(), () -> applyTokensAll(user, amounts));
+    }
+
+    // Повторный вызов с теми же изменениями безопасен: записи журнала части хранят итоговые значения
+    void saveApplied(List<Applied> applied) {
+        commitTokens();
+        persistApplied(applied);
+    }
+
+    // Опубликованный неизменяемый снимок и место в рейтинге по числу жетонов — для чтения без блокировок
+    StudentSnapshot snapshot() {
+        return snapshot;
+    }
+
+    int rankOf(int tokens) {
+        return leaderboard.rank(tokens);
+    }
+
+    // Публикация — после освобождения полосы: полоса не ждёт общих блокировок снимка и рейтинга.
+    // Изменения, применённые к индексу до ошибки записи в файл, тоже публикуются
+
+    private <T> T underStripe(StudentKey key, Supplier<T> change) {
+        lockStripes.lock(key);
+        try {
+            return change.get();
+        } finally {
+            lockStripes.unlock(key);
+            publishPending();
+        }
+    }
+
+    private <T> T underStripes(Collection<StudentKey> keys, Supplier<T> change) {
+        int[] stripes = lockStripes.lockAll(keys);
+        try {
+            return change.get();
+        } finally {
+            lockStripes.unlockAll(stripes);
+            publishPending();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (StudentShard shard : shards) {
+            shard.close();
+        }
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,145 @@
+package ru.bmstu.service.impl;
+
+import ru.bmstu.metrics.OperationMetrics;
+import ru.bmstu.model.Student;
+import ru.bmstu.model.StudentKey;
+import ru.bmstu.service.StudentRepository;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Часть студентов с одинаковым хешем имени: свой индекс, свой файл и свой журнал.
+ * Изменение перезаписывает или дописывает только файл своей части, поэтому записи
+ * в разные части не ждут друг друга.
+ */
+final class StudentShard implements Closeable {
+    // Объекты Student в индексе не изменяются: новое значение жетонов публикуется новым объектом.
+    // В обычном режиме LinkedHashMap сохраняет порядок добавления, в многопоточном — ConcurrentHashMap.
+    final Map<StudentKey, Student> students;
+    private final StudentRepository repository;
+    // null в режиме SNAPSHOT
+    private final StudentJournal journal;
+    // Запись в файлы части только под этой блокировкой
+    private final ReentrantLock persistLock = new ReentrantLock();
+    // Версии изменений для объединения перезаписей CSV конкурентными писателями
+    private final AtomicLong mutationVersion = new AtomicLong();
+    private long savedVersion;
+
+    StudentShard(StudentRepository repository, StudentJournal journal, boolean concurrent) {
+        if (repository == null) {
+            throw new IllegalArgumentException("StudentRepository cannot be null");
+        }
+        this.repository = repository;
+        this.journal = journal;
+        this.students = concurrent ? new ConcurrentHashMap<>() : new LinkedHashMap<>();
+    }
+
+    /**
+     * Номер части по хешу имени. Хеш считается явно по String.hashCode, а не по hashCode записи,
+     * чтобы раскладка файлов не зависела от версии JVM. У похожих имён (First1/Last1, First2/Last2)
+     * младшие биты String.hashCode почти совпадают, поэтому биты перемешиваются финализатором murmur3.
+     */
+    static int indexOf(StudentKey key, int shardCount) {
+        int h = 31 * key.firstName().hashCode() + key.lastName().hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return Math.floorMod(h, shardCount);
+    }
+
+    String getLocation() {
+        return repository.getLocation();
+    }
+
+    // Снимок из файла и проигрывание журнала поверх него; из строк с одним именем остаётся первая
+    void load() throws IOException {
+        for (Student student : repository.loadAll()) {
+            if (students.putIfAbsent(StudentKey.of(student), student) != null) {
+                System.err.println("Skipping duplicate student in " + repository.getLocation() + ": "
+                    + student.getFirstName() + " " + student.getLastName() + " with " + student.getTokens() + " tokens");
+            }
+        }
+        if (journal != null) {
+            journal.replay(students);
+        }
+    }
+
+    // Снимок для сжатия журнала; объекты в индексе неизменяемы, копируется только список
+    private List<Student> copyStudents() {
+        return new ArrayList<>(students.values());
+    }
+
+    // Файл пишется из копии: в многопоточном режиме другие полосы меняют индекс во время записи
+    private void saveStudents() {
+        try {
+            repository.saveAll(copyStudents());
+        } catch (IOException e) {
+            System.err.println("Error saving students file: " + e.getMessage());
+            e.printStackTrace();
+            throw new RuntimeException("Failed to save students", e);
+        }
+    }
+
+    /**
+     * В режиме JOURNAL дописывает записи изменения, иначе перезаписывает файл части.
+     * Вызывается под полосой изменённого студента, так что записи журнала по одному студенту
+     * идут в порядке применения. Перезапись CSV пропускается, если уже начатая после нашего
+     * изменения запись другого потока его включила.
+     */
+    void persist(Consumer<StudentJournal> record, OperationMetrics metrics) {
+        long version = mutationVersion.incrementAndGet();
+        persistLock.lock();
+        long start = metrics != null ? System.nanoTime() : 0;
+        boolean failed = true;
+        try {
+            if (journal == null) {
+                if (savedVersion < version) {
+                    long current = mutationVersion.get();
+                    saveStudents();
+                    savedVersion = current;
+                }
+            } else {
+                record.accept(journal);
+                journal.commit();
+                journal.compactIfNeeded(this::copyStudents, repository::saveAll);
+            }
+            failed = false;
+        } finally {
+            if (metrics != null) {
+                metrics.record(System.nanoTime() - start, failed);
+            }
+            persistLock.unlock();
+        }
+    }
+
+    // Полная перезапись файла части со сбросом журнала; после переноса студентов между частями
+    void rewrite() throws IOException {
+        persistLock.lock();
+        try {
+            repository.saveAll(copyStudents());
+            if (journal != null) {
+                journal.reset();
+            }
+        } finally {
+            persistLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package ru.bmstu.service.impl;
+
+import ru.bmstu.model.Page;
+import ru.bmstu.model.Student;
+import ru.bmstu.model.StudentKey;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Неизменяемый снимок студентов: персистентное декартово дерево, упорядоченное по фамилии, затем по имени.
+ * Изменение не трогает старый снимок, а копирует только путь от корня до изменённого узла — O(log n)
+ * новых узлов, остальное дерево общее. Читатель берёт ссылку на снимок и обходит его без блокировок,
+ * сколько бы изменений ни было опубликовано после.
+ */
+final class StudentSnapshot implements Iterable<Student> {
+    static final StudentSnapshot EMPTY = new StudentSnapshot(null, 0);
+
+    static final Comparator<StudentKey> ORDER = Comparator.comparing(StudentKey::lastName)
+        .thenComparing(StudentKey::firstName);
+
+    private static final class Node {
+        final StudentKey key;
+        final Student student;
+        final int priority;
+        final Node left;
+        final Node right;
+
+        Node(StudentKey key, Student student, int priority, Node left, Node right) {
+            this.key = key;
+            this.student = student;
+            this.priority = priority;
+            this.left = left;
+            this.right = right;
+        }
+
+        Node withChildren(Node left, Node right) {
+            return new Node(key, student, priority, left, right);
+        }
+    }
+
+    private final Node root;
+    private final int size;
+
+    private StudentSnapshot(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    // Приоритет зависит только от ключа, поэтому форма дерева не зависит от порядка изменений
+    private static int priority(StudentKey key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    // Сборка за O(n) из студентов с различными ключами
+    static StudentSnapshot of(Collection<Student> students) {
+        List<Student> sorted = new ArrayList<>(students);
+        sorted.sort(Comparator.comparing(StudentKey::of, ORDER));
+        // правая граница дерева-кучи, как при построении декартова дерева по отсортированному массиву
+        Deque<Node> spine = new ArrayDeque<>();
+        for (Student student : sorted) {
+            StudentKey key = StudentKey.of(student);
+            int priority = priority(key);
+            Node left = null;
+            while (!spine.isEmpty() && spine.peekLast().priority < priority) {
+                Node popped = spine.pollLast();
+                left = popped.withChildren(popped.left, left);
+            }
+            spine.addLast(new Node(key, student, priority, left, null));
+        }
+        Node right = null;
+        while (!spine.isEmpty()) {
+            Node popped = spine.pollLast();
+            right = popped.withChildren(popped.left, right);
+        }
+        return new StudentSnapshot(right, sorted.size());
+    }
+
+    int size() {
+        return size;
+    }
+
+    // Копия для выдачи наружу (см. StudentServiceImpl.copyOf); null — студента нет
+    Student find(StudentKey key) {
+        Student student = get(key);
+        return student != null ? StudentServiceImpl.copyOf(student) : null;
+    }
+
+    Student get(StudentKey key) {
+        Node node = root;
+        while (node != null) {
+            int cmp = ORDER.compare(key, node.key);
+            if (cmp == 0) {
+                return node.student;
+            }
+            node = cmp < 0 ? node.left : node.right;
+        }
+        return null;
+    }
+
+    // Снимок с добавленным или заменённым студентом
+    StudentSnapshot with(Student student) {
+        StudentKey key = StudentKey.of(student);
+        int newSize = get(key) == null ? size + 1 : size;
+        return new StudentSnapshot(insert(root, key, student, priority(key)), newSize);
+    }
+
+    StudentSnapshot without(StudentKey key) {
+        if (get(key) == null) {
+            return this;
+        }
+        return new StudentSnapshot(delete(root, key), size - 1);
+    }
+
+    private static Node insert(Node node, StudentKey key, Student student, int priority) {
+        if (node == null) {
+            return new Node(key, student, priority, null, null);
+        }
+        int cmp = ORDER.compare(key, node.key);
+        if (cmp == 0) {
+            return new Node(key, student, node.priority, node.left, node.right);
+        }
+        if (cmp < 0) {
+            Node left = insert(node.left, key, student, priority);
+            if (left.priority > node.priority) {
+                return left.withChildren(left.left, node.withChildren(left.right, node.right));
+            }
+            return node.withChildren(left, node.right);
+        }
+        Node right = insert(node.right, key, student, priority);
+        if (right.priority > node.priority) {
+            return right.withChildren(node.withChildren(node.left, right.left), right.right);
+        }
+        return node.withChildren(node.left, right);
+    }
+
+    private static Node delete(Node node, StudentKey key) {
+        int cmp = ORDER.compare(key, node.key);
+        if (cmp == 0) {
+            return merge(node.left, node.right);
+        }
+        return cmp < 0
+            ? node.withChildren(delete(node.left, key), node.right)
+            : node.withChildren(node.left, delete(node.right, key));
+    }
+
+    private static Node merge(Node a, Node b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        return a.priority > b.priority
+            ? a.withChildren(a.left, merge(a.right, b))
+            : b.withChildren(merge(a, b.left), b.right);
+    }
+
+    // Студенты с ключом строго больше after (null — с начала) по возрастанию
+    Iterator<Student> iterator(StudentKey after) {
+        Deque<Node> path = new ArrayDeque<>();
+        Node node = root;
+        while (node != null) {
+            if (after == null || ORDER.compare(node.key, after) > 0) {
+                path.push(node);
+                node = node.left;
+            } else {
+                node = node.right;
+            }
+        }
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return !path.isEmpty();
+            }
+
+            @Override
+            public Student next() {
+                if (path.isEmpty()) {
+                    throw new NoSuchElementException();
+                }
+                Node current = path.pop();
+                for (Node n = current.right; n != null; n = n.left) {
+                    path.push(n);
+                }
+                return current.student;
+            }
+        };
+    }
+
+    @Override
+    public Iterator<Student> iterator() {
+        return iterator(null);
+    }
+
+    // stream, page и copies — для выдачи наружу, поэтому отдают копии студентов
+    Stream<Student> stream() {
+        return StreamSupport.stream(Spliterators.spliterator(iterator(null), size,
+            Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL | Spliterator.IMMUTABLE), false)
+            .map(StudentServiceImpl::copyOf);
+    }
+
+    List<Student> copies() {
+        List<Student> students = new ArrayList<>(size);
+        iterator(null).forEachRemaining(student -> students.add(StudentServiceImpl.copyOf(student)));
+        return students;
+    }
+
+    // Страница из не более чем limit студентов после ключа after: O(log n + limit)
+    Page<Student, StudentKey> page(StudentKey after, int limit) {
+        Iterator<Student> students = iterator(after);
+        List<Student> items = new ArrayList<>(Math.min(limit, size));
+        StudentKey cursor = after;
+        while (items.size() < limit && students.hasNext()) {
+            Student student = students.next();
+            items.add(StudentServiceImpl.copyOf(student));
+            cursor = StudentKey.of(student);
+        }
+        return new Page<>(items, cursor, students.hasNext());
+    }
+}
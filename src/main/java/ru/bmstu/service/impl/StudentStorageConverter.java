@@ -0,0 +1,77 @@
+package ru.bmstu.service.impl;
+
+import ru.bmstu.model.Student;
+import ru.bmstu.service.StudentRepository;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Перевод файла студентов между форматами CSV и BINARY.
+ * Формат определяется по расширению (.bin — двоичный) или задаётся явно:
+ * <pre>
+ * java ru.bmstu.service.impl.StudentStorageConverter students.csv students.bin
+ * java ru.bmstu.service.impl.StudentStorageConverter --from BINARY --to CSV data.dat students.csv
+ * </pre>
+ */
+public final class StudentStorageConverter {
+
+    private StudentStorageConverter() {
+    }
+
+    // Источник должен существовать: иначе loadAll создал бы пустой файл и цель была бы перезаписана пустым списком
+    public static int convert(StudentRepository source, StudentRepository target) throws IOException {
+        if (!Files.exists(Paths.get(source.getLocation()))) {
+            throw new NoSuchFileException(source.getLocation(), null, "Source students file does not exist");
+        }
+        List<Student> students = source.loadAll();
+        target.saveAll(students);
+        return students.size();
+    }
+
+    public static void main(String[] args) {
+        StorageFormat fromFormat = null;
+        StorageFormat toFormat = null;
+        int i = 0;
+        try {
+            while (i < args.length && args[i].startsWith("--")) {
+                if (args[i].equals("--from") && i + 1 < args.length) {
+                    fromFormat = StorageFormat.valueOf(args[i + 1].toUpperCase());
+                } else if (args[i].equals("--to") && i + 1 < args.length) {
+                    toFormat = StorageFormat.valueOf(args[i + 1].toUpperCase());
+                } else {
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+                i += 2;
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            printUsage();
+            System.exit(1);
+        }
+        if (args.length - i != 2) {
+            printUsage();
+            System.exit(1);
+        }
+        String sourcePath = args[i];
+        String targetPath = args[i + 1];
+        StudentRepository source = (fromFormat != null ? fromFormat : StorageFormat.forPath(sourcePath))
+            .repository(sourcePath);
+        StudentRepository target = (toFormat != null ? toFormat : StorageFormat.forPath(targetPath))
+            .repository(targetPath);
+        try {
+            int count = convert(source, target);
+            System.out.println("Converted " + count + " students: " + sourcePath + " -> " + targetPath);
+        } catch (IOException e) {
+            System.err.println("Error converting students file: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static void printUsage() {
+        System.err.println("Usage: StudentStorageConverter [--from CSV|BINARY] [--to CSV|BINARY] <source> <target>");
+    }
+}
@@ -0,0 +1,244 @@
+package ru.bmstu.service.impl;
+
+import ru.bmstu.model.Student;
+import ru.bmstu.model.TokenStatistics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+
+/**
+ * Рейтинг студентов по жетонам: декартово дерево (treap) с размерами поддеревьев,
+ * упорядоченное по убыванию жетонов, затем по фамилии и имени. Вставка, удаление,
+ * место в рейтинге и первые N — O(log n + N). Сумма, число и гистограмма обновляются
+ * за O(1) на изменение, минимум и максимум — крайние узлы дерева.
+ * top и range отдают копии: по хранимым объектам упорядочено дерево.
+ */
+final class TokenLeaderboard {
+    static final int HISTOGRAM_BUCKET_WIDTH = 10;
+
+    private static final class Node {
+        final Student student;
+        final int priority;
+        Node left;
+        Node right;
+        int size = 1;
+
+        Node(Student student, int priority) {
+            this.student = student;
+            this.priority = priority;
+        }
+    }
+
+    private final SplittableRandom random = new SplittableRandom(42);
+    private Node root;
+    private long sum;
+    private final Map<Integer, Long> histogram = new HashMap<>();
+
+    // Порядок рейтинга: больше жетонов — выше; при равенстве по фамилии, затем по имени
+    private static int compare(Student a, Student b) {
+        int byTokens = Integer.compare(b.getTokens(), a.getTokens());
+        if (byTokens != 0) {
+            return byTokens;
+        }
+        int byLastName = a.getLastName().compareTo(b.getLastName());
+        return byLastName != 0 ? byLastName : a.getFirstName().compareTo(b.getFirstName());
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static Node update(Node node) {
+        node.size = 1 + size(node.left) + size(node.right);
+        return node;
+    }
+
+    static int bucketOf(int tokens) {
+        return Math.floorDiv(tokens, HISTOGRAM_BUCKET_WIDTH) * HISTOGRAM_BUCKET_WIDTH;
+    }
+
+    synchronized void rebuild(Collection<Student> students) {
+        root = null;
+        sum = 0;
+        histogram.clear();
+        for (Student student : students) {
+            add(student);
+        }
+    }
+
+    synchronized void add(Student student) {
+        root = insert(root, new Node(student, random.nextInt()));
+        sum += student.getTokens();
+        histogram.merge(bucketOf(student.getTokens()), 1L, Long::sum);
+    }
+
+    synchronized void remove(Student student) {
+        int before = size(root);
+        root = delete(root, student);
+        if (size(root) < before) {
+            sum -= student.getTokens();
+            histogram.computeIfPresent(bucketOf(student.getTokens()), (bucket, count) -> count == 1 ? null : count - 1);
+        }
+    }
+
+    // Замена прежнего значения студента новым (previous == null — добавление, current == null — удаление)
+    synchronized void replace(Student previous, Student current) {
+        if (previous != null) {
+            remove(previous);
+        }
+        if (current != null) {
+            add(current);
+        }
+    }
+
+    // Пачка замен за один захват монитора; пары {прежнее, новое}, как у replace
+    synchronized void replaceAll(List<Student[]> changes) {
+        for (Student[] change : changes) {
+            replace(change[0], change[1]);
+        }
+    }
+
+    private Node insert(Node node, Node inserted) {
+        if (node == null) {
+            return inserted;
+        }
+        if (compare(inserted.student, node.student) < 0) {
+            node.left = insert(node.left, inserted);
+            if (node.left.priority > node.priority) {
+                node = rotateRight(node);
+            }
+        } else {
+            node.right = insert(node.right, inserted);
+            if (node.right.priority > node.priority) {
+                node = rotateLeft(node);
+            }
+        }
+        return update(node);
+    }
+
+    private Node delete(Node node, Student student) {
+        if (node == null) {
+            return null;
+        }
+        int cmp = compare(student, node.student);
+        if (cmp < 0) {
+            node.left = delete(node.left, student);
+        } else if (cmp > 0) {
+            node.right = delete(node.right, student);
+        } else {
+            return merge(node.left, node.right);
+        }
+        return update(node);
+    }
+
+    private Node merge(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            return update(left);
+        }
+        right.left = merge(left, right.left);
+        return update(right);
+    }
+
+    private static Node rotateRight(Node node) {
+        Node pivot = node.left;
+        node.left = pivot.right;
+        pivot.right = update(node);
+        return update(pivot);
+    }
+
+    private static Node rotateLeft(Node node) {
+        Node pivot = node.right;
+        node.right = pivot.left;
+        pivot.left = update(node);
+        return update(pivot);
+    }
+
+    synchronized List<Student> top(int n) {
+        List<Student> result = new ArrayList<>(Math.min(Math.max(n, 0), size(root)));
+        collectTop(root, n, result);
+        return result;
+    }
+
+    private static void collectTop(Node node, int n, List<Student> result) {
+        if (node == null || result.size() >= n) {
+            return;
+        }
+        collectTop(node.left, n, result);
+        if (result.size() < n) {
+            result.add(StudentServiceImpl.copyOf(node.student));
+            collectTop(node.right, n, result);
+        }
+    }
+
+    // Место в рейтинге: 1 + число студентов, у которых жетонов строго больше
+    synchronized int rank(int tokens) {
+        int greater = 0;
+        Node node = root;
+        while (node != null) {
+            if (node.student.getTokens() > tokens) {
+                greater += size(node.left) + 1;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+        return greater + 1;
+    }
+
+    // Студенты с жетонами в [minTokens, maxTokens] в порядке рейтинга
+    synchronized List<Student> range(int minTokens, int maxTokens) {
+        List<Student> result = new ArrayList<>();
+        collectRange(root, minTokens, maxTokens, result);
+        return result;
+    }
+
+    private static void collectRange(Node node, int minTokens, int maxTokens, List<Student> result) {
+        if (node == null) {
+            return;
+        }
+        int tokens = node.student.getTokens();
+        // левое поддерево — не меньше жетонов, правое — не больше
+        if (tokens <= maxTokens) {
+            collectRange(node.left, minTokens, maxTokens, result);
+        }
+        if (tokens >= minTokens && tokens <= maxTokens) {
+            result.add(StudentServiceImpl.copyOf(node.student));
+        }
+        if (tokens >= minTokens) {
+            collectRange(node.right, minTokens, maxTokens, result);
+        }
+    }
+
+    synchronized TokenStatistics statistics() {
+        long count = size(root);
+        if (count == 0) {
+            return new TokenStatistics(0, 0, 0, 0, 0, HISTOGRAM_BUCKET_WIDTH, new TreeMap<>());
+        }
+        Node first = root;
+        while (first.left != null) {
+            first = first.left;
+        }
+        Node last = root;
+        while (last.right != null) {
+            last = last.right;
+        }
+        return new TokenStatistics(count, sum, last.student.getTokens(), first.student.getTokens(),
+            (double) sum / count, HISTOGRAM_BUCKET_WIDTH, new TreeMap<>(histogram));
+    }
+
+    synchronized int size() {
+        return size(root);
+    }
+}
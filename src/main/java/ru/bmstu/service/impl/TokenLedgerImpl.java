@@ -0,0 +1,436 @@
+package ru.bmstu.service.impl;
+
+import ru.bmstu.model.LogEntry;
+import ru.bmstu.model.Student;
+import ru.bmstu.model.StudentKey;
+import ru.bmstu.model.TokenEvent;
+import ru.bmstu.service.TokenLedger;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Журнал жетонов из типизированных событий-изменений. Текущий остаток каждого студента поддерживается
+ * при каждом событии, а история хранится компактно (время, изменение, тип) с контрольной точкой остатка
+ * через каждые {@value #CHECKPOINT_INTERVAL} событий: остаток на момент времени — это бинарный поиск
+ * по времени и сумма не более чем {@value #CHECKPOINT_INTERVAL} изменений от ближайшей точки.
+ * <p>
+ * В памяти держится вся история каждого студента без ограничения, около 13 байт на событие
+ * (в отличие от журнала действий, где в памяти только хвост): миллион событий — порядка 13 МБ кучи.
+ * Поэтому журнал жетонов включается явно (students.ledger.enabled).
+ * <p>
+ * События дописываются в файл строками timestamp,type,firstName,lastName,delta и проигрываются при старте.
+ * Метки времени — локальное время, закодированное как UTC (как в сегментах журнала действий).
+ */
+public class TokenLedgerImpl implements TokenLedger, Closeable {
+    static final int CHECKPOINT_INTERVAL = 64;
+    private static final String HEADER = "timestamp,type,firstName,lastName,delta";
+    private static final TokenEvent.Type[] TYPES = TokenEvent.Type.values();
+
+    private static final Pattern ADDED = Pattern.compile("Added student: (.+) (\\S+) with (-?\\d+) tokens");
+    private static final Pattern UPDATED = Pattern.compile("Updated tokens for (.+) (\\S+): (-?\\d+) -> (-?\\d+)");
+    private static final Pattern REMOVED = Pattern.compile("(?:Removed|Expelled) student: (.+) (\\S+)");
+
+    private final Path path;
+    private final Clock clock;
+    private final GroupCommit groupCommit;
+    private final Map<StudentKey, History> histories = new ConcurrentHashMap<>();
+    // Дозапись в файл только под этой блокировкой
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private BufferedWriter writer;
+    // Буфер строки записи, используется под writeLock
+    private final CsvRowEncoder row = new CsvRowEncoder();
+
+    public TokenLedgerImpl(String filePath) {
+        this(filePath, Durability.NONE, 0, Clock.systemDefaultZone());
+    }
+
+    public TokenLedgerImpl(String filePath, Durability durability, long batchIntervalMillis) {
+        this(filePath, durability, batchIntervalMillis, Clock.systemDefaultZone());
+    }
+
+    public TokenLedgerImpl(String filePath, Durability durability, long batchIntervalMillis, Clock clock) {
+        if (filePath == null || filePath.trim().isEmpty()) {
+            throw new IllegalArgumentException("Token ledger file path cannot be null or empty");
+        }
+        this.path = Paths.get(filePath).toAbsolutePath();
+        this.clock = clock;
+        this.groupCommit = new GroupCommit(durability, batchIntervalMillis);
+        try {
+            load();
+        } catch (IOException e) {
+            System.err.println("Error loading token ledger: " + e.getMessage());
+            throw new RuntimeException("Failed to load token ledger", e);
+        }
+    }
+
+    private void load() throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        System.out.println("Loading token ledger: " + path);
+        if (CsvFiles.truncateTornTail(path)) {
+            System.err.println("Discarding torn token ledger record in " + path);
+        }
+        try (BufferedReader reader = Files.newBufferedReader(path)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.equals(HEADER)) {
+                    continue;
+                }
+                String[] values = line.indexOf('"') < 0 ? line.split(",") : CsvFiles.splitQuoted(line, 0);
+                try {
+                    StudentKey key = new StudentKey(values[2], values[3]);
+                    history(key).add(Long.parseLong(values[0]), TokenEvent.Type.valueOf(values[1]),
+                        Integer.parseInt(values[4]));
+                } catch (RuntimeException e) {
+                    System.err.println("Error parsing token ledger record: " + line);
+                }
+            }
+        }
+    }
+
+    private History history(StudentKey key) {
+        return histories.computeIfAbsent(key, k -> new History());
+    }
+
+    public boolean isEmpty() {
+        return histories.isEmpty();
+    }
+
+    private long now() {
+        return LocalDateTime.now(clock).toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    private static long epochMillis(LocalDateTime timestamp) {
+        return timestamp.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    private static LocalDateTime timestamp(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneOffset.UTC);
+    }
+
+    // Запись событий. Вызывающий упорядочивает события одного студента (очередь публикации StudentServiceImpl,
+    // блокировка CompactStudentServiceImpl), так что они идут в файл в порядке применения;
+    // commit сбрасывает пачку одним flush
+
+    public void recordAdded(Student student) {
+        record(StudentKey.of(student), TokenEvent.Type.ADDED, student.getTokens(), now());
+    }
+
+    public void recordTokens(StudentKey key, int delta) {
+        record(key, TokenEvent.Type.UPDATED, delta, now());
+    }
+
+    public void recordRemoved(StudentKey key) {
+        record(key, TokenEvent.Type.REMOVED, 0, now());
+    }
+
+    private void record(StudentKey key, TokenEvent.Type type, int delta, long time) {
+        History history = history(key);
+        long applied;
+        synchronized (history) {
+            if (type == TokenEvent.Type.REMOVED) {
+                delta = -history.balance;
+            }
+            applied = history.add(time, type, delta);
+        }
+        append(applied, type, key, delta);
+    }
+
+    private void append(long time, TokenEvent.Type type, StudentKey key, int delta) {
+        writeLock.lock();
+        try {
+            if (writer == null) {
+                Files.createDirectories(path.getParent());
+                boolean created = !Files.exists(path) || Files.size(path) == 0;
+                writer = new BufferedWriter(Channels.newWriter(groupCommit.open(path), StandardCharsets.UTF_8));
+                if (created) {
+                    writer.write(HEADER);
+                    writer.newLine();
+                }
+            }
+            row.reset().field(time).field(type).field(key.firstName()).field(key.lastName()).field(delta)
+                .writeTo(writer);
+            writer.newLine();
+        } catch (IOException e) {
+            System.err.println("Error writing token ledger: " + e.getMessage());
+            throw new RuntimeException("Failed to write token ledger", e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public void commit() {
+        writeLock.lock();
+        try {
+            if (writer != null) {
+                writer.flush();
+                groupCommit.committed();
+            }
+        } catch (IOException e) {
+            System.err.println("Error flushing token ledger: " + e.getMessage());
+            throw new RuntimeException("Failed to write token ledger", e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Заполняет пустой журнал по истории журнала действий: разбирает записи о добавлении, изменении
+     * жетонов и удалении студентов с их метками времени. Вызывается один раз при включении журнала жетонов.
+     * @return число импортированных событий
+     */
+    public int importHistory(Stream<LogEntry> logs) {
+        int[] imported = new int[1];
+        logs.forEach(entry -> {
+            String details = entry.getDetails();
+            if (entry.getAction() == null || details == null) {
+                return;
+            }
+            long time = epochMillis(entry.getTimestamp());
+            Matcher matcher;
+            switch (entry.getAction()) {
+                case "ADD_STUDENT" -> {
+                    if ((matcher = ADDED.matcher(details)).matches()) {
+                        record(new StudentKey(matcher.group(1), matcher.group(2)), TokenEvent.Type.ADDED,
+                            Integer.parseInt(matcher.group(3)), time);
+                        imported[0]++;
+                    }
+                }
+                case "UPDATE_TOKENS" -> {
+                    if ((matcher = UPDATED.matcher(details)).matches()) {
+                        record(new StudentKey(matcher.group(1), matcher.group(2)), TokenEvent.Type.UPDATED,
+                            Integer.parseInt(matcher.group(4)) - Integer.parseInt(matcher.group(3)), time);
+                        imported[0]++;
+                    }
+                }
+                case "REMOVE_STUDENT", "EXPEL_STUDENT" -> {
+                    if ((matcher = REMOVED.matcher(details)).matches()) {
+                        record(new StudentKey(matcher.group(1), matcher.group(2)), TokenEvent.Type.REMOVED, 0, time);
+                        imported[0]++;
+                    }
+                }
+                default -> {
+                }
+            }
+        });
+        commit();
+        if (imported[0] > 0) {
+            System.out.println("Imported " + imported[0] + " token events from the audit log");
+        }
+        return imported[0];
+    }
+
+    /**
+     * Сверяет журнал с хранилищем студентов и дописывает исправляющие события там, где остатки
+     * расходятся (журнал включён позже хранилища, пропущенная при сбое запись).
+     * @return число исправлений
+     */
+    public int reconcile(Collection<Student> students) {
+        int corrections = 0;
+        Set<StudentKey> present = new HashSet<>();
+        for (Student student : students) {
+            StudentKey key = StudentKey.of(student);
+            present.add(key);
+            Integer balance = getBalance(key.firstName(), key.lastName());
+            if (balance == null) {
+                recordAdded(student);
+                corrections++;
+            } else if (balance != student.getTokens()) {
+                recordTokens(key, student.getTokens() - balance);
+                corrections++;
+            }
+        }
+        for (Map.Entry<StudentKey, History> entry : histories.entrySet()) {
+            if (!present.contains(entry.getKey()) && entry.getValue().exists()) {
+                recordRemoved(entry.getKey());
+                corrections++;
+            }
+        }
+        commit();
+        if (corrections > 0) {
+            System.out.println("Token ledger reconciled with student store: " + corrections + " corrections");
+        }
+        return corrections;
+    }
+
+    @Override
+    public Integer getBalance(String firstName, String lastName) {
+        History history = histories.get(new StudentKey(firstName, lastName));
+        if (history == null) {
+            return null;
+        }
+        synchronized (history) {
+            return history.exists() ? history.balance : null;
+        }
+    }
+
+    @Override
+    public Integer getBalanceAt(String firstName, String lastName, LocalDateTime at) {
+        History history = histories.get(new StudentKey(firstName, lastName));
+        if (history == null) {
+            return null;
+        }
+        synchronized (history) {
+            int index = history.firstAfter(epochMillis(at)) - 1;
+            if (index < 0 || history.types[index] == TokenEvent.Type.REMOVED.ordinal()) {
+                return null;
+            }
+            return history.balanceAfter(index);
+        }
+    }
+
+    @Override
+    public List<TokenEvent> getEvents(String firstName, String lastName, LocalDateTime from, LocalDateTime to) {
+        History history = histories.get(new StudentKey(firstName, lastName));
+        if (history == null) {
+            return new ArrayList<>();
+        }
+        synchronized (history) {
+            int start = from == null ? 0 : history.firstAtOrAfter(epochMillis(from));
+            int end = to == null ? history.size : history.firstAtOrAfter(epochMillis(to));
+            List<TokenEvent> events = new ArrayList<>(Math.max(0, end - start));
+            int balance = start == 0 ? 0 : history.balanceAfter(start - 1);
+            for (int i = start; i < end; i++) {
+                balance += history.deltas[i];
+                events.add(new TokenEvent(timestamp(history.times[i]), TYPES[history.types[i]],
+                    firstName, lastName, history.deltas[i], balance));
+            }
+            return events;
+        }
+    }
+
+    @Override
+    public int getNetChange(String firstName, String lastName, LocalDateTime from, LocalDateTime to) {
+        History history = histories.get(new StudentKey(firstName, lastName));
+        if (history == null) {
+            return 0;
+        }
+        synchronized (history) {
+            int start = from == null ? 0 : history.firstAtOrAfter(epochMillis(from));
+            int end = to == null ? history.size : history.firstAtOrAfter(epochMillis(to));
+            if (end <= start) {
+                return 0;
+            }
+            return history.balanceAfter(end - 1) - (start == 0 ? 0 : history.balanceAfter(start - 1));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        writeLock.lock();
+        try {
+            if (writer != null) {
+                writer.flush();
+                groupCommit.sync();
+                writer.close();
+                writer = null;
+            }
+            groupCommit.close();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * История одного студента в параллельных массивах. checkpoints[k] — остаток после первых
+     * k * CHECKPOINT_INTERVAL событий. Метки времени не убывают: время события не раньше предыдущего.
+     */
+    private static final class History {
+        long[] times = new long[4];
+        int[] deltas = new int[4];
+        byte[] types = new byte[4];
+        int size;
+        int[] checkpoints = new int[1];
+        int balance;
+
+        // Возвращает фактическую метку времени события
+        long add(long time, TokenEvent.Type type, int delta) {
+            if (size == times.length) {
+                times = Arrays.copyOf(times, size * 2);
+                deltas = Arrays.copyOf(deltas, size * 2);
+                types = Arrays.copyOf(types, size * 2);
+            }
+            long applied = size > 0 ? Math.max(time, times[size - 1]) : time;
+            times[size] = applied;
+            deltas[size] = delta;
+            types[size] = (byte) type.ordinal();
+            size++;
+            balance += delta;
+            if (size % CHECKPOINT_INTERVAL == 0) {
+                int k = size / CHECKPOINT_INTERVAL;
+                if (k == checkpoints.length) {
+                    checkpoints = Arrays.copyOf(checkpoints, k * 2);
+                }
+                checkpoints[k] = balance;
+            }
+            return applied;
+        }
+
+        boolean exists() {
+            return size > 0 && types[size - 1] != TokenEvent.Type.REMOVED.ordinal();
+        }
+
+        // Остаток после события index: от ближайшей контрольной точки не более CHECKPOINT_INTERVAL шагов
+        int balanceAfter(int index) {
+            int k = (index + 1) / CHECKPOINT_INTERVAL;
+            int result = checkpoints[k];
+            for (int i = k * CHECKPOINT_INTERVAL; i <= index; i++) {
+                result += deltas[i];
+            }
+            return result;
+        }
+
+        int firstAtOrAfter(long time) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (times[mid] < time) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        int firstAfter(long time) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (times[mid] <= time) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+}
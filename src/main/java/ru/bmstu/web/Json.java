@@ -0,0 +1,108 @@
+package ru.bmstu.web;
+
+import ru.bmstu.model.LogEntry;
+import ru.bmstu.model.Page;
+import ru.bmstu.model.Student;
+import ru.bmstu.model.StudentKey;
+
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/**
+ * Запись ответов API в JSON. Набор типов небольшой и фиксированный, поэтому поля пишутся явно,
+ * без рефлексии и внешних библиотек.
+ */
+final class Json {
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
+
+    private Json() {
+    }
+
+    static StringBuilder string(StringBuilder out, String value) {
+        if (value == null) {
+            return out.append("null");
+        }
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> out.append("\\\"");
+                case '\\' -> out.append("\\\\");
+                case '\n' -> out.append("\\n");
+                case '\r' -> out.append("\\r");
+                case '\t' -> out.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+                }
+            }
+        }
+        return out.append('"');
+    }
+
+    static StringBuilder student(StringBuilder out, Student student) {
+        out.append("{\"firstName\":");
+        string(out, student.getFirstName()).append(",\"lastName\":");
+        string(out, student.getLastName()).append(",\"tokens\":");
+        return out.append(student.getTokens()).append('}');
+    }
+
+    static StringBuilder logEntry(StringBuilder out, LogEntry entry) {
+        out.append("{\"timestamp\":");
+        string(out, entry.getTimestamp().format(TIMESTAMP)).append(",\"action\":");
+        string(out, entry.getAction()).append(",\"userFirstName\":");
+        string(out, entry.getUserFirstName()).append(",\"userLastName\":");
+        string(out, entry.getUserLastName()).append(",\"userRole\":");
+        string(out, entry.getUserRole().name()).append(",\"details\":");
+        return string(out, entry.getDetails()).append('}');
+    }
+
+    static String students(List<Student> students) {
+        StringBuilder out = new StringBuilder("[");
+        for (int i = 0; i < students.size(); i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            student(out, students.get(i));
+        }
+        return out.append(']').toString();
+    }
+
+    static String logEntries(List<LogEntry> entries) {
+        StringBuilder out = new StringBuilder("[");
+        for (int i = 0; i < entries.size(); i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            logEntry(out, entries.get(i));
+        }
+        return out.append(']').toString();
+    }
+
+    static String studentPage(Page<Student, StudentKey> page) {
+        StringBuilder out = new StringBuilder("{\"items\":").append(students(page.getItems()))
+            .append(",\"nextCursor\":");
+        StudentKey cursor = page.getNextCursor();
+        if (cursor == null) {
+            out.append("null");
+        } else {
+            out.append("{\"firstName\":");
+            string(out, cursor.firstName()).append(",\"lastName\":");
+            string(out, cursor.lastName()).append('}');
+        }
+        return out.append(",\"hasMore\":").append(page.isHasMore()).append('}').toString();
+    }
+
+    static String logPage(Page<LogEntry, Long> page) {
+        return new StringBuilder("{\"items\":").append(logEntries(page.getItems()))
+            .append(",\"nextCursor\":").append(page.getNextCursor())
+            .append(",\"hasMore\":").append(page.isHasMore()).append('}').toString();
+    }
+
+    static String error(String message) {
+        return string(new StringBuilder("{\"error\":"), message).append('}').toString();
+    }
+}
@@ -0,0 +1,348 @@
+package ru.bmstu.web;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.util.UriComponentsBuilder;
+import org.springframework.web.util.UriUtils;
+import ru.bmstu.model.LogEntry;
+import ru.bmstu.model.Student;
+import ru.bmstu.model.StudentKey;
+import ru.bmstu.model.User;
+import ru.bmstu.service.LogService;
+import ru.bmstu.service.StudentService;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+/**
+ * HTTP API над StudentService и LogService. Каждый запрос обрабатывается в своём виртуальном потоке,
+ * так что блокирующие вызовы сервисов (запись CSV, журнала) не занимают потоки ОС.
+ * Пользователь берётся из заголовков X-User-First-Name, X-User-Last-Name и X-User-Role;
+ * изменения без них отклоняются (401), а проверку роли выполняет RoleVerificationAspect (403).
+ *
+ * <pre>
+ * GET    /students?limit=&amp;afterFirstName=&amp;afterLastName=   страница по фамилии и имени
+ * GET    /students/stream                                    все студенты одним потоковым ответом
+ * GET    /students/{firstName}/{lastName}                    один студент
+ * POST   /students?firstName=&amp;lastName=&amp;tokens=          добавить
+ * DELETE /students/{firstName}/{lastName}                    удалить
+ * POST   /students/{firstName}/{lastName}/tokens?amount=     изменить жетоны
+ * GET    /logs?after=&amp;limit=                                 страница журнала по номеру записи
+ * GET    /logs/search?action=&amp;firstName=&amp;lastName=&amp;role=&amp;from=&amp;to=
+ * </pre>
+ * Параметры принимаются в строке запроса или в теле application/x-www-form-urlencoded;
+ * метки времени — ISO (2025-04-18T09:30:00).
+ */
+public class StudentHttpServer implements Closeable {
+    public static final String USER_FIRST_NAME_HEADER = "X-User-First-Name";
+    public static final String USER_LAST_NAME_HEADER = "X-User-Last-Name";
+    public static final String USER_ROLE_HEADER = "X-User-Role";
+    static final int DEFAULT_PAGE_LIMIT = 100;
+    static final int MAX_PAGE_LIMIT = 10_000;
+    // Очередь входящих соединений: сотни клиентов подключаются одновременно
+    private static final int BACKLOG = 1024;
+
+    private final StudentService studentService;
+    private final LogService logService;
+    private final InetSocketAddress address;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    // Ошибка запроса с кодом ответа
+    private static final class HttpError extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        final HttpStatus status;
+
+        HttpError(HttpStatus status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    public StudentHttpServer(StudentService studentService, LogService logService, String host, int port) {
+        if (studentService == null || logService == null) {
+            throw new IllegalArgumentException("StudentService and LogService cannot be null");
+        }
+        this.studentService = studentService;
+        this.logService = logService;
+        this.address = new InetSocketAddress(host, port);
+    }
+
+    public synchronized void start() throws IOException {
+        if (server != null) {
+            return;
+        }
+        server = HttpServer.create(address, BACKLOG);
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(executor);
+        server.createContext("/students", this::handleStudents);
+        server.createContext("/logs", this::handleLogs);
+        server.start();
+        System.out.println("HTTP API listening on http://" + address.getHostString() + ":" + getPort());
+    }
+
+    // Фактический порт; при порте 0 в конфигурации выбирается свободный
+    public synchronized int getPort() {
+        return server != null ? server.getAddress().getPort() : address.getPort();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (server == null) {
+            return;
+        }
+        server.stop(1);
+        executor.close();
+        server = null;
+        executor = null;
+    }
+
+    private void handleStudents(HttpExchange exchange) throws IOException {
+        handle(exchange, () -> {
+            List<String> path = pathSegments(exchange, "/students");
+            HttpMethod method = HttpMethod.valueOf(exchange.getRequestMethod());
+            MultiValueMap<String, String> params = params(exchange);
+
+            if (path.isEmpty() && method == HttpMethod.GET) {
+                int limit = limit(params);
+                String afterFirstName = params.getFirst("afterFirstName");
+                String afterLastName = params.getFirst("afterLastName");
+                if ((afterFirstName == null) != (afterLastName == null)) {
+                    throw new IllegalArgumentException("afterFirstName and afterLastName must be given together");
+                }
+                StudentKey after = afterFirstName != null ? new StudentKey(afterFirstName, afterLastName) : null;
+                send(exchange, HttpStatus.OK, Json.studentPage(studentService.getStudentsPage(after, limit)));
+            } else if (path.isEmpty() && method == HttpMethod.POST) {
+                Student student = new Student(required(params, "firstName"), required(params, "lastName"),
+                    intParam(params, "tokens", 0));
+                studentService.addStudent(user(exchange), student);
+                send(exchange, HttpStatus.CREATED, Json.student(new StringBuilder(), student).toString());
+            } else if (path.size() == 1 && path.get(0).equals("stream") && method == HttpMethod.GET) {
+                streamStudents(exchange);
+            } else if (path.size() == 2 && method == HttpMethod.GET) {
+                Student student = studentService.findStudent(path.get(0), path.get(1));
+                if (student == null) {
+                    throw new HttpError(HttpStatus.NOT_FOUND, "Student not found: " + path.get(0) + " " + path.get(1));
+                }
+                send(exchange, HttpStatus.OK, Json.student(new StringBuilder(), student).toString());
+            } else if (path.size() == 2 && method == HttpMethod.DELETE) {
+                studentService.removeStudent(path.get(0), path.get(1), user(exchange));
+                send(exchange, HttpStatus.NO_CONTENT, null);
+            } else if (path.size() == 3 && path.get(2).equals("tokens") && method == HttpMethod.POST) {
+                int amount = intParam(params, "amount", null);
+                // в ответе — результат этого изменения, а не повторное чтение после чужих запросов
+                Student student = studentService.updateTokens(path.get(0), path.get(1), amount, user(exchange));
+                send(exchange, HttpStatus.OK, Json.student(new StringBuilder(), student).toString());
+            } else {
+                throw notFound(exchange);
+            }
+        });
+    }
+
+    private void handleLogs(HttpExchange exchange) throws IOException {
+        handle(exchange, () -> {
+            List<String> path = pathSegments(exchange, "/logs");
+            if (!exchange.getRequestMethod().equals(HttpMethod.GET.name())) {
+                throw new HttpError(HttpStatus.METHOD_NOT_ALLOWED, "Logs are read-only");
+            }
+            MultiValueMap<String, String> params = params(exchange);
+            if (path.isEmpty()) {
+                String after = params.getFirst("after");
+                Long cursor = after != null ? parseLong(after, "after") : null;
+                send(exchange, HttpStatus.OK, Json.logPage(logService.getLogsPage(cursor, limit(params))));
+            } else if (path.size() == 1 && path.get(0).equals("search")) {
+                String role = params.getFirst("role");
+                List<LogEntry> entries = logService.findLogs(
+                    params.getFirst("action"),
+                    params.getFirst("firstName"),
+                    params.getFirst("lastName"),
+                    role != null ? User.UserRole.valueOf(role) : null,
+                    timestamp(params, "from"),
+                    timestamp(params, "to"));
+                send(exchange, HttpStatus.OK, Json.logEntries(entries));
+            } else {
+                throw notFound(exchange);
+            }
+        });
+    }
+
+    private interface Handler {
+        void handle() throws IOException;
+    }
+
+    // Ошибки сервисов переводятся в коды ответа: роль — 403, изменение на реплике — 405, неверные данные — 400
+    private static void handle(HttpExchange exchange, Handler handler) throws IOException {
+        try (exchange) {
+            try {
+                handler.handle();
+            } catch (HttpError e) {
+                send(exchange, e.status, Json.error(e.getMessage()));
+            } catch (SecurityException e) {
+                send(exchange, HttpStatus.FORBIDDEN, Json.error(e.getMessage()));
+            } catch (UnsupportedOperationException e) {
+                send(exchange, HttpStatus.METHOD_NOT_ALLOWED, Json.error(e.getMessage()));
+            } catch (IllegalArgumentException e) {
+                send(exchange, HttpStatus.BAD_REQUEST, Json.error(e.getMessage()));
+            } catch (RuntimeException e) {
+                System.err.println("Error handling " + exchange.getRequestMethod() + " "
+                    + exchange.getRequestURI() + ": " + e.getMessage());
+                send(exchange, HttpStatus.INTERNAL_SERVER_ERROR, Json.error(e.getMessage()));
+            }
+        }
+    }
+
+    private void streamStudents(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
+        // длина заранее неизвестна: chunked-ответ пишется по мере обхода снимка
+        exchange.sendResponseHeaders(HttpStatus.OK.value(), 0);
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8));
+             Stream<Student> students = studentService.streamStudents()) {
+            StringBuilder json = new StringBuilder(128);
+            out.write('[');
+            Iterator<Student> iterator = students.iterator();
+            while (iterator.hasNext()) {
+                json.setLength(0);
+                Json.student(json, iterator.next());
+                out.append(json);
+                if (iterator.hasNext()) {
+                    out.write(',');
+                }
+            }
+            out.write(']');
+        }
+    }
+
+    private static void send(HttpExchange exchange, HttpStatus status, String body) throws IOException {
+        if (body == null) {
+            exchange.sendResponseHeaders(status.value(), -1);
+            return;
+        }
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
+        exchange.sendResponseHeaders(status.value(), bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    private static HttpError notFound(HttpExchange exchange) {
+        return new HttpError(HttpStatus.NOT_FOUND,
+            "No route for " + exchange.getRequestMethod() + " " + exchange.getRequestURI().getPath());
+    }
+
+    private static User user(HttpExchange exchange) {
+        Headers headers = exchange.getRequestHeaders();
+        String firstName = headers.getFirst(USER_FIRST_NAME_HEADER);
+        String lastName = headers.getFirst(USER_LAST_NAME_HEADER);
+        String role = headers.getFirst(USER_ROLE_HEADER);
+        if (firstName == null || lastName == null || role == null) {
+            throw new HttpError(HttpStatus.UNAUTHORIZED, "Missing user headers: "
+                + USER_FIRST_NAME_HEADER + ", " + USER_LAST_NAME_HEADER + ", " + USER_ROLE_HEADER);
+        }
+        try {
+            return new User(firstName, lastName, User.UserRole.valueOf(role.trim().toUpperCase()));
+        } catch (IllegalArgumentException e) {
+            throw new HttpError(HttpStatus.UNAUTHORIZED, "Unknown user role: " + role);
+        }
+    }
+
+    private static List<String> pathSegments(HttpExchange exchange, String context) {
+        String path = exchange.getRequestURI().getRawPath().substring(context.length());
+        List<String> segments = new ArrayList<>();
+        for (String segment : path.split("/")) {
+            if (!segment.isEmpty()) {
+                segments.add(UriUtils.decode(segment, StandardCharsets.UTF_8));
+            }
+        }
+        return segments;
+    }
+
+    // Параметры строки запроса и тела формы
+    private static MultiValueMap<String, String> params(HttpExchange exchange) throws IOException {
+        MultiValueMap<String, String> params = new LinkedMultiValueMap<>();
+        addDecoded(params, exchange.getRequestURI().getRawQuery());
+        String contentType = exchange.getRequestHeaders().getFirst(HttpHeaders.CONTENT_TYPE);
+        if (contentType != null && contentType.startsWith(MediaType.APPLICATION_FORM_URLENCODED_VALUE)) {
+            addDecoded(params, new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    private static void addDecoded(MultiValueMap<String, String> params, String query) {
+        if (query == null || query.isEmpty()) {
+            return;
+        }
+        UriComponentsBuilder.newInstance().query(query).build().getQueryParams().forEach((name, values) -> {
+            for (String value : values) {
+                // в форме пробел кодируется как '+'
+                params.add(UriUtils.decode(name, StandardCharsets.UTF_8),
+                    value == null ? "" : UriUtils.decode(value.replace('+', ' '), StandardCharsets.UTF_8));
+            }
+        });
+    }
+
+    private static String required(MultiValueMap<String, String> params, String name) {
+        String value = params.getFirst(name);
+        if (value == null || value.isBlank()) {
+            throw new IllegalArgumentException("Missing parameter: " + name);
+        }
+        return value.trim();
+    }
+
+    private static int intParam(MultiValueMap<String, String> params, String name, Integer defaultValue) {
+        String value = params.getFirst(name);
+        if (value == null) {
+            if (defaultValue == null) {
+                throw new IllegalArgumentException("Missing parameter: " + name);
+            }
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Parameter " + name + " must be an integer: " + value);
+        }
+    }
+
+    private static long parseLong(String value, String name) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Parameter " + name + " must be an integer: " + value);
+        }
+    }
+
+    private static int limit(MultiValueMap<String, String> params) {
+        int limit = intParam(params, "limit", DEFAULT_PAGE_LIMIT);
+        if (limit <= 0 || limit > MAX_PAGE_LIMIT) {
+            throw new IllegalArgumentException("Parameter limit must be between 1 and " + MAX_PAGE_LIMIT);
+        }
+        return limit;
+    }
+
+    private static LocalDateTime timestamp(MultiValueMap<String, String> params, String name) {
+        String value = params.getFirst(name);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return LocalDateTime.parse(value.trim());
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Parameter " + name + " must be an ISO timestamp: " + value);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package ru.bmstu.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import ru.bmstu.aspect.RoleVerificationAspect;
+import ru.bmstu.model.StudentKey;
+import ru.bmstu.model.User;
+import ru.bmstu.service.StudentService;
+import ru.bmstu.service.impl.LogServiceImpl;
+import ru.bmstu.service.impl.StudentServiceImpl;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Начисление жетонов группе: N вызовов updateTokens против одного updateTokensBatch.
+ * Оба пути идут через прокси с RoleVerificationAspect, как в приложении.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+public class BatchUpdateBenchmark {
+
+    @Param({"10000"})
+    private int rosterSize;
+
+    @Param({"10", "100"})
+    private int groupSize;
+
+    private Path tempDir;
+    private StudentServiceImpl target;
+    private StudentService studentService;
+    private User teacher;
+    private Map<StudentKey, Integer> group;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        tempDir = Files.createTempDirectory("batch-benchmark");
+        Path csv = BenchmarkData.writeRoster(tempDir.resolve("students.csv"), rosterSize);
+        target = new StudentServiceImpl(csv.toString(), new LogServiceImpl(tempDir.resolve("logs.csv").toString()));
+
+        AspectJProxyFactory factory = new AspectJProxyFactory(target);
+        factory.setProxyTargetClass(true);
+        factory.addAspect(RoleVerificationAspect.class);
+        studentService = factory.getProxy();
+
+        teacher = new User("John", "Doe", User.UserRole.TEACHER);
+        group = new LinkedHashMap<>();
+        for (int i = 0; i < groupSize; i++) {
+            group.put(new StudentKey("First" + i, "Last" + i), 1);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        target.close();
+        BenchmarkData.deleteRecursively(tempDir);
+    }
+
+    @Benchmark
+    public void singleCalls() {
+        for (StudentKey key : group.keySet()) {
+            studentService.updateTokens(key.firstName(), key.lastName(), 1, teacher);
+        }
+    }
+
+    @Benchmark
+    public void batch() {
+        studentService.updateTokensBatch(group, teacher);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(BatchUpdateBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
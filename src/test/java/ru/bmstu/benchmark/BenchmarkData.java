@@ -0,0 +1,33 @@
+package ru.bmstu.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+// Генерация тестовых данных для бенчмарков
+final class BenchmarkData {
+
+    private BenchmarkData() {
+    }
+
+    static Path writeRoster(Path csv, int size) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(csv)) {
+            writer.write("firstName,lastName,tokens");
+            writer.newLine();
+            for (int i = 0; i < size; i++) {
+                writer.write("First" + i + ",Last" + i + "," + (i % 100));
+                writer.newLine();
+            }
+        }
+        return csv;
+    }
+
+    static void deleteRecursively(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
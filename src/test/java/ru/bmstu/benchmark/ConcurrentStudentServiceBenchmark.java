@@ -0,0 +1,80 @@
+package ru.bmstu.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import ru.bmstu.model.Student;
+import ru.bmstu.model.User;
+import ru.bmstu.service.impl.AsyncLogServiceImpl;
+import ru.bmstu.service.impl.BackpressurePolicy;
+import ru.bmstu.service.impl.LogServiceImpl;
+import ru.bmstu.service.impl.StudentJournal;
+import ru.bmstu.service.impl.StudentServiceImpl;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пропускная способность многопоточного режима StudentServiceImpl при разном числе потоков.
+ * Чтение идёт без блокировок, изменения разных студентов не конкурируют за полосы,
+ * но дозапись в журнал выполняется под одной блокировкой.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+public class ConcurrentStudentServiceBenchmark {
+
+    @Param({"100000"})
+    private int rosterSize;
+
+    private Path tempDir;
+    private AsyncLogServiceImpl logService;
+    private StudentServiceImpl studentService;
+    private User teacher;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        tempDir = Files.createTempDirectory("concurrent-benchmark");
+        Path csv = BenchmarkData.writeRoster(tempDir.resolve("students.csv"), rosterSize);
+        logService = new AsyncLogServiceImpl(new LogServiceImpl(tempDir.resolve("logs.csv").toString()),
+                65536, 1024, BackpressurePolicy.BLOCK);
+        studentService = new StudentServiceImpl(csv.toString(), logService,
+                new StudentJournal(tempDir.resolve("students.csv.journal").toString(), 64L * 1024 * 1024), true);
+        teacher = new User("John", "Doe", User.UserRole.TEACHER);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        studentService.close();
+        logService.close();
+        BenchmarkData.deleteRecursively(tempDir);
+    }
+
+    @Benchmark
+    public Student findStudent() {
+        int n = ThreadLocalRandom.current().nextInt(rosterSize);
+        return studentService.findStudent("First" + n, "Last" + n);
+    }
+
+    @Benchmark
+    public void updateTokens() {
+        int n = ThreadLocalRandom.current().nextInt(rosterSize);
+        studentService.updateTokens("First" + n, "Last" + n, 1, teacher);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : new int[]{1, 2, 4, 8}) {
+            new Runner(new OptionsBuilder()
+                    .include(ConcurrentStudentServiceBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build()).run();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package ru.bmstu.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import ru.bmstu.model.LogEntry;
+import ru.bmstu.model.Student;
+import ru.bmstu.model.User;
+import ru.bmstu.service.impl.CsvRowEncoder;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Запись одной строки CSV: прежний String.format с форматированием даты против {@link CsvRowEncoder}.
+ * Строки уходят в Writer без буфера на диске, так что gc.alloc.rate.norm — мусор самой сборки строки.
+ * Запуск с профилировщиком GC: main этого класса.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+public class CsvEncodingBenchmark {
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final int ROWS = 64;
+
+    private final LogEntry[] entries = new LogEntry[ROWS];
+    private final Student[] students = new Student[ROWS];
+    private final CsvRowEncoder row = new CsvRowEncoder();
+    private final Writer out = Writer.nullWriter();
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // записи пачкой в пределах нескольких секунд, как при потоке изменений
+        LocalDateTime start = LocalDateTime.of(2025, 4, 18, 12, 0);
+        for (int i = 0; i < ROWS; i++) {
+            entries[i] = new LogEntry(start.plusSeconds(i / 16), "UPDATE_TOKENS", "John", "Doe",
+                    User.UserRole.TEACHER, "Updated tokens for First" + i + " Last" + i + ": 0 -> 5");
+            students[i] = new Student("First" + i, "Last" + i, i * 37);
+        }
+    }
+
+    private int nextRow() {
+        next = (next + 1) & (ROWS - 1);
+        return next;
+    }
+
+    @Benchmark
+    public void logRowFormat() throws IOException {
+        LogEntry log = entries[nextRow()];
+        out.write(String.format("%s,%s,%s,%s,%s,%s",
+                log.getTimestamp().format(DATE_FORMATTER),
+                log.getAction(),
+                log.getUserFirstName(),
+                log.getUserLastName(),
+                log.getUserRole(),
+                log.getDetails()));
+    }
+
+    @Benchmark
+    public void logRowEncoder() throws IOException {
+        LogEntry log = entries[nextRow()];
+        row.reset()
+                .field(log.getTimestamp())
+                .field(log.getAction())
+                .field(log.getUserFirstName())
+                .field(log.getUserLastName())
+                .field(log.getUserRole())
+                .field(log.getDetails())
+                .writeTo(out);
+    }
+
+    @Benchmark
+    public void studentRowFormat() throws IOException {
+        Student student = students[nextRow()];
+        out.write(String.format("%s,%s,%d", student.getFirstName(), student.getLastName(), student.getTokens()));
+    }
+
+    @Benchmark
+    public void studentRowEncoder() throws IOException {
+        Student student = students[nextRow()];
+        row.reset().field(student.getFirstName()).field(student.getLastName()).field(student.getTokens()).writeTo(out);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(CsvEncodingBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
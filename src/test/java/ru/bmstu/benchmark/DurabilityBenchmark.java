@@ -0,0 +1,86 @@
+package ru.bmstu.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import ru.bmstu.model.User;
+import ru.bmstu.service.impl.CsvStudentRepository;
+import ru.bmstu.service.impl.Durability;
+import ru.bmstu.service.impl.LogServiceImpl;
+import ru.bmstu.service.impl.PersistenceMode;
+import ru.bmstu.service.impl.StudentJournal;
+import ru.bmstu.service.impl.StudentServiceImpl;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пропускная способность изменений при разных уровнях сброса на диск: updateTokens
+ * с перезаписью CSV (SNAPSHOT) или дозаписью в журнал (JOURNAL) и запись в журнал аудита.
+ * В BATCH fsync выполняет фоновый поток раз в интервал, в SYNC — каждая операция.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+public class DurabilityBenchmark {
+
+    @Param({"NONE", "BATCH", "SYNC"})
+    private Durability durability;
+
+    @Param({"SNAPSHOT", "JOURNAL"})
+    private PersistenceMode mode;
+
+    @Param({"1000"})
+    private int rosterSize;
+
+    private Path tempDir;
+    private StudentServiceImpl studentService;
+    private LogServiceImpl logService;
+    private User teacher;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        tempDir = Files.createTempDirectory("durability-benchmark");
+        Path csv = BenchmarkData.writeRoster(tempDir.resolve("students.csv"), rosterSize);
+        logService = new LogServiceImpl(tempDir.resolve("logs.csv").toString(), ChronoUnit.DAYS,
+            LogServiceImpl.DEFAULT_TAIL_SIZE, durability, 10);
+        StudentJournal journal = mode == PersistenceMode.JOURNAL
+            ? new StudentJournal(csv + ".journal", 64L << 20, durability, 10)
+            : null;
+        studentService = new StudentServiceImpl(new CsvStudentRepository(csv.toString(), durability),
+            logService, journal, false);
+        teacher = new User("John", "Doe", User.UserRole.TEACHER);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        studentService.close();
+        logService.close();
+        BenchmarkData.deleteRecursively(tempDir);
+    }
+
+    @Benchmark
+    public void updateTokens() {
+        int i = ThreadLocalRandom.current().nextInt(rosterSize);
+        studentService.updateTokens("First" + i, "Last" + i, 1, teacher);
+    }
+
+    @Benchmark
+    public void logAction() {
+        logService.logAction("UPDATE_TOKENS", teacher, "Updated tokens for First1 Last1: 1 -> 2");
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(DurabilityBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
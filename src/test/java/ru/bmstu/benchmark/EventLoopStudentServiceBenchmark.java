@@ -0,0 +1,83 @@
+package ru.bmstu.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import ru.bmstu.model.User;
+import ru.bmstu.service.StudentService;
+import ru.bmstu.service.impl.AsyncLogServiceImpl;
+import ru.bmstu.service.impl.BackpressurePolicy;
+import ru.bmstu.service.impl.EventLoopStudentService;
+import ru.bmstu.service.impl.LogServiceImpl;
+import ru.bmstu.service.impl.MutationMode;
+import ru.bmstu.service.impl.StudentJournal;
+import ru.bmstu.service.impl.StudentServiceImpl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Изменение жетонов при многих одновременных вызывающих: StudentServiceImpl с блокировками полос
+ * против {@link EventLoopStudentService} с одним потоком-писателем. В обоих режимах включён журнал,
+ * так что видно, сколько даёт одна запись журнала и одна запись в лог на цикл писателя.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+public class EventLoopStudentServiceBenchmark {
+
+    @Param({"100000"})
+    private int rosterSize;
+
+    @Param({"LOCKING", "EVENT_LOOP"})
+    private MutationMode mode;
+
+    private Path tempDir;
+    private AsyncLogServiceImpl logService;
+    private StudentService studentService;
+    private User teacher;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        tempDir = Files.createTempDirectory("event-loop-benchmark");
+        Path csv = BenchmarkData.writeRoster(tempDir.resolve("students.csv"), rosterSize);
+        logService = new AsyncLogServiceImpl(new LogServiceImpl(tempDir.resolve("logs.csv").toString()),
+                65536, 1024, BackpressurePolicy.BLOCK);
+        StudentServiceImpl delegate = new StudentServiceImpl(csv.toString(), logService,
+                new StudentJournal(tempDir.resolve("students.csv.journal").toString(), 64L * 1024 * 1024), true);
+        studentService = mode == MutationMode.EVENT_LOOP
+            ? new EventLoopStudentService(delegate, 8192, 512)
+            : delegate;
+        teacher = new User("John", "Doe", User.UserRole.TEACHER);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        ((Closeable) studentService).close();
+        logService.close();
+        BenchmarkData.deleteRecursively(tempDir);
+    }
+
+    @Benchmark
+    public void updateTokens() {
+        int n = ThreadLocalRandom.current().nextInt(rosterSize);
+        studentService.updateTokens("First" + n, "Last" + n, 1, teacher);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : new int[]{1, 8, 32}) {
+            new Runner(new OptionsBuilder()
+                    .include(EventLoopStudentServiceBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build()).run();
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package ru.bmstu.benchmark;
+
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import ru.bmstu.aspect.RoleVerificationAspect;
+import ru.bmstu.service.LogService;
+import ru.bmstu.service.StudentService;
+import ru.bmstu.service.impl.AsyncLogServiceImpl;
+import ru.bmstu.service.impl.BackpressurePolicy;
+import ru.bmstu.service.impl.CsvStudentRepository;
+import ru.bmstu.service.impl.LogServiceImpl;
+import ru.bmstu.service.impl.StudentJournal;
+import ru.bmstu.service.impl.StudentServiceImpl;
+import ru.bmstu.web.StudentHttpServer;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+/**
+ * Нагрузочный тест HTTP API на локальной машине: сотни клиентов в виртуальных потоках
+ * в замкнутом цикле шлют смесь чтений (страница, поиск студента) и изменений жетонов.
+ * Печатает число запросов в секунду и перцентили задержки по точным замерам всех запросов.
+ *
+ * <pre>
+ * mvn -Ploadtest verify [-Dload.args="--clients 512 --seconds 20 --writes 20"]
+ * </pre>
+ * Параметры: --clients (256), --seconds (10), --warmup (3), --roster (10000), --writes (процент изменений, 10).
+ */
+public final class HttpLoadTest {
+
+    public static void main(String[] args) throws Exception {
+        int clients = option(args, "--clients", 256);
+        int seconds = option(args, "--seconds", 10);
+        int warmup = option(args, "--warmup", 3);
+        int roster = option(args, "--roster", 10_000);
+        int writePercent = option(args, "--writes", 10);
+
+        Path dir = Files.createTempDirectory("http-load");
+        StudentHttpServer server = null;
+        LogService logService = null;
+        StudentServiceImpl target = null;
+        try {
+            logService = new AsyncLogServiceImpl(new LogServiceImpl(dir.resolve("logs.csv").toString()),
+                8192, 512, BackpressurePolicy.BLOCK);
+            Path csv = BenchmarkData.writeRoster(dir.resolve("students.csv"), roster);
+            target = new StudentServiceImpl(new CsvStudentRepository(csv.toString()), logService,
+                new StudentJournal(csv + ".journal", 16L << 20), true);
+            AspectJProxyFactory factory = new AspectJProxyFactory(target);
+            factory.addAspect(new RoleVerificationAspect());
+            StudentService studentService = factory.getProxy();
+            server = new StudentHttpServer(studentService, logService, "localhost", 0);
+            server.start();
+
+            String base = "http://localhost:" + server.getPort();
+            HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+
+            System.out.printf("HTTP load: %d clients, roster %d, %d%% writes, warmup %ds, measure %ds%n",
+                clients, roster, writePercent, warmup, seconds);
+            run(client, base, clients, warmup, roster, writePercent);
+            Result result = run(client, base, clients, seconds, roster, writePercent);
+            result.print(seconds);
+        } finally {
+            if (server != null) {
+                server.close();
+            }
+            if (target != null) {
+                target.close();
+            }
+            if (logService instanceof AutoCloseable closeable) {
+                closeable.close();
+            }
+            BenchmarkData.deleteRecursively(dir);
+        }
+    }
+
+    private record Result(long[] latencies, long errors) {
+        void print(int seconds) {
+            Arrays.sort(latencies);
+            System.out.printf("requests: %d, errors: %d, throughput: %.0f req/s%n",
+                latencies.length, errors, latencies.length / (double) seconds);
+            System.out.printf("latency ms: p50 %.2f, p90 %.2f, p99 %.2f, p99.9 %.2f, max %.2f%n",
+                percentile(0.50), percentile(0.90), percentile(0.99), percentile(0.999),
+                latencies.length == 0 ? 0 : latencies[latencies.length - 1] / 1e6);
+        }
+
+        double percentile(double quantile) {
+            if (latencies.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(quantile * latencies.length) - 1;
+            return latencies[Math.max(0, index)] / 1e6;
+        }
+    }
+
+    // Замкнутый цикл: каждый клиент шлёт следующий запрос сразу после ответа на предыдущий
+    private static Result run(HttpClient client, String base, int clients, int seconds,
+                              int roster, int writePercent) throws Exception {
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        AtomicLong errors = new AtomicLong();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<long[]>> results = IntStream.range(0, clients)
+                .mapToObj(c -> executor.submit(() -> {
+                    long[] latencies = new long[1024];
+                    int count = 0;
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    while (System.nanoTime() < deadline) {
+                        HttpRequest request = nextRequest(base, random, roster, writePercent);
+                        long start = System.nanoTime();
+                        try {
+                            HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                            if (response.statusCode() >= 400) {
+                                errors.incrementAndGet();
+                            }
+                        } catch (Exception e) {
+                            errors.incrementAndGet();
+                        }
+                        if (count == latencies.length) {
+                            latencies = Arrays.copyOf(latencies, count * 2);
+                        }
+                        latencies[count++] = System.nanoTime() - start;
+                    }
+                    return Arrays.copyOf(latencies, count);
+                }))
+                .toList();
+            long[] all = new long[0];
+            for (Future<long[]> result : results) {
+                long[] latencies = result.get();
+                int offset = all.length;
+                all = Arrays.copyOf(all, offset + latencies.length);
+                System.arraycopy(latencies, 0, all, offset, latencies.length);
+            }
+            return new Result(all, errors.get());
+        }
+    }
+
+    private static HttpRequest nextRequest(String base, ThreadLocalRandom random, int roster, int writePercent) {
+        int i = random.nextInt(roster);
+        int kind = random.nextInt(100);
+        if (kind < writePercent) {
+            return HttpRequest.newBuilder(URI.create(base + "/students/First" + i + "/Last" + i + "/tokens?amount=1"))
+                .header(StudentHttpServer.USER_FIRST_NAME_HEADER, "John")
+                .header(StudentHttpServer.USER_LAST_NAME_HEADER, "Doe")
+                .header(StudentHttpServer.USER_ROLE_HEADER, "TEACHER")
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build();
+        }
+        String path = kind % 2 == 0
+            ? "/students/First" + i + "/Last" + i
+            : "/students?limit=20&afterFirstName=First" + i + "&afterLastName=Last" + i;
+        return HttpRequest.newBuilder(URI.create(base + path)).GET().build();
+    }
+
+    private static int option(String[] args, String name, int defaultValue) {
+        for (int i = 0; i + 1 < args.length; i++) {
+            if (args[i].equals(name)) {
+                return Integer.parseInt(args[i + 1]);
+            }
+        }
+        return defaultValue;
+    }
+}
@@ -0,0 +1,88 @@
+package ru.bmstu.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import ru.bmstu.model.LogEntry;
+import ru.bmstu.model.User;
+import ru.bmstu.service.impl.LogServiceImpl;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Запрос "все UPDATE_TOKENS этого преподавателя за неделю": полный просмотр копии журнала
+ * против поиска по вторичным индексам.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+public class LogQueryBenchmark {
+    private static final LocalDateTime START = LocalDateTime.of(2025, 1, 1, 0, 0);
+
+    @Param({"100000", "1000000"})
+    private int logSize;
+
+    private Path tempDir;
+    private LogServiceImpl logService;
+    private LocalDateTime weekFrom;
+    private LocalDateTime weekTo;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        tempDir = Files.createTempDirectory("log-query-benchmark");
+        Path logs = tempDir.resolve("logs.csv");
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+        String[] actions = {"ADD_STUDENT", "REMOVE_STUDENT", "UPDATE_TOKENS"};
+        // записи равномерно распределены по 90 дням, 50 преподавателей
+        long step = 90L * 24 * 3600 / logSize;
+        try (BufferedWriter writer = Files.newBufferedWriter(logs)) {
+            writer.write("timestamp,action,userFirstName,userLastName,userRole,details\n");
+            for (int i = 0; i < logSize; i++) {
+                writer.write(START.plusSeconds(i * step).format(formatter) + "," + actions[i % 3]
+                        + ",Teacher" + (i % 50) + ",Doe,TEACHER,Updated tokens for First" + i + " Last" + i + ": 0 -> 1\n");
+            }
+        }
+        logService = new LogServiceImpl(logs.toString(), ChronoUnit.DAYS, 1000);
+        weekFrom = START.plusDays(40);
+        weekTo = weekFrom.plusDays(7);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        logService.close();
+        BenchmarkData.deleteRecursively(tempDir);
+    }
+
+    @Benchmark
+    public List<LogEntry> fullScan() {
+        return logService.getAllLogs().stream()
+                .filter(e -> e.getAction().equals("UPDATE_TOKENS"))
+                .filter(e -> e.getUserFirstName().equals("Teacher7") && e.getUserLastName().equals("Doe"))
+                .filter(e -> !e.getTimestamp().isBefore(weekFrom) && !e.getTimestamp().isAfter(weekTo))
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<LogEntry> indexed() {
+        return logService.findLogs("UPDATE_TOKENS", "Teacher7", "Doe", User.UserRole.TEACHER, weekFrom, weekTo);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(LogQueryBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,84 @@
+package ru.bmstu.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import ru.bmstu.model.User;
+import ru.bmstu.service.impl.LogServiceImpl;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Журнал действий в зависимости от размера журнала: дозапись одной записи
+ * и запуск сервиса на существующем журнале (разбор активного сегмента).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+public class LogServiceBenchmark {
+
+    @Param({"1000", "100000"})
+    private int logSize;
+
+    private Path tempDir;
+    private Path existingLog;
+    private LogServiceImpl logService;
+    private User teacher;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        tempDir = Files.createTempDirectory("log-service-benchmark");
+        // все записи в пределах текущего дня, чтобы журнал оставался одним активным сегментом
+        existingLog = tempDir.resolve("existing-logs.csv");
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+        LocalDateTime start = LocalDateTime.now().withHour(0).withMinute(0).withSecond(0).withNano(0);
+        try (BufferedWriter writer = Files.newBufferedWriter(existingLog)) {
+            writer.write("timestamp,action,userFirstName,userLastName,userRole,details\n");
+            for (int i = 0; i < logSize; i++) {
+                writer.write(start.plusSeconds(i % 3600).format(formatter)
+                        + ",UPDATE_TOKENS,John,Doe,TEACHER,Updated tokens for First" + i + " Last" + i + ": 0 -> 1\n");
+            }
+        }
+        logService = new LogServiceImpl(tempDir.resolve("logs.csv").toString());
+        teacher = new User("John", "Doe", User.UserRole.TEACHER);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        logService.close();
+        BenchmarkData.deleteRecursively(tempDir);
+    }
+
+    @Benchmark
+    public void logAction() {
+        logService.logAction("UPDATE_TOKENS", teacher, "Updated tokens for Alice Johnson: 0 -> 5");
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 3)
+    @Measurement(iterations = 10)
+    public int startup() throws IOException {
+        try (LogServiceImpl loaded = new LogServiceImpl(existingLog.toString())) {
+            return loaded.getRecentLogs().size();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(LogServiceBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
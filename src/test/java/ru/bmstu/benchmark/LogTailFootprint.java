@@ -0,0 +1,77 @@
+package ru.bmstu.benchmark;
+
+import ru.bmstu.service.impl.LogServiceImpl;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.function.Supplier;
+
+/**
+ * Память хвоста журнала действий, который LogServiceImpl держит в куче: сервис с хвостом на все записи
+ * журнала минус тот же сервис без хвоста (индекс сегмента и прочее в обоих одинаковы).
+ * Журнал как у живого сервиса: несколько действий, два десятка преподавателей, подробности разной длины.
+ *
+ * <pre>
+ * java -cp ... ru.bmstu.benchmark.LogTailFootprint [число записей, по умолчанию 1000000]
+ * </pre>
+ */
+public final class LogTailFootprint {
+    private static final String[] ACTIONS = {"ADD_STUDENT", "UPDATE_TOKENS", "UPDATE_TOKENS", "UPDATE_TOKENS",
+        "REMOVE_STUDENT", "EXPEL_STUDENT"};
+
+    public static void main(String[] args) throws IOException {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Path dir = Files.createTempDirectory("log-tail-footprint");
+        Path log = writeLog(dir.resolve("logs.csv"), size);
+
+        long withoutTail = measure(() -> new LogServiceImpl(log.toString(), ChronoUnit.FOREVER, 0));
+        long withTail = measure(() -> new LogServiceImpl(log.toString(), ChronoUnit.FOREVER, size));
+        long tail = withTail - withoutTail;
+
+        System.out.printf("entries: %d%n", size);
+        System.out.printf("tail: %,d bytes (%.1f bytes/entry)%n", tail, (double) tail / size);
+        BenchmarkData.deleteRecursively(dir);
+    }
+
+    private static Path writeLog(Path log, int size) throws IOException {
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+        LocalDateTime start = LocalDateTime.of(2025, 1, 1, 0, 0);
+        try (BufferedWriter writer = Files.newBufferedWriter(log)) {
+            writer.write("timestamp,action,userFirstName,userLastName,userRole,details\n");
+            for (int i = 0; i < size; i++) {
+                String action = ACTIONS[i % ACTIONS.length];
+                int teacher = i % 20;
+                writer.write(start.plusSeconds(i).format(formatter) + "," + action + ",Teacher" + teacher
+                    + ",Surname" + teacher + ",TEACHER,"
+                    + (action.equals("UPDATE_TOKENS")
+                        ? "Updated tokens for First" + i + " Last" + i + ": " + (i % 100) + " -> " + (i % 100 + 5)
+                        : "Student First" + i + " Last" + i)
+                    + "\n");
+            }
+        }
+        return log;
+    }
+
+    // Прирост занятой кучи, пока сервис достижим
+    private static long measure(Supplier<LogServiceImpl> factory) throws IOException {
+        long before = usedHeap();
+        LogServiceImpl service = factory.get();
+        long after = usedHeap();
+        System.out.println("recent entries: " + service.getRecentLogs().size());
+        service.close();
+        return after - before;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
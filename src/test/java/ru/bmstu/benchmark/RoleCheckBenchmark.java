@@ -0,0 +1,176 @@
+package ru.bmstu.benchmark;
+
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.Before;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import ru.bmstu.aspect.RoleVerificationAspect;
+import ru.bmstu.model.Page;
+import ru.bmstu.model.Student;
+import ru.bmstu.model.StudentKey;
+import ru.bmstu.model.TokenStatistics;
+import ru.bmstu.model.User;
+import ru.bmstu.model.User.UserRole;
+import ru.bmstu.service.StudentService;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Стоимость проверки роли на один защищённый вызов: прежние advice с привязкой args(..)
+ * против одной advice по @RequiresRole с закешированным решением. Цель — пустая реализация,
+ * чтобы измерялись только прокси и аспект.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class RoleCheckBenchmark {
+
+    // Прежний RoleVerificationAspect: по advice с execution(..) и args(..) на каждый метод
+    @Aspect
+    public static class LegacyRoleVerificationAspect {
+        @Before("execution(* ru.bmstu.service.StudentService.addStudent(..)) && args(user, ..)")
+        public void verifyTeacherRoleForAddStudent(User user) {
+            if (user.getRole() != UserRole.TEACHER) {
+                throw new SecurityException("Only teachers can add students");
+            }
+        }
+
+        @Before("execution(* ru.bmstu.service.StudentService.removeStudent(..)) && args(.., user)")
+        public void verifyTeacherRoleForRemoveStudent(User user) {
+            if (user.getRole() != UserRole.TEACHER) {
+                throw new SecurityException("Only teachers can remove students");
+            }
+        }
+
+        @Before("execution(* ru.bmstu.service.StudentService.updateTokens(..)) && args(.., user)")
+        public void verifyTeacherRoleForUpdateTokens(User user) {
+            if (user.getRole() != UserRole.TEACHER) {
+                throw new SecurityException("Only teachers can update tokens");
+            }
+        }
+    }
+
+    // Пустая реализация сервиса
+    public static class NoOpStudentService implements StudentService {
+        @Override
+        public List<Student> getAllStudents() {
+            return List.of();
+        }
+
+        @Override
+        public void addStudent(User user, Student student) {
+        }
+
+        @Override
+        public void removeStudent(String firstName, String lastName, User user) {
+        }
+
+        @Override
+        public void expelStudent(User user, String firstName, String lastName) {
+        }
+
+        @Override
+        public Student updateTokens(String firstName, String lastName, int amount, User user) {
+            return null;
+        }
+
+        @Override
+        public Student findStudent(String firstName, String lastName) {
+            return null;
+        }
+
+        @Override
+        public Stream<Student> streamStudents() {
+            return Stream.empty();
+        }
+
+        @Override
+        public Page<Student, StudentKey> getStudentsPage(StudentKey after, int limit) {
+            return new Page<>(List.of(), after, false);
+        }
+
+        @Override
+        public List<Student> getTopStudents(int n) {
+            return List.of();
+        }
+
+        @Override
+        public int getRank(String firstName, String lastName) {
+            return 0;
+        }
+
+        @Override
+        public List<Student> findStudentsByTokens(int minTokens, int maxTokens) {
+            return List.of();
+        }
+
+        @Override
+        public TokenStatistics getTokenStatistics() {
+            return null;
+        }
+
+        @Override
+        public void addStudents(User user, List<Student> students) {
+        }
+
+        @Override
+        public void removeStudents(List<StudentKey> keys, User user) {
+        }
+
+        @Override
+        public void updateTokensBatch(Map<StudentKey, Integer> amounts, User user) {
+        }
+    }
+
+    private StudentService direct;
+    private StudentService legacy;
+    private StudentService annotated;
+    private User teacher;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        direct = new NoOpStudentService();
+        legacy = proxy(LegacyRoleVerificationAspect.class);
+        annotated = proxy(RoleVerificationAspect.class);
+        teacher = new User("John", "Doe", UserRole.TEACHER);
+    }
+
+    private static StudentService proxy(Class<?> aspect) {
+        AspectJProxyFactory factory = new AspectJProxyFactory(new NoOpStudentService());
+        factory.setProxyTargetClass(true);
+        factory.addAspect(aspect);
+        return factory.getProxy();
+    }
+
+    @Benchmark
+    public void noProxy() {
+        direct.updateTokens("Alice", "Johnson", 1, teacher);
+    }
+
+    @Benchmark
+    public void legacyArgsBinding() {
+        legacy.updateTokens("Alice", "Johnson", 1, teacher);
+    }
+
+    @Benchmark
+    public void requiresRoleCached() {
+        annotated.updateTokens("Alice", "Johnson", 1, teacher);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(RoleCheckBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,74 @@
+package ru.bmstu.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import ru.bmstu.model.Student;
+import ru.bmstu.service.impl.BinaryStudentRepository;
+import ru.bmstu.service.impl.CsvStudentRepository;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Загрузка и сохранение списка студентов в CSV и в двоичном формате
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+public class StudentRepositoryBenchmark {
+
+    @Param({"10000", "1000000"})
+    private int rosterSize;
+
+    private Path tempDir;
+    private CsvStudentRepository csv;
+    private BinaryStudentRepository binary;
+    private List<Student> students;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        tempDir = Files.createTempDirectory("repository-benchmark");
+        Path csvPath = BenchmarkData.writeRoster(tempDir.resolve("students.csv"), rosterSize);
+        csv = new CsvStudentRepository(csvPath.toString());
+        binary = new BinaryStudentRepository(tempDir.resolve("students.bin").toString());
+        students = csv.loadAll();
+        binary.saveAll(students);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkData.deleteRecursively(tempDir);
+    }
+
+    @Benchmark
+    public List<Student> loadCsv() throws IOException {
+        return csv.loadAll();
+    }
+
+    @Benchmark
+    public List<Student> loadBinary() throws IOException {
+        return binary.loadAll();
+    }
+
+    @Benchmark
+    public void saveCsv() throws IOException {
+        csv.saveAll(students);
+    }
+
+    @Benchmark
+    public void saveBinary() throws IOException {
+        binary.saveAll(students);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(StudentRepositoryBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
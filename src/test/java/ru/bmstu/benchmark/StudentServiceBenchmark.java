@@ -0,0 +1,109 @@
+package ru.bmstu.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.EnableAspectJAutoProxy;
+import org.springframework.context.annotation.Import;
+import ru.bmstu.aspect.RoleVerificationAspect;
+import ru.bmstu.model.Student;
+import ru.bmstu.model.User;
+import ru.bmstu.service.StudentService;
+import ru.bmstu.service.impl.LogServiceImpl;
+import ru.bmstu.service.impl.StudentServiceImpl;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Основные операции StudentServiceImpl в зависимости от размера списка студентов:
+ * напрямую и через Spring-прокси с RoleVerificationAspect, как в приложении.
+ * updateTokens в режиме SNAPSHOT включает перезапись CSV (saveStudents) и запись в журнал действий.
+ * findStudent по составному ключу не должен дорожать с ростом списка: при линейном поиске
+ * разница между 1 000 и 200 000 студентов была бы около 200 раз.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+public class StudentServiceBenchmark {
+
+    // Контекст только с аспектом: сервис регистрируется готовым объектом и оборачивается прокси
+    @Configuration
+    @EnableAspectJAutoProxy(proxyTargetClass = true)
+    @Import(RoleVerificationAspect.class)
+    static class AspectConfig {
+    }
+
+    @Param({"1000", "100000", "200000"})
+    private int rosterSize;
+
+    private Path tempDir;
+    private LogServiceImpl logService;
+    private StudentServiceImpl direct;
+    private AnnotationConfigApplicationContext context;
+    private StudentService proxied;
+    private User teacher;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        tempDir = Files.createTempDirectory("student-service-benchmark");
+        Path csv = BenchmarkData.writeRoster(tempDir.resolve("students.csv"), rosterSize);
+        logService = new LogServiceImpl(tempDir.resolve("logs.csv").toString());
+        direct = new StudentServiceImpl(csv.toString(), logService);
+
+        context = new AnnotationConfigApplicationContext();
+        context.register(AspectConfig.class);
+        context.registerBean("studentService", StudentServiceImpl.class, () -> direct);
+        context.refresh();
+        proxied = context.getBean(StudentService.class);
+        teacher = new User("John", "Doe", User.UserRole.TEACHER);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        context.close();
+        logService.close();
+        BenchmarkData.deleteRecursively(tempDir);
+    }
+
+    @Benchmark
+    public Student findStudentDirect() {
+        int n = ThreadLocalRandom.current().nextInt(rosterSize);
+        return direct.findStudent("First" + n, "Last" + n);
+    }
+
+    @Benchmark
+    public Student findStudentProxied() {
+        int n = ThreadLocalRandom.current().nextInt(rosterSize);
+        return proxied.findStudent("First" + n, "Last" + n);
+    }
+
+    @Benchmark
+    public void updateTokensDirect() {
+        int n = ThreadLocalRandom.current().nextInt(rosterSize);
+        direct.updateTokens("First" + n, "Last" + n, 1, teacher);
+    }
+
+    @Benchmark
+    public void updateTokensProxied() {
+        int n = ThreadLocalRandom.current().nextInt(rosterSize);
+        proxied.updateTokens("First" + n, "Last" + n, 1, teacher);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(StudentServiceBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,103 @@
+package ru.bmstu.benchmark;
+
+import ru.bmstu.model.Student;
+import ru.bmstu.service.LogService;
+import ru.bmstu.service.StudentRepository;
+import ru.bmstu.service.StudentService;
+import ru.bmstu.service.impl.CompactStudentServiceImpl;
+import ru.bmstu.service.impl.LogServiceImpl;
+import ru.bmstu.service.impl.StudentServiceImpl;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Занимаемая память хранилища студентов: StudentServiceImpl (объект Student и запись хеш-таблицы
+ * на студента, плюс дерево рейтинга) против {@link CompactStudentServiceImpl}.
+ * Состав как у большого потока: имена из 2 000 и фамилии из 50 000 вариантов.
+ * Память меряется по занятой куче после полной сборки мусора; студенты не читаются из файла и не сохраняются.
+ *
+ * <pre>
+ * java -cp ... ru.bmstu.benchmark.StudentStoreFootprint [число студентов, по умолчанию 1000000]
+ * </pre>
+ */
+public final class StudentStoreFootprint {
+
+    // Студенты отдаются один раз при загрузке и больше не удерживаются; сохранение ничего не делает
+    private static final class InMemoryRepository implements StudentRepository {
+        private List<Student> students;
+
+        InMemoryRepository(List<Student> students) {
+            this.students = students;
+        }
+
+        @Override
+        public List<Student> loadAll() {
+            List<Student> loaded = students;
+            students = null;
+            return loaded;
+        }
+
+        @Override
+        public void saveAll(Collection<Student> students) {
+        }
+
+        @Override
+        public String getLocation() {
+            return "memory";
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Path dir = Files.createTempDirectory("store-footprint");
+        LogService logService = new LogServiceImpl(dir.resolve("logs.csv").toString());
+
+        long objects = measure(() -> new StudentServiceImpl(
+            new InMemoryRepository(roster(size)), logService, null, false));
+        long compact = measure(() -> new CompactStudentServiceImpl(new InMemoryRepository(roster(size)), logService));
+
+        System.out.printf("students: %d%n", size);
+        System.out.printf("OBJECTS: %,d bytes (%.1f bytes/student)%n", objects, (double) objects / size);
+        System.out.printf("COMPACT: %,d bytes (%.1f bytes/student)%n", compact, (double) compact / size);
+        System.out.printf("ratio: %.1fx%n", (double) objects / compact);
+        BenchmarkData.deleteRecursively(dir);
+    }
+
+    private static List<Student> roster(int size) {
+        List<Student> students = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            // при одной фамилии имена различны, пока i / 50 000 < 2 000 (97 и 2 000 взаимно просты)
+            int last = i % 50_000;
+            int first = (i / 50_000 * 97 + last) % 2_000;
+            students.add(new Student("First" + first, "Last" + last, i % 1000));
+        }
+        return students;
+    }
+
+    // Прирост занятой кучи, пока построенный сервис достижим; исходный список к этому моменту уже мусор
+    private static long measure(Supplier<StudentService> factory) {
+        long before = usedHeap();
+        StudentService service = factory.get();
+        // рейтинг и упорядоченные представления строятся при загрузке; чтение — проверка, что они готовы
+        service.getTopStudents(1);
+        long after = usedHeap();
+        if (service.getAllStudents().isEmpty()) {
+            System.out.println("empty roster");
+        }
+        return after - before;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
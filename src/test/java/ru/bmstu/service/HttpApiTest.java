@@ -0,0 +1,144 @@
+package ru.bmstu.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import ru.bmstu.aspect.RoleVerificationAspect;
+import ru.bmstu.service.impl.LogServiceImpl;
+import ru.bmstu.service.impl.StudentServiceImpl;
+import ru.bmstu.web.StudentHttpServer;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HttpApiTest {
+    private StudentHttpServer server;
+    private StudentService studentService;
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        LogService logService = new LogServiceImpl(tempDir.resolve("http-logs.csv").toString());
+        StudentServiceImpl target = new StudentServiceImpl(tempDir.resolve("http-students.csv").toString(),
+                logService, null, true);
+        AspectJProxyFactory factory = new AspectJProxyFactory(target);
+        factory.addAspect(new RoleVerificationAspect());
+        studentService = factory.getProxy();
+        server = new StudentHttpServer(studentService, logService, "localhost", 0);
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+    }
+
+    @Test
+    void testStudentEndpointsUseRoleFromHeaders() throws Exception {
+        assertEquals(201, send("POST", "/students?firstName=Alice&lastName=Johnson&tokens=5", "TEACHER").statusCode());
+        // параметры в теле формы и имена не латиницей
+        HttpResponse<String> added = client.send(request("/students", "TEACHER")
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString("firstName=" + encode("Анна") + "&lastName=" + encode("Иванова")))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(201, added.statusCode());
+        assertEquals("{\"firstName\":\"Анна\",\"lastName\":\"Иванова\",\"tokens\":0}", added.body());
+
+        assertEquals(401, send("POST", "/students?firstName=Bob&lastName=Brown", null).statusCode());
+        HttpResponse<String> denied = send("POST", "/students/Alice/Johnson/tokens?amount=3", "STUDENT");
+        assertEquals(403, denied.statusCode());
+        assertEquals("{\"error\":\"Only teachers can update tokens\"}", denied.body());
+
+        HttpResponse<String> updated = send("POST", "/students/Alice/Johnson/tokens?amount=3", "TEACHER");
+        assertEquals(200, updated.statusCode());
+        assertEquals("{\"firstName\":\"Alice\",\"lastName\":\"Johnson\",\"tokens\":8}", updated.body());
+        assertEquals(8, studentService.findStudent("Alice", "Johnson").getTokens());
+
+        assertEquals(400, send("POST", "/students/Alice/Johnson/tokens?amount=many", "TEACHER").statusCode());
+        assertEquals(400, send("POST", "/students?firstName=Alice&lastName=Johnson", "TEACHER").statusCode());
+        assertEquals(404, send("GET", "/students/Nobody/Here", null).statusCode());
+
+        HttpResponse<String> page = send("GET", "/students?limit=1&afterFirstName=Alice&afterLastName=Johnson", null);
+        assertEquals("{\"items\":[{\"firstName\":\"Анна\",\"lastName\":\"Иванова\",\"tokens\":0}],"
+                + "\"nextCursor\":{\"firstName\":\"Анна\",\"lastName\":\"Иванова\"},\"hasMore\":false}", page.body());
+        assertTrue(send("GET", "/students?limit=1", null).body().endsWith("\"hasMore\":true}"));
+        assertEquals("[{\"firstName\":\"Alice\",\"lastName\":\"Johnson\",\"tokens\":8},"
+                + "{\"firstName\":\"Анна\",\"lastName\":\"Иванова\",\"tokens\":0}]", send("GET", "/students/stream", null).body());
+
+        assertEquals(204, send("DELETE", "/students/Alice/Johnson", "TEACHER").statusCode());
+        assertNull(studentService.findStudent("Alice", "Johnson"));
+
+        HttpResponse<String> logs = send("GET", "/logs/search?action=UPDATE_TOKENS&role=TEACHER", null);
+        assertEquals(200, logs.statusCode());
+        assertTrue(logs.body().contains("\"details\":\"Updated tokens for Alice Johnson: 5 -> 8\""), logs.body());
+        HttpResponse<String> logPage = send("GET", "/logs?after=1&limit=10", null);
+        assertTrue(logPage.body().startsWith("{\"items\":[{\"timestamp\":"), logPage.body());
+        assertTrue(logPage.body().endsWith("\"nextCursor\":3,\"hasMore\":false}"), logPage.body());
+        assertEquals(405, send("DELETE", "/logs", "TEACHER").statusCode());
+    }
+
+    @Test
+    void testConcurrentClientsUpdateWithoutLostWrites() throws Exception {
+        assertEquals(201, send("POST", "/students?firstName=Shared&lastName=Counter", "TEACHER").statusCode());
+        ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            List<Future<HttpResponse<String>>> responses = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                responses.add(clients.submit(() -> send("POST", "/students/Shared/Counter/tokens?amount=1", "TEACHER")));
+            }
+            // каждый ответ показывает результат своего изменения: значения 1..200 без повторов
+            Set<String> bodies = new HashSet<>();
+            for (Future<HttpResponse<String>> response : responses) {
+                assertEquals(200, response.get().statusCode());
+                bodies.add(response.get().body());
+            }
+            Set<String> expected = new HashSet<>();
+            for (int tokens = 1; tokens <= 200; tokens++) {
+                expected.add("{\"firstName\":\"Shared\",\"lastName\":\"Counter\",\"tokens\":" + tokens + "}");
+            }
+            assertEquals(expected, bodies);
+        } finally {
+            clients.close();
+        }
+        assertEquals(200, studentService.findStudent("Shared", "Counter").getTokens());
+    }
+
+    private HttpRequest.Builder request(String path, String role) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + path));
+        if (role != null) {
+            builder.header(StudentHttpServer.USER_FIRST_NAME_HEADER, "John")
+                    .header(StudentHttpServer.USER_LAST_NAME_HEADER, "Doe")
+                    .header(StudentHttpServer.USER_ROLE_HEADER, role);
+        }
+        return builder;
+    }
+
+    private HttpResponse<String> send(String method, String path, String role) throws IOException, InterruptedException {
+        return client.send(request(path, role).method(method, HttpRequest.BodyPublishers.noBody()).build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,500 @@
+package ru.bmstu.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.bmstu.model.LogEntry;
+import ru.bmstu.model.Page;
+import ru.bmstu.model.User;
+import ru.bmstu.service.impl.AsyncLogServiceImpl;
+import ru.bmstu.service.impl.BackpressurePolicy;
+import ru.bmstu.service.impl.Durability;
+import ru.bmstu.service.impl.LogRotationPolicy;
+import ru.bmstu.service.impl.LogServiceImpl;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogServiceTest {
+    private User teacher;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void setUp() {
+        teacher = new User("John", "Doe", User.UserRole.TEACHER);
+    }
+
+    @Test
+    void testLogActionAppendsRowsAfterHeader() throws IOException {
+        Path logs = tempDir.resolve("logs.csv");
+        try (LogServiceImpl logService = new LogServiceImpl(logs.toString())) {
+            logService.logAction("ADD_STUDENT", teacher, "Added student: Alice Johnson with 0 tokens");
+            logService.logAction("UPDATE_TOKENS", teacher, "Updated tokens for Alice Johnson: 0 -> 5");
+        }
+        try (LogServiceImpl logService = new LogServiceImpl(logs.toString())) {
+            logService.logAction("REMOVE_STUDENT", teacher, "Removed student: Alice Johnson");
+            assertEquals(3, logService.getAllLogs().size());
+        }
+
+        List<String> lines = Files.readAllLines(logs);
+        assertEquals(4, lines.size());
+        assertEquals("timestamp,action,userFirstName,userLastName,userRole,details", lines.get(0));
+        assertTrue(lines.get(3).endsWith("REMOVE_STUDENT,John,Doe,TEACHER,Removed student: Alice Johnson"));
+    }
+
+    @Test
+    void testLoadLogsDiscardsPartiallyWrittenLastLine() throws IOException {
+        Path logs = tempDir.resolve("torn-logs.csv");
+        Files.writeString(logs, "timestamp,action,userFirstName,userLastName,userRole,details\n"
+                + "2025-04-18 09:36:58,ADD_STUDENT,John,Doe,TEACHER,Added student: Alice Johnson with 0 tokens\n"
+                + "2025-04-18 09:40:23,UPDATE_TOK");
+
+        try (LogServiceImpl logService = new LogServiceImpl(logs.toString())) {
+            assertEquals(1, logService.getAllLogs().size());
+            logService.logAction("UPDATE_TOKENS", teacher, "Updated tokens for Alice Johnson: 0 -> 5");
+        }
+        try (LogServiceImpl logService = new LogServiceImpl(logs.toString())) {
+            assertEquals(2, logService.getAllLogs().size());
+            assertEquals("UPDATE_TOKENS", logService.getAllLogs().get(1).getAction());
+        }
+    }
+
+    @Test
+    void testEmptyLogFileGetsHeader() throws IOException {
+        Path logs = tempDir.resolve("empty-logs.csv");
+        Files.createFile(logs);
+
+        try (LogServiceImpl logService = new LogServiceImpl(logs.toString())) {
+            logService.logAction("ADD_STUDENT", teacher, "Added student: Alice Johnson with 0 tokens");
+        }
+        List<String> lines = Files.readAllLines(logs);
+        assertEquals(2, lines.size());
+        assertEquals("timestamp,action,userFirstName,userLastName,userRole,details", lines.get(0));
+    }
+
+    @Test
+    void testAsyncLoggerWritesEveryEntryBeforeClose() throws Exception {
+        Path logs = tempDir.resolve("async-logs.csv");
+        AsyncLogServiceImpl logService = new AsyncLogServiceImpl(
+                new LogServiceImpl(logs.toString()), 16, 8, BackpressurePolicy.BLOCK);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int threadId = t;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 250; i++) {
+                    logService.logAction("UPDATE_TOKENS", teacher, "thread " + threadId + " entry " + i);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        logService.close();
+
+        assertEquals(1001, Files.readAllLines(logs).size());
+        try (LogServiceImpl reloaded = new LogServiceImpl(logs.toString())) {
+            assertEquals(1000, reloaded.getAllLogs().size());
+        }
+    }
+
+    @Test
+    void testAsyncLoggerFlushMakesEntriesVisible() throws IOException {
+        Path logs = tempDir.resolve("async-flush-logs.csv");
+        try (AsyncLogServiceImpl logService = new AsyncLogServiceImpl(
+                new LogServiceImpl(logs.toString()), 4, 2, BackpressurePolicy.SYNC)) {
+            for (int i = 0; i < 20; i++) {
+                logService.logAction("ADD_STUDENT", teacher, "entry " + i);
+            }
+            logService.flush();
+            assertEquals(21, Files.readAllLines(logs).size());
+            assertEquals(20, logService.getAllLogs().size());
+        }
+    }
+
+    @Test
+    void testAsyncLoggerSyncFallbackKeepsOrder() throws IOException {
+        Path logs = tempDir.resolve("async-sync-order-logs.csv");
+        // медленный писатель: очередь на одну запись почти всегда полна
+        LogServiceImpl slow = new LogServiceImpl(logs.toString()) {
+            @Override
+            public synchronized void appendEntries(List<LogEntry> entries) {
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.appendEntries(entries);
+            }
+        };
+        List<String> expected = new ArrayList<>();
+        try (AsyncLogServiceImpl logService = new AsyncLogServiceImpl(slow, 1, 1, BackpressurePolicy.SYNC)) {
+            for (int i = 0; i < 200; i++) {
+                expected.add("entry " + i);
+                logService.logAction("ADD_STUDENT", teacher, "entry " + i);
+            }
+        }
+        try (LogServiceImpl reloaded = new LogServiceImpl(logs.toString())) {
+            assertEquals(expected, reloaded.getAllLogs().stream().map(LogEntry::getDetails).toList());
+        }
+    }
+
+    @Test
+    void testAsyncLoggerKeepsEntriesAcceptedWhileClosingAndReportsFailedWrites() throws Exception {
+        Path logs = tempDir.resolve("async-close-logs.csv");
+        AsyncLogServiceImpl logService = new AsyncLogServiceImpl(
+                new LogServiceImpl(logs.toString()), 4, 2, BackpressurePolicy.BLOCK);
+        AtomicInteger accepted = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    while (true) {
+                        logService.logAction("UPDATE_TOKENS", teacher, "entry");
+                        accepted.incrementAndGet();
+                    }
+                } catch (IllegalStateException closed) {
+                    // сервис закрыт: дальше записи не принимаются
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        Thread.sleep(50);
+        logService.close();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        // каждая принятая запись записана, несмотря на гонку с close()
+        assertEquals(accepted.get() + 1, Files.readAllLines(logs).size());
+
+        AtomicBoolean failNext = new AtomicBoolean(true);
+        LogServiceImpl failing = new LogServiceImpl(tempDir.resolve("async-failing-logs.csv").toString()) {
+            @Override
+            public synchronized void appendEntries(List<LogEntry> entries) {
+                if (failNext.getAndSet(false)) {
+                    throw new RuntimeException("disk full");
+                }
+                super.appendEntries(entries);
+            }
+        };
+        try (AsyncLogServiceImpl failingService = new AsyncLogServiceImpl(failing, 4, 4, BackpressurePolicy.BLOCK)) {
+            failingService.logAction("ADD_STUDENT", teacher, "lost entry");
+            assertThrows(IllegalStateException.class, failingService::flush);
+            failingService.logAction("ADD_STUDENT", teacher, "written entry");
+            failingService.flush();
+            assertEquals(List.of("written entry"),
+                    failingService.getAllLogs().stream().map(LogEntry::getDetails).toList());
+        }
+    }
+
+    @Test
+    void testRangeQueryReadsDiskWhenOlderEntryHasLaterTimestamp() throws IOException {
+        Path logs = tempDir.resolve("unordered-logs.csv");
+        Files.writeString(logs, "timestamp,action,userFirstName,userLastName,userRole,details\n"
+                + "2025-04-18 10:00:00,ADD_STUDENT,John,Doe,TEACHER,first\n"
+                + "2025-04-18 12:00:00,ADD_STUDENT,John,Doe,TEACHER,clock moved back after this\n"
+                + "2025-04-18 11:00:00,ADD_STUDENT,John,Doe,TEACHER,third\n"
+                + "2025-04-18 11:30:00,ADD_STUDENT,John,Doe,TEACHER,fourth\n");
+
+        // в хвосте две последние записи, самая старая из них (11:00) раньше from
+        try (LogServiceImpl logService = new LogServiceImpl(logs.toString(), ChronoUnit.FOREVER, 2);
+             Stream<LogEntry> range = logService.streamLogs(LocalDateTime.of(2025, 4, 18, 11, 15), null)) {
+            assertEquals(List.of("clock moved back after this", "fourth"),
+                    range.map(LogEntry::getDetails).toList());
+        }
+        // все записи до хвоста раньше from: ответ из хвоста совпадает с диском
+        try (LogServiceImpl logService = new LogServiceImpl(logs.toString(), ChronoUnit.FOREVER, 2);
+             Stream<LogEntry> range = logService.streamLogs(LocalDateTime.of(2025, 4, 18, 12, 30), null)) {
+            assertEquals(0, range.count());
+        }
+    }
+
+    @Test
+    void testLogIsSplitIntoDailySegmentsAndRangeQueryReadsOnlyOverlapping() throws IOException {
+        Path logs = tempDir.resolve("segmented-logs.csv");
+        writeLogDays(logs, LocalDateTime.of(2025, 4, 16, 0, 0), 3, 3000);
+
+        try (LogServiceImpl logService = new LogServiceImpl(logs.toString(), ChronoUnit.DAYS, 100)) {
+            assertEquals(100, logService.getRecentLogs().size());
+            assertEquals(9000, logService.getAllLogs().size());
+        }
+        // унаследованный файл разрезан: два закрытых сегмента, в активном только последний день
+        assertTrue(Files.exists(tempDir.resolve("segmented-logs-20250416-000000.csv")));
+        assertTrue(Files.exists(tempDir.resolve("segmented-logs-20250417-000000.csv")));
+        assertEquals(2, Files.readAllLines(tempDir.resolve("segmented-logs.csv.segments")).size());
+        assertEquals(3001, Files.readAllLines(logs).size());
+
+        // сегмент вне интервала не читается
+        Files.delete(tempDir.resolve("segmented-logs-20250416-000000.csv"));
+        try (LogServiceImpl logService = new LogServiceImpl(logs.toString(), ChronoUnit.DAYS, 100);
+             Stream<LogEntry> range = logService.streamLogs(
+                     LocalDateTime.of(2025, 4, 17, 1, 0), LocalDateTime.of(2025, 4, 17, 2, 0))) {
+            List<LogEntry> entries = range.collect(Collectors.toList());
+            assertEquals(361, entries.size());
+            assertEquals(LocalDateTime.of(2025, 4, 17, 1, 0), entries.get(0).getTimestamp());
+            assertEquals(LocalDateTime.of(2025, 4, 17, 2, 0), entries.get(360).getTimestamp());
+        }
+    }
+
+    @Test
+    void testNewDayRollsActiveSegmentAndRecentRangeIsServedFromTail() throws IOException {
+        Path logs = tempDir.resolve("rolling-logs.csv");
+        writeLogDays(logs, LocalDateTime.of(2025, 4, 18, 0, 0), 1, 10);
+
+        try (LogServiceImpl logService = new LogServiceImpl(logs.toString(), ChronoUnit.DAYS, 5)) {
+            LocalDateTime before = LocalDateTime.now().minusSeconds(1);
+            logService.logAction("ADD_STUDENT", teacher, "Added student: Alice Johnson with 0 tokens");
+
+            assertTrue(Files.exists(tempDir.resolve("rolling-logs-20250418-000000.csv")));
+            assertEquals(2, Files.readAllLines(logs).size());
+            try (Stream<LogEntry> recent = logService.streamLogs(before, null)) {
+                assertEquals(List.of("ADD_STUDENT"), recent.map(LogEntry::getAction).collect(Collectors.toList()));
+            }
+            try (Stream<LogEntry> old = logService.streamLogs(null, LocalDateTime.of(2025, 4, 18, 23, 59, 59))) {
+                assertEquals(10, old.count());
+            }
+        }
+        try (LogServiceImpl reloaded = new LogServiceImpl(logs.toString(), ChronoUnit.DAYS, 5)) {
+            assertEquals(11, reloaded.getAllLogs().size());
+            assertEquals(1, reloaded.getRecentLogs().size());
+        }
+    }
+
+    @Test
+    void testCompactTailMatchesEntriesOnDisk() throws IOException {
+        Path logs = tempDir.resolve("tail-logs.csv");
+        LocalDateTime start = LocalDateTime.of(2025, 4, 18, 9, 0);
+        User[] users = {teacher, new User("Анна", "Петрова", User.UserRole.TEACHER),
+                new User("Jane", "Smith", User.UserRole.STUDENT)};
+        String[] actions = {"ADD_STUDENT", "UPDATE_TOKENS", "REMOVE_STUDENT"};
+        Random random = new Random(5);
+        try (LogServiceImpl logService = new LogServiceImpl(logs.toString(), ChronoUnit.FOREVER, 50)) {
+            // подробности разной длины: кольцо много раз оборачивается, а байты подробностей сдвигаются и растут
+            for (int i = 0; i < 500; i++) {
+                User user = users[random.nextInt(users.length)];
+                logService.appendEntries(List.of(new LogEntry(start.plusSeconds(i), actions[i % actions.length],
+                        user.getFirstName(), user.getLastName(), user.getRole(),
+                        "Запись " + i + " " + "x".repeat(1 + random.nextInt(i % 100 + 1)))));
+            }
+            List<LogEntry> all = logService.getAllLogs();
+            assertEquals(500, all.size());
+            assertEquals(all.subList(450, 500), logService.getRecentLogs());
+
+            Page<LogEntry, Long> page = logService.getLogsPage(459L, 7);
+            assertEquals(all.subList(460, 467), page.getItems());
+            assertEquals(466L, page.getNextCursor());
+            assertEquals(all.subList(495, 500), logService.getLogsPage(494L, 10).getItems());
+
+            // граница с долями секунды: запись ровно в from.withNano(0) уже раньше from
+            try (Stream<LogEntry> range = logService.streamLogs(start.plusSeconds(470).plusNanos(1),
+                    start.plusSeconds(480))) {
+                assertEquals(all.subList(471, 481), range.collect(Collectors.toList()));
+            }
+        }
+        try (LogServiceImpl disabled = new LogServiceImpl(logs.toString(), ChronoUnit.FOREVER, 0)) {
+            assertTrue(disabled.getRecentLogs().isEmpty());
+            assertEquals(3, disabled.getLogsPage(496L, 10).getItems().size());
+        }
+    }
+
+    @Test
+    void testIndexedQueriesMatchFullScan() throws IOException {
+        Path logs = tempDir.resolve("indexed-logs.csv");
+        String[] actions = {"ADD_STUDENT", "REMOVE_STUDENT", "UPDATE_TOKENS"};
+        String[][] users = {{"John", "Doe", "TEACHER"}, {"Mary", "Major", "TEACHER"}, {"Ann", "Lee", "STUDENT"}};
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+        Random random = new Random(7);
+        StringBuilder content = new StringBuilder("timestamp,action,userFirstName,userLastName,userRole,details\n");
+        LocalDateTime time = LocalDateTime.of(2025, 4, 14, 0, 0);
+        for (int i = 0; i < 5000; i++) {
+            String[] user = users[random.nextInt(users.length)];
+            // изредка записи идут не по порядку времени
+            LocalDateTime timestamp = i % 97 == 0 ? time.minusMinutes(30) : time;
+            content.append(timestamp.format(formatter)).append(',').append(actions[random.nextInt(actions.length)])
+                    .append(',').append(user[0]).append(',').append(user[1]).append(',').append(user[2])
+                    .append(",entry ").append(i).append('\n');
+            if (i % 500 == 0) {
+                content.append("not a valid row\n");
+            }
+            time = time.plusMinutes(7);
+        }
+        Files.writeString(logs, content.toString());
+
+        try (LogServiceImpl logService = new LogServiceImpl(logs.toString(), ChronoUnit.DAYS, 100)) {
+            logService.logAction("UPDATE_TOKENS", teacher, "Updated tokens for Alice Johnson: 0 -> 5");
+            List<LogEntry> all = logService.getAllLogs();
+            assertEquals(5001, all.size());
+            for (int q = 0; q < 200; q++) {
+                String action = random.nextBoolean() ? actions[random.nextInt(actions.length)] : null;
+                String[] user = random.nextBoolean() ? users[random.nextInt(users.length)] : new String[2];
+                User.UserRole role = random.nextInt(3) == 0 ? User.UserRole.values()[random.nextInt(2)] : null;
+                LocalDateTime from = random.nextBoolean() ? LocalDateTime.of(2025, 4, 14, 0, 0).plusHours(random.nextInt(24 * 25)) : null;
+                LocalDateTime to = from != null && random.nextBoolean() ? from.plusHours(random.nextInt(96)) : null;
+
+                List<LogEntry> expected = all.stream()
+                        .filter(e -> action == null || e.getAction().equals(action))
+                        .filter(e -> user[0] == null || e.getUserFirstName().equals(user[0]) && e.getUserLastName().equals(user[1]))
+                        .filter(e -> role == null || e.getUserRole() == role)
+                        .filter(e -> from == null || !e.getTimestamp().isBefore(from))
+                        .filter(e -> to == null || !e.getTimestamp().isAfter(to))
+                        .collect(Collectors.toList());
+                assertEquals(expected, logService.findLogs(action, user[0], user[1], role, from, to));
+            }
+            assertEquals(1, logService.findLogsByUser("John", "Doe").stream()
+                    .filter(e -> e.getDetails().startsWith("Updated tokens for Alice")).count());
+            assertTrue(logService.findLogsByAction("UNKNOWN").isEmpty());
+        }
+    }
+
+    @Test
+    void testLogPagesCoverWholeLogAcrossSegmentsAndRestart() throws IOException {
+        Path logs = tempDir.resolve("paged-logs.csv");
+        writeLogDays(logs, LocalDateTime.of(2025, 4, 16, 0, 0), 3, 2500);
+
+        List<LogEntry> all;
+        try (LogServiceImpl logService = new LogServiceImpl(logs.toString(), ChronoUnit.DAYS, 50)) {
+            logService.logAction("ADD_STUDENT", teacher, "Added student: Alice Johnson with 0 tokens");
+            all = logService.getAllLogs();
+            assertEquals(7501, all.size());
+            assertEquals(all, readAllPages(logService, 333));
+            assertThrows(IllegalArgumentException.class, () -> logService.getLogsPage(null, 0));
+        }
+        // номера записей сохраняются в индексе сегментов: курсор действует после перезапуска
+        try (LogServiceImpl reloaded = new LogServiceImpl(logs.toString(), ChronoUnit.DAYS, 50)) {
+            Page<LogEntry, Long> page = reloaded.getLogsPage(4999L, 3);
+            assertEquals(all.subList(5000, 5003), page.getItems());
+            assertEquals(5002L, page.getNextCursor());
+            assertTrue(page.isHasMore());
+
+            // последние записи отдаются из хвоста в памяти
+            Page<LogEntry, Long> last = reloaded.getLogsPage(7490L, 100);
+            assertEquals(all.subList(7491, 7501), last.getItems());
+            assertFalse(last.isHasMore());
+            Page<LogEntry, Long> empty = reloaded.getLogsPage(7500L, 10);
+            assertTrue(empty.getItems().isEmpty());
+            assertEquals(7500L, empty.getNextCursor());
+            assertEquals(all, readAllPages(reloaded, 1024));
+        }
+    }
+
+    @Test
+    void testSizeRolledSegmentsAreCompressedAndExpiredByRetention() throws IOException {
+        Path logs = tempDir.resolve("sized-logs.csv");
+        LogRotationPolicy compressed = new LogRotationPolicy(4096, true, 0, 0);
+
+        List<LogEntry> all;
+        try (LogServiceImpl logService = new LogServiceImpl(logs.toString(), ChronoUnit.FOREVER, 10,
+                Durability.NONE, 0, compressed)) {
+            for (int i = 0; i < 600; i++) {
+                logService.logAction(i % 3 == 0 ? "ADD_STUDENT" : "UPDATE_TOKENS", teacher, "entry " + i);
+            }
+            // чтение идёт параллельно с фоновым сжатием
+            all = logService.getAllLogs();
+            assertEquals(600, all.size());
+        }
+        assertTrue(Files.size(logs) <= 4096);
+        List<Path> closed = segmentFiles("sized-logs-");
+        assertTrue(closed.size() > 5);
+        assertTrue(closed.stream().allMatch(path -> path.toString().endsWith(".csv.gz")));
+
+        try (LogServiceImpl reloaded = new LogServiceImpl(logs.toString(), ChronoUnit.FOREVER, 10,
+                Durability.NONE, 0, compressed)) {
+            assertEquals(all, reloaded.getAllLogs());
+            assertEquals(all, readAllPages(reloaded, 77));
+            assertEquals(all.stream().filter(e -> e.getAction().equals("ADD_STUDENT")).collect(Collectors.toList()),
+                    reloaded.findLogsByAction("ADD_STUDENT"));
+            // при старте читается только активный сегмент
+            List<LogEntry> recent = reloaded.getRecentLogs();
+            assertFalse(recent.isEmpty());
+            assertEquals(all.subList(all.size() - recent.size(), all.size()), recent);
+        }
+
+        // остаются три последних закрытых сегмента, номера оставшихся записей не сдвигаются
+        LogRotationPolicy keepThree = new LogRotationPolicy(4096, true, 3, 0);
+        long firstKept;
+        try (LogServiceImpl trimmed = new LogServiceImpl(logs.toString(), ChronoUnit.FOREVER, 10,
+                Durability.NONE, 0, keepThree)) {
+            assertEquals(3, segmentFiles("sized-logs-").size());
+            List<LogEntry> kept = trimmed.getAllLogs();
+            assertTrue(kept.size() < all.size());
+            assertEquals(all.subList(all.size() - kept.size(), all.size()), kept);
+            firstKept = all.size() - kept.size();
+            Page<LogEntry, Long> first = trimmed.getLogsPage(null, 1);
+            assertEquals(kept.get(0), first.getItems().get(0));
+            assertEquals(firstKept, first.getNextCursor());
+        }
+        try (LogServiceImpl reloaded = new LogServiceImpl(logs.toString(), ChronoUnit.FOREVER, 10,
+                Durability.NONE, 0, keepThree)) {
+            Page<LogEntry, Long> page = reloaded.getLogsPage(firstKept, 2);
+            assertEquals(all.subList((int) firstKept + 1, (int) firstKept + 3), page.getItems());
+        }
+    }
+
+    @Test
+    void testDetailsWithCommasAndQuotesSurviveRestart() throws IOException {
+        Path logs = tempDir.resolve("escaped-logs.csv");
+        User quoted = new User("Mary, Jane", "O\"Neil", User.UserRole.STUDENT);
+        try (LogServiceImpl logService = new LogServiceImpl(logs.toString())) {
+            logService.logAction("ADD_STUDENT", teacher, "Added student: Mary, Jane with 0 tokens");
+            logService.logAction("UPDATE_TOKENS", quoted, "Said \"hi\", then left");
+        }
+        assertTrue(Files.readAllLines(logs).get(1).endsWith(",\"Added student: Mary, Jane with 0 tokens\""));
+
+        try (LogServiceImpl reloaded = new LogServiceImpl(logs.toString())) {
+            List<LogEntry> all = reloaded.getAllLogs();
+            assertEquals(List.of("Added student: Mary, Jane with 0 tokens", "Said \"hi\", then left"),
+                    all.stream().map(LogEntry::getDetails).collect(Collectors.toList()));
+            assertEquals(all.subList(1, 2), reloaded.findLogsByUser("Mary, Jane", "O\"Neil"));
+            assertEquals(all, reloaded.getRecentLogs());
+        }
+    }
+
+    private List<Path> segmentFiles(String prefix) throws IOException {
+        try (Stream<Path> files = Files.list(tempDir)) {
+            return files.filter(path -> path.getFileName().toString().startsWith(prefix)).collect(Collectors.toList());
+        }
+    }
+
+    private static List<LogEntry> readAllPages(LogService logService, int limit) {
+        List<LogEntry> read = new ArrayList<>();
+        Long cursor = null;
+        Page<LogEntry, Long> page;
+        do {
+            page = logService.getLogsPage(cursor, limit);
+            assertTrue(page.getItems().size() <= limit);
+            read.addAll(page.getItems());
+            cursor = page.getNextCursor();
+        } while (page.isHasMore());
+        return read;
+    }
+
+    private static void writeLogDays(Path logs, LocalDateTime start, int days, int entriesPerDay) throws IOException {
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+        StringBuilder content = new StringBuilder("timestamp,action,userFirstName,userLastName,userRole,details\n");
+        for (int day = 0; day < days; day++) {
+            for (int i = 0; i < entriesPerDay; i++) {
+                content.append(start.plusDays(day).plusSeconds(i * 10L).format(formatter))
+                        .append(",UPDATE_TOKENS,John,Doe,TEACHER,Updated tokens for Student").append(i).append(": 0 -> 1\n");
+            }
+        }
+        Files.writeString(logs, content.toString());
+    }
+}
@@ -0,0 +1,180 @@
+package ru.bmstu.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.bmstu.model.LogEntry;
+import ru.bmstu.model.Student;
+import ru.bmstu.model.User;
+import ru.bmstu.service.impl.LogServiceImpl;
+import ru.bmstu.service.impl.MappedCsvLoader;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedCsvLoaderTest {
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final String[] STUDENT_ROWS = {
+            "John,Smith,10",
+            " Mary , Johnson , 5 ",
+            "James,Williams,-8,extra,fields",
+            "Анна,Иванова,+3",
+            "",
+            "NoTokens,Row",
+            "Trailing,Empty,",
+            "Trailing,Commas,7,,,",
+            "Empty,Tokens,,1",
+            "Bad,Tokens,abc",
+            "Overflow,Tokens,99999999999",
+            ",NoFirstName,1",
+            "Only,,2",
+            ",,,",
+    };
+    private static final String[] LOG_ROWS = {
+            "2025-04-18 09:36:58,ADD_STUDENT,f,s,TEACHER,Added student: hh qq with 0 tokens",
+            "2025-04-18 09:36:58,UPDATE_TOKENS,dd,ss,TEACHER,Updated tokens for vera korolkova: 0 -> 5, again",
+            " 2025-04-18 11:23:45 , ADD_STUDENT , dd , ss , STUDENT , padded ",
+            "2025-04-18 11:23:45,REMOVE_STUDENT,a,b,TEACHER,",
+            "2025-02-30 10:00:00,ADD_STUDENT,a,b,TEACHER,day out of range",
+            "2025-13-01 10:00:00,ADD_STUDENT,a,b,TEACHER,bad month",
+            "not a date,ADD_STUDENT,a,b,TEACHER,bad timestamp",
+            "2025-04-18 11:23:45,ADD_STUDENT,a,b,ADMIN,bad role",
+            "2025-04-18 11:23:45,ADD_STUDENT,a,b,TEACHER",
+            "",
+    };
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testStudentRowsMatchBufferedReaderLoader() throws IOException {
+        for (String separator : new String[]{"\n", "\r\n"}) {
+            Path csv = tempDir.resolve("students" + separator.length() + ".csv");
+            Files.writeString(csv, "firstName,lastName,tokens" + separator
+                    + String.join(separator, STUDENT_ROWS) + separator + "Last,Row,1");
+
+            List<Student> expected = readStudentsWithBufferedReader(csv);
+            assertEquals(expected, MappedCsvLoader.readStudents(csv, false));
+            assertEquals(expected, MappedCsvLoader.readStudents(csv, true));
+        }
+    }
+
+    @Test
+    void testStudentsWithWrongHeaderAreIgnored() throws IOException {
+        Path csv = tempDir.resolve("no-header.csv");
+        Files.writeString(csv, "John,Smith,10\nMary,Johnson,5\n");
+        assertTrue(MappedCsvLoader.readStudents(csv).isEmpty());
+
+        Path empty = tempDir.resolve("empty.csv");
+        Files.createFile(empty);
+        assertTrue(MappedCsvLoader.readStudents(empty).isEmpty());
+        assertTrue(readLogsWithLogService(empty).isEmpty());
+    }
+
+    @Test
+    void testLogRowsMatchBufferedReaderLoader() throws IOException {
+        Path logs = tempDir.resolve("logs.csv");
+        Files.writeString(logs, "timestamp,action,userFirstName,userLastName,userRole,details\n"
+                + String.join("\n", LOG_ROWS) + "\n");
+
+        List<LogEntry> expected = readLogsWithBufferedReader(logs);
+        assertEquals(5, expected.size());
+        assertEquals(expected, readLogsWithLogService(logs));
+    }
+
+    @Test
+    void testParallelChunksPreserveOrder() throws IOException {
+        Path csv = tempDir.resolve("large-students.csv");
+        Path logs = tempDir.resolve("large-logs.csv");
+        Random random = new Random(42);
+        try (BufferedWriter students = Files.newBufferedWriter(csv);
+             BufferedWriter log = Files.newBufferedWriter(logs)) {
+            students.write("firstName,lastName,tokens\n");
+            log.write("timestamp,action,userFirstName,userLastName,userRole,details\n");
+            for (int i = 0; i < 150_000; i++) {
+                students.write(i % 1000 == 0
+                        ? STUDENT_ROWS[random.nextInt(STUDENT_ROWS.length)]
+                        : "First" + i + ",Last" + (i % 97) + "," + random.nextInt(1000));
+                students.write('\n');
+                log.write(i % 1000 == 0
+                        ? LOG_ROWS[random.nextInt(LOG_ROWS.length)]
+                        : "2025-04-18 09:" + String.format("%02d:%02d", i / 60 % 60, i % 60)
+                        + ",UPDATE_TOKENS,John,Doe,TEACHER,Updated tokens for First" + i + " Last: 0 -> 1");
+                log.write('\n');
+            }
+        }
+
+        List<Student> expectedStudents = readStudentsWithBufferedReader(csv);
+        assertEquals(expectedStudents, MappedCsvLoader.readStudents(csv, true));
+        assertEquals(expectedStudents, MappedCsvLoader.readStudents(csv, false));
+
+        List<LogEntry> expectedLogs = readLogsWithBufferedReader(logs);
+        assertEquals(expectedLogs, readLogsWithLogService(logs));
+    }
+
+    // Сегменты журнала разбирает LogSegments через разборщик строк MappedCsvLoader
+    private static List<LogEntry> readLogsWithLogService(Path path) throws IOException {
+        try (LogServiceImpl logService = new LogServiceImpl(path.toString(), ChronoUnit.FOREVER, 0)) {
+            return logService.getAllLogs();
+        }
+    }
+
+    // Прежний загрузчик StudentServiceImpl как эталон поведения
+    private static List<Student> readStudentsWithBufferedReader(Path path) throws IOException {
+        List<Student> loaded = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(path)) {
+            String header = reader.readLine();
+            if (header == null || !header.equals("firstName,lastName,tokens")) {
+                return loaded;
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] values = line.split(",");
+                if (values.length >= 3) {
+                    try {
+                        loaded.add(new Student(values[0].trim(), values[1].trim(), Integer.parseInt(values[2].trim())));
+                    } catch (NumberFormatException ignored) {
+                    }
+                }
+            }
+        }
+        return loaded;
+    }
+
+    // Прежний загрузчик LogServiceImpl как эталон поведения
+    private static List<LogEntry> readLogsWithBufferedReader(Path path) throws IOException {
+        List<LogEntry> loaded = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(path)) {
+            if (reader.readLine() == null) {
+                return loaded;
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] values = line.split(",", 6);
+                if (values.length >= 6) {
+                    try {
+                        loaded.add(new LogEntry(
+                                LocalDateTime.parse(values[0].trim(), DATE_FORMATTER),
+                                values[1].trim(),
+                                values[2].trim(),
+                                values[3].trim(),
+                                User.UserRole.valueOf(values[4].trim()),
+                                values[5].trim()));
+                    } catch (Exception ignored) {
+                    }
+                }
+            }
+        }
+        return loaded;
+    }
+}
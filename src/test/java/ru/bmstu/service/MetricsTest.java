@@ -0,0 +1,93 @@
+package ru.bmstu.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import ru.bmstu.aspect.MetricsAspect;
+import ru.bmstu.aspect.RoleVerificationAspect;
+import ru.bmstu.metrics.LatencyHistogram;
+import ru.bmstu.metrics.MetricsRegistry;
+import ru.bmstu.metrics.OperationMetrics;
+import ru.bmstu.model.Student;
+import ru.bmstu.model.User;
+import ru.bmstu.service.impl.LogServiceImpl;
+import ru.bmstu.service.impl.StudentServiceImpl;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricsTest {
+    private MetricsRegistry registry;
+
+    @TempDir
+    Path tempDir;
+
+    @AfterEach
+    void tearDown() {
+        if (registry != null) {
+            registry.close();
+        }
+    }
+
+    @Test
+    void testHistogramPercentilesStayWithinBucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.percentile(0.5));
+        for (int i = 0; i < 99; i++) {
+            histogram.record(1_000);
+        }
+        histogram.record(1_000_000);
+
+        long p50 = histogram.percentile(0.5);
+        assertTrue(p50 >= 1_000 && p50 < 2_000, "p50 = " + p50);
+        long p100 = histogram.percentile(1.0);
+        assertTrue(p100 >= 1_000_000 && p100 < 2_000_000, "max = " + p100);
+    }
+
+    @Test
+    void testAspectRecordsCallsErrorsAndPersistence() throws Exception {
+        registry = new MetricsRegistry("ru.bmstu.test", true);
+        LogServiceImpl logService = new LogServiceImpl(tempDir.resolve("logs.csv").toString());
+        logService.setFlushMetrics(registry.get("Persistence", "logFlush"));
+        StudentServiceImpl target = new StudentServiceImpl(tempDir.resolve("students.csv").toString(), logService);
+        target.setPersistMetrics(registry.get("Persistence", "studentsSave"));
+
+        AspectJProxyFactory factory = new AspectJProxyFactory(target);
+        factory.setProxyTargetClass(true);
+        factory.addAspect(new MetricsAspect(registry));
+        factory.addAspect(RoleVerificationAspect.class);
+        StudentService studentService = factory.getProxy();
+
+        User teacher = new User("John", "Doe", User.UserRole.TEACHER);
+        User student = new User("Jane", "Smith", User.UserRole.STUDENT);
+        studentService.addStudent(teacher, new Student("Alice", "Johnson", 0));
+        for (int i = 0; i < 10; i++) {
+            studentService.updateTokens("Alice", "Johnson", 1, teacher);
+        }
+        assertThrows(SecurityException.class, () -> studentService.updateTokens("Alice", "Johnson", 1, student));
+        assertThrows(IllegalArgumentException.class, () -> studentService.updateTokens("No", "One", 1, teacher));
+        studentService.findStudent("Alice", "Johnson");
+
+        OperationMetrics updates = registry.get("StudentService", "updateTokens");
+        assertEquals(12, updates.getCount());
+        assertEquals(2, updates.getErrorCount());
+        assertTrue(updates.getMaxMicros() > 0);
+        assertEquals(1, registry.get("StudentService", "findStudent").getCount());
+        assertEquals(11, registry.get("Persistence", "studentsSave").getCount());
+        assertEquals(11, registry.get("Persistence", "logFlush").getCount());
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("ru.bmstu.test:type=\"StudentService\",name=\"updateTokens\"");
+        assertEquals(12L, server.getAttribute(name, "Count"));
+        assertTrue(registry.dump().contains("StudentService.updateTokens"));
+
+        registry.close();
+        assertFalse(server.isRegistered(name));
+        logService.close();
+    }
+}
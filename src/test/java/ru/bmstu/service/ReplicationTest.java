@@ -0,0 +1,196 @@
+package ru.bmstu.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.bmstu.HttpMain;
+import ru.bmstu.metrics.MetricsRegistry;
+import ru.bmstu.metrics.OperationMetrics;
+import ru.bmstu.model.Student;
+import ru.bmstu.model.StudentKey;
+import ru.bmstu.model.User;
+import ru.bmstu.service.impl.LogServiceImpl;
+import ru.bmstu.service.impl.ReplicaStudentService;
+import ru.bmstu.service.impl.ReplicationLog;
+import ru.bmstu.service.impl.ReplicationServer;
+import ru.bmstu.service.impl.StudentServiceImpl;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReplicationTest {
+    private static final Comparator<Student> BY_KEY =
+            Comparator.comparing(Student::getLastName).thenComparing(Student::getFirstName);
+
+    private StudentServiceImpl primary;
+    private ReplicationLog replicationLog;
+    private ReplicationServer server;
+    private final List<AutoCloseable> resources = new ArrayList<>();
+    private final User teacher = new User("John", "Doe", User.UserRole.TEACHER);
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        primary = new StudentServiceImpl(tempDir.resolve("primary.csv").toString(),
+                new LogServiceImpl(tempDir.resolve("primary-logs.csv").toString()), null, true);
+        replicationLog = new ReplicationLog(16);
+        primary.setReplicationLog(replicationLog);
+        server = new ReplicationServer(replicationLog, "localhost", 0);
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        for (AutoCloseable resource : resources) {
+            resource.close();
+        }
+        server.close();
+        primary.close();
+    }
+
+    @Test
+    void testReplicaCatchesUpFromSnapshotThenFromBacklog() throws Exception {
+        for (int i = 0; i < 40; i++) {
+            primary.addStudent(teacher, new Student("First" + i, "Last" + i, i));
+        }
+        ReplicaStudentService replica = new ReplicaStudentService("localhost", server.getPort());
+        MetricsRegistry registry = new MetricsRegistry("ru.bmstu.test", false);
+        OperationMetrics lag = registry.get("Replication", "applyLag");
+        replica.setLagMetrics(lag);
+        resources.add(replica);
+        replica.start();
+
+        // 40 изменений не помещаются в буфер на 16: реплика получает снимок
+        assertTrue(replica.awaitSequence(40, 10, TimeUnit.SECONDS));
+        assertEquals(sorted(primary.getAllStudents()), replica.getAllStudents());
+
+        Map<StudentKey, Integer> amounts = new LinkedHashMap<>();
+        amounts.put(new StudentKey("First1", "Last1"), 10);
+        amounts.put(new StudentKey("First2", "Last2"), -2);
+        primary.updateTokensBatch(amounts, teacher);
+        primary.removeStudent("First3", "Last3", teacher);
+        primary.updateTokens("First4", "Last4", 7, teacher);
+        assertTrue(replica.awaitSequence(replicationLog.getLastSequence(), 10, TimeUnit.SECONDS));
+        assertEquals(sorted(primary.getAllStudents()), replica.getAllStudents());
+        assertEquals(11, replica.findStudent("First1", "Last1").getTokens());
+        assertNull(replica.findStudent("First3", "Last3"));
+        assertEquals(primary.getTopStudents(5), replica.getTopStudents(5));
+        assertEquals(0, replica.getSequenceLag());
+        assertEquals(4, lag.getCount());
+        assertThrows(UnsupportedOperationException.class,
+                () -> replica.addStudent(teacher, new Student("New", "Student", 0)));
+
+        // перезапуск рассылки: реплика переподключается и дочитывает хвост из буфера
+        int port = server.getPort();
+        server.close();
+        for (int i = 0; i < 10; i++) {
+            primary.updateTokens("First5", "Last5", 1, teacher);
+        }
+        server = new ReplicationServer(replicationLog, "localhost", port);
+        server.start();
+        assertTrue(replica.awaitSequence(replicationLog.getLastSequence(), 10, TimeUnit.SECONDS));
+        assertEquals(15, replica.findStudent("First5", "Last5").getTokens());
+        assertEquals(sorted(primary.getAllStudents()), replica.getAllStudents());
+    }
+
+    @Test
+    void testReplicaProcessesServeReadsOverHttp() throws Exception {
+        primary.addStudent(teacher, new Student("Alice", "Johnson", 5));
+        List<Process> replicas = new ArrayList<>();
+        List<Integer> ports = new ArrayList<>();
+        HttpClient client = HttpClient.newHttpClient();
+        try {
+            for (int i = 0; i < 2; i++) {
+                int httpPort = freePort();
+                ports.add(httpPort);
+                replicas.add(startReplicaProcess(i, httpPort));
+            }
+            for (int port : ports) {
+                awaitTokens(client, port, "Alice", "Johnson", 5);
+            }
+
+            primary.updateTokens("Alice", "Johnson", 3, teacher);
+            primary.addStudent(teacher, new Student("Bob", "Brown", 1));
+            for (int port : ports) {
+                awaitTokens(client, port, "Alice", "Johnson", 8);
+                awaitTokens(client, port, "Bob", "Brown", 1);
+                HttpResponse<String> write = client.send(HttpRequest.newBuilder(
+                                URI.create("http://localhost:" + port + "/students/Bob/Brown"))
+                        .header("X-User-First-Name", "John").header("X-User-Last-Name", "Doe")
+                        .header("X-User-Role", "TEACHER").DELETE().build(), HttpResponse.BodyHandlers.ofString());
+                assertEquals(405, write.statusCode());
+            }
+        } finally {
+            for (Process replica : replicas) {
+                replica.destroy();
+                replica.waitFor(10, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    private Process startReplicaProcess(int index, int httpPort) throws IOException {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        return new ProcessBuilder(java,
+                "-cp", System.getProperty("java.class.path"),
+                "-Dreplication.role=REPLICA",
+                "-Dreplication.port=" + server.getPort(),
+                "-Dhttp.port=" + httpPort,
+                "-Dcsv.file.path=" + tempDir.resolve("replica" + index + ".csv"),
+                "-Dlog.file.path=" + tempDir.resolve("replica" + index + "-logs.csv"),
+                "-Dmetrics.jmx.enabled=false",
+                HttpMain.class.getName())
+                .redirectErrorStream(true)
+                .redirectOutput(tempDir.resolve("replica" + index + ".out").toFile())
+                .start();
+    }
+
+    private static void awaitTokens(HttpClient client, int port, String firstName, String lastName, int tokens)
+            throws InterruptedException {
+        String expected = "{\"firstName\":\"" + firstName + "\",\"lastName\":\"" + lastName + "\",\"tokens\":" + tokens + "}";
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+        String last = null;
+        while (System.nanoTime() < deadline) {
+            try {
+                last = client.send(HttpRequest.newBuilder(URI.create(
+                        "http://localhost:" + port + "/students/" + firstName + "/" + lastName)).build(),
+                        HttpResponse.BodyHandlers.ofString()).body();
+                if (expected.equals(last)) {
+                    return;
+                }
+            } catch (IOException e) {
+                // процесс реплики ещё запускается
+            }
+            Thread.sleep(100);
+        }
+        fail("Replica on port " + port + " did not reach " + expected + ", last response: " + last);
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static List<Student> sorted(List<Student> students) {
+        List<Student> copy = new ArrayList<>(students);
+        copy.sort(BY_KEY);
+        return copy;
+    }
+}
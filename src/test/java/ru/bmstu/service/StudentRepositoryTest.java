@@ -0,0 +1,233 @@
+package ru.bmstu.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.bmstu.model.Student;
+import ru.bmstu.model.User;
+import ru.bmstu.service.impl.BinaryStudentRepository;
+import ru.bmstu.service.impl.CsvStudentRepository;
+import ru.bmstu.service.impl.Durability;
+import ru.bmstu.service.impl.LogServiceImpl;
+import ru.bmstu.service.impl.StudentJournal;
+import ru.bmstu.service.impl.StudentServiceImpl;
+import ru.bmstu.service.impl.StudentStorageConverter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StudentRepositoryTest {
+    @TempDir
+    Path tempDir;
+
+    private static List<Student> sampleStudents() {
+        List<Student> students = new ArrayList<>();
+        students.add(new Student("Анна", "Иванова", 3));
+        students.add(new Student("John", "Smith", -8));
+        students.add(new Student("Mary", "Smith", Integer.MAX_VALUE));
+        for (int i = 0; i < 1000; i++) {
+            students.add(new Student("First" + i, "Last" + (i % 10), i));
+        }
+        return students;
+    }
+
+    @Test
+    void testBinaryRoundTripUsesLengthPrefixedRecords() throws IOException {
+        Path bin = tempDir.resolve("students.bin");
+        BinaryStudentRepository repository = new BinaryStudentRepository(bin.toString());
+        List<Student> students = sampleStudents();
+        repository.saveAll(students);
+
+        assertEquals(students, repository.loadAll());
+        // заголовок, имена с двухбайтовой длиной, жетоны по 4 байта и контрольная сумма
+        long expectedBytes = 12 + 4;
+        for (Student student : students) {
+            expectedBytes += 2 + student.getFirstName().getBytes(StandardCharsets.UTF_8).length
+                    + 2 + student.getLastName().getBytes(StandardCharsets.UTF_8).length + 4;
+        }
+        assertEquals(expectedBytes, Files.size(bin));
+    }
+
+    @Test
+    void testBinaryChecksumDetectsCorruption() throws IOException {
+        Path bin = tempDir.resolve("corrupt.bin");
+        BinaryStudentRepository repository = new BinaryStudentRepository(bin.toString());
+        repository.saveAll(sampleStudents());
+
+        byte[] bytes = Files.readAllBytes(bin);
+        bytes[bytes.length / 2] ^= 0x01;
+        Files.write(bin, bytes);
+        IOException error = assertThrows(IOException.class, repository::loadAll);
+        assertTrue(error.getMessage().contains("checksum"));
+    }
+
+    @Test
+    void testConverterRoundTripsBetweenFormats() throws IOException {
+        List<Student> students = sampleStudents();
+        Path csv = writeCsv(students);
+        Path bin = tempDir.resolve("converted.bin");
+        Path back = tempDir.resolve("back.csv");
+
+        assertEquals(students.size(), StudentStorageConverter.convert(
+                new CsvStudentRepository(csv.toString()), new BinaryStudentRepository(bin.toString())));
+        StudentStorageConverter.convert(new BinaryStudentRepository(bin.toString()), new CsvStudentRepository(back.toString()));
+        assertEquals(Files.readAllLines(csv), Files.readAllLines(back));
+    }
+
+    @Test
+    void testConverterRejectsMissingSourceAndKeepsTarget() throws IOException {
+        Path target = writeCsv(sampleStudents());
+        List<String> before = Files.readAllLines(target);
+        Path missing = tempDir.resolve("typo.bin");
+
+        assertThrows(NoSuchFileException.class, () -> StudentStorageConverter.convert(
+                new BinaryStudentRepository(missing.toString()), new CsvStudentRepository(target.toString())));
+        assertFalse(Files.exists(missing));
+        assertEquals(before, Files.readAllLines(target));
+    }
+
+    @Test
+    void testCsvQuotesNamesWithCommasAndQuotes() throws IOException {
+        Path csv = tempDir.resolve("quoted.csv");
+        List<Student> students = List.of(new Student("Mary, Jane", "O\"Neil", 4),
+                new Student("Анна", "Иванова", -2), new Student("Line\nBreak", "Smith", 1));
+        new CsvStudentRepository(csv.toString()).saveAll(students);
+
+        assertEquals(List.of("firstName,lastName,tokens", "\"Mary, Jane\",\"O\"\"Neil\",4", "Анна,Иванова,-2",
+                "\"Line Break\",Smith,1"), Files.readAllLines(csv));
+        List<Student> loaded = new CsvStudentRepository(csv.toString()).loadAll();
+        assertEquals(students.subList(0, 2), loaded.subList(0, 2));
+        assertEquals("Line Break", loaded.get(2).getFirstName());
+
+        // те же имена через журнал изменений и перезапуск
+        Path journaled = tempDir.resolve("journaled.csv");
+        LogService logService = new LogServiceImpl(tempDir.resolve("quoted-logs.csv").toString());
+        User teacher = new User("John", "Doe", User.UserRole.TEACHER);
+        try (StudentServiceImpl service = new StudentServiceImpl(new CsvStudentRepository(journaled.toString()), logService,
+                new StudentJournal(journaled + ".journal", 1 << 20), false)) {
+            service.addStudent(teacher, new Student("Mary, Jane", "O\"Neil", 0));
+            service.updateTokens("Mary, Jane", "O\"Neil", 7, teacher);
+        }
+        try (StudentServiceImpl reloaded = new StudentServiceImpl(new CsvStudentRepository(journaled.toString()), logService,
+                new StudentJournal(journaled + ".journal", 1 << 20), false)) {
+            assertEquals(List.of(new Student("Mary, Jane", "O\"Neil", 7)), reloaded.getAllStudents());
+        }
+    }
+
+    @Test
+    void testDuplicateRowsAreReportedAndFirstIsKept() throws IOException {
+        Path csv = tempDir.resolve("duplicates.csv");
+        Files.writeString(csv, "firstName,lastName,tokens\n"
+                + "Alice,Johnson,5\n"
+                + "Bob,Smith,3\n"
+                + "Alice,Johnson,40\n");
+        LogService logService = new LogServiceImpl(tempDir.resolve("logs.csv").toString());
+
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        PrintStream originalErr = System.err;
+        System.setErr(new PrintStream(err, true, StandardCharsets.UTF_8));
+        List<Student> loaded;
+        try {
+            loaded = new StudentServiceImpl(csv.toString(), logService).getAllStudents();
+        } finally {
+            System.setErr(originalErr);
+        }
+
+        assertEquals(List.of(new Student("Alice", "Johnson", 5), new Student("Bob", "Smith", 3)), loaded);
+        String reported = err.toString(StandardCharsets.UTF_8);
+        assertTrue(reported.contains("Skipping duplicate student"), reported);
+        assertTrue(reported.contains("Alice Johnson with 40 tokens"), reported);
+    }
+
+    @Test
+    void testStudentServiceOnBinaryRepository() {
+        Path bin = tempDir.resolve("service.bin");
+        LogService logService = new LogServiceImpl(tempDir.resolve("logs.csv").toString());
+        User teacher = new User("John", "Doe", User.UserRole.TEACHER);
+
+        StudentService service = new StudentServiceImpl(new BinaryStudentRepository(bin.toString()), logService, null, false);
+        service.addStudent(teacher, new Student("Alice", "Johnson", 0));
+        service.updateTokens("Alice", "Johnson", 5, teacher);
+
+        StudentService reloaded = new StudentServiceImpl(new BinaryStudentRepository(bin.toString()), logService, null, false);
+        assertEquals(List.of(new Student("Alice", "Johnson", 5)), reloaded.getAllStudents());
+    }
+
+    @Test
+    void testSaveKilledMidWriteNeverLeavesTornFile() throws Exception {
+        for (String format : List.of("CSV", "BINARY")) {
+            Path file = tempDir.resolve("crash-" + format.toLowerCase() + (format.equals("CSV") ? ".csv" : ".bin"));
+            Random random = new Random(42);
+            int lastGeneration = -1;
+            for (int round = 0; round < 5; round++) {
+                Process process = new ProcessBuilder(
+                        System.getProperty("java.home") + File.separator + "bin" + File.separator + "java",
+                        "-cp", System.getProperty("java.class.path"),
+                        SaveLoop.class.getName(), format, file.toString())
+                        .redirectErrorStream(true)
+                        .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                        .start();
+                try {
+                    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+                    while (!Files.exists(file) && System.nanoTime() < deadline) {
+                        Thread.sleep(10);
+                    }
+                    Thread.sleep(100 + random.nextInt(400));
+                } finally {
+                    // как при падении: без завершающих обработчиков и сброса буферов
+                    process.destroyForcibly();
+                    process.waitFor(10, TimeUnit.SECONDS);
+                }
+
+                List<Student> students = (format.equals("CSV") ? new CsvStudentRepository(file.toString())
+                        : new BinaryStudentRepository(file.toString())).loadAll();
+                assertEquals(SaveLoop.ROSTER_SIZE, students.size(), "torn " + format + " file after round " + round);
+                int generation = students.get(0).getTokens();
+                for (Student student : students) {
+                    assertEquals(generation, student.getTokens(), "mixed generations in " + format + " file");
+                }
+                assertTrue(generation >= lastGeneration);
+                lastGeneration = generation;
+            }
+        }
+    }
+
+    // Дочерний процесс для testSaveKilledMidWriteNeverLeavesTornFile: переписывает файл без остановки,
+    // в каждом поколении у всех студентов одинаковое число жетонов
+    static final class SaveLoop {
+        static final int ROSTER_SIZE = 20_000;
+
+        public static void main(String[] args) throws IOException {
+            StudentRepository repository = args[0].equals("CSV")
+                    ? new CsvStudentRepository(args[1], Durability.NONE)
+                    : new BinaryStudentRepository(args[1], Durability.NONE);
+            int generation = Files.exists(Path.of(args[1])) ? repository.loadAll().get(0).getTokens() : 0;
+            List<Student> students = new ArrayList<>(ROSTER_SIZE);
+            while (true) {
+                generation++;
+                students.clear();
+                for (int i = 0; i < ROSTER_SIZE; i++) {
+                    students.add(new Student("First" + i, "Last" + i, generation));
+                }
+                repository.saveAll(students);
+            }
+        }
+    }
+
+    private Path writeCsv(List<Student> students) throws IOException {
+        Path csv = tempDir.resolve("students.csv");
+        new CsvStudentRepository(csv.toString()).saveAll(students);
+        return csv;
+    }
+}
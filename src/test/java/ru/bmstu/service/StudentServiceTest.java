@@ -3,12 +3,46 @@ package ru.bmstu.service;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import ru.bmstu.aspect.RoleVerificationAspect;
+import ru.bmstu.metrics.MetricsRegistry;
+import ru.bmstu.metrics.OperationMetrics;
+import ru.bmstu.model.Page;
 import ru.bmstu.model.Student;
+import ru.bmstu.model.StudentKey;
+import ru.bmstu.model.TokenStatistics;
 import ru.bmstu.model.User;
+import ru.bmstu.service.impl.CompactStudentServiceImpl;
+import ru.bmstu.service.impl.CsvStudentRepository;
+import ru.bmstu.service.impl.EventLoopStudentService;
 import ru.bmstu.service.impl.LogServiceImpl;
+import ru.bmstu.service.impl.StudentJournal;
 import ru.bmstu.service.impl.StudentServiceImpl;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.IntSummaryStatistics;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -69,4 +103,807 @@ class StudentServiceTest {
 
         assertEquals(2, studentService.getAllStudents().size());
     }
-}
\ No newline at end of file
+
+    @Test
+    void testIndexConsistentAfterRemoveAndReAdd() {
+        studentService.addStudent(teacher, new Student("Alice", "Johnson", 5));
+        studentService.addStudent(teacher, new Student("Alice", "Brown", 7));
+
+        studentService.removeStudent("Alice", "Johnson", teacher);
+        assertNull(studentService.findStudent("Alice", "Johnson"));
+        assertEquals(7, studentService.findStudent("Alice", "Brown").getTokens());
+
+        studentService.addStudent(teacher, new Student("Alice", "Johnson", 1));
+        assertEquals(1, studentService.findStudent("Alice", "Johnson").getTokens());
+        assertThrows(IllegalArgumentException.class,
+                () -> studentService.addStudent(teacher, new Student("Alice", "Johnson", 0)));
+
+        studentService.expelStudent(teacher, "Alice", "Brown");
+        assertThrows(IllegalArgumentException.class,
+                () -> studentService.updateTokens("Alice", "Brown", 1, teacher));
+        assertEquals(1, studentService.getAllStudents().size());
+    }
+
+    @Test
+    void testLookupFindsEveryStudentByFullName() throws IOException {
+        StudentService roster = serviceWithRoster(5_000);
+
+        for (int i = 0; i < 5_000; i++) {
+            Student found = roster.findStudent("First" + i, "Last" + i);
+            assertNotNull(found, "Student " + i + " not found");
+            assertEquals(i, found.getTokens());
+        }
+        // ключ составной: совпадение только имени или только фамилии не находит студента
+        assertNull(roster.findStudent("First1", "Last2"));
+        assertNull(roster.findStudent("First1", "last1"));
+        assertNull(roster.findStudent("First5000", "Last5000"));
+    }
+
+    @Test
+    void testBatchOperations() {
+        studentService.addStudents(teacher, List.of(
+                new Student("Alice", "Johnson", 5),
+                new Student("Bob", "Wilson", 10),
+                new Student("Charlie", "Brown", 0)));
+
+        Map<StudentKey, Integer> amounts = new LinkedHashMap<>();
+        amounts.put(new StudentKey("Alice", "Johnson"), 3);
+        amounts.put(new StudentKey("Bob", "Wilson"), -4);
+        studentService.updateTokensBatch(amounts, teacher);
+        assertEquals(8, studentService.findStudent("Alice", "Johnson").getTokens());
+        assertEquals(6, studentService.findStudent("Bob", "Wilson").getTokens());
+
+        studentService.removeStudents(List.of(new StudentKey("Charlie", "Brown")), teacher);
+        assertEquals(2, studentService.getAllStudents().size());
+    }
+
+    @Test
+    void testBatchIsAllOrNothing() {
+        studentService.addStudents(teacher, List.of(new Student("Alice", "Johnson", 5)));
+
+        Map<StudentKey, Integer> amounts = new LinkedHashMap<>();
+        amounts.put(new StudentKey("Alice", "Johnson"), 3);
+        amounts.put(new StudentKey("Missing", "Student"), 1);
+        assertThrows(IllegalArgumentException.class, () -> studentService.updateTokensBatch(amounts, teacher));
+        assertEquals(5, studentService.findStudent("Alice", "Johnson").getTokens());
+
+        assertThrows(IllegalArgumentException.class, () -> studentService.addStudents(teacher, List.of(
+                new Student("Bob", "Wilson", 0),
+                new Student("Alice", "Johnson", 0))));
+        assertNull(studentService.findStudent("Bob", "Wilson"));
+
+        assertThrows(IllegalArgumentException.class, () -> studentService.removeStudents(List.of(
+                new StudentKey("Alice", "Johnson"),
+                new StudentKey("Alice", "Johnson")), teacher));
+        assertNotNull(studentService.findStudent("Alice", "Johnson"));
+    }
+
+    @Test
+    void testBatchRequiresTeacherRole() {
+        AspectJProxyFactory factory = new AspectJProxyFactory(studentService);
+        factory.setProxyTargetClass(true);
+        factory.addAspect(RoleVerificationAspect.class);
+        StudentService proxied = factory.getProxy();
+
+        assertThrows(SecurityException.class,
+                () -> proxied.addStudents(student, List.of(new Student("Alice", "Johnson", 0))));
+        assertThrows(SecurityException.class,
+                () -> proxied.updateTokensBatch(Map.of(new StudentKey("Alice", "Johnson"), 1), student));
+        assertThrows(SecurityException.class,
+                () -> proxied.removeStudents(List.of(new StudentKey("Alice", "Johnson")), student));
+        proxied.addStudents(teacher, List.of(new Student("Alice", "Johnson", 0)));
+        assertNotNull(studentService.findStudent("Alice", "Johnson"));
+    }
+
+    @Test
+    void testChangingReturnedStudentsDoesNotCorruptStore() {
+        studentService.addStudents(teacher, List.of(
+                new Student("Alice", "Johnson", 5),
+                new Student("Bob", "Wilson", 10)));
+
+        // все пути чтения отдают копии: изменение полученного объекта не трогает индекс, рейтинг и снимок
+        studentService.findStudent("Alice", "Johnson").setTokens(100);
+        studentService.getTopStudents(2).forEach(s -> s.setTokens(-1));
+        studentService.findStudentsByTokens(0, 20).forEach(s -> s.setTokens(50));
+        studentService.streamStudents().forEach(s -> s.setTokens(7));
+        studentService.getStudentsPage(null, 10).getItems().forEach(s -> s.setTokens(8));
+        studentService.getAllStudents().forEach(s -> s.setTokens(9));
+
+        assertEquals(5, studentService.findStudent("Alice", "Johnson").getTokens());
+        assertEquals(List.of(new Student("Bob", "Wilson", 10), new Student("Alice", "Johnson", 5)),
+                studentService.getTopStudents(2));
+        assertEquals(15, studentService.getTokenStatistics().getSum());
+
+        studentService.removeStudent("Bob", "Wilson", teacher);
+        assertEquals(List.of(new Student("Alice", "Johnson", 5)), studentService.getTopStudents(5));
+        assertEquals(5, studentService.getTokenStatistics().getSum());
+        assertEquals(1, studentService.getTokenStatistics().getCount());
+    }
+
+    @Test
+    void testLeaderboardAndStatisticsMatchSortedCopy() {
+        Random random = new Random(11);
+        List<StudentKey> keys = new ArrayList<>();
+        for (int step = 0; step < 2000; step++) {
+            int op = random.nextInt(10);
+            if (keys.isEmpty() || op < 3) {
+                StudentKey key = new StudentKey("First" + step, "Last" + random.nextInt(20));
+                studentService.addStudent(teacher, new Student(key.firstName(), key.lastName(), random.nextInt(200) - 50));
+                keys.add(key);
+            } else if (op < 4) {
+                StudentKey key = keys.remove(random.nextInt(keys.size()));
+                studentService.removeStudent(key.firstName(), key.lastName(), teacher);
+            } else if (op < 5) {
+                Map<StudentKey, Integer> amounts = new LinkedHashMap<>();
+                for (int i = 0; i < 5; i++) {
+                    amounts.put(keys.get(random.nextInt(keys.size())), random.nextInt(21) - 10);
+                }
+                studentService.updateTokensBatch(amounts, teacher);
+            } else {
+                StudentKey key = keys.get(random.nextInt(keys.size()));
+                studentService.updateTokens(key.firstName(), key.lastName(), random.nextInt(41) - 20, teacher);
+            }
+        }
+
+        List<Student> sorted = new ArrayList<>(studentService.getAllStudents());
+        sorted.sort(Comparator.comparingInt(Student::getTokens).reversed()
+                .thenComparing(Student::getLastName).thenComparing(Student::getFirstName));
+        assertEquals(sorted.subList(0, 10), studentService.getTopStudents(10));
+        assertEquals(sorted, studentService.getTopStudents(Integer.MAX_VALUE));
+
+        for (Student s : sorted.subList(0, 50)) {
+            long greater = sorted.stream().filter(o -> o.getTokens() > s.getTokens()).count();
+            assertEquals(greater + 1, studentService.getRank(s.getFirstName(), s.getLastName()));
+        }
+        assertEquals(sorted.stream().filter(s -> s.getTokens() >= 0 && s.getTokens() <= 40).collect(Collectors.toList()),
+                studentService.findStudentsByTokens(0, 40));
+
+        TokenStatistics statistics = studentService.getTokenStatistics();
+        IntSummaryStatistics expected = sorted.stream().mapToInt(Student::getTokens).summaryStatistics();
+        assertEquals(expected.getCount(), statistics.getCount());
+        assertEquals(expected.getSum(), statistics.getSum());
+        assertEquals(expected.getMin(), statistics.getMin());
+        assertEquals(expected.getMax(), statistics.getMax());
+        assertEquals(sorted.stream().collect(Collectors.groupingBy(
+                        s -> Math.floorDiv(s.getTokens(), statistics.getBucketWidth()) * statistics.getBucketWidth(),
+                        TreeMap::new, Collectors.counting())),
+                statistics.getHistogram());
+        assertThrows(IllegalArgumentException.class, () -> studentService.getRank("No", "One"));
+    }
+
+    @Test
+    void testStudentPagesAndStreamFollowKeyOrder() {
+        Random random = new Random(11);
+        List<Student> batch = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            batch.add(new Student("First" + random.nextInt(1_000_000), "Last" + (i % 37), random.nextInt(100)));
+        }
+        studentService.addStudents(teacher, batch.stream().distinct().collect(Collectors.toList()));
+        for (int i = 0; i < 100; i++) {
+            Student removed = batch.get(random.nextInt(batch.size()));
+            if (studentService.findStudent(removed.getFirstName(), removed.getLastName()) != null) {
+                studentService.removeStudent(removed.getFirstName(), removed.getLastName(), teacher);
+            }
+        }
+
+        Comparator<Student> byKey = Comparator.comparing(Student::getLastName).thenComparing(Student::getFirstName);
+        List<Student> expected = studentService.getAllStudents().stream().sorted(byKey).collect(Collectors.toList());
+        assertEquals(expected, studentService.streamStudents().collect(Collectors.toList()));
+
+        List<Student> paged = new ArrayList<>();
+        StudentKey cursor = null;
+        Page<Student, StudentKey> page;
+        do {
+            page = studentService.getStudentsPage(cursor, 17);
+            paged.addAll(page.getItems());
+            cursor = page.getNextCursor();
+        } while (page.isHasMore());
+        assertEquals(expected, paged);
+        assertThrows(IllegalArgumentException.class, () -> studentService.getStudentsPage(null, 0));
+    }
+
+    @Test
+    void testSnapshotReadersNeverSeeHalfAppliedBatch() throws Exception {
+        // каждая пачка переводит жетоны между студентами: сумма в любом согласованном снимке неизменна
+        List<Student> roster = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            roster.add(new Student("Student" + i, "Snapshot", 100));
+        }
+        studentService.addStudents(teacher, roster);
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            Future<?> writer = executor.submit(() -> {
+                Random random = new Random(5);
+                for (int i = 0; i < 300; i++) {
+                    int from = random.nextInt(64);
+                    int to = (from + 1 + random.nextInt(63)) % 64;
+                    Map<StudentKey, Integer> transfer = new LinkedHashMap<>();
+                    transfer.put(new StudentKey("Student" + from, "Snapshot"), -7);
+                    transfer.put(new StudentKey("Student" + to, "Snapshot"), 7);
+                    studentService.updateTokensBatch(transfer, teacher);
+                }
+            });
+            List<Future<?>> readers = new ArrayList<>();
+            for (int r = 0; r < 2; r++) {
+                readers.add(executor.submit(() -> {
+                    while (!writer.isDone()) {
+                        assertEquals(6400, studentService.streamStudents().mapToInt(Student::getTokens).sum());
+                        assertEquals(64, studentService.getStudentsPage(null, 100).getItems().size());
+                    }
+                }));
+            }
+            writer.get();
+            for (Future<?> reader : readers) {
+                reader.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testRequiresRoleAnnotationDrivesRoleCheck() {
+        AspectJProxyFactory factory = new AspectJProxyFactory(studentService);
+        factory.setProxyTargetClass(true);
+        factory.addAspect(RoleVerificationAspect.class);
+        StudentService proxied = factory.getProxy();
+
+        SecurityException denied = assertThrows(SecurityException.class,
+                () -> proxied.addStudent(student, new Student("Alice", "Johnson", 0)));
+        assertEquals("Only teachers can add students", denied.getMessage());
+        proxied.addStudent(teacher, new Student("Alice", "Johnson", 0));
+        // повторный вызов идёт по закешированному решению для метода
+        denied = assertThrows(SecurityException.class, () -> proxied.updateTokens("Alice", "Johnson", 1, student));
+        assertEquals("Only teachers can update tokens", denied.getMessage());
+        denied = assertThrows(SecurityException.class, () -> proxied.updateTokens("Alice", "Johnson", 1, student));
+        assertEquals("Only teachers can update tokens", denied.getMessage());
+        denied = assertThrows(SecurityException.class, () -> proxied.removeStudent("Alice", "Johnson", student));
+        assertEquals("Only teachers can remove students", denied.getMessage());
+
+        // методы без @RequiresRole не проверяются
+        assertNotNull(proxied.findStudent("Alice", "Johnson"));
+        assertEquals(1, proxied.getAllStudents().size());
+        proxied.updateTokens("Alice", "Johnson", 1, teacher);
+        assertEquals(1, proxied.findStudent("Alice", "Johnson").getTokens());
+    }
+
+    @Test
+    void testAsyncMethodsRequireRoleWhenCommandIsSubmitted() throws IOException {
+        LogService logService = new LogServiceImpl(tempDir.resolve("async-role-logs.csv").toString());
+        StudentServiceImpl delegate = new StudentServiceImpl(tempDir.resolve("async-role-students.csv").toString(),
+                logService);
+        try (EventLoopStudentService eventLoop = new EventLoopStudentService(delegate, 16, 16)) {
+            AspectJProxyFactory factory = new AspectJProxyFactory(eventLoop);
+            factory.setProxyTargetClass(true);
+            factory.addAspect(RoleVerificationAspect.class);
+            AsyncStudentService async = factory.getProxy();
+
+            SecurityException denied = assertThrows(SecurityException.class,
+                    () -> async.addStudentAsync(student, new Student("Alice", "Johnson", 0)));
+            assertEquals("Only teachers can add students", denied.getMessage());
+            async.addStudentAsync(teacher, new Student("Alice", "Johnson", 1)).join();
+            denied = assertThrows(SecurityException.class,
+                    () -> async.updateTokensAsync("Alice", "Johnson", 1, student));
+            assertEquals("Only teachers can update tokens", denied.getMessage());
+            assertEquals(2, async.updateTokensAsync("Alice", "Johnson", 1, teacher).join().getTokens());
+        }
+    }
+
+    @Test
+    void testJournalModeRecoversStateAfterRestart() throws IOException {
+        Path csv = tempDir.resolve("journal-students.csv");
+        Path journalPath = tempDir.resolve("journal-students.csv.journal");
+        LogService logService = new LogServiceImpl(tempDir.resolve("journal-logs.csv").toString());
+
+        try (StudentServiceImpl service = new StudentServiceImpl(csv.toString(), logService,
+                new StudentJournal(journalPath.toString(), 1_000_000))) {
+            service.addStudent(teacher, new Student("Alice", "Johnson", 5));
+            service.addStudent(teacher, new Student("Bob", "Wilson", 0));
+            service.updateTokens("Alice", "Johnson", 3, teacher);
+            service.removeStudent("Bob", "Wilson", teacher);
+        }
+        // снимок не переписывался, все изменения только в журнале
+        assertEquals(1, Files.readAllLines(csv).size());
+        Files.writeString(journalPath, "TOKENS,Alice,Joh", java.nio.file.StandardOpenOption.APPEND);
+
+        try (StudentServiceImpl restored = new StudentServiceImpl(csv.toString(), logService,
+                new StudentJournal(journalPath.toString(), 1_000_000))) {
+            assertEquals(8, restored.findStudent("Alice", "Johnson").getTokens());
+            assertNull(restored.findStudent("Bob", "Wilson"));
+            restored.updateTokens("Alice", "Johnson", 1, teacher);
+        }
+        try (StudentServiceImpl restored = new StudentServiceImpl(csv.toString(), logService,
+                new StudentJournal(journalPath.toString(), 1_000_000))) {
+            assertEquals(9, restored.findStudent("Alice", "Johnson").getTokens());
+        }
+    }
+
+    @Test
+    void testJournalCompactionWritesSnapshotAndTruncatesJournal() throws IOException {
+        Path csv = tempDir.resolve("compacted-students.csv");
+        Path journalPath = tempDir.resolve("compacted-students.csv.journal");
+        LogService logService = new LogServiceImpl(tempDir.resolve("compacted-logs.csv").toString());
+
+        try (StudentServiceImpl service = new StudentServiceImpl(csv.toString(), logService,
+                new StudentJournal(journalPath.toString(), 200))) {
+            service.addStudent(teacher, new Student("Alice", "Johnson", 0));
+            for (int i = 0; i < 50; i++) {
+                service.updateTokens("Alice", "Johnson", 1, teacher);
+            }
+        }
+        // close() дожидается фонового сжатия. Снимок берётся в момент откладывания журнала, поэтому
+        // жетоны в снимке и записи оставшегося журнала вместе дают все 50 изменений
+        List<String> snapshotLines = Files.readAllLines(csv);
+        assertEquals(2, snapshotLines.size());
+        int compactedTokens = Integer.parseInt(snapshotLines.get(1).split(",")[2]);
+        assertTrue(compactedTokens > 0, "Journal was never compacted into the snapshot");
+        assertFalse(Files.exists(tempDir.resolve("compacted-students.csv.journal.old")));
+        int journalRecords = Files.exists(journalPath) ? Files.readAllLines(journalPath).size() : 0;
+        assertEquals(50 - compactedTokens, journalRecords);
+        assertTrue(journalRecords < 51);
+
+        try (StudentServiceImpl restored = new StudentServiceImpl(csv.toString(), logService,
+                new StudentJournal(journalPath.toString(), 200))) {
+            assertEquals(50, restored.findStudent("Alice", "Johnson").getTokens());
+        }
+    }
+
+    @Test
+    void testShardedStoreRewritesOnlyOwnShardAndRebalancesOnRestart() throws IOException {
+        Path csv = tempDir.resolve("sharded-students.csv");
+        LogService logService = new LogServiceImpl(tempDir.resolve("sharded-logs.csv").toString());
+        try (StudentServiceImpl single = new StudentServiceImpl(csv.toString(), logService)) {
+            for (int i = 0; i < 40; i++) {
+                single.addStudent(teacher, new Student("First" + i, "Last" + i, i));
+            }
+        }
+
+        // включение разбиения: студенты из исходного файла расходятся по своим частям
+        try (StudentServiceImpl sharded = openSharded(csv, 4, logService, false)) {
+            assertEquals(40, sharded.getAllStudents().size());
+            List<Path> files = new ArrayList<>();
+            int rows = 0;
+            for (int i = 0; i < 4; i++) {
+                files.add(Path.of(StudentServiceImpl.shardPath(csv.toString(), i)));
+                List<String> lines = Files.readAllLines(files.get(i));
+                assertTrue(lines.size() > 1, "shard " + i + " is empty");
+                rows += lines.size() - 1;
+            }
+            assertEquals(40, rows);
+
+            List<String> before = new ArrayList<>();
+            for (Path file : files) {
+                before.add(Files.readString(file));
+            }
+            sharded.updateTokens("First7", "Last7", 100, teacher);
+            int changed = 0;
+            for (int i = 0; i < 4; i++) {
+                String after = Files.readString(files.get(i));
+                if (!after.equals(before.get(i))) {
+                    changed++;
+                    assertTrue(after.contains("First7,Last7,107"));
+                }
+            }
+            assertEquals(1, changed);
+
+            sharded.updateTokensBatch(Map.of(new StudentKey("First1", "Last1"), 1,
+                    new StudentKey("First2", "Last2"), 1), teacher);
+            sharded.removeStudent("First3", "Last3", teacher);
+        }
+
+        // смена числа частей: при старте студенты переезжают в новые части
+        try (StudentServiceImpl resharded = openSharded(csv, 8, logService, true)) {
+            assertEquals(39, resharded.getAllStudents().size());
+            assertEquals(107, resharded.findStudent("First7", "Last7").getTokens());
+            assertEquals(2, resharded.findStudent("First1", "Last1").getTokens());
+            assertNull(resharded.findStudent("First3", "Last3"));
+            assertEquals("First7", resharded.getTopStudents(1).get(0).getFirstName());
+            // в режиме журнала изменение дописывается в журнал своей части
+            resharded.updateTokens("First2", "Last2", 1, teacher);
+        }
+        try (StudentServiceImpl restored = openSharded(csv, 8, logService, true)) {
+            assertEquals(39, restored.getAllStudents().size());
+            assertEquals(4, restored.findStudent("First2", "Last2").getTokens());
+        }
+    }
+
+    @Test
+    void testRebalancingResolvesLeftoverCopiesAndRejectsConflicts() throws IOException {
+        Path csv = tempDir.resolve("rehome-students.csv");
+        LogService logService = new LogServiceImpl(tempDir.resolve("rehome-logs.csv").toString());
+        // как после сбоя между записью новых частей и очисткой прежних: каждый студент лежит в обеих частях
+        StringBuilder roster = new StringBuilder("firstName,lastName,tokens\n");
+        for (int i = 0; i < 20; i++) {
+            roster.append("First").append(i).append(",Last").append(i).append(',').append(i).append('\n');
+        }
+        Files.writeString(csv, roster);
+        Files.writeString(Path.of(StudentServiceImpl.shardPath(csv.toString(), 1)), roster);
+
+        try (StudentServiceImpl sharded = openSharded(csv, 2, logService, false)) {
+            assertEquals(20, sharded.getAllStudents().size());
+        }
+        int rows = Files.readAllLines(csv).size() - 1
+                + Files.readAllLines(Path.of(StudentServiceImpl.shardPath(csv.toString(), 1))).size() - 1;
+        assertEquals(20, rows);
+
+        // тот же студент в двух частях с разными жетонами: выбирать молча нельзя
+        Files.writeString(csv, roster);
+        Files.writeString(Path.of(StudentServiceImpl.shardPath(csv.toString(), 1)),
+                roster.toString().replace(",Last5,5", ",Last5,6").replace(",Last6,6", ",Last6,7"));
+        RuntimeException e = assertThrows(RuntimeException.class, () -> openSharded(csv, 2, logService, false));
+        assertTrue(e.getCause().getMessage().contains("with different tokens"));
+    }
+
+    private static StudentServiceImpl openSharded(Path csv, int shards, LogService logService, boolean journal) {
+        List<StudentRepository> repositories = new ArrayList<>();
+        List<StudentJournal> journals = new ArrayList<>();
+        for (int i = 0; i < shards; i++) {
+            repositories.add(new CsvStudentRepository(StudentServiceImpl.shardPath(csv.toString(), i)));
+            journals.add(journal ? new StudentJournal(StudentServiceImpl.shardPath(csv + ".journal", i), 1_000_000) : null);
+        }
+        return new StudentServiceImpl(repositories, journals, logService, true);
+    }
+
+    @Test
+    void testConcurrentUpdatesAreNotLost() throws Exception {
+        Path csv = tempDir.resolve("concurrent-students.csv");
+        Path journalPath = tempDir.resolve("concurrent-students.csv.journal");
+        LogService logService = new LogServiceImpl(tempDir.resolve("concurrent-logs.csv").toString());
+        final int studentCount = 20;
+        final int threads = 8;
+        final int updatesPerThread = 500;
+        AtomicIntegerArray expected = new AtomicIntegerArray(studentCount);
+
+        try (StudentServiceImpl service = new StudentServiceImpl(csv.toString(), logService,
+                new StudentJournal(journalPath.toString(), 64 * 1024), true)) {
+            for (int i = 0; i < studentCount; i++) {
+                service.addStudent(teacher, new Student("First" + i, "Last" + i, 0));
+            }
+
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int threadId = t;
+                futures.add(executor.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < updatesPerThread; i++) {
+                        int n = random.nextInt(studentCount);
+                        if (i % 50 == 0) {
+                            int m = (n + 1) % studentCount;
+                            service.updateTokensBatch(Map.of(
+                                    new StudentKey("First" + n, "Last" + n), 1,
+                                    new StudentKey("First" + m, "Last" + m), 1), teacher);
+                            expected.incrementAndGet(n);
+                            expected.incrementAndGet(m);
+                        } else {
+                            service.updateTokens("First" + n, "Last" + n, 1, teacher);
+                            expected.incrementAndGet(n);
+                        }
+                        // параллельные добавления и удаления других студентов
+                        String name = "Temp" + threadId + "x" + i;
+                        service.addStudent(teacher, new Student(name, "Student", 0));
+                        assertNotNull(service.findStudent(name, "Student"));
+                        // снимок и рейтинг публикуются после полосы, но до возврата из изменения
+                        assertTrue(service.streamStudents().anyMatch(s -> s.getFirstName().equals(name)));
+                        assertTrue(service.findStudentsByTokens(0, 0).stream()
+                                .anyMatch(s -> s.getFirstName().equals(name)));
+                        service.removeStudent(name, "Student", teacher);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            executor.shutdown();
+
+            long expectedSum = 0;
+            for (int i = 0; i < studentCount; i++) {
+                assertEquals(expected.get(i), service.findStudent("First" + i, "Last" + i).getTokens());
+                expectedSum += expected.get(i);
+            }
+            assertEquals(studentCount, service.getAllStudents().size());
+            assertEquals(new HashSet<>(service.getAllStudents()),
+                    service.streamStudents().collect(Collectors.toSet()));
+            assertEquals(studentCount, service.getTokenStatistics().getCount());
+            assertEquals(expectedSum, service.getTokenStatistics().getSum());
+        }
+
+        try (StudentServiceImpl restored = new StudentServiceImpl(csv.toString(), logService,
+                new StudentJournal(journalPath.toString(), 64 * 1024), true)) {
+            for (int i = 0; i < studentCount; i++) {
+                assertEquals(expected.get(i), restored.findStudent("First" + i, "Last" + i).getTokens());
+            }
+            assertEquals(studentCount, restored.getAllStudents().size());
+        }
+    }
+
+    @Test
+    void testCompactStoreMatchesObjectStore() throws IOException {
+        Path csv = tempDir.resolve("compact-students.csv");
+        LogService logService = new LogServiceImpl(tempDir.resolve("compact-logs.csv").toString());
+        CompactStudentServiceImpl compact = new CompactStudentServiceImpl(csv.toString(), logService);
+        Random random = new Random(23);
+        List<StudentKey> keys = new ArrayList<>();
+        // имена из небольших наборов: словарь хранит каждое один раз
+        for (int step = 0; step < 3000; step++) {
+            int op = random.nextInt(10);
+            if (keys.isEmpty() || op < 3) {
+                StudentKey key = new StudentKey("Имя" + random.nextInt(60), "Last" + random.nextInt(40));
+                Student added = new Student(key.firstName(), key.lastName(), random.nextInt(200) - 50);
+                if (keys.contains(key)) {
+                    assertThrows(IllegalArgumentException.class, () -> compact.addStudent(teacher, added));
+                    assertThrows(IllegalArgumentException.class, () -> studentService.addStudent(teacher, added));
+                } else {
+                    compact.addStudent(teacher, added);
+                    studentService.addStudent(teacher, added);
+                    keys.add(key);
+                }
+            } else if (op < 4) {
+                StudentKey key = keys.remove(random.nextInt(keys.size()));
+                compact.removeStudent(key.firstName(), key.lastName(), teacher);
+                studentService.removeStudent(key.firstName(), key.lastName(), teacher);
+            } else if (op < 5) {
+                Map<StudentKey, Integer> amounts = new LinkedHashMap<>();
+                for (int i = 0; i < 5; i++) {
+                    amounts.put(keys.get(random.nextInt(keys.size())), random.nextInt(21) - 10);
+                }
+                compact.updateTokensBatch(amounts, teacher);
+                studentService.updateTokensBatch(amounts, teacher);
+            } else {
+                StudentKey key = keys.get(random.nextInt(keys.size()));
+                int amount = random.nextInt(41) - 20;
+                compact.updateTokens(key.firstName(), key.lastName(), amount, teacher);
+                studentService.updateTokens(key.firstName(), key.lastName(), amount, teacher);
+            }
+            // порядки и статистика ведутся на каждом изменении: сверяем их посреди потока изменений
+            if (step % 500 == 0) {
+                assertCompactMatches(studentService, compact);
+            }
+        }
+
+        assertCompactMatches(studentService, compact);
+        StudentKey first = keys.get(0);
+        assertEquals(studentService.findStudent(first.firstName(), first.lastName()),
+                compact.findStudent(first.firstName(), first.lastName()));
+        assertNull(compact.findStudent("No", "One"));
+        assertThrows(IllegalArgumentException.class, () -> compact.getRank("No", "One"));
+        assertThrows(IllegalArgumentException.class, () -> compact.removeStudents(
+                List.of(first, new StudentKey("No", "One")), teacher));
+        assertNotNull(compact.findStudent(first.firstName(), first.lastName()));
+        // пачка с пропущенным значением отклоняется целиком, до изменения хранилища
+        Map<StudentKey, Integer> withNull = new LinkedHashMap<>();
+        withNull.put(first, 5);
+        compact.getAllStudents().stream().map(StudentKey::of).filter(key -> !key.equals(first))
+                .findFirst().ifPresent(key -> withNull.put(key, null));
+        TokenStatistics before = compact.getTokenStatistics();
+        assertThrows(IllegalArgumentException.class, () -> compact.updateTokensBatch(withNull, teacher));
+        assertEquals(before, compact.getTokenStatistics());
+        assertCompactMatches(studentService, compact);
+
+        // пачка с новыми именами: словарь и индекс растут
+        List<Student> batch = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            batch.add(new Student("Bulk" + i, "Last" + (i % 700), i % 90));
+        }
+        compact.addStudents(teacher, batch);
+        studentService.addStudents(teacher, batch);
+        assertCompactMatches(studentService, compact);
+
+        // после перезапуска состояние читается из того же CSV
+        assertCompactMatches(studentService, new CompactStudentServiceImpl(csv.toString(), logService));
+    }
+
+    private static void assertCompactMatches(StudentService expected, StudentService compact) {
+        Comparator<Student> byKey = Comparator.comparing(Student::getLastName).thenComparing(Student::getFirstName);
+        List<Student> all = expected.getAllStudents().stream().sorted(byKey).collect(Collectors.toList());
+        assertEquals(all, compact.getAllStudents().stream().sorted(byKey).collect(Collectors.toList()));
+        assertEquals(all, compact.streamStudents().collect(Collectors.toList()));
+        List<Student> paged = new ArrayList<>();
+        StudentKey cursor = null;
+        Page<Student, StudentKey> page;
+        do {
+            page = compact.getStudentsPage(cursor, 13);
+            paged.addAll(page.getItems());
+            cursor = page.getNextCursor();
+        } while (page.isHasMore());
+        assertEquals(all, paged);
+        assertEquals(expected.getTopStudents(Integer.MAX_VALUE), compact.getTopStudents(Integer.MAX_VALUE));
+        assertEquals(expected.findStudentsByTokens(-10, 40), compact.findStudentsByTokens(-10, 40));
+        for (Student s : all.subList(0, Math.min(50, all.size()))) {
+            assertEquals(expected.getRank(s.getFirstName(), s.getLastName()),
+                    compact.getRank(s.getFirstName(), s.getLastName()));
+        }
+        assertEquals(expected.getTokenStatistics(), compact.getTokenStatistics());
+    }
+
+    @Test
+    void testEventLoopAppliesConcurrentCommandsInOrderAndCoalescesWrites() throws Exception {
+        Path csv = tempDir.resolve("event-loop-students.csv");
+        Path journalPath = tempDir.resolve("event-loop-students.csv.journal");
+        LogServiceImpl logService = new LogServiceImpl(tempDir.resolve("event-loop-logs.csv").toString());
+        MetricsRegistry registry = new MetricsRegistry("ru.bmstu.test", false);
+        OperationMetrics saves = registry.get("Persistence", "eventLoopSave");
+        final int studentCount = 20;
+        final int threads = 8;
+        final int updatesPerThread = 300;
+        AtomicIntegerArray expected = new AtomicIntegerArray(studentCount);
+
+        StudentServiceImpl delegate = new StudentServiceImpl(csv.toString(), logService,
+                new StudentJournal(journalPath.toString(), 1_000_000));
+        delegate.setPersistMetrics(saves);
+        try (EventLoopStudentService service = new EventLoopStudentService(delegate, 64, 256)) {
+            List<Student> roster = new ArrayList<>();
+            for (int i = 0; i < studentCount; i++) {
+                roster.add(new Student("First" + i, "Last" + i, 0));
+            }
+            service.addStudentsAsync(teacher, roster).get();
+
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            List<Future<List<CompletableFuture<Student>>>> submitted = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                submitted.add(executor.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    List<CompletableFuture<Student>> results = new ArrayList<>();
+                    for (int i = 0; i < updatesPerThread; i++) {
+                        int n = random.nextInt(studentCount);
+                        results.add(service.updateTokensAsync("First" + n, "Last" + n, 1, teacher));
+                        expected.incrementAndGet(n);
+                    }
+                    return results;
+                }));
+            }
+            // ошибка одной команды не затрагивает команды того же цикла
+            CompletableFuture<Student> missing = service.updateTokensAsync("No", "One", 1, teacher);
+            for (Future<List<CompletableFuture<Student>>> future : submitted) {
+                for (CompletableFuture<Student> result : future.get()) {
+                    assertTrue(result.get().getTokens() > 0);
+                }
+            }
+            executor.shutdown();
+            CompletionException failed = assertThrows(CompletionException.class, missing::join);
+            assertInstanceOf(IllegalArgumentException.class, failed.getCause());
+            assertThrows(IllegalArgumentException.class, () -> service.removeStudent("No", "One", teacher));
+
+            for (int i = 0; i < studentCount; i++) {
+                assertEquals(expected.get(i), service.findStudent("First" + i, "Last" + i).getTokens());
+            }
+            assertEquals(studentCount, service.streamStudents().count());
+            assertEquals(1, service.getRank(service.getTopStudents(1).get(0).getFirstName(),
+                    service.getTopStudents(1).get(0).getLastName()));
+
+            int commands = threads * updatesPerThread;
+            // каждая команда записана в журнал действий, а сохранений меньше, чем команд
+            assertEquals(commands, logService.findLogsByAction("UPDATE_TOKENS").size());
+            assertTrue(saves.getCount() < commands, "saves: " + saves.getCount());
+        }
+
+        try (StudentServiceImpl restored = new StudentServiceImpl(csv.toString(), logService,
+                new StudentJournal(journalPath.toString(), 1_000_000))) {
+            for (int i = 0; i < studentCount; i++) {
+                assertEquals(expected.get(i), restored.findStudent("First" + i, "Last" + i).getTokens());
+            }
+        }
+        registry.close();
+    }
+
+    @Test
+    void testEventLoopKeepsUnsavedChangesAndRetriesThem() throws Exception {
+        Path csv = tempDir.resolve("unsaved-students.csv");
+        LogServiceImpl logService = new LogServiceImpl(tempDir.resolve("unsaved-logs.csv").toString());
+        AtomicBoolean diskFull = new AtomicBoolean();
+        CsvStudentRepository files = new CsvStudentRepository(csv.toString());
+        StudentRepository repository = new StudentRepository() {
+            @Override
+            public List<Student> loadAll() throws IOException {
+                return files.loadAll();
+            }
+
+            @Override
+            public void saveAll(Collection<Student> students) throws IOException {
+                if (diskFull.get()) {
+                    throw new IOException("No space left on device");
+                }
+                files.saveAll(students);
+            }
+
+            @Override
+            public String getLocation() {
+                return files.getLocation();
+            }
+        };
+        StudentServiceImpl delegate = new StudentServiceImpl(repository, logService, null, true);
+        try (EventLoopStudentService service = new EventLoopStudentService(delegate, 16, 16)) {
+            service.addStudent(teacher, new Student("Alice", "Johnson", 0));
+
+            diskFull.set(true);
+            // изменение уже видно, поэтому о нём сообщается как о применённом, но не записанном
+            ChangeNotPersistedException unsaved = assertThrows(ChangeNotPersistedException.class,
+                    () -> service.updateTokens("Alice", "Johnson", 5, teacher));
+            assertNotNull(unsaved.getCause());
+            assertEquals(5, service.findStudent("Alice", "Johnson").getTokens());
+            assertEquals(0, logService.findLogsByAction("UPDATE_TOKENS").size());
+
+            // следующая успешная запись сохраняет и отложенное изменение
+            diskFull.set(false);
+            service.updateTokens("Alice", "Johnson", 1, teacher);
+            assertTrue(Files.readString(csv).contains("Alice,Johnson,6"));
+            assertEquals(2, logService.findLogsByAction("UPDATE_TOKENS").size());
+        }
+    }
+
+    @Test
+    void testChangingAsyncUpdateResultDoesNotCorruptStore() throws Exception {
+        LogService logService = new LogServiceImpl(tempDir.resolve("async-result-logs.csv").toString());
+        StudentServiceImpl delegate = new StudentServiceImpl(tempDir.resolve("async-result-students.csv").toString(),
+                logService);
+        try (EventLoopStudentService service = new EventLoopStudentService(delegate, 16, 16)) {
+            service.addStudents(teacher, List.of(
+                    new Student("Alice", "Johnson", 5),
+                    new Student("Bob", "Wilson", 10)));
+
+            // результат изменения — копия: хранимый объект упорядочивает дерево рейтинга
+            Student updated = service.updateTokensAsync("Alice", "Johnson", 10, teacher).get();
+            assertEquals(15, updated.getTokens());
+            updated.setTokens(-100);
+
+            assertEquals(List.of(new Student("Alice", "Johnson", 15), new Student("Bob", "Wilson", 10)),
+                    service.getTopStudents(2));
+            assertEquals(25, service.getTokenStatistics().getSum());
+            assertEquals(15, service.getTokenStatistics().getMax());
+
+            service.removeStudent("Alice", "Johnson", teacher);
+            assertEquals(List.of(new Student("Bob", "Wilson", 10)), service.getTopStudents(5));
+            assertEquals(10, service.getTokenStatistics().getSum());
+            assertEquals(1, service.getTokenStatistics().getCount());
+        }
+    }
+
+    @Test
+    void testEventLoopCompletesEveryAcceptedCommandWhenClosedConcurrently() throws Exception {
+        LogService logService = new LogServiceImpl(tempDir.resolve("closing-logs.csv").toString());
+        StudentServiceImpl delegate = new StudentServiceImpl(tempDir.resolve("closing-students.csv").toString(),
+                logService, null, true);
+        EventLoopStudentService service = new EventLoopStudentService(delegate, 4, 2);
+        service.addStudent(teacher, new Student("Alice", "Johnson", 0));
+        List<CompletableFuture<Student>> accepted = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> producers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread producer = new Thread(() -> {
+                try {
+                    while (true) {
+                        accepted.add(service.updateTokensAsync("Alice", "Johnson", 1, teacher));
+                    }
+                } catch (IllegalStateException closed) {
+                    // сервис закрыт: новые команды не принимаются
+                }
+            });
+            producers.add(producer);
+            producer.start();
+        }
+        Thread.sleep(50);
+        service.close();
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        // ни одна принятая команда не осталась без результата
+        for (CompletableFuture<Student> result : accepted) {
+            assertTrue(result.isDone());
+        }
+        assertEquals(accepted.size(), delegate.findStudent("Alice", "Johnson").getTokens());
+    }
+
+    private StudentService serviceWithRoster(int size) throws IOException {
+        Path csv = tempDir.resolve("roster-" + size + ".csv");
+        try (BufferedWriter writer = Files.newBufferedWriter(csv)) {
+            writer.write("firstName,lastName,tokens");
+            writer.newLine();
+            for (int i = 0; i < size; i++) {
+                writer.write("First" + i + ",Last" + i + "," + i);
+                writer.newLine();
+            }
+        }
+        return new StudentServiceImpl(csv.toString(),
+                new LogServiceImpl(tempDir.resolve("roster-logs-" + size + ".csv").toString()));
+    }
+}
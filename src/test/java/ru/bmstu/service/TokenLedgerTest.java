@@ -0,0 +1,154 @@
+package ru.bmstu.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.bmstu.model.LogEntry;
+import ru.bmstu.model.Student;
+import ru.bmstu.model.StudentKey;
+import ru.bmstu.model.TokenEvent;
+import ru.bmstu.model.User;
+import ru.bmstu.service.impl.Durability;
+import ru.bmstu.service.impl.LogServiceImpl;
+import ru.bmstu.service.impl.StudentServiceImpl;
+import ru.bmstu.service.impl.TokenLedgerImpl;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenLedgerTest {
+    private static final LocalDateTime START = LocalDateTime.of(2024, 9, 1, 9, 0);
+
+    private final User teacher = new User("John", "Doe", User.UserRole.TEACHER);
+
+    @TempDir
+    Path tempDir;
+
+    // Часы, которые двигает тест
+    private static final class StepClock extends Clock {
+        private LocalDateTime now = START;
+
+        void advanceMinutes(int minutes) {
+            now = now.plusMinutes(minutes);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now.toInstant(ZoneOffset.UTC);
+        }
+    }
+
+    @Test
+    void testBalanceAsOfMatchesReplayedHistory() throws IOException {
+        StepClock clock = new StepClock();
+        Path ledgerPath = tempDir.resolve("students.csv.ledger");
+        LogService logService = new LogServiceImpl(tempDir.resolve("logs.csv").toString());
+        List<Integer> balances = new ArrayList<>();
+        List<LocalDateTime> times = new ArrayList<>();
+        Random random = new Random(7);
+
+        try (StudentServiceImpl service = new StudentServiceImpl(tempDir.resolve("students.csv").toString(), logService);
+             TokenLedgerImpl ledger = new TokenLedgerImpl(ledgerPath.toString(), Durability.NONE, 0, clock)) {
+            service.setTokenLedger(ledger);
+            service.addStudent(teacher, new Student("Alice", "Johnson", 10));
+            service.addStudent(teacher, new Student("Bob", "Wilson", 0));
+            int balance = 10;
+            // несколько контрольных точек и изменения пачками
+            for (int i = 0; i < 300; i++) {
+                clock.advanceMinutes(1);
+                int amount = random.nextInt(11) - 5;
+                if (i % 25 == 0) {
+                    service.updateTokensBatch(Map.of(new StudentKey("Alice", "Johnson"), amount,
+                            new StudentKey("Bob", "Wilson"), 1), teacher);
+                } else {
+                    service.updateTokens("Alice", "Johnson", amount, teacher);
+                }
+                balance += amount;
+                balances.add(balance);
+                times.add(START.plusMinutes(i + 1));
+            }
+
+            assertEquals(balance, ledger.getBalance("Alice", "Johnson"));
+            assertEquals(12, ledger.getBalance("Bob", "Wilson"));
+            assertNull(ledger.getBalanceAt("Alice", "Johnson", START.minusSeconds(1)));
+            assertEquals(10, ledger.getBalanceAt("Alice", "Johnson", START.plusSeconds(30)));
+            for (int i = 0; i < times.size(); i++) {
+                assertEquals(balances.get(i), ledger.getBalanceAt("Alice", "Johnson", times.get(i)));
+            }
+
+            // окно [from, to): события с 10-й по 19-ю минуту
+            List<TokenEvent> window = ledger.getEvents("Alice", "Johnson", START.plusMinutes(10), START.plusMinutes(20));
+            assertEquals(10, window.size());
+            assertEquals(balances.get(18), window.get(window.size() - 1).getBalance());
+            assertEquals(balances.get(18) - balances.get(8),
+                    ledger.getNetChange("Alice", "Johnson", START.plusMinutes(10), START.plusMinutes(20)));
+            assertEquals(TokenEvent.Type.ADDED, ledger.getEvents("Alice", "Johnson", null, START.plusSeconds(1)).get(0).getType());
+
+            clock.advanceMinutes(1);
+            service.removeStudent("Bob", "Wilson", teacher);
+            assertNull(ledger.getBalance("Bob", "Wilson"));
+            assertEquals(12, ledger.getBalanceAt("Bob", "Wilson", START.plusMinutes(300)));
+            assertEquals(-12, ledger.getEvents("Bob", "Wilson", START.plusMinutes(301), null).get(0).getDelta());
+        }
+
+        // после перезапуска история проигрывается из файла
+        try (TokenLedgerImpl restored = new TokenLedgerImpl(ledgerPath.toString())) {
+            assertEquals(balances.get(balances.size() - 1), restored.getBalance("Alice", "Johnson"));
+            assertEquals(balances.get(99), restored.getBalanceAt("Alice", "Johnson", times.get(99)));
+            assertNull(restored.getBalance("Bob", "Wilson"));
+        }
+    }
+
+    @Test
+    void testLedgerImportsAuditLogAndReconcilesWithStore() throws IOException {
+        LogServiceImpl logService = new LogServiceImpl(tempDir.resolve("import-logs.csv").toString());
+        String csv = tempDir.resolve("import-students.csv").toString();
+        // история накоплена до включения журнала жетонов
+        try (StudentServiceImpl service = new StudentServiceImpl(csv, logService)) {
+            service.addStudent(teacher, new Student("Alice", "Johnson", 5));
+            service.updateTokens("Alice", "Johnson", 3, teacher);
+            service.addStudent(teacher, new Student("Bob", "Wilson", 1));
+            service.expelStudent(teacher, "Bob", "Wilson");
+        }
+
+        try (StudentServiceImpl service = new StudentServiceImpl(csv, logService);
+             TokenLedgerImpl ledger = new TokenLedgerImpl(tempDir.resolve("import.ledger").toString())) {
+            assertTrue(ledger.isEmpty());
+            try (Stream<LogEntry> logs = logService.streamLogs(null, null)) {
+                assertEquals(4, ledger.importHistory(logs));
+            }
+            // изменение, сделанное после импорта, но до подключения журнала, добавляется сверкой
+            service.updateTokens("Alice", "Johnson", 2, teacher);
+            service.setTokenLedger(ledger);
+            assertEquals(10, ledger.getBalance("Alice", "Johnson"));
+            assertNull(ledger.getBalance("Bob", "Wilson"));
+            assertEquals(List.of(5, 3, 2), ledger.getEvents("Alice", "Johnson", null, null).stream()
+                    .map(TokenEvent::getDelta).toList());
+
+            service.updateTokens("Alice", "Johnson", -4, teacher);
+            assertEquals(6, ledger.getBalance("Alice", "Johnson"));
+            assertEquals(0, ledger.reconcile(service.getAllStudents()));
+        }
+    }
+}